@@ -0,0 +1,857 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.MessageFormat;
+
+/**
+ * <p>
+ * Base implementation of a codec that binds a Java type to its JSON form.
+ * Concrete codecs are generated at compile time for classes annotated with
+ * <code>@JSONBinding</code>, so binding involves no reflection.
+ * </p>
+ * <p>
+ * The static helpers are used by the generated code and are not generally
+ * useful on their own.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @param <T> the bound type
+ * 
+ * @see JSONBinding
+ * @see JSONBinder
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public abstract class AbstractJSONCodec<T>
+{
+   /**
+    * Get the type bound by this codec.
+    * 
+    * @return the bound type
+    */
+   public abstract Class<T> getType();
+
+   /**
+    * Convert an instance to the tree model.
+    * 
+    * @param value the instance to convert (may be null)
+    * @return a <code>JSONObject</code>, or <code>JSONNull</code> if 'value' is
+    *         null
+    */
+   public abstract JSONValue toJSON(T value);
+
+   /**
+    * Bind a value from the tree model.
+    * 
+    * @param path JSON path to the value
+    * @param json the value to bind
+    * @return the bound instance, or null if 'json' is a <code>JSONNull</code>
+    * @throws JSONException if 'json' can't be bound to the type
+    */
+   public abstract T fromJSON(String path, JSONValue json) throws JSONException;
+
+   /**
+    * Render an instance to a <code>Writer</code>. The output is identical to
+    * writing the value returned by <code>toJSON()</code>.
+    * 
+    * @param value  the instance to render (may be null)
+    * @param indent indent padding
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException   on any failure of the <code>Writer</code>
+    * @throws JSONException if a floating point member is infinite or NaN
+    */
+   public abstract void write(T value, String indent, Writer writer, boolean pretty) throws IOException, JSONException;
+
+   /**
+    * Read and bind the next value from a reader. Characters after the value
+    * are left in the reader.
+    * 
+    * @param factory the factory used to parse the input
+    * @param reader  source reader
+    * @return the bound instance, or null on EOF or a JSON null
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar or binding error
+    */
+   public T read(JSONValueFactory factory, Reader reader) throws IOException, JSONException
+   {
+      try (JSONContext context = JSONContext.acquire())
+      {
+         return context.read(factory, reader, this);
+      }
+   }
+
+   /**
+    * Read and bind the value that starts at the current position of a reader.
+    * Generated codecs bind objects, arrays and nulls straight from the
+    * characters they're made of, so no tree is built for the value. Scalars
+    * and <code>JSONValue</code> members are built with
+    * <code>factory.read()</code>, so they get the factory's callbacks. If the
+    * factory overrides the callbacks for objects, arrays or nulls, the value
+    * is parsed into the tree model and bound with <code>fromJSON()</code>
+    * instead.
+    * 
+    * @param path    JSON path to the value
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned at the start of the value
+    * @return the bound instance, or null if the value is a JSON null
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar or binding error
+    */
+   public final T read(String path, JSONValueFactory factory, PushbackReader pbr) throws IOException, JSONException
+   {
+      if (!factory.isStandardStructure()) return fromJSON(path, factory.read(path, pbr));
+      return readValue(path, factory, pbr);
+   }
+
+   /**
+    * Read and bind the value that starts at the current position of a reader.
+    * This implementation parses the value into the tree model and binds it
+    * with <code>fromJSON()</code>.
+    * 
+    * @param path    JSON path to the value
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned at the start of the value
+    * @return the bound instance, or null if the value is a JSON null
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar or binding error
+    */
+   protected T readValue(String path, JSONValueFactory factory, PushbackReader pbr) throws IOException, JSONException
+   {
+      return fromJSON(path, factory.read(path, pbr));
+   }
+
+   /**
+    * Bind the rest of an object whose opening brace and any leading members
+    * have already been read. This implementation reads the remaining members
+    * into the tree model and binds them with <code>fromJSON()</code>.
+    * 
+    * @param path    JSON path to the object
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned at the value of 'key'
+    * @param key     the key of the next member, or null if the object has been
+    *                closed
+    * @param count   the number of members read so far, including 'key'
+    * @return the bound instance
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar or binding error
+    */
+   protected T readMembers(String path, JSONValueFactory factory, PushbackReader pbr, String key, int count) throws IOException, JSONException
+   {
+      return fromJSON(path, readObject(path, factory, pbr, key, count));
+   }
+
+   /**
+    * Read and bind the next value from a reader using the default factory.
+    * 
+    * @param reader source reader
+    * @return the bound instance, or null on EOF or a JSON null
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar or binding error
+    */
+   public T read(Reader reader) throws IOException, JSONException
+   {
+      return read(JSONValueFactory.DEFAULT, reader);
+   }
+
+   /**
+    * Render an instance as a string.
+    * 
+    * @param value  the instance to render
+    * @param pretty 'true' to pretty-print with line feeds and indentation,
+    *               'false' to render on a single line.
+    * @return the rendered value
+    * @throws IllegalArgumentException if a floating point member is infinite
+    *                                  or NaN
+    */
+   public String toString(T value, boolean pretty)
+   {
+      try (JSONContext context = JSONContext.acquire())
+      {
+         StringBuilderWriter writer = context.getWriter();
+         write(value, "", writer, pretty);
+         return writer.toString();
+      }
+      catch (JSONException exc)
+      {
+         throw new IllegalArgumentException(exc.getMessage(), exc);
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to render string", exc);
+      }
+   }
+
+   /**
+    * Look for a codec for the runtime type of 'value' when it is a subtype of
+    * the bound type.
+    * 
+    * @param value the instance
+    * @return the subtype codec, or null if 'value' is exactly the bound type or
+    *         its type has no codec
+    */
+   @SuppressWarnings("unchecked")
+   protected AbstractJSONCodec<T> subtypeCodec(T value)
+   {
+      if (value.getClass() == getType()) return null;
+
+      return (AbstractJSONCodec<T>) JSONBinder.getCodec(value.getClass());
+   }
+
+   /**
+    * Create the exception for a type discriminator that names none of the
+    * subtypes known when this codec was generated. Subtypes are resolved only
+    * from that list, so a document can't cause arbitrary classes to be
+    * loaded.
+    * 
+    * @param path     JSON path to the value
+    * @param typeName the name of the subtype
+    * @return the exception to throw
+    */
+   protected JSONException unknownSubtype(String path, String typeName)
+   {
+      return new JSONException(path, MessageFormat.format("Read an object of type ''{0}'' but that class is not a known subtype of ''{1}''", typeName, getType().getName()));
+   }
+
+   /**
+    * Bind the members that follow the type discriminator of an object with a
+    * subtype's codec.
+    * 
+    * @param codec   the codec of the subtype
+    * @param path    JSON path to the object
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned after the type value
+    * @param count   the number of members read so far
+    * @param <S>     the subtype
+    * @return the bound instance
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar or binding error
+    */
+   static protected <S> S readSubtype(AbstractJSONCodec<S> codec, String path, JSONValueFactory factory, PushbackReader pbr, int count) throws IOException, JSONException
+   {
+      return codec.readMembers(path, factory, pbr, nextKey(path, factory, pbr, count + 1), count + 1);
+   }
+
+   /**
+    * Read a JSON null if the value at the current position is one.
+    * 
+    * @param path JSON path to the value
+    * @param pbr  source reader, positioned at the start of the value
+    * @return 'true' if a null was read, 'false' if the reader is unchanged
+    * @throws IOException   on read failure
+    * @throws JSONException if the value starts like a null but isn't one
+    */
+   static protected boolean readNull(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      char c = JSONValueFactory.demand(pbr);
+
+      if (c != 'n')
+      {
+         pbr.unread(c);
+         return false;
+      }
+
+      JSONNull.readNullBody(path, pbr);
+      return true;
+   }
+
+   /**
+    * Read the opening brace and first key of an object.
+    * 
+    * @param path    JSON path to the object
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned at the start of the value
+    * @return the first key, with the reader positioned at its value, or null
+    *         if the object is empty
+    * @throws IOException   on read failure
+    * @throws JSONException if the value isn't an object or is malformed
+    */
+   static protected String beginObject(String path, JSONValueFactory factory, PushbackReader pbr) throws IOException, JSONException
+   {
+      char c = JSONValueFactory.demand(pbr);
+
+      if (c != '{')
+      {
+         pbr.unread(c);
+         throw mismatch(path, factory.read(path, pbr), "JSONObject");
+      }
+
+      factory.enter(path, pbr);
+      factory.skipWhitespace(pbr);
+      c = JSONValueFactory.demand(pbr);
+
+      if (c == '}')
+      {
+         factory.exit(pbr);
+         return null;
+      }
+
+      return readKey(path, factory, pbr, c, 1);
+   }
+
+   /**
+    * Read the separator and key of the next member of an object, or its
+    * closing brace.
+    * 
+    * @param path    JSON path to the object
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned after the previous value
+    * @param count   the number of members including the next one
+    * @return the next key, with the reader positioned at its value, or null
+    *         if the object was closed
+    * @throws IOException   on read failure
+    * @throws JSONException if the object is malformed
+    */
+   static protected String nextKey(String path, JSONValueFactory factory, PushbackReader pbr, int count) throws IOException, JSONException
+   {
+      factory.skipWhitespace(pbr);
+      char c = JSONValueFactory.demand(pbr);
+
+      // a trailing comma is accepted, as it is in the tree model
+      if (c == ',')
+      {
+         factory.skipWhitespace(pbr);
+         c = JSONValueFactory.demand(pbr);
+      }
+      else if (c != '}')
+      {
+         throw new JSONException(path, "JSON object is not grammatically correct.  Unexpected: " + c);
+      }
+
+      if (c == '}')
+      {
+         factory.exit(pbr);
+         return null;
+      }
+
+      return readKey(path, factory, pbr, c, count);
+   }
+
+   /**
+    * Read a key and its colon.
+    * 
+    * @param path    JSON path to the object
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned after the first character
+    * @param c       the first character of the key
+    * @param count   the number of members including this one
+    * @return the key
+    * @throws IOException   on read failure
+    * @throws JSONException if the member is malformed or there are too many
+    */
+   static private String readKey(String path, JSONValueFactory factory, PushbackReader pbr, char c, int count) throws IOException, JSONException
+   {
+      int maxMembers = factory.getMaxMembers();
+
+      if (c != '\"') throw new JSONException(path, "JSON object is not grammatically correct.  Unexpected: " + c);
+      if (count > maxMembers) throw JSONValueFactory.tooMany(path, true, maxMembers);
+
+      String key = JSONString.readStringBody(path, pbr);
+
+      // next ought to be a colon
+      factory.skipWhitespace(pbr);
+      if (JSONValueFactory.demand(pbr) != ':') throw new JSONException(path + "." + key, "Expected ':' after key value");
+      factory.skipWhitespace(pbr);
+
+      return key;
+   }
+
+   /**
+    * Read the opening bracket of an array.
+    * 
+    * @param path    JSON path to the array
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned at the start of the value
+    * @return 'true' with the reader positioned at the first element, or
+    *         'false' if the array is empty
+    * @throws IOException   on read failure
+    * @throws JSONException if the value isn't an array or is malformed
+    */
+   static protected boolean beginArray(String path, JSONValueFactory factory, PushbackReader pbr) throws IOException, JSONException
+   {
+      char c = JSONValueFactory.demand(pbr);
+
+      if (c != '[')
+      {
+         pbr.unread(c);
+         throw mismatch(path, factory.read(path, pbr), "JSONArray");
+      }
+
+      factory.enter(path, pbr);
+      factory.skipWhitespace(pbr);
+      c = JSONValueFactory.demand(pbr);
+
+      if (c == ']')
+      {
+         factory.exit(pbr);
+         return false;
+      }
+
+      pbr.unread(c);
+      return true;
+   }
+
+   /**
+    * Read the separator before the next element of an array, or its closing
+    * bracket.
+    * 
+    * @param path    JSON path to the array
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned after the previous element
+    * @param count   the number of elements including the next one
+    * @return 'true' with the reader positioned at the next element, or
+    *         'false' if the array was closed
+    * @throws IOException   on read failure
+    * @throws JSONException if the array is malformed or too long
+    */
+   static protected boolean nextElement(String path, JSONValueFactory factory, PushbackReader pbr, int count) throws IOException, JSONException
+   {
+      int maxMembers = factory.getMaxMembers();
+
+      factory.skipWhitespace(pbr);
+      char c = JSONValueFactory.demand(pbr);
+
+      if (c == ']')
+      {
+         factory.exit(pbr);
+         return false;
+      }
+
+      if (c != ',') throw new JSONException(path, "Incorrectly formatted array: " + c);
+      if (count > maxMembers) throw JSONValueFactory.tooMany(path, false, maxMembers);
+
+      factory.skipWhitespace(pbr);
+      return true;
+   }
+
+   /**
+    * Check and pass over a value that isn't bound.
+    * 
+    * @param path    JSON path to the value
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned at the start of the value
+    * @throws IOException   on read failure
+    * @throws JSONException if the value is malformed
+    */
+   static protected void skipValue(String path, JSONValueFactory factory, PushbackReader pbr) throws IOException, JSONException
+   {
+      factory.skipValue(path, pbr);
+   }
+
+   /**
+    * Read the value of a type discriminator.
+    * 
+    * @param path    JSON path to the object
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned at the start of the value
+    * @return the type name
+    * @throws IOException   on read failure
+    * @throws JSONException if the value is not a string
+    */
+   static protected String readType(String path, JSONValueFactory factory, PushbackReader pbr) throws IOException, JSONException
+   {
+      return typeName(path, factory.read(path + "." + TypedJSONObject.TYPE_KEY, pbr));
+   }
+
+   /**
+    * Read the rest of an object into the tree model.
+    * 
+    * @param path    JSON path to the object
+    * @param factory the factory used to parse the input
+    * @param pbr     source reader, positioned at the value of 'key'
+    * @param key     the key of the next member, or null if the object has been
+    *                closed
+    * @param count   the number of members read so far, including 'key'
+    * @return the remaining members
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   static protected JSONObject readObject(String path, JSONValueFactory factory, PushbackReader pbr, String key, int count) throws IOException, JSONException
+   {
+      JSONObject object = new JSONObject();
+
+      for (; key != null; key = nextKey(path, factory, pbr, ++count))
+      {
+         object.put(key, factory.read(path + "." + key, pbr));
+      }
+
+      return object;
+   }
+
+   /**
+    * Get the indent for the next nesting level.
+    * 
+    * @param indent current indent
+    * @return indent for members of the current value
+    */
+   static protected String nextIndent(String indent)
+   {
+      return JSONContext.nextIndent(indent);
+   }
+
+   /**
+    * Write a key the same way <code>JSONObject</code> does.
+    * 
+    * @param key    the key
+    * @param indent indent of the member
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static protected void writeKey(String key, String indent, Writer writer, boolean pretty) throws IOException
+   {
+      if (pretty) writer.write(indent);
+      JSONWriter.writeKey(key, writer, pretty);
+   }
+
+   /**
+    * Write a string value (or null).
+    * 
+    * @param value  the value
+    * @param writer target writer
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static protected void writeString(String value, Writer writer) throws IOException
+   {
+      if (value == null) JSONWriter.writeLiteral(JSONWriter.NULL, writer);
+      else JSONString.writeString(value, writer);
+   }
+
+   /**
+    * Write an integral value.
+    * 
+    * @param value  the value
+    * @param writer target writer
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static protected void writeLong(long value, Writer writer) throws IOException
+   {
+      writer.write(Long.toString(value));
+   }
+
+   /**
+    * Write a double value as <code>toJSON()</code> would represent it.
+    * 
+    * @param path   path of the member within the instance being written
+    * @param value  the value
+    * @param writer target writer
+    * @throws IOException   on any failure of the <code>Writer</code>
+    * @throws JSONException if the value is infinite or NaN
+    */
+   static protected void writeDouble(String path, double value, Writer writer) throws IOException, JSONException
+   {
+      if (Double.isNaN(value) || Double.isInfinite(value)) throw new JSONException(path, "JSON has no representation for " + value);
+
+      writer.write(BigDecimal.valueOf(value).toString());
+   }
+
+   /**
+    * Write a float value as <code>toJSON()</code> would represent it.
+    * 
+    * @param path   path of the member within the instance being written
+    * @param value  the value
+    * @param writer target writer
+    * @throws IOException   on any failure of the <code>Writer</code>
+    * @throws JSONException if the value is infinite or NaN
+    */
+   static protected void writeFloat(String path, float value, Writer writer) throws IOException, JSONException
+   {
+      if (Float.isNaN(value) || Float.isInfinite(value)) throw new JSONException(path, "JSON has no representation for " + value);
+
+      writer.write(new BigDecimal(Float.toString(value)).toString());
+   }
+
+   /**
+    * Write a <code>BigDecimal</code> value (or null).
+    * 
+    * @param value  the value
+    * @param writer target writer
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static protected void writeBigDecimal(BigDecimal value, Writer writer) throws IOException
+   {
+      writer.write((value == null) ? "null" : value.toString());
+   }
+
+   /**
+    * Write a boolean value.
+    * 
+    * @param value  the value
+    * @param writer target writer
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static protected void writeBoolean(boolean value, Writer writer) throws IOException
+   {
+      JSONWriter.writeLiteral(value ? JSONWriter.TRUE : JSONWriter.FALSE, writer);
+   }
+
+   /**
+    * Get the type discriminator of a <code>JSONObject</code>.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the type name, or null if there is none
+    * @throws JSONException if the type value is not a string
+    */
+   static protected String typeOf(String path, JSONObject json) throws JSONException
+   {
+      JSONValue type = json.get(TypedJSONObject.TYPE_KEY);
+      if (type == null) return null;
+
+      return typeName(path, type);
+   }
+
+   /**
+    * Demand the string value of a type discriminator.
+    * 
+    * @param path JSON path to the object
+    * @param type the type value
+    * @return the type name
+    * @throws JSONException if the type value is not a string
+    */
+   static private String typeName(String path, JSONValue type) throws JSONException
+   {
+      if (!(type instanceof JSONString))
+      {
+         throw new JSONException(path, MessageFormat.format("'type' value is a ''{0}'' but a JSONString was expected", type.getClass().getName()));
+      }
+
+      return ((JSONString) type).getStringValue();
+   }
+
+   /**
+    * Demand a <code>JSONObject</code>.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return 'json' cast as a <code>JSONObject</code>
+    * @throws JSONException if 'json' is some other type
+    */
+   static protected JSONObject requireObject(String path, JSONValue json) throws JSONException
+   {
+      if (!(json instanceof JSONObject)) throw mismatch(path, json, "JSONObject");
+      return (JSONObject) json;
+   }
+
+   /**
+    * Demand a <code>JSONArray</code>.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return 'json' cast as a <code>JSONArray</code>
+    * @throws JSONException if 'json' is some other type
+    */
+   static protected JSONArray requireArray(String path, JSONValue json) throws JSONException
+   {
+      if (!(json instanceof JSONArray)) throw mismatch(path, json, "JSONArray");
+      return (JSONArray) json;
+   }
+
+   /**
+    * Decode a string.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the string value
+    * @throws JSONException if 'json' is not a <code>JSONString</code>
+    */
+   static protected String decodeString(String path, JSONValue json) throws JSONException
+   {
+      if (!(json instanceof JSONString)) throw mismatch(path, json, "JSONString");
+      return ((JSONString) json).getStringValue();
+   }
+
+   /**
+    * Decode a single character.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the character value
+    * @throws JSONException if 'json' is not a one character
+    *                       <code>JSONString</code>
+    */
+   static protected char decodeChar(String path, JSONValue json) throws JSONException
+   {
+      String value = decodeString(path, json);
+      if (value.length() != 1) throw new JSONException(path, "Expected a single character but found: " + value);
+      return value.charAt(0);
+   }
+
+   /**
+    * Decode a boolean.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the boolean value
+    * @throws JSONException if 'json' is not a <code>JSONBoolean</code>
+    */
+   static protected boolean decodeBoolean(String path, JSONValue json) throws JSONException
+   {
+      if (!(json instanceof JSONBoolean)) throw mismatch(path, json, "JSONBoolean");
+      return ((JSONBoolean) json).getBooleanValue();
+   }
+
+   /**
+    * Decode a <code>BigDecimal</code>.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the number value
+    * @throws JSONException if 'json' is not a <code>JSONNumber</code>
+    */
+   static protected BigDecimal decodeBigDecimal(String path, JSONValue json) throws JSONException
+   {
+      if (!(json instanceof JSONNumber)) throw mismatch(path, json, "JSONNumber");
+      return ((JSONNumber) json).getBigDecimalValue();
+   }
+
+   /**
+    * Decode a <code>BigInteger</code>.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the number value
+    * @throws JSONException if 'json' is not an integral <code>JSONNumber</code>
+    */
+   static protected BigInteger decodeBigInteger(String path, JSONValue json) throws JSONException
+   {
+      BigDecimal value = decodeBigDecimal(path, json);
+
+      try
+      {
+         return value.toBigIntegerExact();
+      }
+      catch (ArithmeticException exc)
+      {
+         throw new JSONException(path, "Expected an integer but found: " + value, exc);
+      }
+   }
+
+   /**
+    * Decode a long.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the number value
+    * @throws JSONException if 'json' is not a <code>JSONNumber</code> in range
+    */
+   static protected long decodeLong(String path, JSONValue json) throws JSONException
+   {
+      BigDecimal value = decodeBigDecimal(path, json);
+
+      try
+      {
+         return value.longValueExact();
+      }
+      catch (ArithmeticException exc)
+      {
+         throw new JSONException(path, "Expected a long but found: " + value, exc);
+      }
+   }
+
+   /**
+    * Decode an int.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the number value
+    * @throws JSONException if 'json' is not a <code>JSONNumber</code> in range
+    */
+   static protected int decodeInt(String path, JSONValue json) throws JSONException
+   {
+      long value = decodeLong(path, json);
+      if ((value < Integer.MIN_VALUE) || (value > Integer.MAX_VALUE)) throw new JSONException(path, "Expected an int but found: " + value);
+      return (int) value;
+   }
+
+   /**
+    * Decode a short.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the number value
+    * @throws JSONException if 'json' is not a <code>JSONNumber</code> in range
+    */
+   static protected short decodeShort(String path, JSONValue json) throws JSONException
+   {
+      long value = decodeLong(path, json);
+      if ((value < Short.MIN_VALUE) || (value > Short.MAX_VALUE)) throw new JSONException(path, "Expected a short but found: " + value);
+      return (short) value;
+   }
+
+   /**
+    * Decode a byte.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the number value
+    * @throws JSONException if 'json' is not a <code>JSONNumber</code> in range
+    */
+   static protected byte decodeByte(String path, JSONValue json) throws JSONException
+   {
+      long value = decodeLong(path, json);
+      if ((value < Byte.MIN_VALUE) || (value > Byte.MAX_VALUE)) throw new JSONException(path, "Expected a byte but found: " + value);
+      return (byte) value;
+   }
+
+   /**
+    * Decode a double.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the number value
+    * @throws JSONException if 'json' is not a <code>JSONNumber</code>
+    */
+   static protected double decodeDouble(String path, JSONValue json) throws JSONException
+   {
+      if (!(json instanceof JSONNumber)) throw mismatch(path, json, "JSONNumber");
+      return ((JSONNumber) json).getDoubleValue();
+   }
+
+   /**
+    * Decode a float.
+    * 
+    * @param path JSON path to the value
+    * @param json the value
+    * @return the number value
+    * @throws JSONException if 'json' is not a <code>JSONNumber</code>
+    */
+   static protected float decodeFloat(String path, JSONValue json) throws JSONException
+   {
+      return decodeBigDecimal(path, json).floatValue();
+   }
+
+   /**
+    * Create the exception for an unexpected value type.
+    * 
+    * @param path     JSON path to the value
+    * @param json     the value
+    * @param expected name of the expected type
+    * @return the exception to throw
+    */
+   static protected JSONException mismatch(String path, JSONValue json, String expected)
+   {
+      return new JSONException(path, MessageFormat.format("Value is a ''{0}'' but a {1} was expected", json.getClass().getName(), expected));
+   }
+}
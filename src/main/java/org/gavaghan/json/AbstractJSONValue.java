@@ -16,7 +16,9 @@
 package org.gavaghan.json;
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
 
 /**
  * Base implementation of a <code>JSONValue</code>.
@@ -37,19 +39,156 @@ public abstract class AbstractJSONValue implements JSONValue
 	 */
 	static public String toString(JSONValue value, boolean pretty)
 	{
-		String str;
+		try (JSONContext context = JSONContext.acquire())
+		{
+			return context.toString(value, pretty);
+		}
+	}
+
+	/**
+	 * Render a <code>JSONValue</code> to a stream as UTF-8 without going
+	 * through an <code>OutputStreamWriter</code>. The stream is flushed but not
+	 * closed.
+	 * 
+	 * @since 1.3
+	 * 
+	 * @param value
+	 *           the <code>JSONValue</code> to render
+	 * @param out
+	 *           the target stream
+	 * @param pretty
+	 *           'true' to pretty-print with line feeds and indentation, 'false'
+	 *           to render on a single line.
+	 * @throws IOException
+	 *            on any failure of the stream
+	 */
+	static public void write(JSONValue value, OutputStream out, boolean pretty) throws IOException
+	{
+		try (JSONContext context = JSONContext.acquire())
+		{
+			context.write(value, out, pretty);
+		}
+	}
+
+	/**
+	 * Render a <code>JSONValue</code> to a channel as UTF-8. The channel is not
+	 * closed.
+	 * 
+	 * @since 1.3
+	 * 
+	 * @param value
+	 *           the <code>JSONValue</code> to render
+	 * @param channel
+	 *           the target channel
+	 * @param pretty
+	 *           'true' to pretty-print with line feeds and indentation, 'false'
+	 *           to render on a single line.
+	 * @throws IOException
+	 *            on any failure of the channel
+	 */
+	static public void write(JSONValue value, WritableByteChannel channel, boolean pretty) throws IOException
+	{
+		try (JSONContext context = JSONContext.acquire())
+		{
+			context.write(value, channel, pretty);
+		}
+	}
+
+	/**
+	 * Create a copy of a <code>JSONValue</code> that shares structure with the
+	 * original until it is modified. Plain, frozen and copy-on-write
+	 * <code>JSONObject</code> and <code>JSONArray</code> values become O(1)
+	 * views that copy their members on first access; other values, including
+	 * other subclasses, are copied with <code>deepCopy()</code>.
+	 * The original must not be modified while the copy is in use.
+	 * 
+	 * @param value
+	 *           the <code>JSONValue</code> to copy
+	 * @return the copy
+	 */
+	static public JSONValue copyOnWrite(JSONValue value)
+	{
+		Class<?> type = value.getClass();
 
-		try (StringWriter writer = new StringWriter())
+		// subclasses may carry state a view wouldn't copy
+		if ((type == JSONObject.class) || (type == CopyOnWriteJSONObject.class) || (type == FrozenJSONObject.class))
 		{
-			value.write("", writer, pretty);
-			str = writer.toString();
+			return new CopyOnWriteJSONObject((JSONObject) value);
 		}
-		catch (IOException exc)
+
+		if ((type == JSONArray.class) || (type == CopyOnWriteJSONArray.class) || (type == FrozenJSONArray.class))
 		{
-			throw new RuntimeException("Unexpectedly failed to render string", exc);
+			return new CopyOnWriteJSONArray((JSONArray) value);
 		}
 
-		return str;
+		return value.deepCopy();
+	}
+
+	/**
+	 * Create an immutable copy of a <code>JSONValue</code> tree. Objects and
+	 * arrays are rebuilt over flat arrays, every nested value is frozen too and
+	 * hash codes are computed once up front. The result may be shared freely
+	 * across threads; any attempt to modify it throws
+	 * <code>UnsupportedOperationException</code>. Values that are already frozen
+	 * are returned as-is.
+	 * 
+	 * @since 1.3
+	 * 
+	 * @param value
+	 *           the <code>JSONValue</code> to freeze
+	 * @return the frozen value
+	 */
+	static public JSONValue freeze(JSONValue value)
+	{
+		if (value == null) throw new NullPointerException("Null value not allowed.  Use JSONNull instead.");
+		if (value instanceof FrozenJSONValue) return value;
+
+		if (value instanceof JSONObject) return new FrozenJSONObject((JSONObject) value);
+		if (value instanceof JSONArray) return new FrozenJSONArray((JSONArray) value);
+		if (value instanceof JSONString) return new FrozenJSONString(((JSONString) value).getStringValue());
+		if (value instanceof JSONNumber) return new FrozenJSONNumber(((JSONNumber) value).getBigDecimalValue());
+		if (value instanceof JSONBoolean) return ((JSONBoolean) value).getBooleanValue() ? FrozenJSONBoolean.TRUE : FrozenJSONBoolean.FALSE;
+		if (value instanceof JSONNull) return JSONNull.INSTANCE;
+
+		throw new RuntimeException("Don't know how to freeze a " + value.getClass().getName());
+	}
+
+	/**
+	 * Determine if a <code>JSONValue</code> is immutable, as produced by
+	 * <code>freeze()</code>.
+	 * 
+	 * @since 1.3
+	 * 
+	 * @param value
+	 *           the <code>JSONValue</code> to test
+	 * @return 'true' if the value is frozen
+	 */
+	static public boolean isFrozen(JSONValue value)
+	{
+		return (value instanceof FrozenJSONValue) || (value == JSONNull.INSTANCE);
+	}
+
+	/**
+	 * Compare two <code>JSONValue</code> trees by content. Objects are equal if
+	 * they have the same keys with equal values in any order, arrays if they
+	 * have equal elements in the same order, and numbers if their
+	 * <code>BigDecimal</code> values are equal (so <code>1.0</code> and
+	 * <code>1.00</code> differ). Frozen and mutable values may be compared with
+	 * each other. The trees are walked without recursion, so any depth may be
+	 * compared.
+	 * 
+	 * @since 1.3
+	 * 
+	 * @param a
+	 *           a <code>JSONValue</code>
+	 * @param b
+	 *           another <code>JSONValue</code>
+	 * @return 'true' if the trees are equal
+	 */
+	static public boolean deepEquals(JSONValue a, JSONValue b)
+	{
+		if ((a == null) || (b == null)) return a == b;
+		return JSONTree.equals(a, b);
 	}
 
 	/*
@@ -0,0 +1,355 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Big-endian byte output for the binary encodings. Bytes are collected in a
+ * buffer that either grows to hold the whole encoding or is handed to an
+ * <code>OutputStream</code> or <code>ByteBuffer</code> whenever it fills.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class ByteSink
+{
+   /** Size of the buffer when draining to a target. */
+   static private final int BLOCK_SIZE = 8192;
+
+   /** The target stream, if any. */
+   private final OutputStream mOut;
+
+   /** The target buffer, if any. */
+   private final ByteBuffer mTarget;
+
+   /** The buffer. */
+   private byte[] mBuf;
+
+   /** Number of bytes in the buffer. */
+   private int mCount;
+
+   /**
+    * Create a <code>ByteSink</code> that grows to hold everything written.
+    */
+   ByteSink()
+   {
+      mOut = null;
+      mTarget = null;
+      mBuf = new byte[256];
+   }
+
+   /**
+    * Create a <code>ByteSink</code> that writes to a stream.
+    * 
+    * @param out the target stream
+    */
+   ByteSink(OutputStream out)
+   {
+      if (out == null) throw new NullPointerException("Null output stream");
+
+      mOut = out;
+      mTarget = null;
+      mBuf = new byte[BLOCK_SIZE];
+   }
+
+   /**
+    * Create a <code>ByteSink</code> that writes into a buffer.
+    * 
+    * @param target the target buffer
+    */
+   ByteSink(ByteBuffer target)
+   {
+      if (target == null) throw new NullPointerException("Null buffer");
+
+      mOut = null;
+      mTarget = target;
+      mBuf = new byte[BLOCK_SIZE];
+   }
+
+   /**
+    * Hand the buffered bytes to the target.
+    * 
+    * @throws IOException on any failure of the target
+    */
+   private void drain() throws IOException
+   {
+      if (mOut != null)
+      {
+         mOut.write(mBuf, 0, mCount);
+      }
+      else
+      {
+         if (mTarget.remaining() < mCount) throw new IOException("Insufficient room in target buffer");
+         mTarget.put(mBuf, 0, mCount);
+      }
+
+      mCount = 0;
+   }
+
+   /**
+    * Make room for more bytes.
+    * 
+    * @param count number of bytes about to be written
+    * @throws IOException on any failure of the target
+    */
+   private void ensure(int count) throws IOException
+   {
+      if (mCount + count <= mBuf.length) return;
+
+      if ((mOut != null) || (mTarget != null))
+      {
+         drain();
+         if (count <= mBuf.length) return;
+      }
+
+      mBuf = Arrays.copyOf(mBuf, Math.max(mBuf.length * 2, mCount + count));
+   }
+
+   /**
+    * Write a byte.
+    * 
+    * @param b the byte
+    * @throws IOException on any failure of the target
+    */
+   void write(int b) throws IOException
+   {
+      if (mCount == mBuf.length) ensure(1);
+      mBuf[mCount++] = (byte) b;
+   }
+
+   /**
+    * Write a byte followed by a big-endian 16 bit value.
+    * 
+    * @param b     the byte
+    * @param value the value
+    * @throws IOException on any failure of the target
+    */
+   void write2(int b, int value) throws IOException
+   {
+      ensure(3);
+
+      byte[] buf = mBuf;
+      int count = mCount;
+
+      buf[count++] = (byte) b;
+      buf[count++] = (byte) (value >> 8);
+      buf[count++] = (byte) value;
+
+      mCount = count;
+   }
+
+   /**
+    * Write a byte followed by a big-endian 32 bit value.
+    * 
+    * @param b     the byte
+    * @param value the value
+    * @throws IOException on any failure of the target
+    */
+   void write4(int b, int value) throws IOException
+   {
+      ensure(5);
+
+      byte[] buf = mBuf;
+      int count = mCount;
+
+      buf[count] = (byte) b;
+      JSONIntrinsics.putIntBE(buf, count + 1, value);
+
+      mCount = count + 5;
+   }
+
+   /**
+    * Write a byte followed by a big-endian 64 bit value.
+    * 
+    * @param b     the byte
+    * @param value the value
+    * @throws IOException on any failure of the target
+    */
+   void write8(int b, long value) throws IOException
+   {
+      ensure(9);
+
+      byte[] buf = mBuf;
+      int count = mCount;
+
+      buf[count] = (byte) b;
+      JSONIntrinsics.putLongBE(buf, count + 1, value);
+
+      mCount = count + 9;
+   }
+
+   /**
+    * Write a big-endian 32 bit value.
+    * 
+    * @param value the value
+    * @throws IOException on any failure of the target
+    */
+   void writeInt(int value) throws IOException
+   {
+      ensure(4);
+
+      JSONIntrinsics.putIntBE(mBuf, mCount, value);
+      mCount += 4;
+   }
+
+   /**
+    * Write a big-endian 64 bit value.
+    * 
+    * @param value the value
+    * @throws IOException on any failure of the target
+    */
+   void writeLong(long value) throws IOException
+   {
+      ensure(8);
+
+      JSONIntrinsics.putLongBE(mBuf, mCount, value);
+      mCount += 8;
+   }
+
+   /**
+    * Write bytes.
+    * 
+    * @param bytes  source of the bytes
+    * @param offset start of the bytes
+    * @param length number of bytes
+    * @throws IOException on any failure of the target
+    */
+   void write(byte[] bytes, int offset, int length) throws IOException
+   {
+      while (length > 0)
+      {
+         if (mCount == mBuf.length) ensure(Math.min(length, BLOCK_SIZE));
+
+         int count = Math.min(length, mBuf.length - mCount);
+         System.arraycopy(bytes, offset, mBuf, mCount, count);
+         mCount += count;
+         offset += count;
+         length -= count;
+      }
+   }
+
+   /**
+    * Get the length of a string encoded as UTF-8, with unpaired surrogates
+    * encoded as '?' as <code>String.getBytes()</code> does.
+    * 
+    * @param str the string
+    * @return the encoded length in bytes
+    */
+   static int utf8Length(String str)
+   {
+      int length = str.length();
+      int bytes = length;
+
+      for (int i = 0; i < length; i++)
+      {
+         char c = str.charAt(i);
+         if (c < 0x80) continue;
+
+         if (c < 0x800) bytes++;
+         else if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(str.charAt(i + 1)))
+         {
+            // four bytes for the pair
+            bytes += 2;
+            i++;
+         }
+         else if (!Character.isSurrogate(c)) bytes += 2;
+      }
+
+      return bytes;
+   }
+
+   /**
+    * Write a string as UTF-8.
+    * 
+    * @param str the string
+    * @throws IOException on any failure of the target
+    */
+   void writeUTF8(String str) throws IOException
+   {
+      int length = str.length();
+      int i = 0;
+
+      while (i < length)
+      {
+         if (mCount > mBuf.length - 4) ensure(Math.min(BLOCK_SIZE, 4 * (length - i)));
+
+         byte[] buf = mBuf;
+         int count = mCount;
+         int stop = Math.min(length, i + (buf.length - count) / 4);
+
+         while (i < stop)
+         {
+            char c = str.charAt(i++);
+
+            if (c < 0x80)
+            {
+               buf[count++] = (byte) c;
+            }
+            else if (c < 0x800)
+            {
+               buf[count++] = (byte) (0xC0 | (c >> 6));
+               buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && (i < length) && Character.isLowSurrogate(str.charAt(i)))
+            {
+               int cp = Character.toCodePoint(c, str.charAt(i++));
+               buf[count++] = (byte) (0xF0 | (cp >> 18));
+               buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+               buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+               buf[count++] = (byte) (0x80 | (cp & 0x3F));
+            }
+            else if (Character.isSurrogate(c))
+            {
+               buf[count++] = '?';
+            }
+            else
+            {
+               buf[count++] = (byte) (0xE0 | (c >> 12));
+               buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+               buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+         }
+
+         mCount = count;
+      }
+   }
+
+   /**
+    * Hand any buffered bytes to the target. The target stream is flushed.
+    * 
+    * @throws IOException on any failure of the target
+    */
+   void flush() throws IOException
+   {
+      if ((mOut == null) && (mTarget == null)) return;
+
+      drain();
+      if (mOut != null) mOut.flush();
+   }
+
+   /**
+    * Get everything written to a growing sink.
+    * 
+    * @return the bytes
+    */
+   byte[] toByteArray()
+   {
+      return Arrays.copyOf(mBuf, mCount);
+   }
+}
@@ -0,0 +1,368 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Big-endian byte input for the binary decodings. Reads from an array in
+ * place, or through a buffer refilled from an <code>InputStream</code> or a
+ * direct <code>ByteBuffer</code>. Running out of input is reported as a
+ * <code>JSONException</code> at the given path.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class ByteSource
+{
+   /** Size of each read from a stream or direct buffer. */
+   static private final int BLOCK_SIZE = 8192;
+
+   /** The source stream, if any. */
+   private InputStream mIn;
+
+   /** The source buffer, if any. */
+   private final ByteBuffer mSource;
+
+   /** Position of the source buffer when reading started. */
+   private final int mStart;
+
+   /** Bytes consumed from the source buffer before the current block. */
+   private long mConsumed;
+
+   /** The buffer. */
+   private byte[] mBuf;
+
+   /** Position of the next byte. */
+   private int mPos;
+
+   /** End of valid bytes. */
+   private int mLimit;
+
+   /** Start of the current block's bytes in the buffer. */
+   private int mBase;
+
+   /** 'true' if the buffer belongs to the caller. */
+   private final boolean mShared;
+
+   /**
+    * Create a <code>ByteSource</code> over an array. The array is not copied.
+    * 
+    * @param bytes  the array
+    * @param offset start of the input
+    * @param length number of bytes
+    */
+   ByteSource(byte[] bytes, int offset, int length)
+   {
+      if ((offset < 0) || (length < 0) || (offset + length > bytes.length)) throw new IndexOutOfBoundsException();
+
+      mSource = null;
+      mStart = 0;
+      mBuf = bytes;
+      mPos = offset;
+      mBase = offset;
+      mLimit = offset + length;
+      mShared = true;
+   }
+
+   /**
+    * Create a <code>ByteSource</code> over a stream.
+    * 
+    * @param in the stream
+    */
+   ByteSource(InputStream in)
+   {
+      if (in == null) throw new NullPointerException("Null input stream");
+
+      mIn = in;
+      mSource = null;
+      mStart = 0;
+      mBuf = new byte[BLOCK_SIZE];
+      mShared = false;
+   }
+
+   /**
+    * Create a <code>ByteSource</code> over the remaining bytes of a buffer. A
+    * heap buffer is read in place. Call <code>finish()</code> to move the
+    * buffer's position past the bytes read.
+    * 
+    * @param source the buffer
+    */
+   ByteSource(ByteBuffer source)
+   {
+      mSource = source;
+      mStart = source.position();
+
+      if (source.hasArray())
+      {
+         mBuf = source.array();
+         mPos = source.arrayOffset() + source.position();
+         mBase = mPos;
+         mLimit = source.arrayOffset() + source.limit();
+         mShared = true;
+      }
+      else
+      {
+         mBuf = new byte[BLOCK_SIZE];
+         mShared = false;
+      }
+   }
+
+   /**
+    * Read more input, keeping the unread bytes.
+    * 
+    * @param count number of bytes wanted in the buffer
+    * @return 'false' if the input ended first
+    * @throws IOException on read failure
+    */
+   private boolean fill(int count) throws IOException
+   {
+      if (mShared) return false;
+
+      // keep what's unread at the front
+      int unread = mLimit - mPos;
+      mConsumed += mPos - mBase;
+
+      if (count > mBuf.length)
+      {
+         byte[] buf = new byte[Math.max(count, 2 * mBuf.length)];
+         System.arraycopy(mBuf, mPos, buf, 0, unread);
+         mBuf = buf;
+      }
+      else
+      {
+         System.arraycopy(mBuf, mPos, mBuf, 0, unread);
+      }
+
+      mPos = 0;
+      mBase = 0;
+      mLimit = unread;
+
+      while (mLimit < count)
+      {
+         int read;
+
+         if (mIn != null)
+         {
+            read = mIn.read(mBuf, mLimit, mBuf.length - mLimit);
+         }
+         else
+         {
+            read = Math.min(mSource.remaining(), mBuf.length - mLimit);
+            if (read == 0) read = -1;
+            else mSource.get(mBuf, mLimit, read);
+         }
+
+         if (read < 0) return false;
+         mLimit += read;
+      }
+
+      return true;
+   }
+
+   /**
+    * Determine if the input is exhausted.
+    * 
+    * @return 'true' if there are no more bytes
+    * @throws IOException on read failure
+    */
+   boolean atEnd() throws IOException
+   {
+      return (mPos >= mLimit) && !fill(1);
+   }
+
+   /**
+    * Make sure a number of bytes are in the buffer.
+    * 
+    * @param path  path of the value being read
+    * @param count number of bytes needed
+    * @throws IOException   on read failure
+    * @throws JSONException if the input ends first
+    */
+   void require(String path, int count) throws IOException, JSONException
+   {
+      if ((mLimit - mPos < count) && !fill(count)) throw new JSONException(path, "Unexpected end of input");
+   }
+
+   /**
+    * Read a byte.
+    * 
+    * @param path path of the value being read
+    * @return the byte as an unsigned value
+    * @throws IOException   on read failure
+    * @throws JSONException if the input is exhausted
+    */
+   int read(String path) throws IOException, JSONException
+   {
+      if (mPos >= mLimit) require(path, 1);
+      return mBuf[mPos++] & 0xFF;
+   }
+
+   /**
+    * Look at the next byte without consuming it.
+    * 
+    * @param path path of the value being read
+    * @return the byte as an unsigned value
+    * @throws IOException   on read failure
+    * @throws JSONException if the input is exhausted
+    */
+   int peek(String path) throws IOException, JSONException
+   {
+      if (mPos >= mLimit) require(path, 1);
+      return mBuf[mPos] & 0xFF;
+   }
+
+   /**
+    * Read a big-endian 16 bit value.
+    * 
+    * @param path path of the value being read
+    * @return the unsigned value
+    * @throws IOException   on read failure
+    * @throws JSONException if the input ends first
+    */
+   int read2(String path) throws IOException, JSONException
+   {
+      require(path, 2);
+
+      int value = ((mBuf[mPos] & 0xFF) << 8) | (mBuf[mPos + 1] & 0xFF);
+      mPos += 2;
+      return value;
+   }
+
+   /**
+    * Read a big-endian 32 bit value.
+    * 
+    * @param path path of the value being read
+    * @return the value
+    * @throws IOException   on read failure
+    * @throws JSONException if the input ends first
+    */
+   int read4(String path) throws IOException, JSONException
+   {
+      require(path, 4);
+
+      int value = JSONIntrinsics.getIntBE(mBuf, mPos);
+      mPos += 4;
+      return value;
+   }
+
+   /**
+    * Read a big-endian 64 bit value.
+    * 
+    * @param path path of the value being read
+    * @return the value
+    * @throws IOException   on read failure
+    * @throws JSONException if the input ends first
+    */
+   long read8(String path) throws IOException, JSONException
+   {
+      require(path, 8);
+
+      long value = JSONIntrinsics.getLongBE(mBuf, mPos);
+      mPos += 8;
+      return value;
+   }
+
+   /**
+    * Read bytes.
+    * 
+    * @param path   path of the value being read
+    * @param length number of bytes
+    * @return the bytes
+    * @throws IOException   on read failure
+    * @throws JSONException if the input ends first
+    */
+   byte[] readBytes(String path, int length) throws IOException, JSONException
+   {
+      byte[] bytes = new byte[length];
+      int done = 0;
+
+      while (done < length)
+      {
+         if (mPos >= mLimit) require(path, 1);
+
+         int count = Math.min(length - done, mLimit - mPos);
+         System.arraycopy(mBuf, mPos, bytes, done, count);
+         mPos += count;
+         done += count;
+      }
+
+      return bytes;
+   }
+
+   /**
+    * Read a UTF-8 string.
+    * 
+    * @param path   path of the value being read
+    * @param length encoded length in bytes
+    * @return the string
+    * @throws IOException   on read failure
+    * @throws JSONException if the input ends first
+    */
+   String readUTF8(String path, int length) throws IOException, JSONException
+   {
+      if ((mLimit - mPos < length) && (length > BLOCK_SIZE)) return new String(readBytes(path, length), StandardCharsets.UTF_8);
+
+      require(path, length);
+
+      byte[] buf = mBuf;
+      int pos = mPos;
+      int end = pos + length;
+      mPos = end;
+
+      // ASCII needs no decoding
+      for (int i = pos; i < end; i++)
+      {
+         if (buf[i] < 0) return new String(buf, pos, length, StandardCharsets.UTF_8);
+      }
+
+      return new String(buf, pos, length, StandardCharsets.ISO_8859_1);
+   }
+
+   /**
+    * Read a UTF-8 string as a <code>JSONString</code> that's decoded on first
+    * use. The bytes are copied, since the buffer may be reused.
+    * 
+    * @param path   path of the value being read
+    * @param length encoded length in bytes
+    * @return the string
+    * @throws IOException   on read failure
+    * @throws JSONException if the input ends first
+    */
+   JSONString readJSONString(String path, int length) throws IOException, JSONException
+   {
+      if ((mLimit - mPos < length) && (length > BLOCK_SIZE)) return JSONString.fromUTF8(readBytes(path, length), 0, length, true);
+
+      require(path, length);
+
+      JSONString str = JSONString.fromUTF8(mBuf, mPos, length, false);
+      mPos += length;
+      return str;
+   }
+
+   /**
+    * Move a source buffer's position past the bytes read.
+    */
+   void finish()
+   {
+      if (mSource == null) return;
+
+      if (mShared) mSource.position(mStart + (mPos - mBase));
+      else mSource.position(mStart + (int) (mConsumed + (mPos - mBase)));
+   }
+}
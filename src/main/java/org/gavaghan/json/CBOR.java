@@ -0,0 +1,811 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Encodes <code>JSONValue</code> trees as CBOR (RFC 8949) and decodes them
+ * again. Objects become maps with text string keys, arrays become arrays,
+ * strings become UTF-8 text strings, and booleans and null become the
+ * matching simple values. A <code>JSONNumber</code> with a scale of zero is
+ * written as an integer (a bignum if it doesn't fit in 64 bits) and any other
+ * number as a decimal fraction (tag 4), so every <code>BigDecimal</code>,
+ * including its scale, survives the round trip.
+ * </p>
+ * <p>
+ * The decoder also accepts half, single and double precision floats,
+ * bigfloats (tag 5), indefinite length items and 'undefined' (read as null).
+ * Other tags are skipped and their content decoded as usual. Byte strings
+ * and non-string map keys have no JSON equivalent and are rejected. When a
+ * <code>JSONValueFactory</code> is given, its <code>recast()</code> is applied
+ * to every decoded value, so <code>TypedJSONValueFactory</code> restores
+ * <code>TypedJSONObject</code> subclasses just as it does for text, and
+ * nesting is limited by its <code>getMaxDepth()</code>. The other factory
+ * callbacks only apply to parsing text.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class CBOR
+{
+   /** Major type for unsigned integers. */
+   static private final int UNSIGNED = 0;
+
+   /** Major type for negative integers. */
+   static private final int NEGATIVE = 1;
+
+   /** Major type for byte strings. */
+   static private final int BYTES = 2;
+
+   /** Major type for text strings. */
+   static private final int TEXT = 3;
+
+   /** Major type for arrays. */
+   static private final int ARRAY = 4;
+
+   /** Major type for maps. */
+   static private final int MAP = 5;
+
+   /** Major type for tags. */
+   static private final int TAG = 6;
+
+   /** Major type for floats and simple values. */
+   static private final int SIMPLE = 7;
+
+   /** Tag for a positive bignum. */
+   static private final int TAG_POSITIVE_BIGNUM = 2;
+
+   /** Tag for a negative bignum. */
+   static private final int TAG_NEGATIVE_BIGNUM = 3;
+
+   /** Tag for a decimal fraction. */
+   static private final int TAG_DECIMAL_FRACTION = 4;
+
+   /** Tag for a bigfloat. */
+   static private final int TAG_BIGFLOAT = 5;
+
+   /** Additional information for an indefinite length. */
+   static private final int INDEFINITE = 31;
+
+   /** The 'break' stop code. */
+   static private final int BREAK = 0xFF;
+
+   /** Encoded 'false'. */
+   static private final int FALSE = 0xF4;
+
+   /** Encoded 'true'. */
+   static private final int TRUE = 0xF5;
+
+   /** Encoded 'null'. */
+   static private final int NULL = 0xF6;
+
+   /** Encoded 'undefined'. */
+   static private final int UNDEFINED = 0xF7;
+
+   /** Largest value that fits in 64 bits unsigned. */
+   static private final BigInteger MAX_UNSIGNED = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+   /**
+    * Static methods only.
+    */
+   private CBOR()
+   {
+   }
+
+   /**
+    * Encode a <code>JSONValue</code>.
+    * 
+    * @param value the value to encode
+    * @return the encoded bytes
+    */
+   static public byte[] encode(JSONValue value)
+   {
+      ByteSink sink = new ByteSink();
+
+      try
+      {
+         writeValue(sink, value);
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to encode value", exc);
+      }
+
+      return sink.toByteArray();
+   }
+
+   /**
+    * Encode a <code>JSONValue</code> to a stream. The stream is flushed but not
+    * closed.
+    * 
+    * @param value the value to encode
+    * @param out   the target stream
+    * @throws IOException on any failure of the stream
+    */
+   static public void encode(JSONValue value, OutputStream out) throws IOException
+   {
+      ByteSink sink = new ByteSink(out);
+      writeValue(sink, value);
+      sink.flush();
+   }
+
+   /**
+    * Encode a <code>JSONValue</code> into a buffer, starting at its position.
+    * 
+    * @param value  the value to encode
+    * @param target the target buffer
+    * @throws IOException if the buffer doesn't have enough room
+    */
+   static public void encode(JSONValue value, ByteBuffer target) throws IOException
+   {
+      ByteSink sink = new ByteSink(target);
+      writeValue(sink, value);
+      sink.flush();
+   }
+
+   /**
+    * Decode a <code>JSONValue</code>. Bytes after the first data item are
+    * ignored.
+    * 
+    * @param bytes the encoded value
+    * @return the decoded value, or null if there are no bytes
+    * @throws JSONException if the bytes aren't a CBOR encoded JSON value
+    */
+   static public JSONValue decode(byte[] bytes) throws JSONException
+   {
+      return decode(JSONValueFactory.DEFAULT, bytes, 0, bytes.length);
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from part of an array. Bytes after the
+    * first data item are ignored.
+    * 
+    * @param bytes  array holding the encoded value
+    * @param offset start of the encoded value
+    * @param length number of bytes available
+    * @return the decoded value, or null if there are no bytes
+    * @throws JSONException if the bytes aren't a CBOR encoded JSON value
+    */
+   static public JSONValue decode(byte[] bytes, int offset, int length) throws JSONException
+   {
+      return decode(JSONValueFactory.DEFAULT, bytes, offset, length);
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from a buffer, starting at its position.
+    * On success the position is left just past the data item.
+    * 
+    * @param source the buffer
+    * @return the decoded value, or null if the buffer has no bytes remaining
+    * @throws JSONException if the bytes aren't a CBOR encoded JSON value
+    */
+   static public JSONValue decode(ByteBuffer source) throws JSONException
+   {
+      return decode(JSONValueFactory.DEFAULT, source);
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from a stream. The stream is read in
+    * blocks, so bytes after the data item may be consumed.
+    * 
+    * @param in the stream
+    * @return the decoded value, or null if the stream is empty
+    * @throws IOException   on read failure
+    * @throws JSONException if the bytes aren't a CBOR encoded JSON value
+    */
+   static public JSONValue decode(InputStream in) throws IOException, JSONException
+   {
+      return decode(JSONValueFactory.DEFAULT, in);
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from part of an array. Bytes after the
+    * first data item are ignored.
+    * 
+    * @param factory the factory whose <code>recast()</code> is applied
+    * @param bytes   array holding the encoded value
+    * @param offset  start of the encoded value
+    * @param length  number of bytes available
+    * @return the decoded value, or null if there are no bytes
+    * @throws JSONException if the bytes aren't a CBOR encoded JSON value
+    */
+   static public JSONValue decode(JSONValueFactory factory, byte[] bytes, int offset, int length) throws JSONException
+   {
+      try
+      {
+         return decode(factory, new ByteSource(bytes, offset, length));
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to read array", exc);
+      }
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from a buffer, starting at its position.
+    * On success the position is left just past the data item, so a sequence of
+    * items can be decoded one after another.
+    * 
+    * @param factory the factory whose <code>recast()</code> is applied
+    * @param source  the buffer
+    * @return the decoded value, or null if the buffer has no bytes remaining
+    * @throws JSONException if the bytes aren't a CBOR encoded JSON value
+    */
+   static public JSONValue decode(JSONValueFactory factory, ByteBuffer source) throws JSONException
+   {
+      ByteSource bytes = new ByteSource(source);
+
+      try
+      {
+         JSONValue value = decode(factory, bytes);
+         bytes.finish();
+         return value;
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to read buffer", exc);
+      }
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from a stream. The stream is read in
+    * blocks, so bytes after the data item may be consumed.
+    * 
+    * @param factory the factory whose <code>recast()</code> is applied
+    * @param in      the stream
+    * @return the decoded value, or null if the stream is empty
+    * @throws IOException   on read failure
+    * @throws JSONException if the bytes aren't a CBOR encoded JSON value
+    */
+   static public JSONValue decode(JSONValueFactory factory, InputStream in) throws IOException, JSONException
+   {
+      return decode(factory, new ByteSource(in));
+   }
+
+   /**
+    * Decode the first data item.
+    * 
+    * @param factory the factory whose <code>recast()</code> is applied
+    * @param source  the input
+    * @return the decoded value, or null if there is no input
+    * @throws IOException   on read failure
+    * @throws JSONException if the bytes aren't a CBOR encoded JSON value
+    */
+   static private JSONValue decode(JSONValueFactory factory, ByteSource source) throws IOException, JSONException
+   {
+      if (source.atEnd()) return null;
+
+      return readValue(source, factory.isRecasting() ? factory : null, "$", factory.getMaxDepth());
+   }
+
+   /**
+    * Write the head of a data item.
+    * 
+    * @param sink  the output
+    * @param major the major type
+    * @param value the argument, treated as unsigned
+    * @throws IOException on any failure of the output
+    */
+   static private void writeHead(ByteSink sink, int major, long value) throws IOException
+   {
+      int type = major << 5;
+
+      if ((value >= 0) && (value < 24)) sink.write(type | (int) value);
+      else if ((value >= 0) && (value <= 0xFF))
+      {
+         sink.write(type | 24);
+         sink.write((int) value);
+      }
+      else if ((value >= 0) && (value <= 0xFFFF)) sink.write2(type | 25, (int) value);
+      else if ((value >= 0) && (value <= 0xFFFFFFFFL)) sink.write4(type | 26, (int) value);
+      else sink.write8(type | 27, value);
+   }
+
+   /**
+    * Write an integer, as a bignum if it doesn't fit in 64 bits.
+    * 
+    * @param sink  the output
+    * @param value the integer
+    * @throws IOException on any failure of the output
+    */
+   static private void writeInteger(ByteSink sink, BigInteger value) throws IOException
+   {
+      if (value.bitLength() < 64)
+      {
+         long n = value.longValue();
+
+         if (n >= 0) writeHead(sink, UNSIGNED, n);
+         else writeHead(sink, NEGATIVE, -1 - n);
+         return;
+      }
+
+      // the argument is -1 - n for negative numbers
+      BigInteger magnitude = (value.signum() < 0) ? value.negate().subtract(BigInteger.ONE) : value;
+
+      if (magnitude.compareTo(MAX_UNSIGNED) <= 0)
+      {
+         writeHead(sink, (value.signum() < 0) ? NEGATIVE : UNSIGNED, magnitude.longValue());
+         return;
+      }
+
+      byte[] bytes = magnitude.toByteArray();
+      int skip = (bytes[0] == 0) ? 1 : 0;
+
+      writeHead(sink, TAG, (value.signum() < 0) ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+      writeHead(sink, BYTES, bytes.length - skip);
+      sink.write(bytes, skip, bytes.length - skip);
+   }
+
+   /**
+    * Write a number.
+    * 
+    * @param sink  the output
+    * @param value the number
+    * @throws IOException on any failure of the output
+    */
+   static private void writeNumber(ByteSink sink, BigDecimal value) throws IOException
+   {
+      int scale = value.scale();
+
+      if (scale == 0)
+      {
+         writeInteger(sink, value.unscaledValue());
+      }
+      else
+      {
+         writeHead(sink, TAG, TAG_DECIMAL_FRACTION);
+         writeHead(sink, ARRAY, 2);
+
+         long exponent = -(long) scale;
+         if (exponent >= 0) writeHead(sink, UNSIGNED, exponent);
+         else writeHead(sink, NEGATIVE, -1 - exponent);
+
+         writeInteger(sink, value.unscaledValue());
+      }
+   }
+
+   /**
+    * Write a text string.
+    * 
+    * @param sink the output
+    * @param str  the string
+    * @throws IOException on any failure of the output
+    */
+   static private void writeText(ByteSink sink, String str) throws IOException
+   {
+      writeHead(sink, TEXT, ByteSink.utf8Length(str));
+      sink.writeUTF8(str);
+   }
+
+   /**
+    * Write a value. Nested objects and arrays are tracked on the heap rather
+    * than by recursion.
+    * 
+    * @param sink  the output
+    * @param value the value
+    * @throws IOException on any failure of the output
+    */
+   static void writeValue(final ByteSink sink, JSONValue value) throws IOException
+   {
+      JSONTree.visit(value, new JSONTree.Visitor()
+      {
+         @Override
+         public void object(int size) throws IOException
+         {
+            writeHead(sink, MAP, size);
+         }
+
+         @Override
+         public void key(String key) throws IOException
+         {
+            writeText(sink, key);
+         }
+
+         @Override
+         public void array(int size) throws IOException
+         {
+            writeHead(sink, ARRAY, size);
+         }
+
+         @Override
+         public void scalar(JSONValue value) throws IOException
+         {
+            writeScalar(sink, value);
+         }
+      });
+   }
+
+   /**
+    * Write a value that isn't an object or array.
+    * 
+    * @param sink  the output
+    * @param value the value
+    * @throws IOException on any failure of the output
+    */
+   static private void writeScalar(ByteSink sink, JSONValue value) throws IOException
+   {
+      if (value instanceof JSONString)
+      {
+         JSONString str = (JSONString) value;
+         writeHead(sink, TEXT, str.utf8Length());
+         str.writeUTF8(sink);
+      }
+      else if (value instanceof JSONNumber)
+      {
+         writeNumber(sink, ((JSONNumber) value).getBigDecimalValue());
+      }
+      else if (value instanceof JSONBoolean)
+      {
+         sink.write(((JSONBoolean) value).getBooleanValue() ? TRUE : FALSE);
+      }
+      else if (value instanceof JSONNull)
+      {
+         sink.write(NULL);
+      }
+      else
+      {
+         throw new RuntimeException("Don't know how to encode a " + ((value == null) ? "null" : value.getClass().getName()));
+      }
+   }
+
+   /**
+    * Read the argument of a data item.
+    * 
+    * @param source the input
+    * @param path   path of the value being read
+    * @param info   the additional information from the initial byte
+    * @return the argument, as an unsigned value
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private long readArgument(ByteSource source, String path, int info) throws IOException, JSONException
+   {
+      if (info < 24) return info;
+
+      switch (info)
+      {
+         case 24:
+            return source.read(path);
+         case 25:
+            return source.read2(path);
+         case 26:
+            return source.read4(path) & 0xFFFFFFFFL;
+         case 27:
+            return source.read8(path);
+         default:
+            throw new JSONException(path, "Illegal CBOR additional information: " + info);
+      }
+   }
+
+   /**
+    * Read a length, which must fit in an <code>int</code>.
+    * 
+    * @param source the input
+    * @param path   path of the value being read
+    * @param info   the additional information from the initial byte
+    * @return the length
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private int readLength(ByteSource source, String path, int info) throws IOException, JSONException
+   {
+      long length = readArgument(source, path, info);
+      if ((length < 0) || (length > Integer.MAX_VALUE)) throw new JSONException(path, "CBOR length too large: " + Long.toUnsignedString(length));
+      return (int) length;
+   }
+
+   /**
+    * Turn an unsigned 64 bit argument into a <code>BigInteger</code>.
+    * 
+    * @param value the argument
+    * @return the unsigned value
+    */
+   static private BigInteger unsigned(long value)
+   {
+      if (value >= 0) return BigInteger.valueOf(value);
+      return BigInteger.valueOf(value >>> 1).shiftLeft(1).or(BigInteger.valueOf(value & 1));
+   }
+
+   /**
+    * Read a text string, which may be in indefinite length chunks.
+    * 
+    * @param source the input
+    * @param path   path of the value being read
+    * @param info   the additional information from the initial byte
+    * @return the string
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private String readText(ByteSource source, String path, int info) throws IOException, JSONException
+   {
+      if (info != INDEFINITE) return source.readUTF8(path, readLength(source, path, info));
+
+      StringBuilder builder = new StringBuilder();
+
+      for (;;)
+      {
+         int initial = source.read(path);
+         if (initial == BREAK) return builder.toString();
+
+         if ((initial >> 5) != TEXT) throw new JSONException(path, "Indefinite length text string has a chunk of major type " + (initial >> 5));
+         if ((initial & 0x1F) == INDEFINITE) throw new JSONException(path, "Nested indefinite length text string");
+
+         builder.append(source.readUTF8(path, readLength(source, path, initial & 0x1F)));
+      }
+   }
+
+   /**
+    * Read an integer that might be a bignum, as the mantissa of a decimal
+    * fraction or bigfloat.
+    * 
+    * @param source the input
+    * @param path   path of the value being read
+    * @return the integer
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private BigInteger readInteger(ByteSource source, String path) throws IOException, JSONException
+   {
+      int initial = source.read(path);
+      int major = initial >> 5;
+      int info = initial & 0x1F;
+
+      if (major == UNSIGNED) return unsigned(readArgument(source, path, info));
+      if (major == NEGATIVE) return unsigned(readArgument(source, path, info)).not();
+
+      if (major == TAG)
+      {
+         long tag = readArgument(source, path, info);
+         if ((tag == TAG_POSITIVE_BIGNUM) || (tag == TAG_NEGATIVE_BIGNUM)) return readBignum(source, path, tag == TAG_NEGATIVE_BIGNUM);
+      }
+
+      throw new JSONException(path, "Expected a CBOR integer");
+   }
+
+   /**
+    * Read the byte string of a bignum.
+    * 
+    * @param source   the input
+    * @param path     path of the value being read
+    * @param negative 'true' for a negative bignum
+    * @return the integer
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private BigInteger readBignum(ByteSource source, String path, boolean negative) throws IOException, JSONException
+   {
+      int initial = source.read(path);
+      if (((initial >> 5) != BYTES) || ((initial & 0x1F) == INDEFINITE)) throw new JSONException(path, "Bignum content must be a definite length byte string");
+
+      BigInteger magnitude = new BigInteger(1, source.readBytes(path, readLength(source, path, initial & 0x1F)));
+      return negative ? magnitude.not() : magnitude;
+   }
+
+   /**
+    * Read the two element array of a decimal fraction or bigfloat.
+    * 
+    * @param source  the input
+    * @param path    path of the value being read
+    * @param decimal 'true' for a decimal fraction, 'false' for a bigfloat
+    * @return the number
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private BigDecimal readFraction(ByteSource source, String path, boolean decimal) throws IOException, JSONException
+   {
+      if (source.read(path) != ((ARRAY << 5) | 2)) throw new JSONException(path, "Decimal fraction or bigfloat must be an array of two integers");
+
+      BigInteger exponent = readInteger(source, path);
+      BigInteger mantissa = readInteger(source, path);
+
+      if (exponent.bitLength() > 31) throw new JSONException(path, "Exponent out of range: " + exponent);
+      int exp = exponent.intValue();
+
+      if (decimal)
+      {
+         if (exp == Integer.MIN_VALUE) throw new JSONException(path, "Exponent out of range: " + exponent);
+         return new BigDecimal(mantissa, -exp);
+      }
+
+      // m * 2^-k is exactly m * 5^k / 10^k
+      if (exp >= 0) return new BigDecimal(mantissa.shiftLeft(exp));
+      return new BigDecimal(mantissa.multiply(BigInteger.valueOf(5).pow(-exp)), -exp);
+   }
+
+   /**
+    * Convert a float to a number.
+    * 
+    * @param path  path of the value being read
+    * @param value the float
+    * @param single 'true' if it was a half or single precision float
+    * @return the number
+    * @throws JSONException if the float is infinite or NaN
+    */
+   static private BigDecimal toNumber(String path, double value, boolean single) throws JSONException
+   {
+      if (Double.isNaN(value) || Double.isInfinite(value)) throw new JSONException(path, "JSON has no representation for " + value);
+
+      return single ? new BigDecimal(Float.toString((float) value)) : BigDecimal.valueOf(value);
+   }
+
+   /**
+    * Convert a half precision float.
+    * 
+    * @param half the 16 bits
+    * @return the value
+    */
+   static private float halfToFloat(int half)
+   {
+      int exponent = (half >> 10) & 0x1F;
+      int mantissa = half & 0x3FF;
+      float value;
+
+      if (exponent == 0) value = mantissa * 0x1p-24f;
+      else if (exponent != 31) value = (mantissa + 1024) * (float) Math.pow(2, exponent - 25);
+      else value = (mantissa == 0) ? Float.POSITIVE_INFINITY : Float.NaN;
+
+      return ((half & 0x8000) != 0) ? -value : value;
+   }
+
+   /**
+    * Read a value. Nested objects and arrays are tracked on the heap rather
+    * than by recursion, so nesting depth is bounded by the maximum depth and
+    * not by the thread's stack size.
+    * 
+    * @param source   the input
+    * @param factory  the factory to recast values with, or null
+    * @param path     path of the value being read; only maintained when
+    *                 recasting
+    * @param maxDepth the maximum nesting depth
+    * @return the value
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static JSONValue readValue(ByteSource source, JSONValueFactory factory, String path, int maxDepth) throws IOException, JSONException
+   {
+      JSONTree.Container open = null;
+
+      for (;;)
+      {
+         JSONValue value;
+
+         if ((open != null) && ((open.mRemaining == 0) || ((open.mRemaining < 0) && (source.peek(open.mPath) == BREAK))))
+         {
+            // close a complete object or array
+            if (open.mRemaining < 0) source.read(open.mPath);
+
+            value = open.mValue;
+            path = open.mPath;
+            open = open.mParent;
+         }
+         else
+         {
+            if (open != null)
+            {
+               path = open.mPath;
+               if (open.mRemaining > 0) open.mRemaining--;
+
+               if (open.mValue instanceof JSONObject)
+               {
+                  int key = source.read(path);
+                  if ((key >> 5) != TEXT) throw new JSONException(path, "JSON object keys must be CBOR text strings, not major type " + (key >> 5));
+
+                  open.mKey = readText(source, path, key & 0x1F);
+                  if (factory != null) path = path + "." + open.mKey;
+               }
+            }
+
+            int initial = source.read(path);
+            long tag = -1;
+
+            // the content of any tag but a number stands for itself
+            while ((initial >> 5) == TAG)
+            {
+               tag = readArgument(source, path, initial & 0x1F);
+               if ((tag >= TAG_POSITIVE_BIGNUM) && (tag <= TAG_BIGFLOAT)) break;
+
+               initial = source.read(path);
+            }
+
+            int major = initial >> 5;
+            int info = initial & 0x1F;
+
+            if (major == TAG)
+            {
+               if ((tag == TAG_POSITIVE_BIGNUM) || (tag == TAG_NEGATIVE_BIGNUM)) value = new JSONNumber(new BigDecimal(readBignum(source, path, tag == TAG_NEGATIVE_BIGNUM)));
+               else value = new JSONNumber(readFraction(source, path, tag == TAG_DECIMAL_FRACTION));
+            }
+            else if ((major == ARRAY) || (major == MAP))
+            {
+               JSONValue container = (major == ARRAY) ? new JSONArray() : new JSONObject();
+               open = new JSONTree.Container(open, container, path, (info == INDEFINITE) ? -1 : readLength(source, path, info), maxDepth);
+               continue;
+            }
+            else
+            {
+               value = readScalar(source, path, initial);
+            }
+         }
+
+         if (factory != null) value = factory.recastValue(path, value);
+         if (open == null) return value;
+
+         open.add(value);
+      }
+   }
+
+   /**
+    * Read a data item that isn't an array, map or tag.
+    * 
+    * @param source  the input
+    * @param path    path of the value being read
+    * @param initial the initial byte, already read
+    * @return the value
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private JSONValue readScalar(ByteSource source, String path, int initial) throws IOException, JSONException
+   {
+      int info = initial & 0x1F;
+
+      switch (initial >> 5)
+      {
+         case UNSIGNED:
+            long unsigned = readArgument(source, path, info);
+            return new JSONNumber((unsigned >= 0) ? BigDecimal.valueOf(unsigned) : new BigDecimal(unsigned(unsigned)));
+
+         case NEGATIVE:
+            long negative = readArgument(source, path, info);
+            return new JSONNumber((negative >= 0) ? BigDecimal.valueOf(-1 - negative) : new BigDecimal(unsigned(negative).not()));
+
+         case BYTES:
+            throw new JSONException(path, "JSON has no representation for a CBOR byte string");
+
+         case TEXT:
+            if (info != INDEFINITE) return source.readJSONString(path, readLength(source, path, info));
+            return new JSONString(readText(source, path, info));
+
+         default:
+            switch (initial)
+            {
+               case FALSE:
+                  return new JSONBoolean(Boolean.FALSE);
+               case TRUE:
+                  return new JSONBoolean(Boolean.TRUE);
+               case NULL:
+               case UNDEFINED:
+                  return JSONNull.INSTANCE;
+               case 0xF9:
+                  return new JSONNumber(toNumber(path, halfToFloat(source.read2(path)), true));
+               case 0xFA:
+                  return new JSONNumber(toNumber(path, Float.intBitsToFloat(source.read4(path)), true));
+               case 0xFB:
+                  return new JSONNumber(toNumber(path, Double.longBitsToDouble(source.read8(path)), false));
+               default:
+                  throw new JSONException(path, "Unsupported CBOR simple value or break: 0x" + Integer.toHexString(initial));
+            }
+      }
+   }
+}
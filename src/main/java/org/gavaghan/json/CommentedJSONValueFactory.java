@@ -32,6 +32,26 @@ public class CommentedJSONValueFactory extends TypedJSONValueFactory
    /** The default implementation. */
    static public final CommentedJSONValueFactory COMMENTED_DEFAULT = new CommentedJSONValueFactory();
 
+   /**
+    * Create a new <code>CommentedJSONValueFactory</code>.
+    */
+   public CommentedJSONValueFactory()
+   {
+   }
+
+   /**
+    * Create a new <code>CommentedJSONValueFactory</code>.
+    * 
+    * @since 1.3
+    * 
+    * @param strictWhitespace 'true' to accept only the whitespace allowed by
+    *                         the JSON grammar (comments are always accepted)
+    */
+   public CommentedJSONValueFactory(boolean strictWhitespace)
+   {
+      super(strictWhitespace);
+   }
+
    /**
     * Throw away characters until the line comment is completely read.
     * 
@@ -98,37 +118,37 @@ public class CommentedJSONValueFactory extends TypedJSONValueFactory
    {
       for (;;)
       {
+         // skip plain whitespace the fast way
+         super.skipWhitespace(pbr);
+
          int c = pbr.read();
 
          if (c < 0) break; // bail on EOF
 
-         if (!Character.isWhitespace(c))
+         // it's not whitespace, so see if it's the start of a comment
+         if (c == '/')
          {
-            // it's not whitespace, so see if it's the start of a comment
-            if (c == '/')
+            int next = pbr.read();
+
+            // is it a line comment?
+            if (next == '/')
+            {
+               skipLineComment(pbr);
+               continue;
+            }
+            // is it a block comment?
+            else if (next == '*')
             {
-               int next = pbr.read();
-
-               // is it a line comment?
-               if (next == '/')
-               {
-                  skipLineComment(pbr);
-                  continue;
-               }
-               // is it a block comment?
-               else if (next == '*')
-               {
-                  skipBlockComment(pbr);
-                  continue;
-               }
-
-               // else, unread - it's the end of the whitespace
-               pbr.unread(c);
+               skipBlockComment(pbr);
+               continue;
             }
 
-            pbr.unread(c);
-            break;
+            // else, unread - it's the end of the whitespace
+            if (next >= 0) pbr.unread(next);
          }
+
+         pbr.unread(c);
+         break;
       }
    }
 }
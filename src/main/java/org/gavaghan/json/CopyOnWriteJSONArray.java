@@ -0,0 +1,165 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>
+ * A <code>JSONArray</code> that starts out as an O(1) view of another
+ * <code>JSONArray</code>. The elements are copied from the source the first
+ * time the view is touched, with nested objects and arrays becoming views of
+ * their own.
+ * </p>
+ * <p>
+ * The source must not be modified while views of it are in use.
+ * </p>
+ * 
+ * @see JSONArray#copyOnWrite()
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+class CopyOnWriteJSONArray extends JSONArray
+{
+   /** The array we're a view of, or null once materialized. */
+   private JSONArray mSource;
+
+   /**
+    * Create a new CopyOnWriteJSONArray.
+    * 
+    * @param source the array to view
+    */
+   CopyOnWriteJSONArray(JSONArray source)
+   {
+      // a view of an untouched view is a view of the original
+      while ((source instanceof CopyOnWriteJSONArray) && (((CopyOnWriteJSONArray) source).mSource != null))
+      {
+         source = ((CopyOnWriteJSONArray) source).mSource;
+      }
+
+      mSource = source;
+   }
+
+   /**
+    * Copy the elements of the source on first access.
+    */
+   private void materialize()
+   {
+      if (mSource == null) return;
+
+      List<JSONValue> source = mSource.elementList();
+      List<JSONValue> copy = new ArrayList<JSONValue>(source.size());
+      mSource = null;
+
+      for (JSONValue value : source)
+      {
+         copy.add(AbstractJSONValue.copyOnWrite(value));
+      }
+
+      super.setValue(copy);
+   }
+
+   @Override
+   public void setValue(List<JSONValue> value)
+   {
+      mSource = null;
+      super.setValue(value);
+   }
+
+   @Override
+   public Object getValue()
+   {
+      materialize();
+      return super.getValue();
+   }
+
+   @Override
+   public List<JSONValue> getListValue()
+   {
+      materialize();
+      return super.getListValue();
+   }
+
+   @Override
+   public JSONValue get(int index)
+   {
+      materialize();
+      return super.get(index);
+   }
+
+   @Override
+   public void set(int index, JSONValue value)
+   {
+      materialize();
+      super.set(index, value);
+   }
+
+   @Override
+   public JSONValue remove(int index)
+   {
+      materialize();
+      return super.remove(index);
+   }
+
+   @Override
+   public int size()
+   {
+      materialize();
+      return super.size();
+   }
+
+   @Override
+   public void copyValue(JSONValue value)
+   {
+      if (!JSONArray.class.isAssignableFrom(value.getClass())) throw new RuntimeException("Can't assign a " + value.getClass().getName() + " to a " + getClass().getName());
+
+      @SuppressWarnings("unchecked")
+      List<JSONValue> source = (List<JSONValue>) value.getValue();
+      List<JSONValue> copy = new ArrayList<JSONValue>(source.size());
+
+      for (JSONValue json : source)
+      {
+         copy.add(JSONTree.deepCopy(json));
+      }
+
+      setValue(copy);
+   }
+
+   @Override
+   public void read(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      throw new UnsupportedOperationException("A copy-on-write view can't be read into");
+   }
+
+   @Override
+   public void write(String indent, Writer writer, boolean pretty) throws IOException
+   {
+      materialize();
+      super.write(indent, writer, pretty);
+   }
+
+   @Override
+   public Iterator<JSONValue> iterator()
+   {
+      materialize();
+      return super.iterator();
+   }
+}
@@ -0,0 +1,259 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * A <code>JSONObject</code> that starts out as an O(1) view of another
+ * <code>JSONObject</code>. The first time the view is touched, its members are
+ * copied from the source, with nested objects and arrays becoming views of
+ * their own. Only the nodes along the paths that are actually visited are ever
+ * copied, so the untouched parts of a large document cost nothing.
+ * </p>
+ * <p>
+ * The source must not be modified while views of it are in use.
+ * </p>
+ * 
+ * @see JSONObject#copyOnWrite()
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+class CopyOnWriteJSONObject extends JSONObject
+{
+   /** The object we're a view of, or null once materialized. */
+   private JSONObject mSource;
+
+   /**
+    * Create a new CopyOnWriteJSONObject.
+    * 
+    * @param source the object to view
+    */
+   CopyOnWriteJSONObject(JSONObject source)
+   {
+      // a view of an untouched view is a view of the original
+      while ((source instanceof CopyOnWriteJSONObject) && (((CopyOnWriteJSONObject) source).mSource != null))
+      {
+         source = ((CopyOnWriteJSONObject) source).mSource;
+      }
+
+      mSource = source;
+   }
+
+   /**
+    * Copy the members of the source on first access.
+    */
+   private void materialize()
+   {
+      if (mSource == null) return;
+
+      JSONObject source = mSource;
+      mSource = null;
+
+      for (Map.Entry<String, JSONValue> entry : source.memberSet())
+      {
+         super.put(entry.getKey(), AbstractJSONValue.copyOnWrite(entry.getValue()));
+      }
+   }
+
+   @Override
+   public int size()
+   {
+      materialize();
+      return super.size();
+   }
+
+   @Override
+   public boolean isEmpty()
+   {
+      materialize();
+      return super.isEmpty();
+   }
+
+   @Override
+   public JSONValue get(Object key)
+   {
+      materialize();
+      return super.get(key);
+   }
+
+   @Override
+   public JSONValue getOrDefault(Object key, JSONValue defaultValue)
+   {
+      materialize();
+      return super.getOrDefault(key, defaultValue);
+   }
+
+   @Override
+   public boolean containsKey(Object key)
+   {
+      materialize();
+      return super.containsKey(key);
+   }
+
+   @Override
+   public boolean containsValue(Object value)
+   {
+      materialize();
+      return super.containsValue(value);
+   }
+
+   @Override
+   public JSONValue put(String key, JSONValue value)
+   {
+      materialize();
+      return super.put(key, value);
+   }
+
+   @Override
+   public void putAll(Map<? extends String, ? extends JSONValue> m)
+   {
+      materialize();
+      super.putAll(m);
+   }
+
+   @Override
+   public JSONValue remove(Object key)
+   {
+      materialize();
+      return super.remove(key);
+   }
+
+   @Override
+   public boolean remove(Object key, Object value)
+   {
+      materialize();
+      return super.remove(key, value);
+   }
+
+   @Override
+   public void clear()
+   {
+      mSource = null;
+      super.clear();
+   }
+
+   @Override
+   public Set<String> keySet()
+   {
+      materialize();
+      return super.keySet();
+   }
+
+   @Override
+   public Collection<JSONValue> values()
+   {
+      materialize();
+      return super.values();
+   }
+
+   @Override
+   public Set<Map.Entry<String, JSONValue>> entrySet()
+   {
+      materialize();
+      return super.entrySet();
+   }
+
+   @Override
+   public void forEach(BiConsumer<? super String, ? super JSONValue> action)
+   {
+      materialize();
+      super.forEach(action);
+   }
+
+   @Override
+   public void replaceAll(BiFunction<? super String, ? super JSONValue, ? extends JSONValue> function)
+   {
+      materialize();
+      super.replaceAll(function);
+   }
+
+   @Override
+   public JSONValue putIfAbsent(String key, JSONValue value)
+   {
+      materialize();
+      return super.putIfAbsent(key, value);
+   }
+
+   @Override
+   public boolean replace(String key, JSONValue oldValue, JSONValue newValue)
+   {
+      materialize();
+      return super.replace(key, oldValue, newValue);
+   }
+
+   @Override
+   public JSONValue replace(String key, JSONValue value)
+   {
+      materialize();
+      return super.replace(key, value);
+   }
+
+   @Override
+   public JSONValue computeIfAbsent(String key, Function<? super String, ? extends JSONValue> mappingFunction)
+   {
+      materialize();
+      return super.computeIfAbsent(key, mappingFunction);
+   }
+
+   @Override
+   public JSONValue computeIfPresent(String key, BiFunction<? super String, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      materialize();
+      return super.computeIfPresent(key, remappingFunction);
+   }
+
+   @Override
+   public JSONValue compute(String key, BiFunction<? super String, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      materialize();
+      return super.compute(key, remappingFunction);
+   }
+
+   @Override
+   public JSONValue merge(String key, JSONValue value, BiFunction<? super JSONValue, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      materialize();
+      return super.merge(key, value, remappingFunction);
+   }
+
+   @Override
+   public boolean equals(Object o)
+   {
+      materialize();
+      return super.equals(o);
+   }
+
+   @Override
+   public int hashCode()
+   {
+      materialize();
+      return super.hashCode();
+   }
+
+   @Override
+   public Object clone()
+   {
+      materialize();
+      return super.clone();
+   }
+}
@@ -0,0 +1,112 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+/**
+ * Receives a document from <code>IndexedParser</code> as it's walked. Text is
+ * written straight into the builder's buffer: <code>startText()</code> begins
+ * a run, chars are added with <code>reserveText()</code> and
+ * <code>commitText()</code> or <code>appendText()</code>, and
+ * <code>endText()</code> finishes it as a key, string or number.
+ * 
+ * @param <T> the type of document built
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+interface DocumentBuilder<T>
+{
+   /**
+    * Get the number of open containers.
+    * 
+    * @return the depth
+    */
+   int getDepth();
+
+   /**
+    * Determine if the innermost open container is an object.
+    * 
+    * @return 'true' if in an object
+    */
+   boolean inObject();
+
+   /**
+    * Add 'true', 'false' or 'null'.
+    * 
+    * @param tag the value tag
+    */
+   void literal(int tag);
+
+   /**
+    * Open an object or array.
+    * 
+    * @param tag the container tag
+    */
+   void open(int tag);
+
+   /**
+    * Close the innermost object or array.
+    */
+   void close();
+
+   /**
+    * Start a run of text.
+    */
+   void startText();
+
+   /**
+    * Append a char to the current text run.
+    * 
+    * @param c the char
+    */
+   void appendText(char c);
+
+   /**
+    * Get the text buffer so a decoder can write into it directly. Call
+    * <code>commitText()</code> after.
+    * 
+    * @param count number of chars about to be written
+    * @return the text buffer
+    */
+   char[] reserveText(int count);
+
+   /**
+    * Get the offset at which the next text char will be written.
+    * 
+    * @return the text length
+    */
+   int getTextLength();
+
+   /**
+    * Record chars written directly into the text buffer.
+    * 
+    * @param length the new text length
+    */
+   void commitText(int length);
+
+   /**
+    * Finish the current text run as a string, key or number.
+    * 
+    * @param tag the entry tag
+    */
+   void endText(int tag);
+
+   /**
+    * Get the finished document.
+    * 
+    * @return the document, or null if the builder couldn't build it
+    */
+   T build();
+}
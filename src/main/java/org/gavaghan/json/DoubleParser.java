@@ -0,0 +1,188 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.math.BigInteger;
+
+/**
+ * <p>
+ * Converts a decimal significand and exponent to the nearest
+ * <code>double</code> with the Eisel-Lemire algorithm, as used by fast_float.
+ * The significand is multiplied by a 128 bit approximation of the power of
+ * ten and the top bits are rounded, which is correct for every significand
+ * of up to 19 digits. Small exact cases take Clinger's fast path of a single
+ * floating point multiply or divide.
+ * </p>
+ * <p>
+ * Results are identical to <code>Double.parseDouble()</code>. Longer
+ * significands must be handled by the caller.
+ * </p>
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class DoubleParser
+{
+   /** Most significant digits converted here. */
+   static final int MAX_DIGITS = 19;
+
+   /** Smallest power of ten that can give a non-zero result. */
+   static private final int MIN_EXPONENT = -342;
+
+   /** Largest power of ten that can give a finite result. */
+   static private final int MAX_EXPONENT = 308;
+
+   /** Largest significand that's exactly a double. */
+   static private final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+
+   /** Powers of ten that are exactly doubles. */
+   static private final double[] EXACT_POWERS = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+   /**
+    * Powers of five from <code>MIN_EXPONENT</code> up, as the high and low
+    * words of a 128 bit significand with the top bit set. Negative powers are
+    * rounded up and positive ones truncated.
+    */
+   static private final long[] POWERS_OF_FIVE = new long[2 * (MAX_EXPONENT - MIN_EXPONENT + 1)];
+
+   static
+   {
+      BigInteger five = BigInteger.valueOf(5);
+      int index = 0;
+
+      for (int q = MIN_EXPONENT; q <= MAX_EXPONENT; q++)
+      {
+         BigInteger power = five.pow(Math.abs(q));
+         BigInteger significand;
+
+         if (q < 0)
+         {
+            // enough bits of the reciprocal for the quotient to fill 128
+            int bits = power.bitLength();
+            int shift = (q >= -27) ? (bits + 127) : (2 * bits + 128);
+            significand = BigInteger.ONE.shiftLeft(shift).divide(power).add(BigInteger.ONE);
+         }
+         else
+         {
+            significand = power;
+         }
+
+         significand = (significand.bitLength() > 128) ? significand.shiftRight(significand.bitLength() - 128) : significand.shiftLeft(128 - significand.bitLength());
+
+         POWERS_OF_FIVE[index++] = significand.shiftRight(64).longValue();
+         POWERS_OF_FIVE[index++] = significand.longValue();
+      }
+   }
+
+   /**
+    * Not instantiable.
+    */
+   private DoubleParser()
+   {
+   }
+
+   /**
+    * Get the <code>double</code> nearest to
+    * <code>significand * 10^exponent</code>, rounding half to even.
+    * 
+    * @param negative    'true' for a negative value
+    * @param significand the decimal digits, at most <code>MAX_DIGITS</code>
+    *                    of them, taken as unsigned
+    * @param exponent    the power of ten
+    * @return the value, which may be zero or infinite
+    */
+   static double toDouble(boolean negative, long significand, int exponent)
+   {
+      if ((significand == 0) || (exponent < MIN_EXPONENT)) return negative ? -0.0 : 0.0;
+      if (exponent > MAX_EXPONENT) return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+
+      // both operands exact means one rounding
+      if ((exponent >= -22) && (exponent <= 22) && (significand >= 0) && (significand <= MAX_EXACT_SIGNIFICAND))
+      {
+         double value = (exponent < 0) ? (significand / EXACT_POWERS[-exponent]) : (significand * EXACT_POWERS[exponent]);
+         return negative ? -value : value;
+      }
+
+      // normalize and multiply by the 128 bit power of five
+      int zeros = Long.numberOfLeadingZeros(significand);
+      long w = significand << zeros;
+      int index = 2 * (exponent - MIN_EXPONENT);
+
+      long high = JSONIntrinsics.unsignedMultiplyHigh(w, POWERS_OF_FIVE[index]);
+      long low = w * POWERS_OF_FIVE[index];
+
+      // the low word of the power only matters if the bits we keep might carry
+      if ((high & 0x1FF) == 0x1FF)
+      {
+         long carry = JSONIntrinsics.unsignedMultiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+         low += carry;
+         if (Long.compareUnsigned(carry, low) > 0) high++;
+      }
+
+      // keep 54 bits, one more than we need for rounding
+      int upper = (int) (high >>> 63);
+      int shift = upper + 9;
+      long mantissa = high >>> shift;
+      int power2 = (((217706 * exponent) >> 16) + 63) + upper - zeros + 1023;
+
+      if (power2 <= 0)
+      {
+         // subnormal, or too small even for that
+         if (-power2 + 1 >= 64) return negative ? -0.0 : 0.0;
+
+         mantissa >>>= -power2 + 1;
+         mantissa += mantissa & 1;
+         mantissa >>>= 1;
+         power2 = (mantissa < (1L << 52)) ? 0 : 1;
+
+         return assemble(negative, mantissa, power2);
+      }
+
+      // exactly halfway rounds to even; this can only happen for small exponents
+      if ((Long.compareUnsigned(low, 1) <= 0) && (exponent >= -4) && (exponent <= 23) && ((mantissa & 3) == 1) && ((mantissa << shift) == high))
+      {
+         mantissa &= ~1L;
+      }
+
+      mantissa += mantissa & 1;
+      mantissa >>>= 1;
+
+      if (mantissa >= (2L << 52))
+      {
+         mantissa = 1L << 52;
+         power2++;
+      }
+
+      if (power2 >= 0x7FF) return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+
+      return assemble(negative, mantissa & ~(1L << 52), power2);
+   }
+
+   /**
+    * Put together the bits of a <code>double</code>.
+    * 
+    * @param negative 'true' for a negative value
+    * @param mantissa the stored mantissa bits
+    * @param power2   the biased exponent
+    * @return the value
+    */
+   static private double assemble(boolean negative, long mantissa, int power2)
+   {
+      long bits = mantissa | ((long) power2 << 52);
+      if (negative) bits |= Long.MIN_VALUE;
+
+      return Double.longBitsToDouble(bits);
+   }
+}
@@ -0,0 +1,186 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An immutable <code>JSONArray</code>. Elements are held in a flat, final
+ * array and exposed through an unmodifiable <code>List</code>. The hash code
+ * is computed once at construction.
+ * 
+ * @see JSONArray#freeze()
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class FrozenJSONArray extends JSONArray implements FrozenJSONValue
+{
+   /** The elements. */
+   private final JSONValue[] mElements;
+
+   /** Unmodifiable view of the elements. */
+   private final List<JSONValue> mList;
+
+   /** Cached hash code. */
+   private final int mHash;
+
+   /**
+    * Create a new FrozenJSONArray.
+    * 
+    * @param source the array to freeze
+    */
+   FrozenJSONArray(JSONArray source)
+   {
+      this(freezeAll(source.getListValue()));
+   }
+
+   /**
+    * Create a new FrozenJSONArray.
+    * 
+    * @param elements frozen elements
+    */
+   private FrozenJSONArray(JSONValue[] elements)
+   {
+      this(elements, Collections.unmodifiableList(Arrays.asList(elements)));
+   }
+
+   /**
+    * Create a new FrozenJSONArray.
+    * 
+    * @param elements frozen elements
+    * @param list     unmodifiable view of the elements
+    */
+   private FrozenJSONArray(JSONValue[] elements, List<JSONValue> list)
+   {
+      super(list);
+      mElements = elements;
+      mList = list;
+      mHash = Arrays.hashCode(elements);
+   }
+
+   /**
+    * Freeze each element of a list.
+    * 
+    * @param source the list to freeze
+    * @return an array of frozen values
+    */
+   static private JSONValue[] freezeAll(List<JSONValue> source)
+   {
+      JSONValue[] elements = new JSONValue[source.size()];
+      int pos = 0;
+
+      for (JSONValue value : source)
+      {
+         elements[pos++] = AbstractJSONValue.freeze(value);
+      }
+
+      return elements;
+   }
+
+   @Override
+   public void setValue(List<JSONValue> value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public Object getValue()
+   {
+      return mList;
+   }
+
+   @Override
+   public List<JSONValue> getListValue()
+   {
+      return mList;
+   }
+
+   @Override
+   public JSONValue get(int index)
+   {
+      return mElements[index];
+   }
+
+   @Override
+   public void set(int index, JSONValue value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public JSONValue remove(int index)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public int size()
+   {
+      return mElements.length;
+   }
+
+   @Override
+   public void copyValue(JSONValue value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public JSONArray freeze()
+   {
+      return this;
+   }
+
+   @Override
+   public void read(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   void writeElements(String indent, Writer writer, boolean pretty) throws IOException
+   {
+      write(mList, indent, writer, pretty);
+   }
+
+   @Override
+   public Iterator<JSONValue> iterator()
+   {
+      return mList.iterator();
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return mHash;
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (obj == this) return true;
+      if (!(obj instanceof FrozenJSONArray)) return false;
+
+      FrozenJSONArray other = (FrozenJSONArray) obj;
+      return (mHash == other.mHash) && JSONTree.equals(this, other);
+   }
+}
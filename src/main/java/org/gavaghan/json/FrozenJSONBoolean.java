@@ -0,0 +1,90 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Writer;
+
+/**
+ * An immutable <code>JSONBoolean</code>. There are only two instances.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class FrozenJSONBoolean extends JSONBoolean implements FrozenJSONValue
+{
+   /** The frozen 'true'. */
+   static final FrozenJSONBoolean TRUE = new FrozenJSONBoolean(Boolean.TRUE);
+
+   /** The frozen 'false'. */
+   static final FrozenJSONBoolean FALSE = new FrozenJSONBoolean(Boolean.FALSE);
+
+   /** The underlying value. */
+   private final Boolean mFrozen;
+
+   /**
+    * Create a new FrozenJSONBoolean.
+    * 
+    * @param value the boolean value
+    */
+   private FrozenJSONBoolean(Boolean value)
+   {
+      super(value);
+      mFrozen = value;
+   }
+
+   @Override
+   public void setValue(Boolean value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public Object getValue()
+   {
+      return mFrozen;
+   }
+
+   @Override
+   public boolean getBooleanValue()
+   {
+      return mFrozen.booleanValue();
+   }
+
+   @Override
+   public void copyValue(JSONValue value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public void read(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public void write(String indent, Writer writer, boolean pretty) throws IOException
+   {
+      JSONWriter.writeLiteral(mFrozen.booleanValue() ? JSONWriter.TRUE : JSONWriter.FALSE, writer);
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return mFrozen.hashCode();
+   }
+}
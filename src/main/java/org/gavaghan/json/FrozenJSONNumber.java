@@ -0,0 +1,100 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+
+/**
+ * An immutable <code>JSONNumber</code>. Like <code>BigDecimal</code>, two
+ * numbers are only equal if they have the same scale.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class FrozenJSONNumber extends JSONNumber implements FrozenJSONValue
+{
+   /** The underlying value. */
+   private final BigDecimal mFrozen;
+
+   /** Cached hash code. */
+   private final int mHash;
+
+   /**
+    * Create a new FrozenJSONNumber.
+    * 
+    * @param value the number value
+    */
+   FrozenJSONNumber(BigDecimal value)
+   {
+      super(value);
+      mFrozen = value;
+      mHash = value.hashCode();
+   }
+
+   @Override
+   public void setValue(BigDecimal value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public Object getValue()
+   {
+      return mFrozen;
+   }
+
+   @Override
+   public BigDecimal getBigDecimalValue()
+   {
+      return mFrozen;
+   }
+
+   @Override
+   public void copyValue(JSONValue value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public void read(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public void write(String indent, Writer writer, boolean pretty) throws IOException
+   {
+      writer.write(mFrozen.toString());
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return mHash;
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (obj == this) return true;
+      if (!(obj instanceof FrozenJSONNumber)) return false;
+
+      FrozenJSONNumber other = (FrozenJSONNumber) obj;
+      return (mHash == other.mHash) && mFrozen.equals(other.mFrozen);
+   }
+}
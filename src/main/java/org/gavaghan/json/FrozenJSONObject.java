@@ -0,0 +1,434 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * An immutable <code>JSONObject</code>. Members are held in flat, final arrays
+ * in their original order rather than in the inherited
+ * <code>LinkedHashMap</code>, which is left empty. Small objects are searched
+ * linearly and larger ones through an open-addressed index. The hash code is
+ * computed once at construction.
+ * </p>
+ * <p>
+ * Every <code>Map</code> operation that would modify the object throws
+ * <code>UnsupportedOperationException</code>.
+ * </p>
+ * 
+ * @see JSONObject#freeze()
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class FrozenJSONObject extends JSONObject implements FrozenJSONValue
+{
+   /** Objects with more members than this get a hash index. */
+   static private final int LINEAR_LIMIT = 8;
+
+   /** Member names in order. */
+   private final String[] mKeys;
+
+   /** Member values in order. */
+   private final JSONValue[] mValues;
+
+   /** Open-addressed index of (position + 1), or null for small objects. */
+   private final int[] mIndex;
+
+   /** Cached hash code. */
+   private final int mHash;
+
+   /**
+    * Spread the bits of a key hash for indexing.
+    * 
+    * @param key the key
+    * @return the spread hash
+    */
+   static private int spread(Object key)
+   {
+      int h = key.hashCode();
+      return h ^ (h >>> 16);
+   }
+
+   /**
+    * Create a new FrozenJSONObject.
+    * 
+    * @param source the object to freeze
+    */
+   FrozenJSONObject(JSONObject source)
+   {
+      int size = source.size();
+      int pos = 0;
+      int hash = 0;
+
+      mKeys = new String[size];
+      mValues = new JSONValue[size];
+
+      for (Map.Entry<String, JSONValue> entry : source.entrySet())
+      {
+         JSONValue value = AbstractJSONValue.freeze(entry.getValue());
+
+         mKeys[pos] = entry.getKey();
+         mValues[pos] = value;
+         hash += entry.getKey().hashCode() ^ value.hashCode();
+         pos++;
+      }
+
+      mHash = hash;
+
+      if (size > LINEAR_LIMIT)
+      {
+         int[] index = new int[Integer.highestOneBit(size) << 2];
+         int mask = index.length - 1;
+
+         for (int i = 0; i < size; i++)
+         {
+            int slot = spread(mKeys[i]) & mask;
+            while (index[slot] != 0)
+               slot = (slot + 1) & mask;
+            index[slot] = i + 1;
+         }
+
+         mIndex = index;
+      }
+      else
+      {
+         mIndex = null;
+      }
+   }
+
+   /**
+    * Find the position of a key.
+    * 
+    * @param key the key to find
+    * @return position of the key or -1 if not found
+    */
+   private int indexOf(Object key)
+   {
+      if (key == null) return -1;
+
+      if (mIndex == null)
+      {
+         for (int i = 0; i < mKeys.length; i++)
+         {
+            if (key.equals(mKeys[i])) return i;
+         }
+
+         return -1;
+      }
+
+      int mask = mIndex.length - 1;
+      int slot = spread(key) & mask;
+
+      for (;;)
+      {
+         int pos = mIndex[slot] - 1;
+         if (pos < 0) return -1;
+         if (key.equals(mKeys[pos])) return pos;
+         slot = (slot + 1) & mask;
+      }
+   }
+
+   @Override
+   public int size()
+   {
+      return mKeys.length;
+   }
+
+   @Override
+   public boolean isEmpty()
+   {
+      return mKeys.length == 0;
+   }
+
+   @Override
+   public JSONValue get(Object key)
+   {
+      int pos = indexOf(key);
+      return (pos < 0) ? null : mValues[pos];
+   }
+
+   @Override
+   public JSONValue getOrDefault(Object key, JSONValue defaultValue)
+   {
+      int pos = indexOf(key);
+      return (pos < 0) ? defaultValue : mValues[pos];
+   }
+
+   @Override
+   public boolean containsKey(Object key)
+   {
+      return indexOf(key) >= 0;
+   }
+
+   @Override
+   public boolean containsValue(Object value)
+   {
+      for (JSONValue member : mValues)
+      {
+         if (member.equals(value)) return true;
+      }
+
+      return false;
+   }
+
+   @Override
+   public void forEach(BiConsumer<? super String, ? super JSONValue> action)
+   {
+      for (int i = 0; i < mKeys.length; i++)
+      {
+         action.accept(mKeys[i], mValues[i]);
+      }
+   }
+
+   @Override
+   public Set<String> keySet()
+   {
+      return new AbstractSet<String>()
+      {
+         @Override
+         public Iterator<String> iterator()
+         {
+            return new ArrayIterator<String>(mKeys);
+         }
+
+         @Override
+         public int size()
+         {
+            return mKeys.length;
+         }
+
+         @Override
+         public boolean contains(Object o)
+         {
+            return indexOf(o) >= 0;
+         }
+      };
+   }
+
+   @Override
+   public Collection<JSONValue> values()
+   {
+      return new AbstractCollection<JSONValue>()
+      {
+         @Override
+         public Iterator<JSONValue> iterator()
+         {
+            return new ArrayIterator<JSONValue>(mValues);
+         }
+
+         @Override
+         public int size()
+         {
+            return mValues.length;
+         }
+      };
+   }
+
+   @Override
+   public Set<Map.Entry<String, JSONValue>> entrySet()
+   {
+      return new AbstractSet<Map.Entry<String, JSONValue>>()
+      {
+         @Override
+         public Iterator<Map.Entry<String, JSONValue>> iterator()
+         {
+            return new Iterator<Map.Entry<String, JSONValue>>()
+            {
+               private int mPos;
+
+               @Override
+               public boolean hasNext()
+               {
+                  return mPos < mKeys.length;
+               }
+
+               @Override
+               public Map.Entry<String, JSONValue> next()
+               {
+                  if (mPos >= mKeys.length) throw new NoSuchElementException();
+                  Map.Entry<String, JSONValue> entry = new AbstractMap.SimpleImmutableEntry<String, JSONValue>(mKeys[mPos], mValues[mPos]);
+                  mPos++;
+                  return entry;
+               }
+            };
+         }
+
+         @Override
+         public int size()
+         {
+            return mKeys.length;
+         }
+      };
+   }
+
+   @Override
+   public JSONValue put(String key, JSONValue value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public void putAll(Map<? extends String, ? extends JSONValue> m)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public JSONValue remove(Object key)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public boolean remove(Object key, Object value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public void clear()
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public JSONValue putIfAbsent(String key, JSONValue value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public boolean replace(String key, JSONValue oldValue, JSONValue newValue)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public JSONValue replace(String key, JSONValue value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public void replaceAll(BiFunction<? super String, ? super JSONValue, ? extends JSONValue> function)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public JSONValue computeIfAbsent(String key, Function<? super String, ? extends JSONValue> mappingFunction)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public JSONValue computeIfPresent(String key, BiFunction<? super String, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public JSONValue compute(String key, BiFunction<? super String, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public JSONValue merge(String key, JSONValue value, BiFunction<? super JSONValue, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public void copyValue(JSONValue value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public void read(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public JSONObject freeze()
+   {
+      return this;
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return mHash;
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (obj == this) return true;
+
+      if (obj instanceof FrozenJSONObject)
+      {
+         FrozenJSONObject other = (FrozenJSONObject) obj;
+         return (mHash == other.mHash) && JSONTree.equals(this, other);
+      }
+
+      return super.equals(obj);
+   }
+
+   /**
+    * Read-only iterator over an array.
+    * 
+    * @param <T> element type
+    */
+   static private final class ArrayIterator<T> implements Iterator<T>
+   {
+      private final T[] mArray;
+      private int mPos;
+
+      ArrayIterator(T[] array)
+      {
+         mArray = array;
+      }
+
+      @Override
+      public boolean hasNext()
+      {
+         return mPos < mArray.length;
+      }
+
+      @Override
+      public T next()
+      {
+         if (mPos >= mArray.length) throw new NoSuchElementException();
+         return mArray[mPos++];
+      }
+   }
+}
@@ -0,0 +1,99 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Writer;
+
+/**
+ * An immutable <code>JSONString</code>.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class FrozenJSONString extends JSONString implements FrozenJSONValue
+{
+   /** The underlying value. */
+   private final String mFrozen;
+
+   /**
+    * Create a new FrozenJSONString.
+    * 
+    * @param value the string value
+    */
+   FrozenJSONString(String value)
+   {
+      super(value);
+      mFrozen = value;
+   }
+
+   @Override
+   public void setValue(String value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public Object getValue()
+   {
+      return mFrozen;
+   }
+
+   @Override
+   public String getStringValue()
+   {
+      return mFrozen;
+   }
+
+   @Override
+   public int length()
+   {
+      return mFrozen.length();
+   }
+
+   @Override
+   public void copyValue(JSONValue value)
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public void read(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      throw new UnsupportedOperationException(FROZEN);
+   }
+
+   @Override
+   public void write(String indent, Writer writer, boolean pretty) throws IOException
+   {
+      writeString(mFrozen, writer);
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return mFrozen.hashCode();
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (obj == this) return true;
+      if (!(obj instanceof FrozenJSONString)) return false;
+
+      return mFrozen.equals(((FrozenJSONString) obj).mFrozen);
+   }
+}
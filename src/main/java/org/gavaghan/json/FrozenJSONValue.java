@@ -0,0 +1,32 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+/**
+ * Marker for the immutable <code>JSONValue</code> implementations produced by
+ * <code>AbstractJSONValue.freeze()</code>. All state of a frozen value is held
+ * in final fields and every nested value is frozen too, so a frozen tree may be
+ * shared across threads without synchronization or copying.
+ * 
+ * @see AbstractJSONValue#freeze(JSONValue)
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+interface FrozenJSONValue extends JSONValue
+{
+   /** Message of the exception thrown on any attempt to modify a frozen value. */
+   static final String FROZEN = "Frozen JSON values can't be modified";
+}
@@ -0,0 +1,414 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stage two of an indexed parse: walks the positions found by a
+ * <code>StructuralIndexer</code> and feeds a UTF-8 document to a
+ * <code>DocumentBuilder</code>. Whitespace never has to be examined, and strings without escapes or
+ * non-ASCII bytes are copied without inspecting each character.
+ * <p>
+ * This parser only handles well-formed input. On anything unexpected it
+ * returns null and the caller reparses with the scalar parser, which
+ * produces the same result for good input and the authoritative
+ * <code>JSONException</code> for bad input.
+ * </p>
+ * 
+ * @param <T> the type of document built
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class IndexedParser<T>
+{
+   /** The document. */
+   private final byte[] mJSON;
+
+   /** End of the document. */
+   private final int mEnd;
+
+   /** Positions of structural characters, quotes and atoms. */
+   private final int[] mPositions;
+
+   /** Number of positions. */
+   private final int mCount;
+
+   /** Next position to visit. */
+   private int mNext;
+
+   /** The document being built. */
+   private final DocumentBuilder<T> mBuilder;
+
+   /**
+    * Create a new IndexedParser.
+    * 
+    * @param json    buffer holding the document
+    * @param end     end of the document
+    * @param indexer indexer that has indexed the document
+    * @param builder receives the document
+    */
+   IndexedParser(byte[] json, int end, StructuralIndexer indexer, DocumentBuilder<T> builder)
+   {
+      mJSON = json;
+      mEnd = end;
+      mPositions = indexer.getPositions();
+      mCount = indexer.getCount();
+      mBuilder = builder;
+   }
+
+   /**
+    * Get the character at the next indexed position without consuming it.
+    * 
+    * @return the character or -1 if none remain
+    */
+   private int peek()
+   {
+      return (mNext < mCount) ? mJSON[mPositions[mNext]] : -1;
+   }
+
+   /**
+    * Parse the first value of the document.
+    * 
+    * @return the document, or null if the scalar parser must be used
+    */
+   T parse()
+   {
+      for (;;)
+      {
+         // read a value
+         if (mNext >= mCount) return null;
+
+         int pos = mPositions[mNext++];
+
+         switch (mJSON[pos])
+         {
+            case '{':
+               mBuilder.open(JSONTape.TAG_OBJECT);
+               if (peek() == '}')
+               {
+                  mNext++;
+                  mBuilder.close();
+                  break;
+               }
+               if (!readKey()) return null;
+               continue;
+
+            case '[':
+               mBuilder.open(JSONTape.TAG_ARRAY);
+               if (peek() == ']')
+               {
+                  mNext++;
+                  mBuilder.close();
+                  break;
+               }
+               continue;
+
+            case '\"':
+               if (!readString(pos, JSONTape.TAG_STRING)) return null;
+               break;
+
+            case '}':
+            case ']':
+            case ':':
+            case ',':
+               return null;
+
+            default:
+               if (!readAtom(pos)) return null;
+               break;
+         }
+
+         // after a value, close containers until we find a comma
+         for (;;)
+         {
+            if (mBuilder.getDepth() == 0) return mBuilder.build();
+
+            int c = peek();
+            mNext++;
+
+            if (mBuilder.inObject())
+            {
+               if (c == '}')
+               {
+                  mBuilder.close();
+                  continue;
+               }
+
+               if ((c != ',') || !readKey()) return null;
+               break;
+            }
+
+            if (c == ']')
+            {
+               mBuilder.close();
+               continue;
+            }
+
+            if (c != ',') return null;
+            break;
+         }
+      }
+   }
+
+   /**
+    * Read an object key and the colon after it.
+    * 
+    * @return 'false' on anything unexpected
+    */
+   private boolean readKey()
+   {
+      if (peek() != '\"') return false;
+      if (!readString(mPositions[mNext++], JSONTape.TAG_KEY)) return false;
+      if (peek() != ':') return false;
+
+      mNext++;
+      return true;
+   }
+
+   /**
+    * Read a string whose opening quote is at a position. The closing quote is
+    * the next indexed position.
+    * 
+    * @param open position of the opening quote
+    * @param tag  the tag to record it with
+    * @return 'false' on anything unexpected
+    */
+   private boolean readString(int open, int tag)
+   {
+      if (mNext >= mCount) return false;
+
+      int close = mPositions[mNext++];
+      if (mJSON[close] != '\"') return false;
+
+      int start = open + 1;
+      int length = close - start;
+
+      mBuilder.startText();
+
+      // copy ASCII without escapes straight across
+      char[] text = mBuilder.reserveText(length);
+      int at = mBuilder.getTextLength();
+      int i = start;
+
+      for (; i < close; i++)
+      {
+         byte b = mJSON[i];
+         if ((b < 0) || (b == '\\')) break;
+         text[at++] = (char) b;
+      }
+
+      mBuilder.commitText(at);
+
+      // decode the rest the slow way
+      if (i < close)
+      {
+         char[] chars = new String(mJSON, i, close - i, StandardCharsets.UTF_8).toCharArray();
+         if (!unescape(chars)) return false;
+      }
+
+      mBuilder.endText(tag);
+      return true;
+   }
+
+   /**
+    * Append decoded string content to the text, processing escapes.
+    * 
+    * @param chars decoded string content
+    * @return 'false' on a bad escape
+    */
+   private boolean unescape(char[] chars)
+   {
+      for (int i = 0; i < chars.length; i++)
+      {
+         char c = chars[i];
+
+         if (c != '\\')
+         {
+            mBuilder.appendText(c);
+            continue;
+         }
+
+         if (++i >= chars.length) return false;
+
+         switch (chars[i])
+         {
+            case '\"':
+            case '/':
+            case '\\':
+               mBuilder.appendText(chars[i]);
+               break;
+            case 'b':
+               mBuilder.appendText('\b');
+               break;
+            case 'f':
+               mBuilder.appendText('\f');
+               break;
+            case 'n':
+               mBuilder.appendText('\n');
+               break;
+            case 'r':
+               mBuilder.appendText('\r');
+               break;
+            case 't':
+               mBuilder.appendText('\t');
+               break;
+            case 'u':
+               if (i + 4 >= chars.length) return false;
+
+               int value = 0;
+               for (int j = 1; j <= 4; j++)
+               {
+                  int digit = Character.digit(chars[i + j], 16);
+                  if (digit < 0) return false;
+                  value = (value << 4) | digit;
+               }
+
+               mBuilder.appendText((char) value);
+               i += 4;
+               break;
+            default:
+               return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Read a number or literal.
+    * 
+    * @param start position of its first byte
+    * @return 'false' on anything unexpected
+    */
+   private boolean readAtom(int start)
+   {
+      // the atom runs to the next whitespace or indexed position
+      int limit = (mNext < mCount) ? mPositions[mNext] : mEnd;
+      int end = start;
+      while ((end < limit) && (mJSON[end] > ' '))
+         end++;
+
+      switch (mJSON[start])
+      {
+         case 't':
+            return readLiteral(start, end, "true", JSONTape.TAG_TRUE);
+         case 'f':
+            return readLiteral(start, end, "false", JSONTape.TAG_FALSE);
+         case 'n':
+            return readLiteral(start, end, "null", JSONTape.TAG_NULL);
+         default:
+            return readNumber(start, end);
+      }
+   }
+
+   /**
+    * Match a literal.
+    * 
+    * @param start   start of the atom
+    * @param end     end of the atom
+    * @param literal the expected text
+    * @param tag     the tag to record it with
+    * @return 'false' if the atom doesn't match
+    */
+   private boolean readLiteral(int start, int end, String literal, int tag)
+   {
+      if (end - start != literal.length()) return false;
+
+      for (int i = 0; i < literal.length(); i++)
+      {
+         if (mJSON[start + i] != literal.charAt(i)) return false;
+      }
+
+      mBuilder.literal(tag);
+      return true;
+   }
+
+   /**
+    * Determine if a byte is an ASCII digit.
+    * 
+    * @param b the byte
+    * @return 'true' if a digit
+    */
+   static private boolean isDigit(byte b)
+   {
+      return (b >= '0') && (b <= '9');
+   }
+
+   /**
+    * Match a number, following the grammar of <code>TapeParser</code>. A
+    * number whose exponent might be out of range is left to the scalar parser
+    * to check.
+    * 
+    * @param start start of the atom
+    * @param end   end of the atom
+    * @return 'false' if the atom isn't exactly one number
+    */
+   private boolean readNumber(int start, int end)
+   {
+      byte first = mJSON[start];
+      if ((first != '-') && !isDigit(first)) return false;
+
+      int pos = start + 1;
+      boolean digits = (first != '-');
+
+      // whole part
+      if (first != '0')
+      {
+         while ((pos < end) && isDigit(mJSON[pos]))
+            pos++;
+         if (pos != start + 1) digits = true;
+      }
+
+      // fractional part
+      if ((pos < end) && (mJSON[pos] == '.'))
+      {
+         int point = ++pos;
+         while ((pos < end) && isDigit(mJSON[pos]))
+            pos++;
+         if (pos == point) return false;
+         digits = true;
+      }
+
+      if (!digits) return false;
+
+      // exponent
+      if ((pos < end) && ((mJSON[pos] == 'e') || (mJSON[pos] == 'E')))
+      {
+         pos++;
+         if ((pos < end) && ((mJSON[pos] == '+') || (mJSON[pos] == '-'))) pos++;
+
+         int exponent = pos;
+         while ((pos < end) && isDigit(mJSON[pos]))
+            pos++;
+         if ((pos == exponent) || (pos - exponent > 9)) return false;
+      }
+
+      if (pos != end) return false;
+
+      mBuilder.startText();
+
+      char[] text = mBuilder.reserveText(end - start);
+      int at = mBuilder.getTextLength();
+
+      for (int i = start; i < end; i++)
+         text[at++] = (char) mJSON[i];
+
+      mBuilder.commitText(at);
+      mBuilder.endText(JSONTape.TAG_NUMBER);
+      return true;
+   }
+}
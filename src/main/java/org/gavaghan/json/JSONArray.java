@@ -18,9 +18,12 @@ package org.gavaghan.json;
 import java.io.IOException;
 import java.io.PushbackReader;
 import java.io.Writer;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * A JSON array represented as a <code>List&lt;JSONValue&gt;</code>.
@@ -35,6 +38,9 @@ public class JSONArray extends AbstractJSONValue implements Iterable<JSONValue>
    /** JSONValueFactory for reading from a Reader. */
    private JSONValueFactory mFactory;
 
+   /** Write cache state, or null if never rendered through the cache. */
+   private transient JSONWriteCache.Node mCache;
+
    /**
     * Create a new <code>JSONArray</code>.
     * 
@@ -74,18 +80,20 @@ public class JSONArray extends AbstractJSONValue implements Iterable<JSONValue>
    public void setValue(List<JSONValue> value)
    {
       if (value == null) throw new NullPointerException("Null value not allowed.  Use JSONNull instead.");
+      touch();
       mValue = value;
    }
 
    /**
     * Get the underlying value.
     * 
-    * @return the <code>List&lt;JSONValue&gt;</code> this object wraps
+    * @return the <code>List&lt;JSONValue&gt;</code> this object wraps, or a
+    *         view of it while the write cache is enabled
     */
    @Override
    public Object getValue()
    {
-      return mValue;
+      return getListValue();
    }
 
    /**
@@ -97,7 +105,9 @@ public class JSONArray extends AbstractJSONValue implements Iterable<JSONValue>
     */
    public List<JSONValue> getListValue()
    {
-      return mValue;
+      // modifications through the list only need stamping while the cache is on
+      if (!JSONWriteCache.isEnabled()) return mValue;
+      return new Elements(mValue);
    }
 
    /**
@@ -128,6 +138,7 @@ public class JSONArray extends AbstractJSONValue implements Iterable<JSONValue>
     */
    public void set(int index, JSONValue value)
    {
+      touch();
       mValue.set(index, value);
    }
 
@@ -141,6 +152,7 @@ public class JSONArray extends AbstractJSONValue implements Iterable<JSONValue>
     */
    public JSONValue remove(int index)
    {
+      touch();
       return mValue.remove(index);
    }
 
@@ -178,16 +190,46 @@ public class JSONArray extends AbstractJSONValue implements Iterable<JSONValue>
       if (!getClass().isAssignableFrom(value.getClass())) throw new RuntimeException("Can't assign a " + value.getClass().getName() + " to a " + getClass().getName());
 
       @SuppressWarnings("unchecked")
-      List<JSONValue> source = (List<JSONValue>) value.getValue();
+      List<JSONValue> source = (value.getClass() == JSONArray.class) ? ((JSONArray) value).mValue : (List<JSONValue>) value.getValue();
 
+      touch();
       mValue = new ArrayList<JSONValue>();
 
       for (JSONValue json : source)
       {
-         mValue.add(json.deepCopy());
+         mValue.add(JSONTree.deepCopy(json));
       }
    }
 
+   /**
+    * Create a deep copy of this instance that shares structure with this one
+    * until it is modified. The copy is created in O(1) and elements are only
+    * copied along the paths that are visited. This instance must not be
+    * modified while the copy is in use.
+    * 
+    * @since 1.3
+    * 
+    * @return a copy-on-write view of this instance
+    */
+   public JSONArray copyOnWrite()
+   {
+      return new CopyOnWriteJSONArray(this);
+   }
+
+   /**
+    * Create an immutable copy of this instance that may be shared across
+    * threads without copying. Use <code>copyOnWrite()</code> on the result to
+    * get a mutable copy.
+    * 
+    * @since 1.3
+    * 
+    * @return a frozen copy of this instance
+    */
+   public JSONArray freeze()
+   {
+      return new FrozenJSONArray(this);
+   }
+
    /**
     * Read a <code>JSONValue</code> (presumes the key has already been read) and
     * set the underlying value. There's generally no reason to call this method
@@ -204,22 +246,51 @@ public class JSONArray extends AbstractJSONValue implements Iterable<JSONValue>
       char c = JSONValueFactory.demand(pbr);
       if (c != '[') throw new JSONException(path, "Content does not appear to be an array.");
 
-      // empty array is an easy out
-      mFactory.skipWhitespace(pbr);
-      c = JSONValueFactory.demand(pbr);
-      if (c == ']') return;
-      pbr.unread(c);
+      touch();
 
-      // loop through values
       try
       {
+         readElements(path, pbr, mFactory);
+      }
+      finally
+      {
+         mFactory = null;
+      }
+   }
+
+   /**
+    * Read the elements of an array after its opening bracket.
+    * 
+    * @param path    path to the value being read
+    * @param pbr     source reader
+    * @param factory the factory used to read elements
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   void readElements(String path, PushbackReader pbr, JSONValueFactory factory) throws IOException, JSONException
+   {
+      factory.enter(path, pbr);
+
+      try
+      {
+         // empty array is an easy out
+         factory.skipWhitespace(pbr);
+         char c = JSONValueFactory.demand(pbr);
+         if (c == ']') return;
+         pbr.unread(c);
+
+         int maxMembers = factory.getMaxMembers();
+
+         // loop through values
          for (;;)
          {
-            JSONValue value = mFactory.read(path, pbr);
+            if (mValue.size() >= maxMembers) throw JSONValueFactory.tooMany(path, false, maxMembers);
+
+            JSONValue value = factory.read(path, pbr);
             mValue.add(value);
 
             // get next non-whitespace
-            mFactory.skipWhitespace(pbr);
+            factory.skipWhitespace(pbr);
             c = JSONValueFactory.demand(pbr);
 
             // is end?
@@ -228,7 +299,7 @@ public class JSONArray extends AbstractJSONValue implements Iterable<JSONValue>
             // is more
             if (c == ',')
             {
-               mFactory.skipWhitespace(pbr);
+               factory.skipWhitespace(pbr);
                continue;
             }
 
@@ -237,7 +308,7 @@ public class JSONArray extends AbstractJSONValue implements Iterable<JSONValue>
       }
       finally
       {
-         mFactory = null;
+         factory.exit(pbr);
       }
    }
 
@@ -252,34 +323,109 @@ public class JSONArray extends AbstractJSONValue implements Iterable<JSONValue>
    @Override
    public void write(String indent, Writer writer, boolean pretty) throws IOException
    {
-      String newIndent = indent + "   ";
+      if (JSONWriteCache.isEnabled() && JSONWriteCache.write(this, indent, writer, pretty)) return;
 
-      if (mValue.size() == 0)
-      {
-         writer.write("[]");
-      }
-      else
-      {
-         int count = 1;
+      writeElements(indent, writer, pretty);
+   }
 
-         writer.write("[");
-         writer.write(JSONObject.EOL);
+   /**
+    * Render the elements of this array, bypassing any cached rendering.
+    * 
+    * @param indent indent padding
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   void writeElements(String indent, Writer writer, boolean pretty) throws IOException
+   {
+      write(mValue, indent, writer, pretty);
+   }
 
-         for (JSONValue value : mValue)
-         {
-            writer.write(newIndent);
+   /**
+    * Get the elements without counting it as a modification.
+    * 
+    * @return the underlying list
+    */
+   List<JSONValue> elements()
+   {
+      return mValue;
+   }
 
-            value.write(newIndent, writer, pretty);
+   /**
+    * Get the elements for reading. For a plain array this doesn't count as a
+    * modification.
+    * 
+    * @return the elements
+    */
+   List<JSONValue> elementList()
+   {
+      return (getClass() == JSONArray.class) ? mValue : getListValue();
+   }
 
-            if (count != mValue.size()) writer.write(',');
+   /**
+    * Get the stamp of the last modification.
+    * 
+    * @return the stamp, or 0 if never rendered through the cache
+    */
+   long getStamp()
+   {
+      JSONWriteCache.Node node = mCache;
+      return (node == null) ? 0 : node.mStamp;
+   }
 
-            writer.write(JSONObject.EOL);
-            count++;
-         }
+   /**
+    * Start stamping modifications because this array is part of a cached
+    * rendering.
+    */
+   void observe()
+   {
+      if (mCache == null) mCache = new JSONWriteCache.Node();
+   }
 
-         writer.write(indent);
-         writer.write("]");
-      }
+   /**
+    * Stamp a modification if this array may be part of a cached rendering.
+    */
+   private void touch()
+   {
+      JSONWriteCache.Node node = mCache;
+      if (node != null) node.mStamp = JSONWriteCache.tick();
+   }
+
+   /**
+    * Get a cached rendering.
+    * 
+    * @param pretty 'true' for the pretty rendering, 'false' for flat
+    * @return the cache entry or null
+    */
+   JSONWriteCache.Entry getCache(boolean pretty)
+   {
+      JSONWriteCache.Node node = mCache;
+      return (node == null) ? null : node.get(pretty);
+   }
+
+   /**
+    * Replace a cached rendering.
+    * 
+    * @param pretty 'true' for the pretty rendering, 'false' for flat
+    * @param entry  the new cache entry
+    */
+   void setCache(boolean pretty, JSONWriteCache.Entry entry)
+   {
+      observe();
+      mCache.set(pretty, entry);
+   }
+   /**
+    * Render a list of <code>JSONValue</code> instances as a JSON array.
+    * 
+    * @param values the array elements
+    * @param indent indent padding
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static void write(List<JSONValue> values, String indent, Writer writer, boolean pretty) throws IOException
+   {
+      JSONTree.writeArray(values, indent, writer, pretty);
    }
 
    /**
@@ -290,6 +436,78 @@ public class JSONArray extends AbstractJSONValue implements Iterable<JSONValue>
    @Override
    public Iterator<JSONValue> iterator()
    {
-      return mValue.iterator();
+      return getListValue().iterator();
+   }
+
+   /**
+    * A view of the underlying list that stamps every modification made
+    * through it, including through its iterators and sublists. Only handed
+    * out while the write cache is enabled.
+    */
+   private final class Elements extends AbstractList<JSONValue> implements RandomAccess
+   {
+      /** The list viewed. */
+      private final List<JSONValue> mList;
+
+      /**
+       * Create a new Elements.
+       * 
+       * @param list the list viewed
+       */
+      Elements(List<JSONValue> list)
+      {
+         mList = list;
+      }
+
+      @Override
+      public JSONValue get(int index)
+      {
+         return mList.get(index);
+      }
+
+      @Override
+      public int size()
+      {
+         return mList.size();
+      }
+
+      @Override
+      public JSONValue set(int index, JSONValue element)
+      {
+         touch();
+         return mList.set(index, element);
+      }
+
+      @Override
+      public void add(int index, JSONValue element)
+      {
+         touch();
+         mList.add(index, element);
+         modCount++;
+      }
+
+      @Override
+      public boolean addAll(Collection<? extends JSONValue> c)
+      {
+         touch();
+         modCount++;
+         return mList.addAll(c);
+      }
+
+      @Override
+      public JSONValue remove(int index)
+      {
+         touch();
+         modCount++;
+         return mList.remove(index);
+      }
+
+      @Override
+      protected void removeRange(int fromIndex, int toIndex)
+      {
+         touch();
+         modCount++;
+         mList.subList(fromIndex, toIndex).clear();
+      }
    }
 }
@@ -0,0 +1,252 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.text.MessageFormat;
+
+/**
+ * <p>
+ * Entry point for binding Java objects to JSON using the codecs generated for
+ * <code>@JSONBinding</code> classes. Types without a codec fall back to the
+ * tree model, so <code>JSONValue</code> types can be passed through the same
+ * calls.
+ * </p>
+ * <p>
+ * Each codec is looked up once per class and cached. Code that knows its type
+ * at compile time can skip the lookup entirely by using the generated
+ * <code>&lt;ClassName&gt;_JSONCodec.INSTANCE</code>.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class JSONBinder
+{
+   /** Suffix appended to a class name to find its generated codec. */
+   static public final String CODEC_SUFFIX = "_JSONCodec";
+
+   /** Cache of codecs. A null value means the type is not bound. */
+   static private final ClassValue<AbstractJSONCodec<?>> CODECS = new ClassValue<AbstractJSONCodec<?>>()
+   {
+      @Override
+      protected AbstractJSONCodec<?> computeValue(Class<?> type)
+      {
+         return lookup(type);
+      }
+   };
+
+   /**
+    * Find the generated codec of a type.
+    * 
+    * @param type the bound type
+    * @return the codec, or null if the type is not annotated
+    */
+   static private AbstractJSONCodec<?> lookup(Class<?> type)
+   {
+      if (!type.isAnnotationPresent(JSONBinding.class)) return null;
+
+      String codecName = type.getName() + CODEC_SUFFIX;
+
+      try
+      {
+         Class<?> codecClass = Class.forName(codecName, true, type.getClassLoader());
+         Field instance = codecClass.getField("INSTANCE");
+         return (AbstractJSONCodec<?>) instance.get(null);
+      }
+      catch (ClassNotFoundException exc)
+      {
+         throw new RuntimeException(MessageFormat.format("''{0}'' is annotated with @JSONBinding but ''{1}'' was not found.  Was the annotation processor run?", type.getName(), codecName), exc);
+      }
+      catch (NoSuchFieldException | IllegalAccessException | ClassCastException exc)
+      {
+         throw new RuntimeException(MessageFormat.format("''{0}'' is not a valid generated codec", codecName), exc);
+      }
+   }
+
+   /**
+    * Only static methods.
+    */
+   private JSONBinder()
+   {
+   }
+
+   /**
+    * Get the codec for a type.
+    * 
+    * @param type the bound type
+    * @param <T>  the bound type
+    * @return the codec, or null if the type is not annotated with
+    *         <code>@JSONBinding</code>
+    */
+   @SuppressWarnings("unchecked")
+   static public <T> AbstractJSONCodec<T> getCodec(Class<T> type)
+   {
+      return (AbstractJSONCodec<T>) CODECS.get(type);
+   }
+
+   /**
+    * Read the next value and bind it to a type. If the type has no codec but is
+    * a <code>JSONValue</code> type, the parsed tree is returned as-is.
+    * 
+    * @param factory the factory used to parse the input
+    * @param reader  source reader
+    * @param type    the type to bind to
+    * @param <T>     the type to bind to
+    * @return the bound value, or null on EOF
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar or binding error
+    */
+   static public <T> T read(JSONValueFactory factory, Reader reader, Class<T> type) throws IOException, JSONException
+   {
+      AbstractJSONCodec<T> codec = getCodec(type);
+      if (codec != null) return codec.read(factory, reader);
+
+      if (!JSONValue.class.isAssignableFrom(type))
+      {
+         throw new RuntimeException(MessageFormat.format("''{0}'' is neither a JSONValue nor annotated with @JSONBinding", type.getName()));
+      }
+
+      JSONValue json = factory.read(reader);
+      if (json == null) return null;
+
+      if (!type.isInstance(json)) throw AbstractJSONCodec.mismatch("$", json, type.getName());
+
+      return type.cast(json);
+   }
+
+   /**
+    * Read the next value using the default factory and bind it to a type.
+    * 
+    * @param reader source reader
+    * @param type   the type to bind to
+    * @param <T>    the type to bind to
+    * @return the bound value, or null on EOF
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar or binding error
+    */
+   static public <T> T read(Reader reader, Class<T> type) throws IOException, JSONException
+   {
+      return read(JSONValueFactory.DEFAULT, reader, type);
+   }
+
+   /**
+    * Convert an object to the tree model.
+    * 
+    * @param value a <code>JSONValue</code>, a bound object, or null
+    * @return the tree representation
+    */
+   @SuppressWarnings({ "unchecked", "rawtypes" })
+   static public JSONValue toJSON(Object value)
+   {
+      if (value == null) return JSONNull.INSTANCE;
+      if (value instanceof JSONValue) return (JSONValue) value;
+
+      AbstractJSONCodec codec = codecFor(value);
+      return codec.toJSON(value);
+   }
+
+   /**
+    * Render an object to a <code>Writer</code>.
+    * 
+    * @param value  a <code>JSONValue</code>, a bound object, or null
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException   on any failure of the <code>Writer</code>
+    * @throws JSONException if a floating point member is infinite or NaN
+    */
+   @SuppressWarnings({ "unchecked", "rawtypes" })
+   static public void write(Object value, Writer writer, boolean pretty) throws IOException, JSONException
+   {
+      if (value == null) JSONWriter.writeLiteral(JSONWriter.NULL, writer);
+      else if (value instanceof JSONValue) ((JSONValue) value).write("", writer, pretty);
+      else
+      {
+         AbstractJSONCodec codec = codecFor(value);
+         codec.write(value, "", writer, pretty);
+      }
+   }
+
+   /**
+    * Render an object as a pretty-printed string.
+    * 
+    * @param value a <code>JSONValue</code>, a bound object, or null
+    * @return the rendered value
+    * @throws IllegalArgumentException if a floating point member is infinite
+    *                                  or NaN
+    */
+   static public String toPrettyString(Object value)
+   {
+      return toString(value, true);
+   }
+
+   /**
+    * Render an object as a flattened string.
+    * 
+    * @param value a <code>JSONValue</code>, a bound object, or null
+    * @return the rendered value
+    * @throws IllegalArgumentException if a floating point member is infinite
+    *                                  or NaN
+    */
+   static public String toFlatString(Object value)
+   {
+      return toString(value, false);
+   }
+
+   /**
+    * Render an object as a string.
+    * 
+    * @param value  a <code>JSONValue</code>, a bound object, or null
+    * @param pretty 'true' to pretty-print, 'false' to render on a single line
+    * @return the rendered value
+    * @throws IllegalArgumentException if a floating point member is infinite
+    *                                  or NaN
+    */
+   static private String toString(Object value, boolean pretty)
+   {
+      try (JSONContext context = JSONContext.acquire())
+      {
+         StringBuilderWriter writer = context.getWriter();
+         write(value, writer, pretty);
+         return writer.toString();
+      }
+      catch (JSONException exc)
+      {
+         throw new IllegalArgumentException(exc.getMessage(), exc);
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to render string", exc);
+      }
+   }
+
+   /**
+    * Demand the codec for an object.
+    * 
+    * @param value the object
+    * @return its codec
+    */
+   static private AbstractJSONCodec<?> codecFor(Object value)
+   {
+      AbstractJSONCodec<?> codec = CODECS.get(value.getClass());
+      if (codec == null) throw new RuntimeException(MessageFormat.format("''{0}'' is neither a JSONValue nor annotated with @JSONBinding", value.getClass().getName()));
+      return codec;
+   }
+}
@@ -0,0 +1,60 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks a class for compile-time JSON binding. The
+ * <code>org.gavaghan.json.processor.JSONBindingProcessor</code> annotation
+ * processor generates a companion <code>AbstractJSONCodec</code> named
+ * <code>&lt;ClassName&gt;_JSONCodec</code> in the same package that reads and
+ * writes instances without reflection.
+ * </p>
+ * <p>
+ * All non-static, non-transient fields are bound unless marked with
+ * <code>@JSONField(ignore = true)</code>. Fields that aren't accessible from
+ * the package must have a bean-style getter and setter.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @see AbstractJSONCodec
+ * @see JSONBinder
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface JSONBinding
+{
+   /**
+    * If 'true', the class name is written under
+    * <code>TypedJSONObject.TYPE_KEY</code> just like a
+    * <code>TypedJSONObject</code>, and reading dispatches to the codec of the
+    * named subtype. Only subtypes compiled along with the class can be named;
+    * the generated codec resolves them without loading classes by name.
+    * 
+    * @return 'true' to include a type discriminator
+    */
+   boolean typed() default false;
+}
@@ -29,6 +29,9 @@ public class JSONBoolean extends AbstractJSONValue
 	/** The underlying value. **/
 	private Boolean mValue;
 
+	/** Stamp of the last modification, or 0 if never rendered through a cache. */
+	private transient long mStamp;
+
 	/**
 	 * Create a new JSONBoolean.
 	 * 
@@ -56,6 +59,7 @@ public class JSONBoolean extends AbstractJSONValue
 	public void setValue(Boolean value)
 	{
 		if (value == null) throw new NullPointerException("Null value not allowed.  Use JSONNull instead.");
+		touch();
 		mValue = value;
 	}
 
@@ -103,6 +107,7 @@ public class JSONBoolean extends AbstractJSONValue
 	{
 		if (!getClass().isAssignableFrom(value.getClass())) throw new RuntimeException("Can't assign a " + value.getClass().getName() + " to a " + getClass().getName());
 
+		touch();
 		mValue = (Boolean) value.getValue();
 	}
 
@@ -123,26 +128,45 @@ public class JSONBoolean extends AbstractJSONValue
 	@Override
 	public void read(String path, PushbackReader pbr) throws IOException, JSONException
 	{
-		char c = JSONValueFactory.demand(pbr);
+		touch();
+		mValue = readBoolean(path, pbr, JSONValueFactory.demand(pbr));
+	}
 
+	/**
+	 * Read a boolean after its first character.
+	 * 
+	 * @param path
+	 *           path to the value being read
+	 * @param pbr
+	 *           source reader
+	 * @param c
+	 *           the first character, already read
+	 * @return the boolean
+	 * @throws IOException
+	 *            on read failure
+	 * @throws JSONException
+	 *            on grammar error
+	 */
+	static Boolean readBoolean(String path, PushbackReader pbr, char c) throws IOException, JSONException
+	{
 		if (c == 't')
 		{
 			if (JSONValueFactory.demand(pbr) != 'r') throw new JSONException(path, "Content does not appear to be a boolean.");
 			if (JSONValueFactory.demand(pbr) != 'u') throw new JSONException(path, "Content does not appear to be a boolean.");
 			if (JSONValueFactory.demand(pbr) != 'e') throw new JSONException(path, "Content does not appear to be a boolean.");
-			mValue = Boolean.TRUE;
+			return Boolean.TRUE;
 		}
 
-		else if (c == 'f')
+		if (c == 'f')
 		{
 			if (JSONValueFactory.demand(pbr) != 'a') throw new JSONException(path, "Content does not appear to be a boolean.");
 			if (JSONValueFactory.demand(pbr) != 'l') throw new JSONException(path, "Content does not appear to be a boolean.");
 			if (JSONValueFactory.demand(pbr) != 's') throw new JSONException(path, "Content does not appear to be a boolean.");
 			if (JSONValueFactory.demand(pbr) != 'e') throw new JSONException(path, "Content does not appear to be a boolean.");
-			mValue = Boolean.FALSE;
+			return Boolean.FALSE;
 		}
 
-		else throw new JSONException(path, "Content does not appear to be a boolean.");
+		throw new JSONException(path, "Content does not appear to be a boolean.");
 	}
 
 	/**
@@ -159,6 +183,33 @@ public class JSONBoolean extends AbstractJSONValue
 	@Override
 	public void write(String indent, Writer writer, boolean pretty) throws IOException
 	{
-		writer.write(mValue.toString());
+		JSONWriter.writeLiteral(mValue.booleanValue() ? JSONWriter.TRUE : JSONWriter.FALSE, writer);
+	}
+
+	/**
+	 * Get the stamp of the last modification.
+	 * 
+	 * @return the stamp, or 0 if never rendered through the cache
+	 */
+	long getStamp()
+	{
+		return mStamp;
+	}
+
+	/**
+	 * Start stamping modifications because this boolean is part of a cached
+	 * rendering.
+	 */
+	void observe()
+	{
+		if (mStamp == 0) mStamp = 1;
+	}
+
+	/**
+	 * Stamp a modification if this boolean may be part of a cached rendering.
+	 */
+	private void touch()
+	{
+		if (mStamp != 0) mStamp = JSONWriteCache.tick();
 	}
 }
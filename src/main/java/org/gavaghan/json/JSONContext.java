@@ -0,0 +1,549 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * Reusable parser and writer state. A context holds a
+ * <code>JSONPushbackReader</code> with its read buffer and scratch string
+ * builder, plus a writer buffer for rendering, so that reading and writing
+ * many small documents doesn't reallocate them each time.
+ * </p>
+ * <p>
+ * Contexts are kept in a small shared pool. Call <code>acquire()</code> to
+ * borrow one and <code>close()</code> to return it, ideally in a
+ * try-with-resources block. A context must only be used by one thread at a
+ * time, but the pool itself is lock-free and uses no thread-locals, so it
+ * works equally well with platform and virtual threads.
+ * <code>JSONValueFactory.read(Reader)</code>, <code>toPrettyString()</code>
+ * and <code>toFlatString()</code> borrow a context automatically.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class JSONContext implements AutoCloseable
+{
+   /** Indent padding for each nesting level. */
+   static private final String[] INDENTS = new String[64];
+
+   /** Largest writer buffer (in characters) kept in a pooled context. */
+   static private final int MAX_WRITER_CAPACITY = 256 * 1024;
+
+   /** Idle contexts. Empty slots are null. */
+   static private final AtomicReferenceArray<JSONContext> POOL = new AtomicReferenceArray<JSONContext>(Math.min(64, Math.max(8, 2 * Runtime.getRuntime().availableProcessors())));
+
+   static
+   {
+      INDENTS[0] = "";
+
+      for (int i = 1; i < INDENTS.length; i++)
+      {
+         INDENTS[i] = INDENTS[i - 1] + "   ";
+      }
+   }
+
+   /** The reusable reader. */
+   private final JSONPushbackReader mReader = new JSONPushbackReader();
+
+   /** The reusable writer. */
+   private final StringBuilderWriter mWriter = new StringBuilderWriter(1024);
+
+   /** The reusable UTF-8 encoder, created on first use. */
+   private UTF8Writer mUTF8;
+
+   /** The reusable UTF-8 decoder, created on first use. */
+   private UTF8Reader mUTF8Reader;
+
+   /** 'true' while the context is borrowed. */
+   private boolean mAcquired;
+
+   /**
+    * Contexts are only created by <code>acquire()</code>.
+    */
+   private JSONContext()
+   {
+   }
+
+   /**
+    * Borrow a context from the pool, creating a new one if the pool is empty.
+    * 
+    * @return a context for the exclusive use of the caller
+    */
+   static public JSONContext acquire()
+   {
+      int length = POOL.length();
+      int start = (System.identityHashCode(Thread.currentThread()) & 0x7FFFFFFF) % length;
+
+      for (int i = 0; i < length; i++)
+      {
+         int slot = (start + i) % length;
+
+         if (POOL.get(slot) != null)
+         {
+            JSONContext context = POOL.getAndSet(slot, null);
+
+            if (context != null)
+            {
+               context.mAcquired = true;
+               return context;
+            }
+         }
+      }
+
+      JSONContext context = new JSONContext();
+      context.mAcquired = true;
+      return context;
+   }
+
+   /**
+    * Get the indent padding one level deeper than the given padding. The
+    * standard padding is taken from a precomputed table rather than built by
+    * concatenation.
+    * 
+    * @param indent current indent padding
+    * @return indent padding for nested values
+    */
+   static String nextIndent(String indent)
+   {
+      int level = indent.length() / 3;
+
+      if ((level < INDENTS.length - 1) && (INDENTS[level] == indent)) return INDENTS[level + 1];
+
+      return indent + "   ";
+   }
+
+   /**
+    * Assert the context hasn't been returned to the pool.
+    */
+   private void ensureAcquired()
+   {
+      if (!mAcquired) throw new IllegalStateException("JSONContext has been closed");
+   }
+
+   /**
+    * Read a <code>JSONValue</code> using this context's buffers. The reader is
+    * not closed, and characters after the document are left in it so the
+    * next document may be read from it.
+    * 
+    * @param factory the factory used to create values
+    * @param reader  source of the JSON document
+    * @return the value read or null if the reader held only whitespace
+    * @throws IOException
+    * @throws JSONException
+    */
+   public JSONValue read(JSONValueFactory factory, Reader reader) throws IOException, JSONException
+   {
+      return read(factory, reader, false);
+   }
+
+   /**
+    * Read a <code>JSONValue</code> using this context's buffers.
+    * 
+    * @param factory   the factory used to create values
+    * @param reader    source of the JSON document
+    * @param readAhead 'true' if characters past the end of the document may
+    *                  be consumed from 'reader'
+    * @return the value read or null if the reader held only whitespace
+    * @throws IOException
+    * @throws JSONException
+    */
+   private JSONValue read(JSONValueFactory factory, Reader reader, boolean readAhead) throws IOException, JSONException
+   {
+      ensureAcquired();
+
+      mReader.attach(reader, factory.getPushbackBufferSize(), readAhead);
+
+      try
+      {
+         return factory.readDocument(mReader);
+      }
+      finally
+      {
+         mReader.detach();
+      }
+   }
+
+   /**
+    * Read a value and bind it with a codec using this context's buffers. As
+    * with <code>read(JSONValueFactory, Reader)</code>, characters after the
+    * document are left in the reader.
+    * 
+    * @param factory the factory used to parse the input
+    * @param reader  source of the JSON document
+    * @param codec   the codec to bind with
+    * @param <T>     the bound type
+    * @return the bound instance, or null if the reader held only whitespace
+    *         or a JSON null
+    * @throws IOException
+    * @throws JSONException
+    */
+   <T> T read(JSONValueFactory factory, Reader reader, AbstractJSONCodec<T> codec) throws IOException, JSONException
+   {
+      ensureAcquired();
+
+      mReader.attach(reader, factory.getPushbackBufferSize(), false);
+
+      try
+      {
+         return factory.bindDocument(mReader, codec);
+      }
+      finally
+      {
+         mReader.detach();
+      }
+   }
+
+   /**
+    * Read a <code>JSONValue</code> from UTF-8 bytes using this context's
+    * buffers. The bytes are decoded without the locking done by
+    * <code>InputStreamReader</code>. Bytes past the end of the document may
+    * be consumed from the stream. The stream is not closed.
+    * 
+    * @param factory the factory used to create values
+    * @param in      source of the JSON document
+    * @return the value read or null if the stream held only whitespace
+    * @throws IOException
+    * @throws JSONException
+    */
+   public JSONValue read(JSONValueFactory factory, InputStream in) throws IOException, JSONException
+   {
+      ensureAcquired();
+
+      if (mUTF8Reader == null) mUTF8Reader = new UTF8Reader();
+      mUTF8Reader.attach(in);
+
+      try
+      {
+         return read(factory, mUTF8Reader, true);
+      }
+      finally
+      {
+         mUTF8Reader.detach();
+      }
+   }
+
+   /**
+    * Read a <code>JSONValue</code> from a string using this context's buffers.
+    * 
+    * @param factory the factory used to create values
+    * @param json    the JSON document
+    * @return the value read or null if the string held only whitespace
+    * @throws JSONException
+    */
+   public JSONValue read(JSONValueFactory factory, String json) throws JSONException
+   {
+      try
+      {
+         return read(factory, new StringReader(json), true);
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to read string", exc);
+      }
+   }
+
+   /**
+    * Read a <code>JSONValue</code> from UTF-8 bytes held in memory, building
+    * it from a structural index where the factory allows.
+    * 
+    * @see JSONValueFactory#read(byte[], int, int)
+    * 
+    * @param factory the factory used to create values
+    * @param utf8    buffer holding the document
+    * @param offset  start of the document
+    * @param length  length of the document in bytes
+    * @return the value read or null if the range held only whitespace
+    * @throws JSONException
+    */
+   public JSONValue read(JSONValueFactory factory, byte[] utf8, int offset, int length) throws JSONException
+   {
+      ensureAcquired();
+
+      JSONValue value = factory.readIndexed(utf8, offset, length, new StructuralIndexer());
+      if (value != null) return value;
+
+      try
+      {
+         return read(factory, new ByteArrayInputStream(utf8, offset, length));
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to read byte array", exc);
+      }
+   }
+
+   /**
+    * Check that a reader holds a well-formed JSON document using this
+    * context's buffers, without building any values. The reader is not
+    * closed, and characters after the document are left in it.
+    * 
+    * @param factory the factory whose grammar and limits apply
+    * @param reader  source of the JSON document
+    * @return 'true' if a value was found, 'false' if the reader held only
+    *         whitespace
+    * @throws IOException
+    * @throws JSONException if the document isn't well-formed
+    */
+   public boolean validate(JSONValueFactory factory, Reader reader) throws IOException, JSONException
+   {
+      return validate(factory, reader, false);
+   }
+
+   /**
+    * Check that a reader holds a well-formed JSON document using this
+    * context's buffers, without building any values.
+    * 
+    * @param factory   the factory whose grammar and limits apply
+    * @param reader    source of the JSON document
+    * @param readAhead 'true' if characters past the end of the document may
+    *                  be consumed from 'reader'
+    * @return 'true' if a value was found, 'false' if the reader held only
+    *         whitespace
+    * @throws IOException
+    * @throws JSONException if the document isn't well-formed
+    */
+   private boolean validate(JSONValueFactory factory, Reader reader, boolean readAhead) throws IOException, JSONException
+   {
+      ensureAcquired();
+
+      mReader.attach(reader, factory.getPushbackBufferSize(), readAhead);
+
+      try
+      {
+         return factory.validateDocument(mReader);
+      }
+      finally
+      {
+         mReader.detach();
+      }
+   }
+
+   /**
+    * Check that a stream holds a well-formed JSON document encoded as UTF-8
+    * using this context's buffers, without building any values. Bytes past
+    * the end of the document may be consumed from the stream. The stream is
+    * not closed.
+    * 
+    * @param factory the factory whose grammar and limits apply
+    * @param in      source of the JSON document
+    * @return 'true' if a value was found, 'false' if the stream held only
+    *         whitespace
+    * @throws IOException
+    * @throws JSONException if the document isn't well-formed
+    */
+   public boolean validate(JSONValueFactory factory, InputStream in) throws IOException, JSONException
+   {
+      ensureAcquired();
+
+      if (mUTF8Reader == null) mUTF8Reader = new UTF8Reader();
+      mUTF8Reader.attach(in);
+
+      try
+      {
+         return validate(factory, mUTF8Reader, true);
+      }
+      finally
+      {
+         mUTF8Reader.detach();
+      }
+   }
+
+   /**
+    * Check that a string holds a well-formed JSON document using this
+    * context's buffers, without building any values.
+    * 
+    * @param factory the factory whose grammar and limits apply
+    * @param json    the JSON document
+    * @return 'true' if a value was found, 'false' if the string held only
+    *         whitespace
+    * @throws JSONException if the document isn't well-formed
+    */
+   public boolean validate(JSONValueFactory factory, String json) throws JSONException
+   {
+      try
+      {
+         return validate(factory, new StringReader(json), true);
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to read string", exc);
+      }
+   }
+
+   /**
+    * Render a <code>JSONValue</code> as a string using this context's buffer.
+    * 
+    * @param value  the value to render
+    * @param pretty 'true' to pretty-print with line feeds and indentation,
+    *               'false' to render on a single line
+    * @return the rendered value
+    */
+   public String toString(JSONValue value, boolean pretty)
+   {
+      StringBuilderWriter writer = getWriter();
+
+      try
+      {
+         value.write("", writer, pretty);
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to render string", exc);
+      }
+
+      return writer.toString();
+   }
+
+   /**
+    * Get this context's UTF-8 encoder.
+    * 
+    * @return the encoder
+    */
+   private UTF8Writer getUTF8Writer()
+   {
+      ensureAcquired();
+
+      if (mUTF8 == null) mUTF8 = new UTF8Writer();
+      return mUTF8;
+   }
+
+   /**
+    * Render a <code>JSONValue</code> to a stream as UTF-8. The stream is
+    * flushed but not closed.
+    * 
+    * @param value  the value to render
+    * @param out    the target stream
+    * @param pretty 'true' to pretty-print with line feeds and indentation,
+    *               'false' to render on a single line
+    * @throws IOException on any failure of the stream
+    */
+   public void write(JSONValue value, OutputStream out, boolean pretty) throws IOException
+   {
+      UTF8Writer writer = getUTF8Writer();
+      writer.attach(out);
+
+      try
+      {
+         value.write("", writer, pretty);
+         writer.flush();
+      }
+      finally
+      {
+         writer.detach();
+      }
+   }
+
+   /**
+    * Render a <code>JSONValue</code> to a channel as UTF-8. Large output is
+    * written to a <code>GatheringByteChannel</code> several blocks at a time.
+    * The channel is not closed.
+    * 
+    * @param value   the value to render
+    * @param channel the target channel
+    * @param pretty  'true' to pretty-print with line feeds and indentation,
+    *                'false' to render on a single line
+    * @throws IOException on any failure of the channel
+    */
+   public void write(JSONValue value, WritableByteChannel channel, boolean pretty) throws IOException
+   {
+      UTF8Writer writer = getUTF8Writer();
+      writer.attach(channel);
+
+      try
+      {
+         value.write("", writer, pretty);
+         writer.flush();
+      }
+      finally
+      {
+         writer.detach();
+      }
+   }
+
+   /**
+    * Render a <code>JSONValue</code> into a buffer as UTF-8, starting at its
+    * position.
+    * 
+    * @param value  the value to render
+    * @param target the target buffer
+    * @param pretty 'true' to pretty-print with line feeds and indentation,
+    *               'false' to render on a single line
+    * @throws IOException if the buffer doesn't have enough room
+    */
+   public void write(JSONValue value, ByteBuffer target, boolean pretty) throws IOException
+   {
+      UTF8Writer writer = getUTF8Writer();
+      writer.attach(target);
+
+      try
+      {
+         value.write("", writer, pretty);
+         writer.flush();
+      }
+      finally
+      {
+         writer.detach();
+      }
+   }
+
+   /**
+    * Get this context's writer, emptied of anything previously written.
+    * 
+    * @return the writer
+    */
+   StringBuilderWriter getWriter()
+   {
+      ensureAcquired();
+
+      mWriter.reset(MAX_WRITER_CAPACITY);
+      return mWriter;
+   }
+
+   /**
+    * Return this context to the pool. The context must not be used afterwards.
+    * Closing a context more than once has no effect.
+    */
+   @Override
+   public void close()
+   {
+      if (!mAcquired) return;
+
+      mAcquired = false;
+      mWriter.reset(MAX_WRITER_CAPACITY);
+
+      int length = POOL.length();
+      int start = (System.identityHashCode(Thread.currentThread()) & 0x7FFFFFFF) % length;
+
+      for (int i = 0; i < length; i++)
+      {
+         if (POOL.compareAndSet((start + i) % length, null, this)) return;
+      }
+
+      // pool is full so let this one go
+   }
+}
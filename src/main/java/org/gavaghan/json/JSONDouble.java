@@ -0,0 +1,364 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+
+/**
+ * A JSON number represented as a <code>double</code> rather than a
+ * <code>BigDecimal</code>. A <code>JSONValueFactory</code> whose
+ * <code>isDoublePrecision()</code> returns 'true' reads numbers with a
+ * fraction or exponent as <code>JSONDouble</code>, converting them straight
+ * from the input to the nearest <code>double</code>. <code>getValue()</code>
+ * and <code>getBigDecimalValue()</code> still return a
+ * <code>BigDecimal</code>, built from the shortest decimal that rounds to the
+ * <code>double</code>.
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONDouble extends JSONNumber
+{
+   /** The underlying value. */
+   private double mDouble;
+
+   /**
+    * Create a new <code>JSONDouble</code>.
+    * 
+    * @param value the value
+    * @throws NumberFormatException if the value is infinite or NaN
+    */
+   public JSONDouble(double value)
+   {
+      mDouble = checkFinite(value);
+   }
+
+   /**
+    * Create a new <code>JSONDouble</code> with a value of zero.
+    */
+   public JSONDouble()
+   {
+   }
+
+   /**
+    * Make sure a value can be written as JSON.
+    * 
+    * @param value the value
+    * @return the value
+    * @throws NumberFormatException if the value is infinite or NaN
+    */
+   static private double checkFinite(double value)
+   {
+      if (Double.isNaN(value) || Double.isInfinite(value)) throw new NumberFormatException("Infinite or NaN");
+      return value;
+   }
+
+   /**
+    * Set the underlying value.
+    * 
+    * @param value the new value
+    * @throws NumberFormatException if the value is infinite or NaN
+    */
+   public void setDoubleValue(double value)
+   {
+      checkFinite(value);
+      touch();
+      mDouble = value;
+   }
+
+   /**
+    * Set the underlying value, rounded to the nearest <code>double</code>.
+    * 
+    * @param value the new value
+    * @throws NumberFormatException if the value is out of range
+    */
+   @Override
+   public void setValue(BigDecimal value)
+   {
+      if (value == null) throw new NullPointerException("Null value not allowed.  Use JSONNull instead.");
+      setDoubleValue(value.doubleValue());
+   }
+
+   /**
+    * Get the underlying value as a <code>BigDecimal</code>.
+    * 
+    * @return the value
+    */
+   @Override
+   public Object getValue()
+   {
+      return getBigDecimalValue();
+   }
+
+   /**
+    * Get the underlying value as a <code>BigDecimal</code>.
+    * 
+    * @return the shortest decimal that rounds to the underlying value
+    */
+   @Override
+   public BigDecimal getBigDecimalValue()
+   {
+      return BigDecimal.valueOf(mDouble);
+   }
+
+   /**
+    * Get the underlying value.
+    * 
+    * @return the value
+    */
+   @Override
+   public double getDoubleValue()
+   {
+      return mDouble;
+   }
+
+   /**
+    * Create a prototype instance of the same type.
+    * 
+    * @return a new <code>JSONDouble</code>
+    */
+   @Override
+   public JSONValue createPrototype()
+   {
+      return new JSONDouble();
+   }
+
+   /**
+    * Copy the value of any <code>JSONNumber</code>, rounded to the nearest
+    * <code>double</code>.
+    * 
+    * @param value the value to copy
+    */
+   @Override
+   public void copyValue(JSONValue value)
+   {
+      if (!(value instanceof JSONNumber)) throw new RuntimeException("Can't assign a " + value.getClass().getName() + " to a " + getClass().getName());
+      setDoubleValue(((JSONNumber) value).getDoubleValue());
+   }
+
+   /**
+    * Read a JSON number and set the underlying value to the nearest
+    * <code>double</code>.
+    * 
+    * @param path path to the value being read
+    * @param pbr  source reader
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error or if the number is out of range
+    */
+   @Override
+   public void read(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      char c = JSONValueFactory.demand(pbr);
+      if (!Character.isDigit(c) && (c != '-')) throw new JSONException(path, "Content does not appear to be a number.");
+
+      double value = readDoubleNumber(path, pbr, c).getDoubleValue();
+      if (Double.isInfinite(value)) throw new JSONException(path, "Number is too large for a double.");
+
+      touch();
+      mDouble = value;
+   }
+
+   /**
+    * Read a number after its first character. Numbers with a fraction or
+    * exponent become a <code>JSONDouble</code>. Integers, and numbers too large
+    * for a <code>double</code>, remain a <code>JSONNumber</code>.
+    * 
+    * @param path  path to the value being read
+    * @param pbr   source reader
+    * @param first the first character, already read
+    * @return the number
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   static JSONNumber readDoubleNumber(String path, PushbackReader pbr, char first) throws IOException, JSONException
+   {
+      if (pbr instanceof JSONPushbackReader)
+      {
+         JSONNumber number = scanNumber(path, (JSONPushbackReader) pbr, first);
+         if (number != null) return number;
+      }
+
+      // numbers that run past the buffer, or aren't plain ASCII, are read a character at a time
+      return parseDoubleNumber(path, JSONNumber.readNumberText(path, pbr, first));
+   }
+
+   /**
+    * Convert the text of a number the way <code>readDoubleNumber()</code>
+    * does.
+    * 
+    * @param path path to the value being read
+    * @param text the text of the number
+    * @return the number
+    * @throws JSONException if the text isn't a number
+    */
+   static JSONNumber parseDoubleNumber(String path, String text) throws JSONException
+   {
+      BigDecimal value = JSONNumber.parseNumber(path, text);
+
+      if ((text.indexOf('.') < 0) && (text.indexOf('e') < 0) && (text.indexOf('E') < 0)) return new JSONNumber(value);
+
+      // BigDecimal has no negative zero
+      double d = value.doubleValue();
+      if ((d == 0) && (text.charAt(0) == '-')) d = -0.0;
+
+      return Double.isInfinite(d) ? new JSONNumber(value) : new JSONDouble(d);
+   }
+
+   /**
+    * Read a number from the reader's buffer without copying it. Nothing is
+    * consumed unless the whole number is in the buffer and is well formed.
+    * 
+    * @param path  path to the value being read
+    * @param jpr   source reader
+    * @param first the first character, already read
+    * @return the number, or null to read it a character at a time
+    * @throws JSONException if the number is too long
+    */
+   static private JSONNumber scanNumber(String path, JSONPushbackReader jpr, char first) throws JSONException
+   {
+      char[] buf = jpr.getBuffer();
+      int limit = jpr.getLimit();
+      int start = jpr.getPosition() - 1;
+
+      if ((start < 0) || (buf[start] != first)) return null;
+
+      boolean negative = (first == '-');
+      boolean integral = true;
+      long significand = 0;
+      int digits = 0;
+      int exponent = 0;
+      int pos = start + 1;
+      char c;
+
+      // whole part; a leading zero stands alone
+      if (first == '0')
+      {
+         // nothing more
+      }
+      else if (negative || ((first >= '1') && (first <= '9')))
+      {
+         if (!negative)
+         {
+            significand = first - '0';
+            digits = 1;
+         }
+
+         int whole = pos;
+
+         while ((pos < limit) && ((c = buf[pos]) >= '0') && (c <= '9'))
+         {
+            if ((significand != 0) || (c != '0'))
+            {
+               significand = 10 * significand + (c - '0');
+               digits++;
+            }
+
+            pos++;
+         }
+
+         if (negative && (pos == whole)) return null;
+      }
+      else
+      {
+         return null;
+      }
+
+      // fractional part
+      if ((pos < limit) && (buf[pos] == '.'))
+      {
+         integral = false;
+         int fraction = ++pos;
+
+         while ((pos < limit) && ((c = buf[pos]) >= '0') && (c <= '9'))
+         {
+            if ((significand != 0) || (c != '0'))
+            {
+               significand = 10 * significand + (c - '0');
+               digits++;
+            }
+
+            exponent--;
+            pos++;
+         }
+
+         if (pos == fraction) return null;
+      }
+
+      // exponent
+      if ((pos < limit) && ((buf[pos] == 'e') || (buf[pos] == 'E')))
+      {
+         integral = false;
+         boolean negativeExponent = false;
+         int power = 0;
+
+         if ((++pos < limit) && ((buf[pos] == '+') || (buf[pos] == '-')))
+         {
+            negativeExponent = (buf[pos] == '-');
+            pos++;
+         }
+
+         int powerStart = pos;
+
+         while ((pos < limit) && ((c = buf[pos]) >= '0') && (c <= '9'))
+         {
+            // leave absurd exponents to BigDecimal
+            if (power >= 100000000) return null;
+
+            power = 10 * power + (c - '0');
+            pos++;
+         }
+
+         if (pos == powerStart) return null;
+         exponent += negativeExponent ? -power : power;
+      }
+
+      // the number may go on past the buffer, or into digits we don't handle here
+      if ((pos >= limit) || ((buf[pos] >= 128) && Character.isDigit(buf[pos]))) return null;
+
+      int length = pos - start;
+      int maxLength = jpr.getMaxNumberLength();
+      if (length > maxLength) throw JSONNumber.tooLong(path, maxLength);
+
+      jpr.setPosition(pos);
+
+      if (integral) return new JSONNumber(new BigDecimal(buf, start, length));
+
+      double value;
+      if (digits <= DoubleParser.MAX_DIGITS) value = DoubleParser.toDouble(negative, significand, exponent);
+      else value = Double.parseDouble(new String(buf, start, length));
+
+      if (Double.isInfinite(value)) return new JSONNumber(new BigDecimal(buf, start, length));
+      return new JSONDouble(value);
+   }
+
+   /**
+    * Render this JSON value to a Writer.
+    * 
+    * @param indent indent padding
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   @Override
+   public void write(String indent, Writer writer, boolean pretty) throws IOException
+   {
+      writer.write(Double.toString(mDouble));
+   }
+}
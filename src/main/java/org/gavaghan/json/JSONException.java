@@ -25,6 +25,9 @@ public class JSONException extends Exception
    /** Path to the offending content. */
    private final String mPath;
 
+   /** Offset in characters of the offending content, or -1 if unknown. */
+   private long mOffset = -1;
+
    /**
     * Create a new JSONException.
     * 
@@ -61,4 +64,30 @@ public class JSONException extends Exception
    {
       return mPath;
    }
+
+   /**
+    * Get the offset of the offending content, as the number of characters
+    * read from the start of the document when the problem was found. For a
+    * document read from UTF-8 bytes this counts characters, not bytes.
+    * 
+    * @since 1.3
+    * 
+    * @return the offset, or -1 if unknown
+    */
+   public long getOffset()
+   {
+      return mOffset;
+   }
+
+   /**
+    * Record the offset of the offending content unless it's already known.
+    * 
+    * @param offset the offset in characters
+    * @return this exception
+    */
+   JSONException at(long offset)
+   {
+      if (mOffset < 0) mOffset = offset;
+      return this;
+   }
 }
@@ -0,0 +1,137 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+/**
+ * <p>
+ * Primitive operations on hot paths that newer JDKs can do faster. This is
+ * the Java 8 implementation. A multi-release JAR carries a Java 17
+ * implementation under <code>META-INF/versions/17</code> with the same
+ * methods built on <code>VarHandle</code> byte array views,
+ * <code>Math.multiplyHigh()</code> and the compact-string aware
+ * <code>String.getBytes()</code>; the JVM picks the right one at load time.
+ * </p>
+ * <p>
+ * Both implementations must produce exactly the same results. The test
+ * suite is run against each.
+ * </p>
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class JSONIntrinsics
+{
+   /**
+    * Not instantiable.
+    */
+   private JSONIntrinsics()
+   {
+   }
+
+   /**
+    * Get the Java release this implementation is for.
+    * 
+    * @return the release
+    */
+   static int release()
+   {
+      return 8;
+   }
+
+   /**
+    * Read a big-endian 32 bit value.
+    * 
+    * @param buf the bytes
+    * @param pos position of the first byte
+    * @return the value
+    */
+   static int getIntBE(byte[] buf, int pos)
+   {
+      return ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+   }
+
+   /**
+    * Read a big-endian 64 bit value.
+    * 
+    * @param buf the bytes
+    * @param pos position of the first byte
+    * @return the value
+    */
+   static long getLongBE(byte[] buf, int pos)
+   {
+      return ((long) getIntBE(buf, pos) << 32) | (getIntBE(buf, pos + 4) & 0xFFFFFFFFL);
+   }
+
+   /**
+    * Write a big-endian 32 bit value.
+    * 
+    * @param buf   the bytes
+    * @param pos   position of the first byte
+    * @param value the value
+    */
+   static void putIntBE(byte[] buf, int pos, int value)
+   {
+      buf[pos] = (byte) (value >> 24);
+      buf[pos + 1] = (byte) (value >> 16);
+      buf[pos + 2] = (byte) (value >> 8);
+      buf[pos + 3] = (byte) value;
+   }
+
+   /**
+    * Write a big-endian 64 bit value.
+    * 
+    * @param buf   the bytes
+    * @param pos   position of the first byte
+    * @param value the value
+    */
+   static void putLongBE(byte[] buf, int pos, long value)
+   {
+      putIntBE(buf, pos, (int) (value >> 32));
+      putIntBE(buf, pos + 4, (int) value);
+   }
+
+   /**
+    * Get the high 64 bits of the unsigned 128 bit product of two values.
+    * 
+    * @param x the first value, taken as unsigned
+    * @param y the second value, taken as unsigned
+    * @return the high bits of the product
+    */
+   static long unsignedMultiplyHigh(long x, long y)
+   {
+      long x0 = x & 0xFFFFFFFFL;
+      long x1 = x >>> 32;
+      long y0 = y & 0xFFFFFFFFL;
+      long y1 = y >>> 32;
+
+      long cross = x0 * y1;
+      long middle = (x1 * y0) + ((x0 * y0) >>> 32) + (cross & 0xFFFFFFFFL);
+
+      return (x1 * y1) + (middle >>> 32) + (cross >>> 32);
+   }
+
+   /**
+    * Encode a whole string as UTF-8 if that's faster than encoding it a
+    * character at a time. Unpaired surrogates become '?'.
+    * 
+    * @param str the string
+    * @return the encoded bytes, or null to encode a character at a time
+    */
+   static byte[] encodeUTF8(String str)
+   {
+      // Java 8's encoder is no faster than our own loop
+      return null;
+   }
+}
@@ -100,16 +100,30 @@ public class JSONNull extends AbstractJSONValue
 	{
 		char c = JSONValueFactory.demand(pbr);
 
-		if (c == 'n')
-		{
-			if (JSONValueFactory.demand(pbr) != 'u') throw new JSONException(path, "Content does not appear to be a null.");
-			if (JSONValueFactory.demand(pbr) != 'l') throw new JSONException(path, "Content does not appear to be a null.");
-			if (JSONValueFactory.demand(pbr) != 'l') throw new JSONException(path, "Content does not appear to be a null.");
-		}
+		if (c == 'n') readNullBody(path, pbr);
 
 		else throw new JSONException(path, "Content does not appear to be a null.");
 	}
 
+	/**
+	 * Read the rest of a null after its leading 'n'.
+	 * 
+	 * @param path
+	 *           path to the value being read
+	 * @param pbr
+	 *           source reader
+	 * @throws IOException
+	 *            on read failure
+	 * @throws JSONException
+	 *            on grammar error
+	 */
+	static void readNullBody(String path, PushbackReader pbr) throws IOException, JSONException
+	{
+		if (JSONValueFactory.demand(pbr) != 'u') throw new JSONException(path, "Content does not appear to be a null.");
+		if (JSONValueFactory.demand(pbr) != 'l') throw new JSONException(path, "Content does not appear to be a null.");
+		if (JSONValueFactory.demand(pbr) != 'l') throw new JSONException(path, "Content does not appear to be a null.");
+	}
+
 	/**
 	 * Render this JSON value to a Writer.
 	 * 
@@ -124,6 +138,6 @@ public class JSONNull extends AbstractJSONValue
 	@Override
 	public void write(String indent, Writer writer, boolean pretty)  throws IOException
 	{
-		writer.write("null");
+		JSONWriter.writeLiteral(JSONWriter.NULL, writer);
 	}
 }
@@ -30,6 +30,9 @@ public class JSONNumber extends AbstractJSONValue
    /** The underlying value. **/
    private BigDecimal mValue;
 
+   /** Stamp of the last modification, or 0 if never rendered through a cache. */
+   private transient long mStamp;
+
    /**
     * Read the whole portion of a number.
     * 
@@ -38,7 +41,7 @@ public class JSONNumber extends AbstractJSONValue
     * @throws IOException
     * @throws JSONException
     */
-   private void readWholePart(PushbackReader pbr, StringBuilder builder) throws IOException, JSONException
+   static private void readWholePart(PushbackReader pbr, StringBuilder builder) throws IOException, JSONException
    {
       char c;
       for (;;)
@@ -65,7 +68,7 @@ public class JSONNumber extends AbstractJSONValue
     * @throws IOException
     * @throws JSONException
     */
-   private void readFractionalPart(String path, PushbackReader pbr, StringBuilder builder) throws IOException, JSONException
+   static private void readFractionalPart(String path, PushbackReader pbr, StringBuilder builder) throws IOException, JSONException
    {
       char c;
       c = JSONValueFactory.demand(pbr);
@@ -101,7 +104,7 @@ public class JSONNumber extends AbstractJSONValue
     * @throws IOException
     * @throws JSONException
     */
-   private void readExponent(String path, PushbackReader pbr, StringBuilder builder) throws IOException, JSONException
+   static private void readExponent(String path, PushbackReader pbr, StringBuilder builder) throws IOException, JSONException
    {
       char c;
       c = JSONValueFactory.demand(pbr);
@@ -192,6 +195,7 @@ public class JSONNumber extends AbstractJSONValue
    public void setValue(BigDecimal value)
    {
       if (value == null) throw new NullPointerException("Null value not allowed.  Use JSONNull instead.");
+      touch();
       mValue = value;
    }
 
@@ -218,6 +222,19 @@ public class JSONNumber extends AbstractJSONValue
       return mValue;
    }
 
+   /**
+    * Get the underlying value as a <code>double</code>, rounded to the
+    * nearest.
+    * 
+    * @since 1.3
+    * 
+    * @return the value as a <code>double</code>
+    */
+   public double getDoubleValue()
+   {
+      return getBigDecimalValue().doubleValue();
+   }
+
    /**
     * Create a prototype instance of the same type.
     * 
@@ -239,6 +256,7 @@ public class JSONNumber extends AbstractJSONValue
    {
       if (!getClass().isAssignableFrom(value.getClass())) throw new RuntimeException("Can't assign a " + value.getClass().getName() + " to a " + getClass().getName());
 
+      touch();
       mValue = (BigDecimal) value.getValue();
    }
 
@@ -255,29 +273,91 @@ public class JSONNumber extends AbstractJSONValue
    @Override
    public void read(String path, PushbackReader pbr) throws IOException, JSONException
    {
-      StringBuilder builder = new StringBuilder();
-
       char c = JSONValueFactory.demand(pbr);
       if (!Character.isDigit(c) && (c != '-')) throw new JSONException(path, "Content does not appear to be a number.");
 
-      builder.append(c);
+      touch();
+      mValue = readNumber(path, pbr, c);
+   }
+
+   /**
+    * Read a number after its first character.
+    * 
+    * @param path  path to the value being read
+    * @param pbr   source reader
+    * @param first the first character, already read
+    * @return the number
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   static BigDecimal readNumber(String path, PushbackReader pbr, char first) throws IOException, JSONException
+   {
+      return parseNumber(path, readNumberText(path, pbr, first));
+   }
+
+   /**
+    * Read the text of a number after its first character.
+    * 
+    * @param path  path to the value being read
+    * @param pbr   source reader
+    * @param first the first character, already read
+    * @return the text of the number
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   static String readNumberText(String path, PushbackReader pbr, char first) throws IOException, JSONException
+   {
+      StringBuilder builder = new StringBuilder();
+
+      builder.append(first);
 
       // read the number
-      if (c != '0') readWholePart(pbr, builder);
+      if (first != '0') readWholePart(pbr, builder);
       readFractionalPart(path, pbr, builder);
       readExponent(path, pbr, builder);
 
-      // parse and set value
+      // don't let a huge number cost us the parse
+      if (pbr instanceof JSONPushbackReader)
+      {
+         int maxLength = ((JSONPushbackReader) pbr).getMaxNumberLength();
+         if (builder.length() > maxLength) throw tooLong(path, maxLength);
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Parse the text of a number.
+    * 
+    * @param path path to the value being read
+    * @param text the text read
+    * @return the number
+    * @throws JSONException if the text isn't a number
+    */
+   static BigDecimal parseNumber(String path, String text) throws JSONException
+   {
       try
       {
-         mValue = new BigDecimal(builder.toString());
+         return new BigDecimal(text);
       }
       catch (NumberFormatException exc)
       {
-         throw new JSONException(path, "Illegal number format: " + builder.toString());
+         throw new JSONException(path, "Illegal number format: " + text);
       }
    }
 
+   /**
+    * Create the exception for a number with too many characters.
+    * 
+    * @param path      path to the value being read
+    * @param maxLength the maximum number length
+    * @return the exception
+    */
+   static JSONException tooLong(String path, int maxLength)
+   {
+      return new JSONException(path, "Number is longer than " + maxLength + " characters");
+   }
+
    /**
     * Render this JSON value to a Writer.
     * 
@@ -291,4 +371,31 @@ public class JSONNumber extends AbstractJSONValue
    {
       writer.write(mValue.toString());
    }
+
+   /**
+    * Get the stamp of the last modification.
+    * 
+    * @return the stamp, or 0 if never rendered through the cache
+    */
+   long getStamp()
+   {
+      return mStamp;
+   }
+
+   /**
+    * Start stamping modifications because this number is part of a cached
+    * rendering.
+    */
+   void observe()
+   {
+      if (mStamp == 0) mStamp = 1;
+   }
+
+   /**
+    * Stamp a modification if this number may be part of a cached rendering.
+    */
+   void touch()
+   {
+      if (mStamp != 0) mStamp = JSONWriteCache.tick();
+   }
 }
@@ -0,0 +1,696 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>
+ * A <code>JSONArray</code> of numbers packed into primitive arrays. Integers
+ * and decimals whose digits fit in a <code>long</code> are held as a
+ * <code>long[]</code> with their scales, numbers read as
+ * <code>JSONDouble</code> as a <code>double[]</code>, and anything else as a
+ * <code>BigDecimal[]</code>. A <code>JSONValueFactory</code> reads arrays made
+ * up only of numbers this way once they reach
+ * <code>getMinNumberArraySize()</code> elements.
+ * </p>
+ * <p>
+ * The numbers are read and written through the primitive accessors without
+ * creating any <code>JSONValue</code> instances, and rendering produces the
+ * same text as a <code>JSONArray</code> of the same values. The first call
+ * to a method that exposes the elements as <code>JSONValue</code> instances,
+ * such as <code>get()</code>, <code>getListValue()</code> or
+ * <code>iterator()</code>, unpacks the numbers into an ordinary list, after
+ * which this behaves exactly like a <code>JSONArray</code>.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONNumberArray extends JSONArray
+{
+   /** Numbers held as unscaled <code>long</code> values. */
+   static private final byte LONGS = 0;
+
+   /** Numbers held as <code>double</code> values. */
+   static private final byte DOUBLES = 1;
+
+   /** Numbers held as <code>BigDecimal</code> values. */
+   static private final byte DECIMALS = 2;
+
+   /** Largest integer held exactly by a <code>double</code>. */
+   static private final long MAX_EXACT_DOUBLE = 1L << 53;
+
+   /** How the numbers are held. */
+   private byte mKind = LONGS;
+
+   /** 'true' until the numbers are unpacked into the list. */
+   private boolean mPacked = true;
+
+   /** Number of packed numbers. */
+   private int mSize;
+
+   /** Unscaled values. */
+   private long[] mLongs;
+
+   /** Scales of the unscaled values, or null if they're all integers. */
+   private int[] mScales;
+
+   /** Double values. */
+   private double[] mDoubles;
+
+   /** Bits marking the double values that were read as integers, or null. */
+   private long[] mIntegers;
+
+   /** Values that don't fit anything smaller. */
+   private BigDecimal[] mDecimals;
+
+   /**
+    * Create a new, empty <code>JSONNumberArray</code>.
+    */
+   public JSONNumberArray()
+   {
+   }
+
+   /**
+    * Create a new <code>JSONNumberArray</code> holding doubles.
+    * 
+    * @param values the values, which are copied
+    * @throws NumberFormatException if a value is infinite or NaN
+    */
+   public JSONNumberArray(double[] values)
+   {
+      for (double value : values)
+      {
+         if (Double.isNaN(value) || Double.isInfinite(value)) throw new NumberFormatException("Infinite or NaN");
+      }
+
+      mKind = DOUBLES;
+      mDoubles = values.clone();
+      mSize = values.length;
+   }
+
+   /**
+    * Create a new <code>JSONNumberArray</code> holding integers.
+    * 
+    * @param values the values, which are copied
+    */
+   public JSONNumberArray(long[] values)
+   {
+      mLongs = values.clone();
+      mSize = values.length;
+   }
+
+   /**
+    * Determine if a value is a number that can be packed.
+    * 
+    * @param value the value
+    * @return 'true' if it's exactly a <code>JSONNumber</code> or
+    *         <code>JSONDouble</code>
+    */
+   static boolean canPack(JSONValue value)
+   {
+      Class<?> type = value.getClass();
+      return (type == JSONNumber.class) || (type == JSONDouble.class);
+   }
+
+   /**
+    * Add a number to the packed values.
+    * 
+    * @param value the value
+    * @return 'false' if the value can't be packed
+    */
+   boolean add(JSONValue value)
+   {
+      if (!mPacked) return false;
+
+      if (value.getClass() == JSONDouble.class) return addDouble(((JSONDouble) value).getDoubleValue(), false);
+      if (value.getClass() == JSONNumber.class) return addDecimal(((JSONNumber) value).getBigDecimalValue());
+
+      return false;
+   }
+
+   /**
+    * Add a double.
+    * 
+    * @param value   the value
+    * @param integer 'true' if the value was read as an integer
+    * @return 'false' if the value can't be packed
+    */
+   private boolean addDouble(double value, boolean integer)
+   {
+      if ((mSize == 0) && (mKind == LONGS)) mKind = DOUBLES;
+
+      // integers read so far are still exact as doubles
+      if ((mKind == LONGS) && !toDoubles()) return false;
+      if (mKind != DOUBLES) return false;
+
+      if ((mDoubles == null) || (mSize == mDoubles.length)) mDoubles = Arrays.copyOf((mDoubles == null) ? new double[0] : mDoubles, capacity());
+      mDoubles[mSize] = value;
+
+      if (integer)
+      {
+         if (mIntegers == null) mIntegers = new long[(mDoubles.length + 63) >>> 6];
+         else if (mIntegers.length << 6 < mDoubles.length) mIntegers = Arrays.copyOf(mIntegers, (mDoubles.length + 63) >>> 6);
+
+         mIntegers[mSize >>> 6] |= 1L << mSize;
+      }
+
+      mSize++;
+      return true;
+   }
+
+   /**
+    * Add an exact number.
+    * 
+    * @param value the value
+    * @return 'false' if the value can't be packed
+    */
+   private boolean addDecimal(BigDecimal value)
+   {
+      if (mKind == DOUBLES)
+      {
+         // an integer may sit among doubles if it's exact
+         if ((value.scale() != 0) || (value.precision() > 15)) return false;
+         return addDouble(value.longValue(), true);
+      }
+
+      if ((mKind == LONGS) && (value.precision() > 18)) toDecimals();
+
+      int size = mSize;
+
+      if (mKind == DECIMALS)
+      {
+         if (size == mDecimals.length) mDecimals = Arrays.copyOf(mDecimals, capacity());
+         mDecimals[size] = value;
+      }
+      else
+      {
+         if ((mLongs == null) || (size == mLongs.length))
+         {
+            mLongs = Arrays.copyOf((mLongs == null) ? new long[0] : mLongs, capacity());
+            if (mScales != null) mScales = Arrays.copyOf(mScales, mLongs.length);
+         }
+
+         mLongs[size] = value.unscaledValue().longValue();
+
+         if (value.scale() != 0)
+         {
+            if (mScales == null) mScales = new int[mLongs.length];
+            mScales[size] = value.scale();
+         }
+      }
+
+      mSize++;
+      return true;
+   }
+
+   /**
+    * Get the capacity to grow to.
+    * 
+    * @return the new capacity
+    */
+   private int capacity()
+   {
+      return Math.max(16, mSize + (mSize >> 1));
+   }
+
+   /**
+    * Switch from unscaled values to doubles.
+    * 
+    * @return 'false' if a value isn't exact as a double
+    */
+   private boolean toDoubles()
+   {
+      if (mScales != null) return false;
+
+      for (int i = 0; i < mSize; i++)
+      {
+         if (Math.abs(mLongs[i]) > MAX_EXACT_DOUBLE) return false;
+      }
+
+      long[] longs = mLongs;
+      int size = mSize;
+
+      mKind = DOUBLES;
+      mLongs = null;
+      mSize = 0;
+
+      for (int i = 0; i < size; i++)
+      {
+         addDouble(longs[i], true);
+      }
+
+      return true;
+   }
+
+   /**
+    * Switch from unscaled values to <code>BigDecimal</code>.
+    */
+   private void toDecimals()
+   {
+      BigDecimal[] decimals = new BigDecimal[capacity()];
+
+      for (int i = 0; i < mSize; i++)
+      {
+         decimals[i] = decimal(i);
+      }
+
+      mKind = DECIMALS;
+      mDecimals = decimals;
+      mLongs = null;
+      mScales = null;
+   }
+
+   /**
+    * Determine if the numbers are still packed.
+    * 
+    * @return 'true' if no element has been handed out as a
+    *         <code>JSONValue</code>
+    */
+   boolean isPacked()
+   {
+      return mPacked;
+   }
+
+   /**
+    * Move the packed numbers into the list so the elements may be handed out
+    * and modified. Replacing the list stamps the array, so a cached rendering
+    * isn't reused once the new elements may have been modified.
+    */
+   private void unpack()
+   {
+      if (!mPacked) return;
+
+      List<JSONValue> list = new ArrayList<JSONValue>(Math.max(10, mSize));
+
+      for (int i = 0; i < mSize; i++)
+      {
+         list.add(element(i));
+      }
+
+      release();
+      super.setValue(list);
+   }
+
+   /**
+    * Drop the packed numbers.
+    */
+   private void release()
+   {
+      mPacked = false;
+      mSize = 0;
+      mLongs = null;
+      mScales = null;
+      mDoubles = null;
+      mIntegers = null;
+      mDecimals = null;
+   }
+
+   /**
+    * Move the packed numbers into an ordinary array.
+    * 
+    * @return the array
+    */
+   JSONArray toJSONArray()
+   {
+      JSONArray array = new JSONArray();
+      List<JSONValue> list = array.elements();
+
+      for (int i = 0; i < mSize; i++)
+      {
+         list.add(element(i));
+      }
+
+      release();
+      return array;
+   }
+
+   /**
+    * Determine if a double value was read as an integer.
+    * 
+    * @param index the index
+    * @return 'true' if it was an integer
+    */
+   private boolean isInteger(int index)
+   {
+      return (mIntegers != null) && ((index >>> 6) < mIntegers.length) && ((mIntegers[index >>> 6] & (1L << index)) != 0);
+   }
+
+   /**
+    * Get a packed number as a <code>BigDecimal</code>.
+    * 
+    * @param index the index
+    * @return the value
+    */
+   private BigDecimal decimal(int index)
+   {
+      switch (mKind)
+      {
+         case LONGS:
+            return BigDecimal.valueOf(mLongs[index], (mScales != null) ? mScales[index] : 0);
+
+         case DOUBLES:
+            return isInteger(index) ? BigDecimal.valueOf((long) mDoubles[index]) : BigDecimal.valueOf(mDoubles[index]);
+
+         default:
+            return mDecimals[index];
+      }
+   }
+
+   /**
+    * Create the <code>JSONValue</code> for a packed number.
+    * 
+    * @param index the index
+    * @return the value
+    */
+   private JSONValue element(int index)
+   {
+      if ((mKind == DOUBLES) && !isInteger(index)) return new JSONDouble(mDoubles[index]);
+      return new JSONNumber(decimal(index));
+   }
+
+   /**
+    * Make sure an index is in range.
+    * 
+    * @param index the index
+    * @throws IndexOutOfBoundsException if it isn't
+    */
+   private void checkIndex(int index)
+   {
+      if ((index < 0) || (index >= mSize)) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+   }
+
+   /**
+    * Get an unpacked element as a number.
+    * 
+    * @param index the index
+    * @return the number
+    * @throws RuntimeException if the element isn't a <code>JSONNumber</code>
+    */
+   private JSONNumber number(int index)
+   {
+      JSONValue value = super.get(index);
+      if (!(value instanceof JSONNumber)) throw new RuntimeException("Element " + index + " is a " + value.getClass().getName() + ", not a number");
+
+      return (JSONNumber) value;
+   }
+
+   /**
+    * Get a number as a <code>BigDecimal</code>.
+    * 
+    * @param index the index
+    * @return the value
+    * @throws IndexOutOfBoundsException if the index is out of range
+    */
+   public BigDecimal getBigDecimal(int index)
+   {
+      if (!mPacked) return number(index).getBigDecimalValue();
+
+      checkIndex(index);
+      return decimal(index);
+   }
+
+   /**
+    * Get a number as a <code>double</code>, rounded to the nearest.
+    * 
+    * @param index the index
+    * @return the value
+    * @throws IndexOutOfBoundsException if the index is out of range
+    */
+   public double getDouble(int index)
+   {
+      if (!mPacked) return number(index).getDoubleValue();
+
+      checkIndex(index);
+
+      if (mKind == DOUBLES) return mDoubles[index];
+      if ((mKind == LONGS) && (mScales == null)) return mLongs[index];
+
+      return decimal(index).doubleValue();
+   }
+
+   /**
+    * Get a number as a <code>long</code>.
+    * 
+    * @param index the index
+    * @return the value
+    * @throws IndexOutOfBoundsException if the index is out of range
+    * @throws ArithmeticException       if the number has a non-zero fraction or
+    *                                   is out of range
+    */
+   public long getLong(int index)
+   {
+      if (!mPacked) return number(index).getBigDecimalValue().longValueExact();
+
+      checkIndex(index);
+
+      if ((mKind == LONGS) && ((mScales == null) || (mScales[index] == 0))) return mLongs[index];
+      if ((mKind == DOUBLES) && isInteger(index)) return (long) mDoubles[index];
+
+      return decimal(index).longValueExact();
+   }
+
+   /**
+    * Copy the numbers into a <code>double</code> array, each rounded to the
+    * nearest.
+    * 
+    * @return the values
+    */
+   public double[] toDoubleArray()
+   {
+      if (mPacked && (mKind == DOUBLES)) return Arrays.copyOf(mDoubles, mSize);
+
+      double[] values = new double[size()];
+
+      for (int i = 0; i < values.length; i++)
+      {
+         values[i] = getDouble(i);
+      }
+
+      return values;
+   }
+
+   /**
+    * Copy the numbers into a <code>long</code> array.
+    * 
+    * @return the values
+    * @throws ArithmeticException if a number has a non-zero fraction or is out
+    *                             of range
+    */
+   public long[] toLongArray()
+   {
+      if (mPacked && (mKind == LONGS) && (mScales == null)) return Arrays.copyOf(mLongs, mSize);
+
+      long[] values = new long[size()];
+
+      for (int i = 0; i < values.length; i++)
+      {
+         values[i] = getLong(i);
+      }
+
+      return values;
+   }
+
+   @Override
+   public void setValue(List<JSONValue> value)
+   {
+      if (value == null) throw new NullPointerException("Null value not allowed.  Use JSONNull instead.");
+
+      release();
+      super.setValue(value);
+   }
+
+   @Override
+   public Object getValue()
+   {
+      unpack();
+      return super.getValue();
+   }
+
+   @Override
+   public List<JSONValue> getListValue()
+   {
+      unpack();
+      return super.getListValue();
+   }
+
+   @Override
+   public JSONValue get(int index)
+   {
+      unpack();
+      return super.get(index);
+   }
+
+   @Override
+   public void set(int index, JSONValue value)
+   {
+      unpack();
+      super.set(index, value);
+   }
+
+   @Override
+   public JSONValue remove(int index)
+   {
+      unpack();
+      return super.remove(index);
+   }
+
+   @Override
+   public int size()
+   {
+      return mPacked ? mSize : super.size();
+   }
+
+   @Override
+   public Iterator<JSONValue> iterator()
+   {
+      unpack();
+      return super.iterator();
+   }
+
+   @Override
+   List<JSONValue> elements()
+   {
+      unpack();
+      return super.elements();
+   }
+
+   @Override
+   List<JSONValue> elementList()
+   {
+      unpack();
+      return super.elementList();
+   }
+
+   /**
+    * Create a prototype instance of the same type.
+    * 
+    * @return a new, empty <code>JSONNumberArray</code>
+    */
+   @Override
+   public JSONValue createPrototype()
+   {
+      return new JSONNumberArray();
+   }
+
+   /**
+    * Copy the elements of any <code>JSONArray</code>. Packed numbers are copied
+    * packed.
+    * 
+    * @param value the value to copy
+    */
+   @Override
+   public void copyValue(JSONValue value)
+   {
+      if (!(value instanceof JSONArray)) throw new RuntimeException("Can't assign a " + value.getClass().getName() + " to a " + getClass().getName());
+
+      if ((value instanceof JSONNumberArray) && ((JSONNumberArray) value).mPacked)
+      {
+         JSONNumberArray source = (JSONNumberArray) value;
+
+         super.setValue(new ArrayList<JSONValue>());
+         mPacked = true;
+         mKind = source.mKind;
+         mSize = source.mSize;
+         mLongs = (source.mLongs != null) ? source.mLongs.clone() : null;
+         mScales = (source.mScales != null) ? source.mScales.clone() : null;
+         mDoubles = (source.mDoubles != null) ? source.mDoubles.clone() : null;
+         mIntegers = (source.mIntegers != null) ? source.mIntegers.clone() : null;
+         mDecimals = (source.mDecimals != null) ? source.mDecimals.clone() : null;
+         return;
+      }
+
+      List<JSONValue> list = new ArrayList<JSONValue>();
+
+      for (JSONValue json : ((JSONArray) value).elementList())
+      {
+         list.add(JSONTree.deepCopy(json));
+      }
+
+      setValue(list);
+   }
+
+   @Override
+   public void read(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      unpack();
+      super.read(path, pbr);
+   }
+
+   @Override
+   void writeElements(String indent, Writer writer, boolean pretty) throws IOException
+   {
+      if (!mPacked)
+      {
+         super.writeElements(indent, writer, pretty);
+         return;
+      }
+
+      // the same layout as JSONArray
+      if (mSize == 0)
+      {
+         writer.write("[]");
+         return;
+      }
+
+      String newIndent = JSONContext.nextIndent(indent);
+
+      writer.write('[');
+      writer.write(JSONObject.EOL);
+
+      for (int i = 0; i < mSize; i++)
+      {
+         writer.write(newIndent);
+         writer.write(text(i));
+         if (i != mSize - 1) writer.write(',');
+         writer.write(JSONObject.EOL);
+      }
+
+      writer.write(indent);
+      writer.write(']');
+   }
+
+   /**
+    * Render a packed number as its <code>JSONValue</code> would.
+    * 
+    * @param index the index
+    * @return the text
+    */
+   private String text(int index)
+   {
+      switch (mKind)
+      {
+         case LONGS:
+            if ((mScales == null) || (mScales[index] == 0)) return Long.toString(mLongs[index]);
+            return BigDecimal.valueOf(mLongs[index], mScales[index]).toString();
+
+         case DOUBLES:
+            return isInteger(index) ? Long.toString((long) mDoubles[index]) : Double.toString(mDoubles[index]);
+
+         default:
+            return mDecimals[index].toString();
+      }
+   }
+}
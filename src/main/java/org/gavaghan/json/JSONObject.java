@@ -18,7 +18,14 @@ package org.gavaghan.json;
 import java.io.IOException;
 import java.io.PushbackReader;
 import java.io.Writer;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * A JSON object as defined by
@@ -37,6 +44,9 @@ public class JSONObject extends LinkedHashMap<String, JSONValue> implements JSON
    /** JSONValueFactory for reading from a Reader. */
    private JSONValueFactory mFactory;
 
+   /** Write cache state, or null if never rendered through the cache. */
+   private transient JSONWriteCache.Node mCache;
+
    /**
     * Create a new JSONObject.
     * 
@@ -100,9 +110,9 @@ public class JSONObject extends LinkedHashMap<String, JSONValue> implements JSON
 
       JSONObject source = (JSONObject) value.getValue();
 
-      for (String key : source.keySet())
+      for (Map.Entry<String, JSONValue> entry : source.memberSet())
       {
-         put(key, source.get(key));
+         put(entry.getKey(), entry.getValue());
       }
    }
 
@@ -120,6 +130,35 @@ public class JSONObject extends LinkedHashMap<String, JSONValue> implements JSON
 
    }
 
+   /**
+    * Create a deep copy of this instance that shares structure with this one
+    * until it is modified. The copy is created in O(1) and members are only
+    * copied along the paths that are visited. This instance must not be
+    * modified while the copy is in use.
+    * 
+    * @since 1.3
+    * 
+    * @return a copy-on-write view of this instance
+    */
+   public JSONObject copyOnWrite()
+   {
+      return new CopyOnWriteJSONObject(this);
+   }
+
+   /**
+    * Create an immutable copy of this instance that may be shared across
+    * threads without copying. Use <code>copyOnWrite()</code> on the result to
+    * get a mutable copy.
+    * 
+    * @since 1.3
+    * 
+    * @return a frozen copy of this instance
+    */
+   public JSONObject freeze()
+   {
+      return new FrozenJSONObject(this);
+   }
+
    /**
     * Read a JSON value (presumes the key has already been read) and set the
     * underlying value. There's generally no reason to call this method directly.
@@ -137,51 +176,78 @@ public class JSONObject extends LinkedHashMap<String, JSONValue> implements JSON
       char c = JSONValueFactory.demand(pbr);
       if (c != '{') throw new JSONException(path, "Failed to find '{' at start of JSON object.");
 
-      for (;;)
-      {
-         String key;
+      readMembers(path, pbr, mFactory);
+   }
 
-         // next is either a key or a closing brace
-         mFactory.skipWhitespace(pbr);
-         c = JSONValueFactory.demand(pbr);
+   /**
+    * Read the members of an object after its opening brace.
+    * 
+    * @param path    path to the value being read
+    * @param pbr     source reader
+    * @param factory the factory used to read member values
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   void readMembers(String path, PushbackReader pbr, JSONValueFactory factory) throws IOException, JSONException
+   {
+      factory.enter(path, pbr);
 
-         // is it a string?
-         if (c == '\"')
-         {
-            pbr.unread(c);
-            key = JSONString.readString(path, pbr);
-         }
-         // is it a closing brace?
-         else if (c == '}')
-         {
-            break;
-         }
-         // else, it's poorly formed
-         else
+      try
+      {
+         int maxMembers = factory.getMaxMembers();
+         int count = 0;
+         char c;
+
+         for (;;)
          {
+            String key;
+
+            // next is either a key or a closing brace
+            factory.skipWhitespace(pbr);
+            c = JSONValueFactory.demand(pbr);
+
+            // is it a string?
+            if (c == '\"')
+            {
+               if (++count > maxMembers) throw JSONValueFactory.tooMany(path, true, maxMembers);
+               key = JSONString.readStringBody(path, pbr);
+            }
+            // is it a closing brace?
+            else if (c == '}')
+            {
+               break;
+            }
+            // else, it's poorly formed
+            else
+            {
+               throw new JSONException(path, "JSON object is not grammatically correct.  Unexpected: " + c);
+            }
+
+            // next ought to be a colon
+            factory.skipWhitespace(pbr);
+            c = JSONValueFactory.demand(pbr);
+            if (c != ':') throw new JSONException(path + "." + key, "Expected ':' after key value");
+            factory.skipWhitespace(pbr);
+
+            // next, read a JSONValue
+            JSONValue value = factory.read(path + "." + key, pbr);
+
+            // add it to the map
+            put(key, value);
+
+            // next must be comma or close
+            factory.skipWhitespace(pbr);
+            c = JSONValueFactory.demand(pbr);
+
+            if (c == ',') continue;
+            if (c == '}') break;
+
             throw new JSONException(path, "JSON object is not grammatically correct.  Unexpected: " + c);
          }
-
-         // next ought to be a colon
-         mFactory.skipWhitespace(pbr);
-         c = JSONValueFactory.demand(pbr);
-         if (c != ':') throw new JSONException(path + "." + key, "Expected ':' after key value");
-         mFactory.skipWhitespace(pbr);
-
-         // next, read a JSONValue
-         JSONValue value = mFactory.read(path + "." + key, pbr);
-
-         // add it to the map
-         put(key, value);
-
-         // next must be comma or close
-         mFactory.skipWhitespace(pbr);
-         c = JSONValueFactory.demand(pbr);
-
-         if (c == ',') continue;
-         if (c == '}') break;
-
-         throw new JSONException(path, "JSON object is not grammatically correct.  Unexpected: " + c);
+      }
+      finally
+      {
+         factory.exit(pbr);
       }
    }
 
@@ -196,45 +262,221 @@ public class JSONObject extends LinkedHashMap<String, JSONValue> implements JSON
    @Override
    public void write(String indent, Writer writer, boolean pretty) throws IOException
    {
-      String newIndent = indent + "   ";
+      if (JSONWriteCache.isEnabled() && JSONWriteCache.write(this, indent, writer, pretty)) return;
 
+      writeMembers(indent, writer, pretty);
+   }
+
+   /**
+    * Render the members of this object, bypassing any cached rendering.
+    * 
+    * @param indent indent padding
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException
+    */
+   void writeMembers(String indent, Writer writer, boolean pretty) throws IOException
+   {
       // if JSONObject has been subtyped, included the class name in the JSON
       if (this instanceof TypedJSONObject)
       {
          ((TypedJSONObject) this).getType();
       }
 
-      if (size() == 0)
-      {
-         writer.write("{}");
-      }
-      else
-      {
-         writer.write('{');
+      JSONTree.writeObject(this, indent, writer, pretty);
+   }
+
+   /**
+    * Get the members without counting it as a modification.
+    * 
+    * @return the entry set
+    */
+   Set<Map.Entry<String, JSONValue>> memberSet()
+   {
+      return (getClass() == JSONObject.class) ? super.entrySet() : entrySet();
+   }
 
-         int count = 1;
+   /**
+    * Get the stamp of the last modification.
+    * 
+    * @return the stamp, or 0 if never rendered through the cache
+    */
+   long getStamp()
+   {
+      JSONWriteCache.Node node = mCache;
+      return (node == null) ? 0 : node.mStamp;
+   }
 
-         if (pretty) writer.write(EOL);
+   /**
+    * Start stamping modifications because this object is part of a cached
+    * rendering.
+    */
+   void observe()
+   {
+      if (mCache == null) mCache = new JSONWriteCache.Node();
+   }
 
-         for (String key : keySet())
-         {
-            if (pretty) writer.write(newIndent);
-            writer.write('\"');
-            writer.write(key);
-            writer.write("\":");
-            if (pretty) writer.write(" ");
+   /**
+    * Stamp a modification if this object may be part of a cached rendering.
+    */
+   private void touch()
+   {
+      JSONWriteCache.Node node = mCache;
+      if (node != null) node.mStamp = JSONWriteCache.tick();
+   }
 
-            get(key).write(newIndent, writer, pretty);
+   /**
+    * Get a cached rendering.
+    * 
+    * @param pretty 'true' for the pretty rendering, 'false' for flat
+    * @return the cache entry or null
+    */
+   JSONWriteCache.Entry getCache(boolean pretty)
+   {
+      JSONWriteCache.Node node = mCache;
+      return (node == null) ? null : node.get(pretty);
+   }
 
-            if (count != size()) writer.write(',');
+   /**
+    * Replace a cached rendering.
+    * 
+    * @param pretty 'true' for the pretty rendering, 'false' for flat
+    * @param entry  the new cache entry
+    */
+   void setCache(boolean pretty, JSONWriteCache.Entry entry)
+   {
+      observe();
+      mCache.set(pretty, entry);
+   }
 
-            if (pretty) writer.write(EOL);
-            count++;
+   @Override
+   public Object clone()
+   {
+      // a copy must not share cached renderings with this object
+      JSONObject copy = (JSONObject) super.clone();
+      copy.mCache = null;
+      return copy;
+   }
+
+   @Override
+   public JSONValue put(String key, JSONValue value)
+   {
+      touch();
+      return super.put(key, value);
+   }
+
+   @Override
+   public void putAll(Map<? extends String, ? extends JSONValue> m)
+   {
+      touch();
+      super.putAll(m);
+   }
+
+   @Override
+   public JSONValue remove(Object key)
+   {
+      touch();
+      return super.remove(key);
+   }
+
+   @Override
+   public boolean remove(Object key, Object value)
+   {
+      touch();
+      return super.remove(key, value);
+   }
+
+   @Override
+   public void clear()
+   {
+      touch();
+      super.clear();
+   }
+
+   @Override
+   public Set<String> keySet()
+   {
+      if (!JSONWriteCache.isEnabled()) return super.keySet();
+      return new SetView<String>(super.keySet());
+   }
+
+   @Override
+   public Collection<JSONValue> values()
+   {
+      if (!JSONWriteCache.isEnabled()) return super.values();
+      return new View<JSONValue>(super.values());
+   }
+
+   @Override
+   public Set<Map.Entry<String, JSONValue>> entrySet()
+   {
+      // modifications through views only need stamping while the cache is on
+      if (!JSONWriteCache.isEnabled()) return super.entrySet();
+
+      return new SetView<Map.Entry<String, JSONValue>>(super.entrySet())
+      {
+         @Override
+         Map.Entry<String, JSONValue> wrap(Map.Entry<String, JSONValue> entry)
+         {
+            return new Member(entry);
          }
+      };
+   }
 
-         writer.write(indent);
-         writer.write('}');
-      }
+   @Override
+   public void replaceAll(BiFunction<? super String, ? super JSONValue, ? extends JSONValue> function)
+   {
+      touch();
+      super.replaceAll(function);
+   }
+
+   @Override
+   public JSONValue putIfAbsent(String key, JSONValue value)
+   {
+      touch();
+      return super.putIfAbsent(key, value);
+   }
+
+   @Override
+   public boolean replace(String key, JSONValue oldValue, JSONValue newValue)
+   {
+      touch();
+      return super.replace(key, oldValue, newValue);
+   }
+
+   @Override
+   public JSONValue replace(String key, JSONValue value)
+   {
+      touch();
+      return super.replace(key, value);
+   }
+
+   @Override
+   public JSONValue computeIfAbsent(String key, Function<? super String, ? extends JSONValue> mappingFunction)
+   {
+      touch();
+      return super.computeIfAbsent(key, mappingFunction);
+   }
+
+   @Override
+   public JSONValue computeIfPresent(String key, BiFunction<? super String, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      touch();
+      return super.computeIfPresent(key, remappingFunction);
+   }
+
+   @Override
+   public JSONValue compute(String key, BiFunction<? super String, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      touch();
+      return super.compute(key, remappingFunction);
+   }
+
+   @Override
+   public JSONValue merge(String key, JSONValue value, BiFunction<? super JSONValue, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      touch();
+      return super.merge(key, value, remappingFunction);
    }
 
    /**
@@ -263,4 +505,179 @@ public class JSONObject extends LinkedHashMap<String, JSONValue> implements JSON
    {
       return AbstractJSONValue.toString(this, false);
    }
+
+   /**
+    * A view of the keys, values or members that stamps every modification
+    * made through it, including through its iterators. Only handed out while
+    * the write cache is enabled.
+    * 
+    * @param <E> the element type
+    */
+   private class View<E> extends AbstractCollection<E>
+   {
+      /** The view of the underlying map. */
+      final Collection<E> mView;
+
+      /**
+       * Create a new View.
+       * 
+       * @param view the view of the underlying map
+       */
+      View(Collection<E> view)
+      {
+         mView = view;
+      }
+
+      /**
+       * Wrap an element on its way out of an iterator.
+       * 
+       * @param element the element
+       * @return the element to hand out
+       */
+      E wrap(E element)
+      {
+         return element;
+      }
+
+      @Override
+      public int size()
+      {
+         return mView.size();
+      }
+
+      @Override
+      public boolean contains(Object o)
+      {
+         return mView.contains(o);
+      }
+
+      @Override
+      public boolean remove(Object o)
+      {
+         touch();
+         return mView.remove(o);
+      }
+
+      @Override
+      public void clear()
+      {
+         touch();
+         mView.clear();
+      }
+
+      @Override
+      public Iterator<E> iterator()
+      {
+         final Iterator<E> iter = mView.iterator();
+
+         return new Iterator<E>()
+         {
+            @Override
+            public boolean hasNext()
+            {
+               return iter.hasNext();
+            }
+
+            @Override
+            public E next()
+            {
+               return wrap(iter.next());
+            }
+
+            @Override
+            public void remove()
+            {
+               touch();
+               iter.remove();
+            }
+         };
+      }
+   }
+
+   /**
+    * A <code>View</code> of the keys or members.
+    * 
+    * @param <E> the element type
+    */
+   private class SetView<E> extends View<E> implements Set<E>
+   {
+      /**
+       * Create a new SetView.
+       * 
+       * @param view the view of the underlying map
+       */
+      SetView(Set<E> view)
+      {
+         super(view);
+      }
+
+      @Override
+      public boolean equals(Object o)
+      {
+         return (o == this) || mView.equals(o);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return mView.hashCode();
+      }
+   }
+
+   /**
+    * A member handed out by the <code>entrySet()</code> view that stamps
+    * <code>setValue()</code> as a modification.
+    */
+   private class Member implements Map.Entry<String, JSONValue>
+   {
+      /** The underlying entry. */
+      private final Map.Entry<String, JSONValue> mEntry;
+
+      /**
+       * Create a new Member.
+       * 
+       * @param entry the underlying entry
+       */
+      Member(Map.Entry<String, JSONValue> entry)
+      {
+         mEntry = entry;
+      }
+
+      @Override
+      public String getKey()
+      {
+         return mEntry.getKey();
+      }
+
+      @Override
+      public JSONValue getValue()
+      {
+         return mEntry.getValue();
+      }
+
+      @Override
+      public JSONValue setValue(JSONValue value)
+      {
+         touch();
+         return mEntry.setValue(value);
+      }
+
+      @Override
+      public boolean equals(Object o)
+      {
+         return mEntry.equals(o);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return mEntry.hashCode();
+      }
+
+      @Override
+      public String toString()
+      {
+         return mEntry.toString();
+      }
+   }
 }
@@ -0,0 +1,576 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A non-blocking parser that is pushed input as it arrives instead of pulling
+ * it from a <code>Reader</code>. Bytes are passed to <code>feed()</code> in
+ * chunks of any size, split anywhere, even inside a UTF-8 sequence. Each call
+ * returns as soon as the chunk is consumed. Every complete top-level value
+ * found so far is queued and can be taken with <code>poll()</code>. Any
+ * number of values may follow one another, separated by whitespace or
+ * nothing at all when the boundary is clear, as with newline-delimited JSON.
+ * A parser can also be asked to stream the elements of top-level arrays one
+ * by one instead of the arrays themselves, so a client can handle the first
+ * element of a large array before the rest has arrived. Call <code>endOfInput()</code> after the last chunk to complete a trailing
+ * number or literal and to check that nothing was left unfinished.
+ * </p>
+ * <p>
+ * While a value is incomplete, its characters are buffered and a small state
+ * machine follows its nesting, strings and (for a
+ * <code>CommentedJSONValueFactory</code>) comments. When the value completes,
+ * the factory parses the buffered characters exactly as
+ * <code>JSONValueFactory.read()</code> would. The grammar, the error messages
+ * and every extension point (<code>onObject()</code>, <code>onString()</code>
+ * and the other callbacks, and <code>recast()</code>) are therefore the
+ * same. The callbacks run inside the <code>feed()</code> call that completes
+ * the value.
+ * </p>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class JSONPushParser
+{
+   /** Not in a comment. */
+   static private final int NO_COMMENT = 0;
+
+   /** After a '/' that may start a comment. */
+   static private final int SLASH = 1;
+
+   /** In a line comment. */
+   static private final int LINE_COMMENT = 2;
+
+   /** In a block comment. */
+   static private final int BLOCK_COMMENT = 3;
+
+   /** After a '*' in a block comment. */
+   static private final int BLOCK_STAR = 4;
+
+   /** Not streaming an array. */
+   static private final int NO_ARRAY = 0;
+
+   /** After the '[' of a streamed array. */
+   static private final int ARRAY_OPEN = 1;
+
+   /** After an element of a streamed array. */
+   static private final int ARRAY_ELEMENT = 2;
+
+   /** After a ',' in a streamed array. */
+   static private final int ARRAY_COMMA = 3;
+
+   /** Largest buffer (in characters) kept between values. */
+   static private final int MAX_IDLE_CAPACITY = 64 * 1024;
+
+   /** The factory that parses complete values. */
+   private final JSONValueFactory mFactory;
+
+   /** 'true' if the factory accepts comments. */
+   private final boolean mComments;
+
+   /** 'true' to deliver the elements of top-level arrays. */
+   private final boolean mStreamArrays;
+
+   /** State of a streamed array. */
+   private int mArray = NO_ARRAY;
+
+   /** Decoder of the input bytes. */
+   private final CharsetDecoder mDecoder;
+
+   /** Bytes of an incomplete UTF-8 sequence from the previous chunk. */
+   private ByteBuffer mCarry = ByteBuffer.allocate(16);
+
+   /** Decoded characters. */
+   private char[] mBuf = new char[1024];
+
+   /** Number of characters in the buffer. */
+   private int mLength;
+
+   /** Position of the next character to scan. */
+   private int mScan;
+
+   /** Start of the current value or -1 between values. */
+   private int mStart = -1;
+
+   /** Container nesting depth of the current value. */
+   private int mDepth;
+
+   /** 'true' while in a string. */
+   private boolean mInString;
+
+   /** 'true' after a backslash in a string. */
+   private boolean mEscape;
+
+   /** 'true' while in a top-level number or literal. */
+   private boolean mInScalar;
+
+   /** Comment state. */
+   private int mComment = NO_COMMENT;
+
+   /** 'true' once <code>endOfInput()</code> has been called. */
+   private boolean mEnded;
+
+   /** Completed values not yet polled. */
+   private final ArrayDeque<JSONValue> mValues = new ArrayDeque<JSONValue>();
+
+   /**
+    * Create a new <code>JSONPushParser</code> using
+    * <code>JSONValueFactory.DEFAULT</code>.
+    */
+   public JSONPushParser()
+   {
+      this(JSONValueFactory.DEFAULT);
+   }
+
+   /**
+    * Create a new <code>JSONPushParser</code>.
+    * 
+    * @param factory the factory that creates values
+    */
+   public JSONPushParser(JSONValueFactory factory)
+   {
+      this(factory, false);
+   }
+
+   /**
+    * Create a new <code>JSONPushParser</code>.
+    * 
+    * @param factory      the factory that creates values
+    * @param streamArrays 'true' to deliver the elements of each top-level array
+    *                     instead of the array itself; other top-level values
+    *                     are delivered as usual
+    */
+   public JSONPushParser(JSONValueFactory factory, boolean streamArrays)
+   {
+      if (factory == null) throw new NullPointerException("Null factory");
+
+      mFactory = factory;
+      mStreamArrays = streamArrays;
+      mComments = (factory instanceof CommentedJSONValueFactory);
+      mDecoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+   }
+
+   /**
+    * Push UTF-8 input. All remaining bytes of the buffer are consumed.
+    * 
+    * @param bytes the input
+    * @throws JSONException if a value completed by this input is malformed
+    */
+   public void feed(ByteBuffer bytes) throws JSONException
+   {
+      ensureOpen();
+      compact();
+
+      ByteBuffer input = bytes;
+
+      // finish a sequence split across chunks
+      if (mCarry.position() > 0)
+      {
+         if (mCarry.remaining() < bytes.remaining()) mCarry = ByteBuffer.allocate(mCarry.position() + bytes.remaining()).put((ByteBuffer) mCarry.flip());
+         mCarry.put(bytes);
+         mCarry.flip();
+         input = mCarry;
+      }
+
+      decode(input, false);
+
+      if (input == mCarry) mCarry.compact();
+      else if (input.hasRemaining()) mCarry.put(input);
+
+      scan();
+   }
+
+   /**
+    * Push characters that have already been decoded.
+    * 
+    * @param chars the input
+    * @throws JSONException if a value completed by this input is malformed
+    */
+   public void feed(CharSequence chars) throws JSONException
+   {
+      ensureOpen();
+      compact();
+
+      int count = chars.length();
+      ensureCapacity(count);
+
+      for (int i = 0; i < count; i++)
+      {
+         mBuf[mLength++] = chars.charAt(i);
+      }
+
+      scan();
+   }
+
+   /**
+    * Signal that there is no more input. A trailing number or literal is
+    * completed.
+    * 
+    * @throws JSONException if the input ended inside a value or the last value
+    *                       is malformed
+    */
+   public void endOfInput() throws JSONException
+   {
+      ensureOpen();
+      compact();
+
+      // an incomplete sequence is replaced just as InputStreamReader does
+      mCarry.flip();
+      decode(mCarry, true);
+      mCarry.clear();
+
+      scan();
+      mEnded = true;
+
+      if (mInScalar)
+      {
+         // the number reader needs a character after the number
+         ensureCapacity(1);
+         mBuf[mLength++] = ' ';
+         mInScalar = false;
+         complete(mLength);
+      }
+      else if ((mStart >= 0) || (mArray != NO_ARRAY))
+      {
+         throw new JSONException("$", "Out of data while reading JSON value.");
+      }
+      else if ((mComment == SLASH) || (mComment == BLOCK_COMMENT) || (mComment == BLOCK_STAR))
+      {
+         throw new JSONException("$", "Out of data while reading comment.");
+      }
+   }
+
+   /**
+    * Take the next complete value.
+    * 
+    * @return the value or null if none is ready
+    */
+   public JSONValue poll()
+   {
+      return mValues.poll();
+   }
+
+   /**
+    * Get the number of complete values waiting to be polled.
+    * 
+    * @return the count
+    */
+   public int available()
+   {
+      return mValues.size();
+   }
+
+   /**
+    * Determine if <code>endOfInput()</code> has been called.
+    * 
+    * @return 'true' if no more input will be accepted
+    */
+   public boolean isEnded()
+   {
+      return mEnded;
+   }
+
+   /**
+    * Assert input is still accepted.
+    */
+   private void ensureOpen()
+   {
+      if (mEnded) throw new IllegalStateException("Input has already ended");
+   }
+
+   /**
+    * Drop characters before the current value.
+    */
+   private void compact()
+   {
+      if (mStart < 0)
+      {
+         mLength = 0;
+         mScan = 0;
+         if (mBuf.length > MAX_IDLE_CAPACITY) mBuf = new char[1024];
+      }
+      else if (mStart > 0)
+      {
+         System.arraycopy(mBuf, mStart, mBuf, 0, mLength - mStart);
+         mLength -= mStart;
+         mScan -= mStart;
+         mStart = 0;
+      }
+   }
+
+   /**
+    * Make room for more characters.
+    * 
+    * @param count number of characters about to be added
+    */
+   private void ensureCapacity(int count)
+   {
+      if (mLength + count > mBuf.length) mBuf = Arrays.copyOf(mBuf, Math.max(2 * mBuf.length, mLength + count));
+   }
+
+   /**
+    * Decode bytes into the buffer. An incomplete sequence at the end of the
+    * input is left in it.
+    * 
+    * @param input the bytes
+    * @param flush 'true' at the end of input
+    */
+   private void decode(ByteBuffer input, boolean flush)
+   {
+      for (;;)
+      {
+         ensureCapacity(Math.max(16, input.remaining()));
+
+         CharBuffer output = CharBuffer.wrap(mBuf, mLength, mBuf.length - mLength);
+         CoderResult result = mDecoder.decode(input, output, flush);
+         if (flush && result.isUnderflow()) result = mDecoder.flush(output);
+         mLength = output.position();
+
+         if (result.isUnderflow()) break;
+      }
+
+      if (flush) mDecoder.reset();
+   }
+
+   /**
+    * Follow comments.
+    * 
+    * @param c the next character
+    * @return 'true' if the character was part of a comment
+    * @throws JSONException on a stray '/'
+    */
+   private boolean scanComment(char c) throws JSONException
+   {
+      switch (mComment)
+      {
+         case SLASH:
+            if (c == '*') mComment = BLOCK_COMMENT;
+            else if (c == '/') mComment = LINE_COMMENT;
+            else if (mStart < 0) throw new JSONException("$", "Unexpected character between values: /");
+            else
+            {
+               // not a comment; let the factory report it
+               mComment = NO_COMMENT;
+               return false;
+            }
+            return true;
+         case LINE_COMMENT:
+            if ((c == '\n') || (c == '\r')) mComment = NO_COMMENT;
+            return true;
+         case BLOCK_COMMENT:
+            if (c == '*') mComment = BLOCK_STAR;
+            return true;
+         default:
+            if (c == '/') mComment = NO_COMMENT;
+            else if (c != '*') mComment = BLOCK_COMMENT;
+            return true;
+      }
+   }
+
+   /**
+    * Scan newly added characters for the ends of values.
+    * 
+    * @throws JSONException if a completed value is malformed
+    */
+   private void scan() throws JSONException
+   {
+      char[] buf = mBuf;
+      int length = mLength;
+
+      for (int i = mScan; i < length; i++)
+      {
+         char c = buf[i];
+
+         if ((mComment != NO_COMMENT) && scanComment(c)) continue;
+
+         if (mInString)
+         {
+            if (mEscape) mEscape = false;
+            else if (c == '\\') mEscape = true;
+            else if (c == '\"')
+            {
+               mInString = false;
+               if (mDepth == 0) complete(i + 1);
+            }
+            continue;
+         }
+
+         if (mInScalar)
+         {
+            if (!isDelimiter(c)) continue;
+
+            // include the delimiter so the number reader sees where it ends
+            mInScalar = false;
+            complete(i + 1);
+         }
+
+         if (mDepth > 0)
+         {
+            switch (c)
+            {
+               case '\"':
+                  mInString = true;
+                  break;
+               case '{':
+               case '[':
+                  mDepth++;
+                  break;
+               case '}':
+               case ']':
+                  if (--mDepth == 0) complete(i + 1);
+                  break;
+               case '/':
+                  if (mComments) mComment = SLASH;
+                  break;
+            }
+            continue;
+         }
+
+         // between values
+         if (mFactory.isWhitespace(c)) continue;
+
+         if ((c == '/') && mComments)
+         {
+            mComment = SLASH;
+            continue;
+         }
+
+         if (mArray != NO_ARRAY)
+         {
+            if (scanArray(c)) continue;
+         }
+         else if ((c == '[') && mStreamArrays)
+         {
+            mArray = ARRAY_OPEN;
+            continue;
+         }
+
+         switch (c)
+         {
+            case '{':
+            case '[':
+               mDepth = 1;
+               break;
+            case '\"':
+               mInString = true;
+               break;
+            case '}':
+            case ']':
+            case ',':
+            case ':':
+               throw new JSONException("$", "Unexpected character between values: " + c);
+            default:
+               mInScalar = true;
+               break;
+         }
+
+         mStart = i;
+      }
+
+      mScan = length;
+   }
+
+   /**
+    * Follow the punctuation of a streamed array.
+    * 
+    * @param c the next character outside of any element
+    * @return 'true' if the character was punctuation
+    * @throws JSONException if the punctuation is misplaced
+    */
+   private boolean scanArray(char c) throws JSONException
+   {
+      if (c == ']')
+      {
+         if (mArray == ARRAY_COMMA) throw new JSONException("$", "Expected element after ',' in JSON array.");
+         mArray = NO_ARRAY;
+         return true;
+      }
+
+      if (mArray == ARRAY_ELEMENT)
+      {
+         if (c != ',') throw new JSONException("$", "Expected ',' or ']' after element in JSON array.");
+         mArray = ARRAY_COMMA;
+         return true;
+      }
+
+      if (c == ',') throw new JSONException("$", "Unexpected ',' in JSON array.");
+      return false;
+   }
+
+   /**
+    * Determine if a character ends a number or literal.
+    * 
+    * @param c the character
+    * @return 'true' if it can't be part of one
+    */
+   private boolean isDelimiter(char c)
+   {
+      switch (c)
+      {
+         case '{':
+         case '}':
+         case '[':
+         case ']':
+         case ',':
+         case ':':
+         case '\"':
+         case '/':
+            return true;
+         default:
+            return mFactory.isWhitespace(c);
+      }
+   }
+
+   /**
+    * Parse a complete value and queue it.
+    * 
+    * @param end end of the value's characters in the buffer
+    * @throws JSONException if the value is malformed
+    */
+   private void complete(int end) throws JSONException
+   {
+      int start = mStart;
+      mStart = -1;
+
+      if (mArray != NO_ARRAY) mArray = ARRAY_ELEMENT;
+
+      try
+      {
+         JSONPushbackReader pbr = new JSONPushbackReader(mBuf, start, end - start, mFactory.getPushbackBufferSize());
+         JSONValue value = mFactory.readDocument(pbr);
+         if (value != null) mValues.add(value);
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to read buffer", exc);
+      }
+   }
+}
@@ -0,0 +1,625 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+
+/**
+ * <p>
+ * A <code>PushbackReader</code> tuned for parsing. Unlike its superclass it is
+ * not synchronized, it reads the underlying <code>Reader</code> in large
+ * blocks, and it lets the parser scan its buffer directly, which is how
+ * <code>JSONValueFactory.skipWhitespace()</code> passes over runs of
+ * whitespace in bulk.
+ * </p>
+ * <p>
+ * The buffer keeps a reserve of already-read characters in front of the read
+ * position so that up to <code>size</code> characters can always be pushed
+ * back. A reader over a <code>char[]</code> uses the array in place and only
+ * copies it if a pushed back character differs from the one that was read.
+ * </p>
+ * <p>
+ * <code>JSONValueFactory.read(Reader)</code> creates one of these
+ * automatically. Since that <code>Reader</code> belongs to the caller, who
+ * may go on to read another document from it, only the characters the parser
+ * uses are taken from it: a block is read and the unused part handed back
+ * with <code>mark()</code> and <code>reset()</code> when the reader supports
+ * them, and otherwise characters are read one at a time. Instances are not
+ * thread-safe.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONPushbackReader extends PushbackReader
+{
+   /** Size of each read from the underlying reader. */
+   static private final int BLOCK_SIZE = 8192;
+
+   /** Largest scratch builder (in characters) kept between strings. */
+   static private final int MAX_SCRATCH_CAPACITY = 16 * 1024;
+
+   /** The underlying reader or null if reading from an array. */
+   private Reader mIn;
+
+   /** The buffer. */
+   private char[] mBuf;
+
+   /** Position of the next character to read. */
+   private int mPos;
+
+   /** End of valid characters in the buffer. */
+   private int mLimit;
+
+   /** Offset in the input of the first character of the buffer. */
+   private long mBase;
+
+   /** Number of characters that must be available for pushback. */
+   private int mReserve;
+
+   /** 'true' if <code>mBuf</code> belongs to the caller. */
+   private boolean mShared;
+
+   /** 'true' once closed. */
+   private boolean mClosed;
+
+   /** 'false' if characters not used must be left in the underlying reader. */
+   private boolean mReadAhead = true;
+
+   /** 'true' if the underlying reader is marked at the start of the block. */
+   private boolean mMarked;
+
+   /** Reusable builder for string values. */
+   private StringBuilder mScratch;
+
+   /** Number of objects and arrays currently open. */
+   private int mDepth;
+
+   /** Number of characters that may still be read from the underlying reader. */
+   private long mAllowance = Long.MAX_VALUE;
+
+   /** 'true' if input was cut off because it exceeded the allowance. */
+   private boolean mTruncated;
+
+   /** Longest string or key allowed. */
+   private int mMaxStringLength = Integer.MAX_VALUE;
+
+   /** Longest number allowed. */
+   private int mMaxNumberLength = Integer.MAX_VALUE;
+
+   /**
+    * Create a new <code>JSONPushbackReader</code>.
+    * 
+    * @param in   the reader to read from
+    * @param size the pushback buffer size
+    */
+   public JSONPushbackReader(Reader in, int size)
+   {
+      super(in, 1);
+
+      if (size <= 0) throw new IllegalArgumentException("size <= 0");
+
+      mIn = in;
+      mReserve = size;
+      mBuf = new char[size + BLOCK_SIZE];
+      mPos = size;
+      mLimit = size;
+      mBase = -size;
+   }
+
+   /**
+    * Create a new <code>JSONPushbackReader</code> over characters in an array.
+    * The array is not copied and must not be modified while it's being read.
+    * 
+    * @param buf    array holding the characters
+    * @param offset start of the characters
+    * @param length number of characters
+    * @param size   the pushback buffer size
+    */
+   public JSONPushbackReader(char[] buf, int offset, int length, int size)
+   {
+      super(new CharArrayReader(buf, offset, length), 1);
+
+      if (size <= 0) throw new IllegalArgumentException("size <= 0");
+      if ((offset < 0) || (length < 0) || (offset + length > buf.length)) throw new IndexOutOfBoundsException();
+
+      mReserve = size;
+      mBuf = buf;
+      mPos = offset;
+      mLimit = offset + length;
+      mBase = -offset;
+      mShared = true;
+   }
+
+   /**
+    * Create a new <code>JSONPushbackReader</code> over a string.
+    * 
+    * @param str  the string to read
+    * @param size the pushback buffer size
+    */
+   public JSONPushbackReader(String str, int size)
+   {
+      this(str.toCharArray(), 0, str.length(), size);
+   }
+
+   /**
+    * Create a detached <code>JSONPushbackReader</code> for a
+    * <code>JSONContext</code>. It reads nothing until it's attached.
+    */
+   JSONPushbackReader()
+   {
+      super(new CharArrayReader(new char[0]), 1);
+
+      mReserve = 1;
+      mBuf = new char[1 + BLOCK_SIZE];
+      mPos = 1;
+      mLimit = 1;
+      mBase = -1;
+      mClosed = true;
+   }
+
+   /**
+    * Start reading a new underlying reader, keeping the buffer if it's large
+    * enough.
+    * 
+    * @param in        the reader to read from
+    * @param size      the pushback buffer size
+    * @param readAhead 'true' if characters may be read past those used, or
+    *                  'false' if they must be left in 'in' for its owner
+    */
+   void attach(Reader in, int size, boolean readAhead)
+   {
+      if (size <= 0) throw new IllegalArgumentException("size <= 0");
+
+      if (mShared || (mBuf.length < size + BLOCK_SIZE)) mBuf = new char[size + BLOCK_SIZE];
+
+      this.in = in;
+      mIn = in;
+      mReserve = size;
+      mPos = size;
+      mLimit = size;
+      mBase = -size;
+      mShared = false;
+      mClosed = false;
+      mReadAhead = readAhead;
+      mMarked = false;
+      mDepth = 0;
+      mAllowance = Long.MAX_VALUE;
+      mTruncated = false;
+      mMaxStringLength = Integer.MAX_VALUE;
+      mMaxNumberLength = Integer.MAX_VALUE;
+   }
+
+   /**
+    * Stop reading without closing the underlying reader. If the reader was
+    * attached without read ahead, characters read from it but not used are
+    * handed back to it; otherwise any left in the buffer are discarded.
+    * 
+    * @throws IOException if the underlying reader can't be reset
+    */
+   void detach() throws IOException
+   {
+      try
+      {
+         if (mMarked && (mIn != null))
+         {
+            // the block starts at the reserve; skip whatever was used of it
+            long used = Math.max(0, mPos - mReserve);
+
+            mIn.reset();
+
+            while (used > 0)
+            {
+               long count = mIn.skip(used);
+               if (count <= 0) throw new IOException("Unable to skip characters already read");
+               used -= count;
+            }
+         }
+      }
+      finally
+      {
+         this.in = null;
+         mIn = null;
+         mPos = mReserve;
+         mLimit = mReserve;
+         mClosed = true;
+         mMarked = false;
+         mReadAhead = true;
+      }
+   }
+
+   /**
+    * Get the number of objects and arrays currently open.
+    * 
+    * @return the nesting depth
+    */
+   int getDepth()
+   {
+      return mDepth;
+   }
+
+   /**
+    * Set the number of objects and arrays currently open.
+    * 
+    * @param depth the nesting depth
+    */
+   void setDepth(int depth)
+   {
+      mDepth = depth;
+   }
+
+   /**
+    * Get the number of characters read so far, less any pushed back.
+    * 
+    * @return the offset of the next character to read
+    */
+   long getOffset()
+   {
+      return mBase + mPos;
+   }
+
+   /**
+    * Set the limits for reading a document. Characters already in the buffer
+    * count against the input length.
+    * 
+    * @param maxInputLength  most characters that may be read from here on
+    * @param maxStringLength longest string or key allowed
+    * @param maxNumberLength longest number allowed
+    */
+   void setLimits(long maxInputLength, int maxStringLength, int maxNumberLength)
+   {
+      int buffered = mLimit - mPos;
+
+      if (buffered > maxInputLength)
+      {
+         mLimit = mPos + (int) maxInputLength;
+         mAllowance = 0;
+         mTruncated = true;
+      }
+      else
+      {
+         mAllowance = maxInputLength - buffered;
+         mTruncated = false;
+      }
+
+      mMaxStringLength = maxStringLength;
+      mMaxNumberLength = maxNumberLength;
+   }
+
+   /**
+    * Determine if input was cut off because it exceeded the limit set by
+    * <code>setLimits()</code>.
+    * 
+    * @return 'true' if input was cut off
+    */
+   boolean isTruncated()
+   {
+      return mTruncated;
+   }
+
+   /**
+    * Get the longest string or key allowed.
+    * 
+    * @return the maximum length
+    */
+   int getMaxStringLength()
+   {
+      return mMaxStringLength;
+   }
+
+   /**
+    * Get the longest number allowed.
+    * 
+    * @return the maximum length
+    */
+   int getMaxNumberLength()
+   {
+      return mMaxNumberLength;
+   }
+
+   /**
+    * Get an empty builder for accumulating a string value. The same builder is
+    * returned each time, so it must be finished with before the next call.
+    * 
+    * @return an empty builder
+    */
+   StringBuilder scratch()
+   {
+      if ((mScratch == null) || (mScratch.capacity() > MAX_SCRATCH_CAPACITY)) mScratch = new StringBuilder(64);
+      else mScratch.setLength(0);
+
+      return mScratch;
+   }
+
+   /**
+    * Assert the reader is open.
+    * 
+    * @throws IOException if closed
+    */
+   private void ensureOpen() throws IOException
+   {
+      if (mClosed) throw new IOException("Stream closed");
+   }
+
+   /**
+    * Refill the buffer, keeping a reserve of read characters in front of it.
+    * 
+    * @return 'false' at end of input
+    * @throws IOException on read failure
+    */
+   private boolean fill() throws IOException
+   {
+      ensureOpen();
+      if (mIn == null) return false;
+
+      // keep the last characters read for pushback
+      int keep = Math.min(mReserve, mPos);
+      System.arraycopy(mBuf, mPos - keep, mBuf, mReserve - keep, keep);
+      mBase += mPos - mReserve;
+      mPos = mReserve;
+
+      int max = mBuf.length - mReserve;
+
+      // don't take characters the owner of the reader may still want
+      if (!mReadAhead)
+      {
+         mMarked = mIn.markSupported();
+
+         if (mMarked) mIn.mark(max);
+         else max = 1;
+      }
+
+      int count;
+      do
+      {
+         count = mIn.read(mBuf, mReserve, max);
+      }
+      while (count == 0);
+
+      // stop short of the allowance
+      if (count > mAllowance)
+      {
+         count = (int) mAllowance;
+         mTruncated = true;
+      }
+
+      if (count <= 0)
+      {
+         mLimit = mReserve;
+         mIn = null;
+         return false;
+      }
+
+      mAllowance -= count;
+      mLimit = mReserve + count;
+      return true;
+   }
+
+   /**
+    * Get the buffer for direct scanning. Characters from
+    * <code>getPosition()</code> up to <code>getLimit()</code> are unread.
+    * 
+    * @return the buffer
+    */
+   char[] getBuffer()
+   {
+      return mBuf;
+   }
+
+   /**
+    * Get the position of the next character to read.
+    * 
+    * @return the buffer position
+    */
+   int getPosition()
+   {
+      return mPos;
+   }
+
+   /**
+    * Get the end of the valid characters in the buffer.
+    * 
+    * @return the buffer limit
+    */
+   int getLimit()
+   {
+      return mLimit;
+   }
+
+   /**
+    * Move the read position after scanning the buffer directly.
+    * 
+    * @param pos the new buffer position (no greater than the limit)
+    */
+   void setPosition(int pos)
+   {
+      mPos = pos;
+   }
+
+   /**
+    * Make sure there is at least one character in the buffer.
+    * 
+    * @return 'false' at end of input
+    * @throws IOException on read failure
+    */
+   boolean ensureAvailable() throws IOException
+   {
+      return (mPos < mLimit) || fill();
+   }
+
+   /**
+    * Skip whitespace, scanning the buffer directly.
+    * 
+    * @param ascii   whitespace flags for characters below 128
+    * @param unicode 'true' to test characters from 128 up with
+    *                <code>Character.isWhitespace()</code>
+    * @throws IOException on read failure
+    */
+   void skipWhitespace(boolean[] ascii, boolean unicode) throws IOException
+   {
+      for (;;)
+      {
+         char[] buf = mBuf;
+         int pos = mPos;
+         int limit = mLimit;
+
+         while (pos < limit)
+         {
+            char c = buf[pos];
+
+            if ((c < 128) ? !ascii[c] : (!unicode || !Character.isWhitespace(c)))
+            {
+               mPos = pos;
+               return;
+            }
+
+            pos++;
+         }
+
+         mPos = pos;
+         if (!fill()) return;
+      }
+   }
+
+   @Override
+   public int read() throws IOException
+   {
+      if (mClosed) ensureOpen();
+      if ((mPos >= mLimit) && !fill()) return -1;
+      return mBuf[mPos++];
+   }
+
+   @Override
+   public int read(char[] cbuf, int off, int len) throws IOException
+   {
+      ensureOpen();
+      if ((off < 0) || (len < 0) || (off + len > cbuf.length)) throw new IndexOutOfBoundsException();
+      if (len == 0) return 0;
+
+      if ((mPos >= mLimit) && !fill()) return -1;
+
+      int count = Math.min(len, mLimit - mPos);
+      System.arraycopy(mBuf, mPos, cbuf, off, count);
+      mPos += count;
+      return count;
+   }
+
+   @Override
+   public void unread(int c) throws IOException
+   {
+      ensureOpen();
+
+      // pushing back what was just read is only a step backwards
+      if ((mPos > 0) && (mBuf[mPos - 1] == (char) c))
+      {
+         mPos--;
+         return;
+      }
+
+      if (mShared) unshare();
+      if (mPos == 0) throw new IOException("Pushback buffer overflow");
+
+      mBuf[--mPos] = (char) c;
+   }
+
+   @Override
+   public void unread(char[] cbuf, int off, int len) throws IOException
+   {
+      for (int i = off + len - 1; i >= off; i--)
+      {
+         unread(cbuf[i]);
+      }
+   }
+
+   @Override
+   public void unread(char[] cbuf) throws IOException
+   {
+      unread(cbuf, 0, cbuf.length);
+   }
+
+   /**
+    * Copy the caller's array before writing into it.
+    */
+   private void unshare()
+   {
+      char[] buf = new char[mReserve + (mLimit - mPos)];
+      System.arraycopy(mBuf, mPos, buf, mReserve, mLimit - mPos);
+
+      mBuf = buf;
+      mLimit = mReserve + (mLimit - mPos);
+      mBase += mPos - mReserve;
+      mPos = mReserve;
+      mShared = false;
+   }
+
+   @Override
+   public boolean ready() throws IOException
+   {
+      ensureOpen();
+      return (mPos < mLimit) || ((mIn != null) && mIn.ready());
+   }
+
+   @Override
+   public long skip(long n) throws IOException
+   {
+      if (n < 0L) throw new IllegalArgumentException("skip value is negative");
+
+      long skipped = 0;
+
+      while (skipped < n)
+      {
+         if ((mPos >= mLimit) && !fill()) break;
+
+         int count = (int) Math.min(n - skipped, mLimit - mPos);
+         mPos += count;
+         skipped += count;
+      }
+
+      return skipped;
+   }
+
+   @Override
+   public boolean markSupported()
+   {
+      return false;
+   }
+
+   @Override
+   public void mark(int readAheadLimit) throws IOException
+   {
+      throw new IOException("mark/reset not supported");
+   }
+
+   @Override
+   public void reset() throws IOException
+   {
+      throw new IOException("mark/reset not supported");
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      if (mClosed) return;
+
+      mClosed = true;
+      if (mIn != null) mIn.close();
+      mIn = null;
+   }
+}
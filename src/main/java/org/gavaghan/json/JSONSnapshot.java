@@ -0,0 +1,819 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A read-only JSON document in a compact binary form that can be saved and
+ * loaded again without parsing. A snapshot is written once from a
+ * <code>JSONValue</code> tree with <code>write()</code> and opened with
+ * <code>open()</code>, which memory maps the file, or with <code>wrap()</code>.
+ * Opening reads only the header, so it takes the same time for any size of
+ * document. Nothing else is decoded until it's asked for.
+ * </p>
+ * <p>
+ * Navigation works like <code>JSONTape</code>: values are addressed by
+ * position, the root is at position 0, containers can be skipped in O(1), and
+ * members are addressed by the position of their value. Any value can be
+ * materialized as a regular <code>JSONValue</code> subtree with
+ * <code>toJSONValue()</code>; materializing the root yields a tree equal to
+ * the one that was written.
+ * </p>
+ * <p>
+ * The format is big-endian:
+ * </p>
+ * <ul>
+ * <li>A 24 byte header: the magic number "GJSN", the format version, the
+ * number of strings, the length of the string data, the number of nodes and
+ * a reserved word.</li>
+ * <li>The string table: one offset per string plus a final end offset into
+ * the string data, followed by the string data as UTF-8. Keys, string values
+ * and number text are all stored once however often they occur.</li>
+ * <li>Padding to a multiple of 8 bytes, then the nodes. Each node is 8 bytes:
+ * a tag in the top byte and a 56 bit payload. Containers hold the position of
+ * their end node, which holds their child count. Keys, strings and numbers
+ * hold a string index, except integers that fit in 56 bits, which are held
+ * directly.</li>
+ * </ul>
+ * <p>
+ * Instances are safe for concurrent use. A snapshot can't be larger than
+ * 2 GB. Unpaired surrogates in strings are saved as '?'.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class JSONSnapshot
+{
+   /** The magic number: "GJSN". */
+   static private final int MAGIC = 0x474A534E;
+
+   /** The format version. */
+   static private final int VERSION = 1;
+
+   /** Size of the header in bytes. */
+   static private final int HEADER_SIZE = 24;
+
+   /** Tag of an object start. Payload is the end position. */
+   static private final int TAG_OBJECT = '{';
+
+   /** Tag of an object end. Payload is the member count. */
+   static private final int TAG_OBJECT_END = '}';
+
+   /** Tag of an array start. Payload is the end position. */
+   static private final int TAG_ARRAY = '[';
+
+   /** Tag of an array end. Payload is the element count. */
+   static private final int TAG_ARRAY_END = ']';
+
+   /** Tag of an object key. Payload is the string index. */
+   static private final int TAG_KEY = ':';
+
+   /** Tag of a string. Payload is the string index. */
+   static private final int TAG_STRING = '"';
+
+   /** Tag of a number. Payload is the string index of its text. */
+   static private final int TAG_NUMBER = '#';
+
+   /** Tag of an integer. Payload is the signed value. */
+   static private final int TAG_INTEGER = 'i';
+
+   /** Tag of 'true'. */
+   static private final int TAG_TRUE = 't';
+
+   /** Tag of 'false'. */
+   static private final int TAG_FALSE = 'f';
+
+   /** Tag of 'null'. */
+   static private final int TAG_NULL = 'n';
+
+   /** Position of the tag in a node. */
+   static private final int TAG_SHIFT = 56;
+
+   /** Mask of the payload in a node. */
+   static private final long PAYLOAD_MASK = (1L << TAG_SHIFT) - 1;
+
+   /** Smallest integer held directly in a node. */
+   static private final long MIN_INLINE = -(1L << (TAG_SHIFT - 1));
+
+   /** Largest integer held directly in a node. */
+   static private final long MAX_INLINE = (1L << (TAG_SHIFT - 1)) - 1;
+
+   /** The snapshot bytes. */
+   private final ByteBuffer mBuffer;
+
+   /** Number of strings. */
+   private final int mStringCount;
+
+   /** Position of the string offsets. */
+   private final int mOffsetsAt;
+
+   /** Position of the string data. */
+   private final int mDataAt;
+
+   /** Position of the nodes. */
+   private final int mNodesAt;
+
+   /** Number of nodes. */
+   private final int mNodeCount;
+
+   /** Strings decoded so far. */
+   private final String[] mStrings;
+
+   /**
+    * Create a new JSONSnapshot.
+    * 
+    * @param buffer the snapshot bytes
+    * @throws IOException if the bytes aren't a snapshot
+    */
+   private JSONSnapshot(ByteBuffer buffer) throws IOException
+   {
+      mBuffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+
+      if ((mBuffer.capacity() < HEADER_SIZE) || (mBuffer.getInt(0) != MAGIC)) throw new IOException("Not a JSON snapshot");
+      if (mBuffer.getInt(4) != VERSION) throw new IOException("Unsupported JSON snapshot version: " + mBuffer.getInt(4));
+
+      long stringCount = mBuffer.getInt(8) & 0xFFFFFFFFL;
+      long dataLength = mBuffer.getInt(12) & 0xFFFFFFFFL;
+      long nodeCount = mBuffer.getInt(16) & 0xFFFFFFFFL;
+      long dataAt = HEADER_SIZE + 4 * (stringCount + 1);
+      long nodesAt = align(dataAt + dataLength);
+
+      if ((nodeCount == 0) || (nodesAt + 8 * nodeCount != mBuffer.capacity())) throw new IOException("Corrupt JSON snapshot");
+
+      mStringCount = (int) stringCount;
+      mOffsetsAt = HEADER_SIZE;
+      mDataAt = (int) dataAt;
+      mNodesAt = (int) nodesAt;
+      mNodeCount = (int) nodeCount;
+      mStrings = new String[mStringCount];
+   }
+
+   /**
+    * Round a length up to a multiple of 8.
+    * 
+    * @param length the length
+    * @return the padded length
+    */
+   static private long align(long length)
+   {
+      return (length + 7) & ~7L;
+   }
+
+   /**
+    * Open a snapshot file by memory mapping it. The file must not be modified
+    * while the snapshot is in use.
+    * 
+    * @param path the file
+    * @return the snapshot
+    * @throws IOException if the file can't be mapped or isn't a snapshot
+    */
+   static public JSONSnapshot open(Path path) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+      {
+         long size = channel.size();
+         if (size > Integer.MAX_VALUE) throw new IOException("JSON snapshot larger than 2 GB: " + path);
+
+         return new JSONSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+      }
+   }
+
+   /**
+    * Use snapshot bytes already in memory, from the buffer's position to its
+    * limit. The bytes are not copied and must not be modified while the
+    * snapshot is in use.
+    * 
+    * @param buffer the snapshot bytes
+    * @return the snapshot
+    * @throws IOException if the bytes aren't a snapshot
+    */
+   static public JSONSnapshot wrap(ByteBuffer buffer) throws IOException
+   {
+      return new JSONSnapshot(buffer);
+   }
+
+   /**
+    * Write a snapshot of a <code>JSONValue</code> tree. The stream is flushed
+    * but not closed.
+    * 
+    * @param value the root value
+    * @param out   the target stream
+    * @throws IOException on any failure of the stream
+    */
+   static public void write(JSONValue value, OutputStream out) throws IOException
+   {
+      Builder builder = new Builder();
+      builder.add(value);
+      builder.write(out);
+   }
+
+   /**
+    * Collects the nodes and strings of a tree before writing them.
+    */
+   static private final class Builder
+   {
+      /** The nodes. */
+      private long[] mNodes = new long[1024];
+
+      /** Number of nodes. */
+      private int mNodeCount;
+
+      /** Index of each distinct string. */
+      private final Map<String, Integer> mIndex = new HashMap<String, Integer>();
+
+      /** Distinct strings in order of first use. */
+      private final List<String> mStrings = new ArrayList<String>();
+
+      /**
+       * Append a node.
+       * 
+       * @param tag     the tag
+       * @param payload the payload
+       * @return position of the node
+       */
+      private int node(int tag, long payload)
+      {
+         if (mNodeCount == mNodes.length)
+         {
+            if (mNodeCount == Integer.MAX_VALUE - 8) throw new RuntimeException("Too many values for a JSON snapshot");
+            mNodes = Arrays.copyOf(mNodes, (int) Math.min(Integer.MAX_VALUE - 8, 2L * mNodes.length));
+         }
+
+         mNodes[mNodeCount] = ((long) tag << TAG_SHIFT) | (payload & PAYLOAD_MASK);
+         return mNodeCount++;
+      }
+
+      /**
+       * Append a node that refers to a string.
+       * 
+       * @param tag the tag
+       * @param str the string
+       */
+      private void string(int tag, String str)
+      {
+         Integer index = mIndex.get(str);
+
+         if (index == null)
+         {
+            index = Integer.valueOf(mStrings.size());
+            mIndex.put(str, index);
+            mStrings.add(str);
+         }
+
+         node(tag, index.intValue());
+      }
+
+      /**
+       * Append the nodes of a value.
+       * 
+       * @param value the value
+       */
+      void add(JSONValue value)
+      {
+         if (value instanceof JSONObject)
+         {
+            JSONObject object = (JSONObject) value;
+            int start = node(TAG_OBJECT, 0);
+
+            for (Map.Entry<String, JSONValue> entry : object.memberSet())
+            {
+               string(TAG_KEY, entry.getKey());
+               add(entry.getValue());
+            }
+
+            int end = node(TAG_OBJECT_END, object.size());
+            mNodes[start] |= end;
+         }
+         else if (value instanceof JSONArray)
+         {
+            List<JSONValue> elements = ((JSONArray) value).elementList();
+            int start = node(TAG_ARRAY, 0);
+
+            for (JSONValue element : elements)
+            {
+               add(element);
+            }
+
+            int end = node(TAG_ARRAY_END, elements.size());
+            mNodes[start] |= end;
+         }
+         else if (value instanceof JSONString)
+         {
+            string(TAG_STRING, ((JSONString) value).getStringValue());
+         }
+         else if (value instanceof JSONNumber)
+         {
+            BigDecimal number = ((JSONNumber) value).getBigDecimalValue();
+
+            if ((number.scale() == 0) && (number.unscaledValue().bitLength() < TAG_SHIFT)) node(TAG_INTEGER, number.longValue());
+            else string(TAG_NUMBER, number.toString());
+         }
+         else if (value instanceof JSONBoolean)
+         {
+            node(((JSONBoolean) value).getBooleanValue() ? TAG_TRUE : TAG_FALSE, 0);
+         }
+         else if (value instanceof JSONNull)
+         {
+            node(TAG_NULL, 0);
+         }
+         else
+         {
+            throw new RuntimeException("Don't know how to snapshot a " + ((value == null) ? "null" : value.getClass().getName()));
+         }
+      }
+
+      /**
+       * Write the snapshot.
+       * 
+       * @param out the target stream
+       * @throws IOException on any failure of the stream
+       */
+      void write(OutputStream out) throws IOException
+      {
+         int count = mStrings.size();
+         int[] lengths = new int[count];
+         long dataLength = 0;
+
+         for (int i = 0; i < count; i++)
+         {
+            lengths[i] = ByteSink.utf8Length(mStrings.get(i));
+            dataLength += lengths[i];
+         }
+
+         long dataAt = HEADER_SIZE + 4 * (count + 1L);
+         if (align(dataAt + dataLength) + 8L * mNodeCount > Integer.MAX_VALUE) throw new IOException("JSON snapshot would be larger than 2 GB");
+
+         ByteSink sink = new ByteSink(out);
+         sink.writeInt(MAGIC);
+         sink.writeInt(VERSION);
+         sink.writeInt(count);
+         sink.writeInt((int) dataLength);
+         sink.writeInt(mNodeCount);
+         sink.writeInt(0);
+
+         int offset = 0;
+         for (int i = 0; i < count; i++)
+         {
+            sink.writeInt(offset);
+            offset += lengths[i];
+         }
+         sink.writeInt(offset);
+
+         for (String str : mStrings)
+         {
+            sink.writeUTF8(str);
+         }
+
+         for (long pad = align(dataAt + dataLength) - (dataAt + dataLength); pad > 0; pad--)
+         {
+            sink.write(0);
+         }
+
+         for (int i = 0; i < mNodeCount; i++)
+         {
+            sink.writeLong(mNodes[i]);
+         }
+
+         sink.flush();
+      }
+   }
+
+   /**
+    * Get the node at a position.
+    * 
+    * @param pos node position
+    * @return the node
+    */
+   private long nodeAt(int pos)
+   {
+      if ((pos < 0) || (pos >= mNodeCount)) throw new IndexOutOfBoundsException("Snapshot position: " + pos);
+      return mBuffer.getLong(mNodesAt + 8 * pos);
+   }
+
+   /**
+    * Get the tag of the node at a position.
+    * 
+    * @param pos node position
+    * @return the tag
+    */
+   private int tagAt(int pos)
+   {
+      return (int) (nodeAt(pos) >>> TAG_SHIFT);
+   }
+
+   /**
+    * Get the payload of the node at a position as an index or position.
+    * 
+    * @param pos node position
+    * @return the payload
+    */
+   private int payloadAt(int pos)
+   {
+      return (int) (nodeAt(pos) & PAYLOAD_MASK);
+   }
+
+   /**
+    * Assert the node at a position has a tag.
+    * 
+    * @param pos  node position
+    * @param tag  expected tag
+    * @param what description of the expected type
+    */
+   private void expect(int pos, int tag, String what)
+   {
+      if (tagAt(pos) != tag) throw new RuntimeException("Value at snapshot position " + pos + " is not " + what);
+   }
+
+   /**
+    * Get a string from the string table, decoding it on first use.
+    * 
+    * @param index string index
+    * @return the string
+    */
+   private String stringAt(int index)
+   {
+      String str = mStrings[index];
+      if (str != null) return str;
+
+      int start = mBuffer.getInt(mOffsetsAt + 4 * index);
+      int end = mBuffer.getInt(mOffsetsAt + 4 * (index + 1));
+
+      if (mBuffer.hasArray())
+      {
+         str = new String(mBuffer.array(), mBuffer.arrayOffset() + mDataAt + start, end - start, StandardCharsets.UTF_8);
+      }
+      else
+      {
+         byte[] bytes = new byte[end - start];
+         ByteBuffer data = mBuffer.duplicate();
+         data.position(mDataAt + start);
+         data.get(bytes);
+         str = new String(bytes, StandardCharsets.UTF_8);
+      }
+
+      // a race only decodes the same string twice
+      mStrings[index] = str;
+      return str;
+   }
+
+   /**
+    * Get a string from the string table as a <code>JSONString</code> that's
+    * decoded on first use. Bytes in a heap buffer are shared rather than
+    * copied.
+    * 
+    * @param index string index
+    * @return the string
+    */
+   private JSONString jsonStringAt(int index)
+   {
+      String str = mStrings[index];
+      if (str != null) return new JSONString(str);
+
+      int start = mBuffer.getInt(mOffsetsAt + 4 * index);
+      int end = mBuffer.getInt(mOffsetsAt + 4 * (index + 1));
+
+      if (mBuffer.hasArray()) return JSONString.fromUTF8(mBuffer.array(), mBuffer.arrayOffset() + mDataAt + start, end - start, true);
+
+      byte[] bytes = new byte[end - start];
+      ByteBuffer data = mBuffer.duplicate();
+      data.position(mDataAt + start);
+      data.get(bytes);
+      return JSONString.fromUTF8(bytes, 0, bytes.length, true);
+   }
+
+   /**
+    * Get the number of distinct strings (keys, string values and number text)
+    * in the snapshot.
+    * 
+    * @return the string count
+    */
+   public int getStringCount()
+   {
+      return mStringCount;
+   }
+
+   /**
+    * Get the number of nodes in the snapshot.
+    * 
+    * @return the node count
+    */
+   public int getNodeCount()
+   {
+      return mNodeCount;
+   }
+
+   /**
+    * Get the position of the root value.
+    * 
+    * @return the root position
+    */
+   public int getRoot()
+   {
+      return 0;
+   }
+
+   /**
+    * Get the type of the value at a position.
+    * 
+    * @param pos snapshot position of a value
+    * @return the value type
+    */
+   public JSONTape.Type getType(int pos)
+   {
+      switch (tagAt(pos))
+      {
+         case TAG_OBJECT:
+            return JSONTape.Type.OBJECT;
+         case TAG_ARRAY:
+            return JSONTape.Type.ARRAY;
+         case TAG_STRING:
+            return JSONTape.Type.STRING;
+         case TAG_NUMBER:
+         case TAG_INTEGER:
+            return JSONTape.Type.NUMBER;
+         case TAG_TRUE:
+         case TAG_FALSE:
+            return JSONTape.Type.BOOLEAN;
+         case TAG_NULL:
+            return JSONTape.Type.NULL;
+         default:
+            throw new RuntimeException("Snapshot position " + pos + " is not the start of a value");
+      }
+   }
+
+   /**
+    * Get the number of members of an object or elements of an array.
+    * 
+    * @param pos snapshot position of an object or array
+    * @return the child count
+    */
+   public int size(int pos)
+   {
+      int tag = tagAt(pos);
+      if ((tag != TAG_OBJECT) && (tag != TAG_ARRAY)) throw new RuntimeException("Value at snapshot position " + pos + " is not an object or array");
+
+      return payloadAt(payloadAt(pos));
+   }
+
+   /**
+    * Get the position just past a value.
+    * 
+    * @param pos snapshot position of a value
+    * @return the position after the value and all of its children
+    */
+   private int skip(int pos)
+   {
+      int tag = tagAt(pos);
+      if ((tag == TAG_OBJECT) || (tag == TAG_ARRAY)) return payloadAt(pos) + 1;
+      return pos + 1;
+   }
+
+   /**
+    * Get the first child of an object or array. For an object, this is the
+    * position of the first member's value.
+    * 
+    * @param pos snapshot position of an object or array
+    * @return the position of the first child or -1 if empty
+    */
+   public int first(int pos)
+   {
+      int tag = tagAt(pos);
+
+      if (tag == TAG_ARRAY) return (tagAt(pos + 1) == TAG_ARRAY_END) ? -1 : pos + 1;
+      if (tag == TAG_OBJECT) return (tagAt(pos + 1) == TAG_OBJECT_END) ? -1 : pos + 2;
+
+      throw new RuntimeException("Value at snapshot position " + pos + " is not an object or array");
+   }
+
+   /**
+    * Get the next sibling of a member or element.
+    * 
+    * @param pos snapshot position of a member value or array element
+    * @return the position of the next sibling or -1 if there is none
+    */
+   public int next(int pos)
+   {
+      int after = skip(pos);
+
+      switch (tagAt(after))
+      {
+         case TAG_KEY:
+            return after + 1;
+         case TAG_OBJECT_END:
+         case TAG_ARRAY_END:
+            return -1;
+         default:
+            return after;
+      }
+   }
+
+   /**
+    * Determine if a value is a member of an object.
+    * 
+    * @param pos snapshot position of a value
+    * @return 'true' if the value has a key
+    */
+   public boolean hasKey(int pos)
+   {
+      return (pos > 0) && (tagAt(pos - 1) == TAG_KEY);
+   }
+
+   /**
+    * Get the key of an object member.
+    * 
+    * @param pos snapshot position of a member value
+    * @return the member name
+    */
+   public String getKey(int pos)
+   {
+      if (!hasKey(pos)) throw new RuntimeException("Value at snapshot position " + pos + " is not an object member");
+      return stringAt(payloadAt(pos - 1));
+   }
+
+   /**
+    * Find a member of an object by name. Keys are decoded once and shared, so
+    * repeated lookups only compare strings.
+    * 
+    * @param pos snapshot position of an object
+    * @param key the member name
+    * @return the position of the member value or -1 if not found
+    */
+   public int getMember(int pos, String key)
+   {
+      expect(pos, TAG_OBJECT, "an object");
+
+      for (int child = first(pos); child >= 0; child = next(child))
+      {
+         if (key.equals(getKey(child))) return child;
+      }
+
+      return -1;
+   }
+
+   /**
+    * Find an element of an array by index. Nested containers are skipped in
+    * O(1), so this is linear in the number of preceding elements only.
+    * 
+    * @param pos   snapshot position of an array
+    * @param index the element index
+    * @return the position of the element
+    * @throws IndexOutOfBoundsException if the index is out of range
+    */
+   public int getElement(int pos, int index)
+   {
+      expect(pos, TAG_ARRAY, "an array");
+      if (index < 0) throw new IndexOutOfBoundsException("Index: " + index);
+
+      int child = first(pos);
+      for (int i = 0; (i < index) && (child >= 0); i++)
+         child = next(child);
+
+      if (child < 0) throw new IndexOutOfBoundsException("Index: " + index);
+      return child;
+   }
+
+   /**
+    * Get a string value.
+    * 
+    * @param pos snapshot position of a string
+    * @return the string
+    */
+   public String getString(int pos)
+   {
+      expect(pos, TAG_STRING, "a string");
+      return stringAt(payloadAt(pos));
+   }
+
+   /**
+    * Get a number value.
+    * 
+    * @param pos snapshot position of a number
+    * @return the number
+    */
+   public BigDecimal getBigDecimal(int pos)
+   {
+      long node = nodeAt(pos);
+      int tag = (int) (node >>> TAG_SHIFT);
+
+      // sign extend the payload
+      if (tag == TAG_INTEGER) return BigDecimal.valueOf((node << (64 - TAG_SHIFT)) >> (64 - TAG_SHIFT));
+      if (tag == TAG_NUMBER) return new BigDecimal(stringAt((int) (node & PAYLOAD_MASK)));
+
+      throw new RuntimeException("Value at snapshot position " + pos + " is not a number");
+   }
+
+   /**
+    * Get a boolean value.
+    * 
+    * @param pos snapshot position of a boolean
+    * @return the boolean
+    */
+   public boolean getBoolean(int pos)
+   {
+      int tag = tagAt(pos);
+      if (tag == TAG_TRUE) return true;
+      if (tag == TAG_FALSE) return false;
+
+      throw new RuntimeException("Value at snapshot position " + pos + " is not a boolean");
+   }
+
+   /**
+    * Determine if a value is null.
+    * 
+    * @param pos snapshot position of a value
+    * @return 'true' if the value is null
+    */
+   public boolean isNull(int pos)
+   {
+      return tagAt(pos) == TAG_NULL;
+   }
+
+   /**
+    * Materialize the whole document as a <code>JSONValue</code>.
+    * 
+    * @return the root value
+    */
+   public JSONValue toJSONValue()
+   {
+      return toJSONValue(0);
+   }
+
+   /**
+    * Materialize a value in the snapshot as a <code>JSONValue</code>.
+    * 
+    * @param pos snapshot position of a value
+    * @return the value
+    */
+   public JSONValue toJSONValue(int pos)
+   {
+      switch (tagAt(pos))
+      {
+         case TAG_OBJECT:
+         {
+            JSONObject object = new JSONObject();
+
+            for (int child = first(pos); child >= 0; child = next(child))
+            {
+               object.put(getKey(child), toJSONValue(child));
+            }
+
+            return object;
+         }
+         case TAG_ARRAY:
+         {
+            JSONArray array = new JSONArray();
+            List<JSONValue> list = array.elements();
+
+            for (int child = first(pos); child >= 0; child = next(child))
+            {
+               list.add(toJSONValue(child));
+            }
+
+            return array;
+         }
+         case TAG_STRING:
+            return jsonStringAt(payloadAt(pos));
+         case TAG_NUMBER:
+         case TAG_INTEGER:
+            return new JSONNumber(getBigDecimal(pos));
+         case TAG_TRUE:
+            return new JSONBoolean(Boolean.TRUE);
+         case TAG_FALSE:
+            return new JSONBoolean(Boolean.FALSE);
+         case TAG_NULL:
+            return JSONNull.INSTANCE;
+         default:
+            throw new RuntimeException("Snapshot position " + pos + " is not the start of a value");
+      }
+   }
+}
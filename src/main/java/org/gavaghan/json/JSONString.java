@@ -18,17 +18,64 @@ package org.gavaghan.json;
 import java.io.IOException;
 import java.io.PushbackReader;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
+ * <p>
  * A JSON string.
+ * </p>
+ * <p>
+ * Strings decoded from UTF-8 by the binary readers and snapshots keep their
+ * bytes, compacted to one byte per character when every character fits, and
+ * become a <code>String</code> only when the value is first asked for. Until
+ * then they can be compared with <code>contentEquals()</code> and
+ * <code>compareTo()</code>, and written out, without decoding. The bytes are
+ * kept after decoding so that threads reading the same unmodified string
+ * concurrently always find one form or the other.
+ * </p>
  * 
  * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
  */
 public class JSONString extends AbstractJSONValue
 {
-   /** The underlying value. **/
+   /** Lower case hex digits for unicode escapes. */
+   static private final char[] HEX = "0123456789abcdef".toCharArray();
+
+   /** Form of undecoded bytes: ASCII only. */
+   static private final byte ASCII = 0;
+
+   /** Form of undecoded bytes: one byte per character, some above ASCII. */
+   static private final byte LATIN1 = 1;
+
+   /** Form of undecoded bytes: UTF-8 with characters above Latin-1. */
+   static private final byte UTF8 = 2;
+
+   /**
+    * The underlying value, or null until decoded from <code>mBytes</code>.
+    * Racing threads may each decode it, but a <code>String</code> is always
+    * seen complete.
+    **/
    private String mValue;
 
+   /** The undecoded value, or null if the value was set as a string. */
+   private byte[] mBytes;
+
+   /** Start of the undecoded value in <code>mBytes</code>. */
+   private int mOffset;
+
+   /** Length of the undecoded value in bytes. */
+   private int mLength;
+
+   /** Form of the undecoded value. */
+   private byte mForm;
+
+   /** 'true' if the undecoded value can be written without escapes. */
+   private boolean mPlain;
+
+   /** Stamp of the last modification, or 0 if never rendered through a cache. */
+   private transient long mStamp;
+
    /**
     * Read a string value.
     * 
@@ -40,13 +87,43 @@ public class JSONString extends AbstractJSONValue
     */
    static String readString(String path, PushbackReader pbr) throws IOException, JSONException
    {
-      StringBuilder builder = new StringBuilder();
-
       char c = JSONValueFactory.demand(pbr);
       if (c != '\"') throw new JSONException(path, "Leading quote expected at start of string.");
 
+      return readStringBody(path, pbr);
+   }
+
+   /**
+    * Read a string value after its leading quote.
+    * 
+    * @param path path to the value being read
+    * @param pbr
+    * @return the complete string read from the reader
+    * @throws IOException
+    * @throws JSONException
+    */
+   static String readStringBody(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      StringBuilder builder;
+      int maxLength;
+      char c;
+
+      if (pbr instanceof JSONPushbackReader)
+      {
+         JSONPushbackReader jpr = (JSONPushbackReader) pbr;
+         builder = jpr.scratch();
+         maxLength = jpr.getMaxStringLength();
+      }
+      else
+      {
+         builder = new StringBuilder();
+         maxLength = Integer.MAX_VALUE;
+      }
+
       for (;;)
       {
+         if (builder.length() > maxLength) throw new JSONException(path, "String is longer than " + maxLength + " characters");
+
          c = JSONValueFactory.demand(pbr);
 
          // if closing quote
@@ -80,20 +157,7 @@ public class JSONString extends AbstractJSONValue
                   builder.append('\t');
                   break;
                case 'u':
-                  StringBuilder hex = new StringBuilder();
-                  hex.append(JSONValueFactory.demand(pbr));
-                  hex.append(JSONValueFactory.demand(pbr));
-                  hex.append(JSONValueFactory.demand(pbr));
-                  hex.append(JSONValueFactory.demand(pbr));
-                  try
-                  {
-                     int uchar = Integer.parseInt(hex.toString(), 16);
-                     builder.append((char) uchar);
-                  }
-                  catch (NumberFormatException exc)
-                  {
-                     throw new JSONException(path, "Illegal unicode value: " + hex.toString());
-                  }
+                  builder.append(readUnicode(path, pbr));
                   break;
                default:
                   throw new JSONException(path, "Illegal escape value in string: " + c);
@@ -108,6 +172,192 @@ public class JSONString extends AbstractJSONValue
       return builder.toString();
    }
 
+   /**
+    * Read the four hex digits of a unicode escape.
+    * 
+    * @param path path to the value being read
+    * @param pbr
+    * @return the escaped character
+    * @throws IOException
+    * @throws JSONException
+    */
+   static private char readUnicode(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      char c0 = JSONValueFactory.demand(pbr);
+      char c1 = JSONValueFactory.demand(pbr);
+      char c2 = JSONValueFactory.demand(pbr);
+      char c3 = JSONValueFactory.demand(pbr);
+
+      int value = unicode(c0, c1, c2, c3);
+      if (value < 0) throw new JSONException(path, "Illegal unicode value: " + new String(new char[] { c0, c1, c2, c3 }));
+
+      return (char) value;
+   }
+
+   /**
+    * Decode the four hex digits of a unicode escape.
+    * 
+    * @param c0 the first digit
+    * @param c1 the second digit
+    * @param c2 the third digit
+    * @param c3 the fourth digit
+    * @return the escaped character, or -1 if the digits aren't hex
+    */
+   static int unicode(char c0, char c1, char c2, char c3)
+   {
+      int d0 = Character.digit(c0, 16);
+      int d1 = Character.digit(c1, 16);
+      int d2 = Character.digit(c2, 16);
+      int d3 = Character.digit(c3, 16);
+
+      if ((d0 | d1 | d2 | d3) >= 0) return (d0 << 12) | (d1 << 8) | (d2 << 4) | d3;
+
+      // leave anything unusual to the full parser
+      try
+      {
+         return (char) Integer.parseInt(new String(new char[] { c0, c1, c2, c3 }), 16);
+      }
+      catch (NumberFormatException exc)
+      {
+         return -1;
+      }
+   }
+
+   /**
+    * Create a <code>JSONString</code> over UTF-8 that's decoded on first use.
+    * Malformed UTF-8 is decoded immediately, with the replacements
+    * <code>String</code> makes.
+    * 
+    * @param bytes  source of the UTF-8
+    * @param offset start of the string
+    * @param length encoded length in bytes
+    * @param shared 'true' if the bytes will never change, so they needn't be
+    *               copied
+    * @return the string
+    */
+   static JSONString fromUTF8(byte[] bytes, int offset, int length, boolean shared)
+   {
+      int end = offset + length;
+      int chars = 0;
+      int max = 0;
+      boolean plain = true;
+
+      for (int i = offset; i < end; chars++)
+      {
+         int b = bytes[i];
+
+         if (b >= 0)
+         {
+            if ((b < 32) || (b > 126) || (b == '\"') || (b == '\\')) plain = false;
+            i++;
+            continue;
+         }
+
+         int cp = codePointAt(bytes, i, end);
+         if (cp < 0) return new JSONString(new String(bytes, offset, length, StandardCharsets.UTF_8));
+
+         i += width(cp);
+         max = Math.max(max, cp);
+      }
+
+      JSONString str = new JSONString();
+
+      if (max > 0xFF)
+      {
+         str.mForm = UTF8;
+      }
+      else if (max > 0x7F)
+      {
+         // compact to one byte per character
+         byte[] latin1 = new byte[chars];
+
+         for (int i = offset, j = 0; i < end; j++)
+         {
+            int cp = (bytes[i] >= 0) ? bytes[i] : codePointAt(bytes, i, end);
+            latin1[j] = (byte) cp;
+            i += width(cp);
+         }
+
+         str.mForm = LATIN1;
+         str.mBytes = latin1;
+         str.mLength = chars;
+         str.mValue = null;
+         return str;
+      }
+      else
+      {
+         str.mForm = ASCII;
+         str.mPlain = plain;
+      }
+
+      str.mBytes = shared ? bytes : Arrays.copyOfRange(bytes, offset, end);
+      str.mOffset = shared ? offset : 0;
+      str.mLength = length;
+      str.mValue = null;
+      return str;
+   }
+
+   /**
+    * Decode a multibyte UTF-8 sequence, rejecting overlong forms, surrogates
+    * and anything past U+10FFFF.
+    * 
+    * @param bytes the UTF-8
+    * @param i     start of the sequence
+    * @param end   end of the UTF-8
+    * @return the code point, or -1 if malformed
+    */
+   static private int codePointAt(byte[] bytes, int i, int end)
+   {
+      int b = bytes[i] & 0xFF;
+      int count;
+      int cp;
+
+      if ((b >= 0xC2) && (b <= 0xDF))
+      {
+         count = 1;
+         cp = b & 0x1F;
+      }
+      else if ((b >= 0xE0) && (b <= 0xEF))
+      {
+         count = 2;
+         cp = b & 0x0F;
+      }
+      else if ((b >= 0xF0) && (b <= 0xF4))
+      {
+         count = 3;
+         cp = b & 0x07;
+      }
+      else return -1;
+
+      if (i + count >= end) return -1;
+
+      for (int k = 1; k <= count; k++)
+      {
+         int next = bytes[i + k];
+         if ((next & 0xC0) != 0x80) return -1;
+         cp = (cp << 6) | (next & 0x3F);
+      }
+
+      if ((count == 2) && ((cp < 0x800) || ((cp >= 0xD800) && (cp <= 0xDFFF)))) return -1;
+      if ((count == 3) && ((cp < 0x10000) || (cp > 0x10FFFF))) return -1;
+
+      return cp;
+   }
+
+   /**
+    * Get the number of UTF-8 bytes encoding a code point.
+    * 
+    * @param cp the code point
+    * @return the encoded length
+    */
+   static private int width(int cp)
+   {
+      if (cp < 0x80) return 1;
+      if (cp < 0x800) return 2;
+      if (cp < 0x10000) return 3;
+      return 4;
+   }
+
    /**
     * Create a new JSONString.
     * 
@@ -135,7 +385,9 @@ public class JSONString extends AbstractJSONValue
    public void setValue(String value)
    {
       if (value == null) throw new NullPointerException("Null value not allowed.  Use JSONNull instead.");
+      touch();
       mValue = value;
+      mBytes = null;
    }
 
    /**
@@ -146,7 +398,7 @@ public class JSONString extends AbstractJSONValue
    @Override
    public Object getValue()
    {
-      return mValue;
+      return text();
    }
 
    /**
@@ -158,7 +410,7 @@ public class JSONString extends AbstractJSONValue
     */
    public String getStringValue()
    {
-      return mValue;
+      return text();
    }
 
    /**
@@ -168,7 +420,202 @@ public class JSONString extends AbstractJSONValue
     */
    public int length()
    {
-      return mValue.length();
+      String value = mValue;
+      if (value != null) return value.length();
+      if (mForm != UTF8) return mLength;
+
+      byte[] bytes = mBytes;
+
+      int length = 0;
+
+      for (int i = mOffset, end = mOffset + mLength; i < end; i++)
+      {
+         int b = bytes[i];
+
+         // count lead bytes, and four byte sequences twice for their surrogate pair
+         if ((b & 0xC0) != 0x80) length++;
+         if ((b & 0xF8) == 0xF0) length++;
+      }
+
+      return length;
+   }
+
+   /**
+    * Determine if the value is the same as a string, without decoding it.
+    * 
+    * @since 1.3
+    * 
+    * @param str the string to compare to
+    * @return 'true' if they're equal
+    */
+   public boolean contentEquals(String str)
+   {
+      String value = mValue;
+      if (value != null) return value.equals(str);
+      if ((mForm != UTF8) && (mLength != str.length())) return false;
+
+      return compareTo(str) == 0;
+   }
+
+   /**
+    * Compare the value to a string, without decoding it, in the order of
+    * <code>String.compareTo()</code>.
+    * 
+    * @since 1.3
+    * 
+    * @param str the string to compare to
+    * @return negative, zero or positive as the value is less than, equal to or
+    *         greater than the string
+    */
+   public int compareTo(String str)
+   {
+      String value = mValue;
+      if (value != null) return value.compareTo(str);
+
+      byte[] bytes = mBytes;
+
+      int length = str.length();
+      int end = mOffset + mLength;
+      int j = 0;
+
+      for (int i = mOffset; i < end;)
+      {
+         int cp = bytes[i] & 0xFF;
+
+         if ((mForm == UTF8) && (cp >= 0x80)) cp = codePointAt(bytes, i, end);
+         i += (mForm == UTF8) ? width(cp) : 1;
+
+         if (cp < 0x10000)
+         {
+            if (j == length) return length() - length;
+            if (cp != str.charAt(j)) return cp - str.charAt(j);
+            j++;
+         }
+         else
+         {
+            for (char c : Character.toChars(cp))
+            {
+               if (j == length) return length() - length;
+               if (c != str.charAt(j)) return c - str.charAt(j);
+               j++;
+            }
+         }
+      }
+
+      return (j == length) ? 0 : (j - length);
+   }
+
+   /**
+    * Determine if the value is the same as another string's.
+    * 
+    * @param other the other string
+    * @return 'true' if they're equal
+    */
+   boolean contentEquals(JSONString other)
+   {
+      byte[] bytes = mBytes;
+      byte[] otherBytes = other.mBytes;
+
+      if ((bytes == null) && (otherBytes == null)) return getStringValue().equals(other.getStringValue());
+      if (bytes == null) return other.contentEquals(getStringValue());
+      if (otherBytes == null) return contentEquals(other.getStringValue());
+
+      // undecoded values are always in their most compact form
+      if ((mForm != other.mForm) || (mLength != other.mLength)) return false;
+
+      for (int i = 0; i < mLength; i++)
+      {
+         if (bytes[mOffset + i] != otherBytes[other.mOffset + i]) return false;
+      }
+
+      return true;
+   }
+
+   /**
+    * Get the value, decoding it if necessary.
+    * 
+    * @return the value
+    */
+   private String text()
+   {
+      String value = mValue;
+
+      if (value == null)
+      {
+         value = decode(mBytes);
+         mValue = value;
+      }
+
+      return value;
+   }
+
+   /**
+    * Decode the undecoded value.
+    * 
+    * @param bytes the undecoded value's bytes
+    * @return the value
+    */
+   private String decode(byte[] bytes)
+   {
+      return new String(bytes, mOffset, mLength, (mForm == UTF8) ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+   }
+
+   /**
+    * Get the length of the value encoded as UTF-8.
+    * 
+    * @return the encoded length in bytes
+    */
+   int utf8Length()
+   {
+      byte[] bytes = mBytes;
+      if (bytes == null) return ByteSink.utf8Length(mValue);
+      if (mForm != LATIN1) return mLength;
+
+      int length = mLength;
+
+      for (int i = mOffset, end = mOffset + mLength; i < end; i++)
+      {
+         if (bytes[i] < 0) length++;
+      }
+
+      return length;
+   }
+
+   /**
+    * Write the value as UTF-8, copying the bytes when they're already UTF-8.
+    * 
+    * @param sink the output
+    * @throws IOException on any failure of the output
+    */
+   void writeUTF8(ByteSink sink) throws IOException
+   {
+      byte[] bytes = mBytes;
+
+      if (bytes == null)
+      {
+         sink.writeUTF8(mValue);
+      }
+      else if (mForm != LATIN1)
+      {
+         sink.write(bytes, mOffset, mLength);
+      }
+      else
+      {
+         for (int i = mOffset, end = mOffset + mLength; i < end; i++)
+         {
+            int c = bytes[i] & 0xFF;
+
+            if (c < 0x80)
+            {
+               sink.write(c);
+            }
+            else
+            {
+               sink.write(0xC0 | (c >> 6));
+               sink.write(0x80 | (c & 0x3F));
+            }
+         }
+      }
    }
 
    /**
@@ -192,7 +639,24 @@ public class JSONString extends AbstractJSONValue
    {
       if (!getClass().isAssignableFrom(value.getClass())) throw new RuntimeException("Can't assign a " + value.getClass().getName() + " to a " + getClass().getName());
 
-      mValue = (String) value.getValue();
+      touch();
+
+      // undecoded bytes are never modified, so they can be shared
+      if ((value.getClass() == JSONString.class) && (((JSONString) value).mBytes != null))
+      {
+         JSONString other = (JSONString) value;
+         mBytes = other.mBytes;
+         mOffset = other.mOffset;
+         mLength = other.mLength;
+         mForm = other.mForm;
+         mPlain = other.mPlain;
+         mValue = other.mValue;
+      }
+      else
+      {
+         mValue = (String) value.getValue();
+         mBytes = null;
+      }
    }
 
    /**
@@ -208,7 +672,9 @@ public class JSONString extends AbstractJSONValue
    @Override
    public void read(String path, PushbackReader pbr) throws IOException, JSONException
    {
+      touch();
       mValue = readString(path, pbr);
+      mBytes = null;
    }
 
    /**
@@ -222,32 +688,83 @@ public class JSONString extends AbstractJSONValue
    @Override
    public void write(String indent, Writer writer, boolean pretty) throws IOException
    {
-      StringBuilder builder = new StringBuilder();
+      byte[] bytes = mBytes;
 
-      for (int i = 0; i < mValue.length(); i++)
+      if (bytes == null) writeString(mValue, writer);
+      else if (mPlain) JSONWriter.writeQuoted(bytes, mOffset, mLength, writer);
+      else writeString(text(), writer);
+   }
+
+   /**
+    * Render a string value as a quoted and escaped JSON string.
+    * 
+    * @param value  the string to render
+    * @param writer target writer
+    * @throws IOException
+    */
+   static void writeString(String value, Writer writer) throws IOException
+   {
+      int length = value.length();
+      int start = 0;
+
+      writer.write('\"');
+
+      for (int i = 0; i < length; i++)
       {
-         char c = mValue.charAt(i);
+         char c = value.charAt(i);
 
-         if (c == '\"') builder.append("\\\"");
-         else if (c == '\\') builder.append("\\\\");
-         else if ((c >= 32) && (c <= 126)) builder.append(c);
-         else if (c == '\b') builder.append("\\b");
-         else if (c == '\f') builder.append("\\f");
-         else if (c == '\n') builder.append("\\n");
-         else if (c == '\r') builder.append("\\r");
-         else if (c == '\t') builder.append("\\t");
+         // plain characters are written in runs
+         if ((c >= 32) && (c <= 126) && (c != '\"') && (c != '\\')) continue;
+
+         if (i > start) writer.write(value, start, i - start);
+         start = i + 1;
+
+         if (c == '\"') writer.write("\\\"");
+         else if (c == '\\') writer.write("\\\\");
+         else if (c == '\b') writer.write("\\b");
+         else if (c == '\f') writer.write("\\f");
+         else if (c == '\n') writer.write("\\n");
+         else if (c == '\r') writer.write("\\r");
+         else if (c == '\t') writer.write("\\t");
          else
          {
-            String hex = "0000" + Integer.toString(c, 16);
-            hex = hex.substring(hex.length() - 4);
-
-            builder.append("\\u");
-            builder.append(hex);
+            writer.write("\\u");
+            writer.write(HEX[(c >> 12) & 0xF]);
+            writer.write(HEX[(c >> 8) & 0xF]);
+            writer.write(HEX[(c >> 4) & 0xF]);
+            writer.write(HEX[c & 0xF]);
          }
       }
 
+      if (length > start) writer.write(value, start, length - start);
+
       writer.write('\"');
-      writer.write(builder.toString());
-      writer.write('\"');
+   }
+
+   /**
+    * Get the stamp of the last modification.
+    * 
+    * @return the stamp, or 0 if never rendered through the cache
+    */
+   long getStamp()
+   {
+      return mStamp;
+   }
+
+   /**
+    * Start stamping modifications because this string is part of a cached
+    * rendering.
+    */
+   void observe()
+   {
+      if (mStamp == 0) mStamp = 1;
+   }
+
+   /**
+    * Stamp a modification if this string may be part of a cached rendering.
+    */
+   private void touch()
+   {
+      if (mStamp != 0) mStamp = JSONWriteCache.tick();
    }
 }
@@ -0,0 +1,885 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * A read-only JSON document parsed into a compact "tape" instead of a graph of
+ * <code>JSONValue</code> instances. The tape is a single <code>long[]</code>
+ * with one entry per value, key and container end, and a single
+ * <code>char[]</code> holding the text of every string and number. A document
+ * of any size is held in a handful of objects, and scanning it walks memory in
+ * order.
+ * </p>
+ * <p>
+ * Values are addressed by their position on the tape. The root value is at
+ * position 0. Containers record the position of their end, so skipping a
+ * nested object or array is O(1). Members of an object are addressed by the
+ * position of their value; the key sits immediately before it. A
+ * <code>Cursor</code> offers the same navigation with a little state of its
+ * own. Any value can be converted to a regular <code>JSONValue</code> subtree
+ * with <code>toJSONValue()</code>.
+ * </p>
+ * <p>
+ * As with <code>JSONValueFactory.read()</code>, only the first value of the
+ * input is parsed and anything after it is ignored.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class JSONTape
+{
+   /** The type of a value on the tape. */
+   public enum Type
+   {
+      OBJECT, ARRAY, STRING, NUMBER, BOOLEAN, NULL
+   }
+
+   /** Tag of an object start. Payload is the end position and child count. */
+   static final int TAG_OBJECT = '{';
+
+   /** Tag of an object end. Payload is the start position. */
+   static final int TAG_OBJECT_END = '}';
+
+   /** Tag of an array start. Payload is the end position and child count. */
+   static final int TAG_ARRAY = '[';
+
+   /** Tag of an array end. Payload is the start position. */
+   static final int TAG_ARRAY_END = ']';
+
+   /** Tag of an object key. Payload is the text offset. */
+   static final int TAG_KEY = ':';
+
+   /** Tag of a string. Payload is the text offset. */
+   static final int TAG_STRING = '"';
+
+   /** Tag of a number. Payload is the text offset. */
+   static final int TAG_NUMBER = '#';
+
+   /** Tag of 'true'. */
+   static final int TAG_TRUE = 't';
+
+   /** Tag of 'false'. */
+   static final int TAG_FALSE = 'f';
+
+   /** Tag of 'null'. */
+   static final int TAG_NULL = 'n';
+
+   /** Position of the tag in an entry. */
+   static private final int TAG_SHIFT = 56;
+
+   /** Largest child count recorded in a container entry. */
+   static private final int MAX_COUNT = 0xFFFFFF;
+
+   /** The tape. */
+   private final long[] mTape;
+
+   /** Number of entries on the tape. */
+   private final int mTapeLength;
+
+   /**
+    * String and number text. Each run of text is preceded by its length in two
+    * chars.
+    */
+   private final char[] mText;
+
+   /**
+    * Create a new JSONTape.
+    * 
+    * @param tape       the tape
+    * @param tapeLength number of entries on the tape
+    * @param text       the text buffer
+    */
+   JSONTape(long[] tape, int tapeLength, char[] text)
+   {
+      mTape = tape;
+      mTapeLength = tapeLength;
+      mText = text;
+   }
+
+   /**
+    * Parse a document onto a tape.
+    * 
+    * @param reader the document source
+    * @return the parsed document or null if the source holds only whitespace
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   static public JSONTape parse(Reader reader) throws IOException, JSONException
+   {
+      char[] buffer = new char[8192];
+      int length = 0;
+
+      for (;;)
+      {
+         if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+         int count = reader.read(buffer, length, buffer.length - length);
+         if (count < 0) break;
+         length += count;
+      }
+
+      return parse(buffer, 0, length);
+   }
+
+   /**
+    * Parse a document onto a tape.
+    * 
+    * @param json the document
+    * @return the parsed document or null if the string holds only whitespace
+    * @throws JSONException on grammar error
+    */
+   static public JSONTape parse(String json) throws JSONException
+   {
+      return parse(json.toCharArray(), 0, json.length());
+   }
+
+   /**
+    * Parse a document onto a tape.
+    * 
+    * @param json   buffer holding the document
+    * @param offset start of the document
+    * @param length length of the document
+    * @return the parsed document or null if the range holds only whitespace
+    * @throws JSONException on grammar error
+    */
+   static public JSONTape parse(char[] json, int offset, int length) throws JSONException
+   {
+      return new TapeParser(json, offset, offset + length).parse();
+   }
+
+   /**
+    * Parse a UTF-8 document onto a tape using the indexed parser.
+    * 
+    * @param input the document source
+    * @return the parsed document or null if the source holds only whitespace
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   static public JSONTape parse(InputStream input) throws IOException, JSONException
+   {
+      byte[] buffer = new byte[8192];
+      int length = 0;
+
+      for (;;)
+      {
+         if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+         int count = input.read(buffer, length, buffer.length - length);
+         if (count < 0) break;
+         length += count;
+      }
+
+      return parse(buffer, 0, length);
+   }
+
+   /**
+    * Parse a UTF-8 document onto a tape using the indexed parser.
+    * 
+    * @param utf8   buffer holding the document
+    * @param offset start of the document
+    * @param length length of the document in bytes
+    * @return the parsed document or null if the range holds only whitespace
+    * @throws JSONException on grammar error
+    */
+   static public JSONTape parse(byte[] utf8, int offset, int length) throws JSONException
+   {
+      return parse(utf8, offset, length, true);
+   }
+
+   /**
+    * <p>
+    * Parse a UTF-8 document onto a tape.
+    * </p>
+    * <p>
+    * The indexed parser first finds every quote, bracket, colon, comma and
+    * number or literal in a single pass over 64-byte blocks, eight bytes at a
+    * time, and then builds the tape by walking only those positions. It
+    * produces exactly the same tape as the scalar parser and reverts to the
+    * scalar parser for anything it doesn't handle, including every malformed
+    * document, so errors are reported identically.
+    * </p>
+    * 
+    * @param utf8    buffer holding the document
+    * @param offset  start of the document
+    * @param length  length of the document in bytes
+    * @param indexed 'true' to use the indexed parser, 'false' for the scalar
+    *                parser
+    * @return the parsed document or null if the range holds only whitespace
+    * @throws JSONException on grammar error
+    */
+   static public JSONTape parse(byte[] utf8, int offset, int length, boolean indexed) throws JSONException
+   {
+      if (indexed)
+      {
+         StructuralIndexer indexer = new StructuralIndexer();
+
+         if (indexer.index(utf8, offset, length))
+         {
+            // every entry but a container end comes from an indexed position, and
+            // every container end is paired with an indexed start
+            TapeBuilder builder = new TapeBuilder(indexer.getCount() + 1, length);
+            JSONTape tape = new IndexedParser<JSONTape>(utf8, offset + length, indexer, builder).parse();
+            if (tape != null) return tape;
+         }
+      }
+
+      char[] chars = new String(utf8, offset, length, StandardCharsets.UTF_8).toCharArray();
+      return parse(chars, 0, chars.length);
+   }
+
+   /**
+    * Get the tag of an entry.
+    * 
+    * @param entry a tape entry
+    * @return the tag
+    */
+   static int tagOf(long entry)
+   {
+      return (int) (entry >>> TAG_SHIFT);
+   }
+
+   /**
+    * Build a tape entry.
+    * 
+    * @param tag     the tag
+    * @param payload the payload
+    * @return the entry
+    */
+   static long entry(int tag, long payload)
+   {
+      return ((long) tag << TAG_SHIFT) | payload;
+   }
+
+   /**
+    * Build a container start entry.
+    * 
+    * @param tag   the tag
+    * @param end   position of the matching end entry
+    * @param count number of children
+    * @return the entry
+    */
+   static long containerEntry(int tag, int end, int count)
+   {
+      return entry(tag, ((long) Math.min(count, MAX_COUNT) << 32) | end);
+   }
+
+   /**
+    * Get the tag of the entry at a position.
+    * 
+    * @param pos tape position
+    * @return the tag
+    */
+   private int tagAt(int pos)
+   {
+      if ((pos < 0) || (pos >= mTapeLength)) throw new IndexOutOfBoundsException("Tape position: " + pos);
+      return tagOf(mTape[pos]);
+   }
+
+   /**
+    * Assert the entry at a position has a tag.
+    * 
+    * @param pos tape position
+    * @param tag expected tag
+    * @param what description of the expected type
+    */
+   private void expect(int pos, int tag, String what)
+   {
+      if (tagAt(pos) != tag) throw new RuntimeException("Value at tape position " + pos + " is not " + what);
+   }
+
+   /**
+    * Get the text offset of a string, key or number entry.
+    * 
+    * @param pos tape position
+    * @return offset of the text (after its length)
+    */
+   private int textOffset(int pos)
+   {
+      return (int) mTape[pos] + 2;
+   }
+
+   /**
+    * Get the text length of a string, key or number entry.
+    * 
+    * @param pos tape position
+    * @return length of the text
+    */
+   private int textLength(int pos)
+   {
+      int offset = (int) mTape[pos];
+      return (mText[offset] << 16) | mText[offset + 1];
+   }
+
+   /**
+    * Get the number of entries on the tape.
+    * 
+    * @return the tape length
+    */
+   public int getTapeLength()
+   {
+      return mTapeLength;
+   }
+
+   /**
+    * Get the position of the root value.
+    * 
+    * @return the root position
+    */
+   public int getRoot()
+   {
+      return 0;
+   }
+
+   /**
+    * Get the type of the value at a position.
+    * 
+    * @param pos tape position of a value
+    * @return the value type
+    */
+   public Type getType(int pos)
+   {
+      switch (tagAt(pos))
+      {
+         case TAG_OBJECT:
+            return Type.OBJECT;
+         case TAG_ARRAY:
+            return Type.ARRAY;
+         case TAG_STRING:
+            return Type.STRING;
+         case TAG_NUMBER:
+            return Type.NUMBER;
+         case TAG_TRUE:
+         case TAG_FALSE:
+            return Type.BOOLEAN;
+         case TAG_NULL:
+            return Type.NULL;
+         default:
+            throw new RuntimeException("Tape position " + pos + " is not the start of a value");
+      }
+   }
+
+   /**
+    * Get the number of members of an object or elements of an array.
+    * 
+    * @param pos tape position of an object or array
+    * @return the child count
+    */
+   public int size(int pos)
+   {
+      int tag = tagAt(pos);
+      if ((tag != TAG_OBJECT) && (tag != TAG_ARRAY)) throw new RuntimeException("Value at tape position " + pos + " is not an object or array");
+
+      int count = (int) (mTape[pos] >>> 32) & MAX_COUNT;
+      if (count < MAX_COUNT) return count;
+
+      // count saturated, so count the hard way
+      count = 0;
+      for (int child = first(pos); child >= 0; child = next(child))
+         count++;
+
+      return count;
+   }
+
+   /**
+    * Get the position just past a value.
+    * 
+    * @param pos tape position of a value
+    * @return the position after the value and all of its children
+    */
+   private int skip(int pos)
+   {
+      int tag = tagAt(pos);
+      if ((tag == TAG_OBJECT) || (tag == TAG_ARRAY)) return (int) mTape[pos] + 1;
+      return pos + 1;
+   }
+
+   /**
+    * Get the first child of an object or array. For an object, this is the
+    * position of the first member's value.
+    * 
+    * @param pos tape position of an object or array
+    * @return the position of the first child or -1 if empty
+    */
+   public int first(int pos)
+   {
+      int tag = tagAt(pos);
+
+      if (tag == TAG_ARRAY) return (tagAt(pos + 1) == TAG_ARRAY_END) ? -1 : pos + 1;
+      if (tag == TAG_OBJECT) return (tagAt(pos + 1) == TAG_OBJECT_END) ? -1 : pos + 2;
+
+      throw new RuntimeException("Value at tape position " + pos + " is not an object or array");
+   }
+
+   /**
+    * Get the next sibling of a member or element.
+    * 
+    * @param pos tape position of a member value or array element
+    * @return the position of the next sibling or -1 if there is none
+    */
+   public int next(int pos)
+   {
+      int after = skip(pos);
+
+      switch (tagAt(after))
+      {
+         case TAG_KEY:
+            return after + 1;
+         case TAG_OBJECT_END:
+         case TAG_ARRAY_END:
+            return -1;
+         default:
+            return after;
+      }
+   }
+
+   /**
+    * Determine if a value is a member of an object.
+    * 
+    * @param pos tape position of a value
+    * @return 'true' if the value has a key
+    */
+   public boolean hasKey(int pos)
+   {
+      return (pos > 0) && (tagAt(pos - 1) == TAG_KEY);
+   }
+
+   /**
+    * Get the key of an object member.
+    * 
+    * @param pos tape position of a member value
+    * @return the member name
+    */
+   public String getKey(int pos)
+   {
+      if (!hasKey(pos)) throw new RuntimeException("Value at tape position " + pos + " is not an object member");
+      return new String(mText, textOffset(pos - 1), textLength(pos - 1));
+   }
+
+   /**
+    * Find a member of an object by name without creating any objects.
+    * 
+    * @param pos tape position of an object
+    * @param key the member name
+    * @return the position of the member value or -1 if not found
+    */
+   public int getMember(int pos, String key)
+   {
+      expect(pos, TAG_OBJECT, "an object");
+
+      for (int child = first(pos); child >= 0; child = next(child))
+      {
+         if (keyEquals(child - 1, key)) return child;
+      }
+
+      return -1;
+   }
+
+   /**
+    * Compare a key entry to a string.
+    * 
+    * @param pos tape position of a key
+    * @param key the string to compare
+    * @return 'true' if equal
+    */
+   private boolean keyEquals(int pos, String key)
+   {
+      int length = textLength(pos);
+      if (length != key.length()) return false;
+
+      int offset = textOffset(pos);
+      for (int i = 0; i < length; i++)
+      {
+         if (mText[offset + i] != key.charAt(i)) return false;
+      }
+
+      return true;
+   }
+
+   /**
+    * Find an element of an array by index. Nested containers are skipped in
+    * O(1), so this is linear in the number of preceding elements only.
+    * 
+    * @param pos   tape position of an array
+    * @param index the element index
+    * @return the position of the element
+    * @throws IndexOutOfBoundsException if the index is out of range
+    */
+   public int getElement(int pos, int index)
+   {
+      expect(pos, TAG_ARRAY, "an array");
+      if (index < 0) throw new IndexOutOfBoundsException("Index: " + index);
+
+      int child = first(pos);
+      for (int i = 0; (i < index) && (child >= 0); i++)
+         child = next(child);
+
+      if (child < 0) throw new IndexOutOfBoundsException("Index: " + index);
+      return child;
+   }
+
+   /**
+    * Get a string value.
+    * 
+    * @param pos tape position of a string
+    * @return the string
+    */
+   public String getString(int pos)
+   {
+      expect(pos, TAG_STRING, "a string");
+      return new String(mText, textOffset(pos), textLength(pos));
+   }
+
+   /**
+    * Get the text of a number exactly as it appeared in the document.
+    * 
+    * @param pos tape position of a number
+    * @return the number text
+    */
+   public String getNumberText(int pos)
+   {
+      expect(pos, TAG_NUMBER, "a number");
+      return new String(mText, textOffset(pos), textLength(pos));
+   }
+
+   /**
+    * Get a number value.
+    * 
+    * @param pos tape position of a number
+    * @return the number
+    */
+   public BigDecimal getBigDecimal(int pos)
+   {
+      expect(pos, TAG_NUMBER, "a number");
+      return new BigDecimal(mText, textOffset(pos), textLength(pos));
+   }
+
+   /**
+    * Get a boolean value.
+    * 
+    * @param pos tape position of a boolean
+    * @return the boolean
+    */
+   public boolean getBoolean(int pos)
+   {
+      int tag = tagAt(pos);
+      if (tag == TAG_TRUE) return true;
+      if (tag == TAG_FALSE) return false;
+
+      throw new RuntimeException("Value at tape position " + pos + " is not a boolean");
+   }
+
+   /**
+    * Determine if a value is null.
+    * 
+    * @param pos tape position of a value
+    * @return 'true' if the value is null
+    */
+   public boolean isNull(int pos)
+   {
+      return tagAt(pos) == TAG_NULL;
+   }
+
+   /**
+    * Convert the whole document to a <code>JSONValue</code>.
+    * 
+    * @return the root value
+    */
+   public JSONValue toJSONValue()
+   {
+      return toJSONValue(0);
+   }
+
+   /**
+    * Convert a value on the tape to a <code>JSONValue</code>.
+    * 
+    * @param pos tape position of a value
+    * @return the value
+    */
+   public JSONValue toJSONValue(int pos)
+   {
+      switch (tagAt(pos))
+      {
+         case TAG_OBJECT:
+         {
+            JSONObject object = new JSONObject();
+
+            for (int child = first(pos); child >= 0; child = next(child))
+            {
+               object.put(getKey(child), toJSONValue(child));
+            }
+
+            return object;
+         }
+         case TAG_ARRAY:
+         {
+            JSONArray array = new JSONArray();
+            List<JSONValue> list = array.getListValue();
+
+            for (int child = first(pos); child >= 0; child = next(child))
+            {
+               list.add(toJSONValue(child));
+            }
+
+            return array;
+         }
+         case TAG_STRING:
+            return new JSONString(getString(pos));
+         case TAG_NUMBER:
+            return new JSONNumber(getBigDecimal(pos));
+         case TAG_TRUE:
+            return new JSONBoolean(Boolean.TRUE);
+         case TAG_FALSE:
+            return new JSONBoolean(Boolean.FALSE);
+         case TAG_NULL:
+            return JSONNull.INSTANCE;
+         default:
+            throw new RuntimeException("Tape position " + pos + " is not the start of a value");
+      }
+   }
+
+   /**
+    * Create a cursor positioned on the root value.
+    * 
+    * @return a new cursor
+    */
+   public Cursor cursor()
+   {
+      return new Cursor(this);
+   }
+
+   /**
+    * A movable position on a tape. The cursor remembers the containers it has
+    * descended into so it can move back up.
+    */
+   static public final class Cursor
+   {
+      /** The tape. */
+      private final JSONTape mTape;
+
+      /** Current position. */
+      private int mPos;
+
+      /** Positions of the enclosing containers. */
+      private int[] mParents = new int[16];
+
+      /** Number of enclosing containers. */
+      private int mDepth;
+
+      /**
+       * Create a new Cursor.
+       * 
+       * @param tape the tape
+       */
+      Cursor(JSONTape tape)
+      {
+         mTape = tape;
+      }
+
+      /**
+       * Get the tape position of the current value.
+       * 
+       * @return tape position
+       */
+      public int getPosition()
+      {
+         return mPos;
+      }
+
+      /**
+       * Get the number of containers enclosing the current value.
+       * 
+       * @return the depth
+       */
+      public int getDepth()
+      {
+         return mDepth;
+      }
+
+      /**
+       * Get the type of the current value.
+       * 
+       * @return the value type
+       */
+      public Type getType()
+      {
+         return mTape.getType(mPos);
+      }
+
+      /**
+       * Get the key of the current value.
+       * 
+       * @return the member name or null if the current value isn't an object
+       *         member
+       */
+      public String getKey()
+      {
+         return mTape.hasKey(mPos) ? mTape.getKey(mPos) : null;
+      }
+
+      /**
+       * Get the current value as a string.
+       * 
+       * @return the string
+       */
+      public String getString()
+      {
+         return mTape.getString(mPos);
+      }
+
+      /**
+       * Get the current value as a number.
+       * 
+       * @return the number
+       */
+      public BigDecimal getBigDecimal()
+      {
+         return mTape.getBigDecimal(mPos);
+      }
+
+      /**
+       * Get the current value as a boolean.
+       * 
+       * @return the boolean
+       */
+      public boolean getBoolean()
+      {
+         return mTape.getBoolean(mPos);
+      }
+
+      /**
+       * Determine if the current value is null.
+       * 
+       * @return 'true' if the value is null
+       */
+      public boolean isNull()
+      {
+         return mTape.isNull(mPos);
+      }
+
+      /**
+       * Get the number of children of the current object or array.
+       * 
+       * @return the child count
+       */
+      public int size()
+      {
+         return mTape.size(mPos);
+      }
+
+      /**
+       * Convert the current value to a <code>JSONValue</code>.
+       * 
+       * @return the value
+       */
+      public JSONValue toJSONValue()
+      {
+         return mTape.toJSONValue(mPos);
+      }
+
+      /**
+       * Move to a child of the current object or array.
+       * 
+       * @param child tape position of the child
+       */
+      private void descend(int child)
+      {
+         if (mDepth == mParents.length) mParents = Arrays.copyOf(mParents, mDepth * 2);
+         mParents[mDepth++] = mPos;
+         mPos = child;
+      }
+
+      /**
+       * Move to the first child of the current object or array.
+       * 
+       * @return 'false' if the container is empty and the cursor didn't move
+       */
+      public boolean down()
+      {
+         int child = mTape.first(mPos);
+         if (child < 0) return false;
+
+         descend(child);
+         return true;
+      }
+
+      /**
+       * Move to the next sibling of the current value.
+       * 
+       * @return 'false' if there is no next sibling and the cursor didn't move
+       */
+      public boolean next()
+      {
+         if (mDepth == 0) return false;
+
+         int sibling = mTape.next(mPos);
+         if (sibling < 0) return false;
+
+         mPos = sibling;
+         return true;
+      }
+
+      /**
+       * Move to the enclosing object or array.
+       * 
+       * @return 'false' if the cursor is at the root and didn't move
+       */
+      public boolean up()
+      {
+         if (mDepth == 0) return false;
+
+         mPos = mParents[--mDepth];
+         return true;
+      }
+
+      /**
+       * Move to a member of the current object.
+       * 
+       * @param key the member name
+       * @return 'false' if there is no such member and the cursor didn't move
+       */
+      public boolean find(String key)
+      {
+         int child = mTape.getMember(mPos, key);
+         if (child < 0) return false;
+
+         descend(child);
+         return true;
+      }
+
+      /**
+       * Move to an element of the current array.
+       * 
+       * @param index the element index
+       * @return 'false' if the index is out of range and the cursor didn't move
+       */
+      public boolean element(int index)
+      {
+         if ((index < 0) || (index >= mTape.size(mPos))) return false;
+
+         descend(mTape.getElement(mPos, index));
+         return true;
+      }
+   }
+}
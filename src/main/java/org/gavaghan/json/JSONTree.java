@@ -0,0 +1,596 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rendering, copying and comparison of <code>JSONValue</code> trees that keep
+ * track of their place on the heap rather than by recursion, so that nesting
+ * depth doesn't call for a larger thread stack. Only plain
+ * <code>JSONObject</code> and <code>JSONArray</code> instances are walked
+ * into; any other value is handed its own <code>write()</code> or
+ * <code>deepCopy()</code>.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class JSONTree
+{
+   /**
+    * An object or array being rendered.
+    */
+   static private final class Frame
+   {
+      /** The enclosing object or array, or null. */
+      final Frame mParent;
+
+      /** Members still to render, or null for an array. */
+      final Iterator<Map.Entry<String, JSONValue>> mMembers;
+
+      /** Elements still to render, or null for an object. */
+      final Iterator<JSONValue> mElements;
+
+      /** Indent padding of the closing character. */
+      final String mIndent;
+
+      /** Indent padding of the members or elements. */
+      final String mNewIndent;
+
+      /** Number of members or elements not yet completely rendered. */
+      int mRemaining;
+
+      /** Node whose rendering is captured for the write cache, or null. */
+      JSONValue mCapture;
+
+      /** Where the captured rendering starts. */
+      int mStart;
+
+      /** Clock reading taken before the captured node was rendered. */
+      long mTime;
+
+      /**
+       * Create a new Frame.
+       * 
+       * @param parent   the enclosing frame, or null
+       * @param members  the members of an object, or null
+       * @param elements the elements of an array, or null
+       * @param size     number of members or elements
+       * @param indent   indent padding of the closing character
+       */
+      Frame(Frame parent, Iterator<Map.Entry<String, JSONValue>> members, Iterator<JSONValue> elements, int size, String indent)
+      {
+         mParent = parent;
+         mMembers = members;
+         mElements = elements;
+         mRemaining = size;
+         mIndent = indent;
+         mNewIndent = JSONContext.nextIndent(indent);
+      }
+   }
+
+   /**
+    * An object or array being built by one of the binary decoders.
+    */
+   static final class Container
+   {
+      /** The enclosing object or array, or null. */
+      final Container mParent;
+
+      /** The object or array. */
+      final JSONValue mValue;
+
+      /** Path to the object or array. */
+      final String mPath;
+
+      /** Number of objects and arrays open, counting this one. */
+      final int mDepth;
+
+      /** Members or elements still to read, or -1 if the length is indefinite. */
+      int mRemaining;
+
+      /** Key of the member being read. */
+      String mKey;
+
+      /**
+       * Create a new Container.
+       * 
+       * @param parent    the enclosing container, or null
+       * @param value     the empty object or array
+       * @param path      path to the object or array
+       * @param remaining number of members or elements, or -1 if indefinite
+       * @param maxDepth  the maximum nesting depth
+       * @throws JSONException if the maximum depth is exceeded
+       */
+      Container(Container parent, JSONValue value, String path, int remaining, int maxDepth) throws JSONException
+      {
+         mDepth = (parent != null) ? (parent.mDepth + 1) : 1;
+         if (mDepth > maxDepth) throw JSONValueFactory.tooDeep(path, maxDepth);
+
+         mParent = parent;
+         mValue = value;
+         mPath = path;
+         mRemaining = remaining;
+      }
+
+      /**
+       * Add a member or element that's been read.
+       * 
+       * @param value the member value or element
+       */
+      void add(JSONValue value)
+      {
+         if (mValue instanceof JSONObject) ((JSONObject) mValue).put(mKey, value);
+         else ((JSONArray) mValue).elements().add(value);
+      }
+   }
+
+   /**
+    * Receives the parts of a tree from <code>visit()</code> in document order.
+    */
+   interface Visitor
+   {
+      /**
+       * Start an object. Its members follow as a key and a value each.
+       * 
+       * @param size number of members
+       * @throws IOException on any failure of the output
+       */
+      void object(int size) throws IOException;
+
+      /**
+       * Start a member.
+       * 
+       * @param key the member key
+       * @throws IOException on any failure of the output
+       */
+      void key(String key) throws IOException;
+
+      /**
+       * Start an array. Its elements follow.
+       * 
+       * @param size number of elements
+       * @throws IOException on any failure of the output
+       */
+      void array(int size) throws IOException;
+
+      /**
+       * Take a value that isn't an object or array.
+       * 
+       * @param value the value
+       * @throws IOException on any failure of the output
+       */
+      void scalar(JSONValue value) throws IOException;
+   }
+
+   /**
+    * Not instantiable.
+    */
+   private JSONTree()
+   {
+   }
+
+   /**
+    * Determine if a value is a plain object or array we can walk into.
+    * 
+    * @param value the value
+    * @return 'true' if it's exactly a <code>JSONObject</code> or
+    *         <code>JSONArray</code>
+    */
+   static private boolean isPlain(JSONValue value)
+   {
+      Class<?> type = value.getClass();
+      return (type == JSONObject.class) || (type == JSONArray.class);
+   }
+
+   /**
+    * Render the members of an object.
+    * 
+    * @param object the object
+    * @param indent indent padding
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static void writeObject(JSONObject object, String indent, Writer writer, boolean pretty) throws IOException
+   {
+      int size = object.size();
+
+      if (size == 0)
+      {
+         writer.write("{}");
+      }
+      else
+      {
+         writer.write('{');
+         if (pretty) writer.write(JSONObject.EOL);
+
+         write(new Frame(null, object.memberSet().iterator(), null, size, indent), writer, pretty);
+      }
+   }
+
+   /**
+    * Render a list of values as an array.
+    * 
+    * @param values the array elements
+    * @param indent indent padding
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static void writeArray(List<JSONValue> values, String indent, Writer writer, boolean pretty) throws IOException
+   {
+      int size = values.size();
+
+      if (size == 0)
+      {
+         writer.write("[]");
+      }
+      else
+      {
+         writer.write('[');
+         writer.write(JSONObject.EOL);
+
+         write(new Frame(null, null, values.iterator(), size, indent), writer, pretty);
+      }
+   }
+
+   /**
+    * Render the rest of an opened object or array. Nested plain objects and
+    * arrays are opened in turn. If the write cache is enabled, they're written
+    * from the cache when possible, and otherwise their rendering is captured
+    * for it as they're closed. When the rendering can't be captured they're
+    * written through the cache instead.
+    * 
+    * @param frame  the object or array
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static private void write(Frame frame, Writer writer, boolean pretty) throws IOException
+   {
+      boolean observe = JSONWriteCache.isEnabled();
+      boolean capture = observe && (writer instanceof StringBuilderWriter);
+
+      while (frame != null)
+      {
+         // close the object or array when everything's rendered
+         if (frame.mRemaining == 0)
+         {
+            writer.write(frame.mIndent);
+            writer.write((frame.mMembers != null) ? '}' : ']');
+
+            if (frame.mCapture != null) JSONWriteCache.store(frame.mCapture, (StringBuilderWriter) writer, frame.mStart, frame.mIndent, pretty, frame.mTime);
+
+            frame = frame.mParent;
+            if (frame != null) next(frame, writer, pretty);
+            continue;
+         }
+
+         JSONValue value;
+
+         if (frame.mMembers != null)
+         {
+            Map.Entry<String, JSONValue> entry = frame.mMembers.next();
+
+            if (pretty) writer.write(frame.mNewIndent);
+            JSONWriter.writeKey(entry.getKey(), writer, pretty);
+            value = entry.getValue();
+         }
+         else
+         {
+            writer.write(frame.mNewIndent);
+            value = frame.mElements.next();
+         }
+
+         if (observe) JSONWriteCache.observe(value);
+
+         if (isPlain(value) && (capture || !observe))
+         {
+            Frame nested;
+
+            if (capture)
+            {
+               if (JSONWriteCache.writeCached(value, frame.mNewIndent, writer, pretty))
+               {
+                  next(frame, writer, pretty);
+                  continue;
+               }
+
+               int start = ((StringBuilderWriter) writer).length();
+               long time = JSONWriteCache.now();
+
+               nested = open(frame, value, writer, pretty);
+
+               if (nested != null)
+               {
+                  nested.mCapture = value;
+                  nested.mStart = start;
+                  nested.mTime = time;
+               }
+            }
+            else
+            {
+               nested = open(frame, value, writer, pretty);
+            }
+
+            if (nested != null) frame = nested;
+            else next(frame, writer, pretty);
+
+            continue;
+         }
+
+         value.write(frame.mNewIndent, writer, pretty);
+         next(frame, writer, pretty);
+      }
+   }
+
+   /**
+    * Open a nested plain object or array.
+    * 
+    * @param parent the enclosing object or array
+    * @param value  the nested object or array
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @return the new frame, or null if it was empty and has been rendered
+    *         completely
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static private Frame open(Frame parent, JSONValue value, Writer writer, boolean pretty) throws IOException
+   {
+      if (value.getClass() == JSONObject.class)
+      {
+         JSONObject object = (JSONObject) value;
+         int size = object.size();
+
+         if (size == 0)
+         {
+            writer.write("{}");
+            return null;
+         }
+
+         writer.write('{');
+         if (pretty) writer.write(JSONObject.EOL);
+
+         return new Frame(parent, object.memberSet().iterator(), null, size, parent.mNewIndent);
+      }
+
+      List<JSONValue> values = ((JSONArray) value).elements();
+      int size = values.size();
+
+      if (size == 0)
+      {
+         writer.write("[]");
+         return null;
+      }
+
+      writer.write('[');
+      writer.write(JSONObject.EOL);
+
+      return new Frame(parent, null, values.iterator(), size, parent.mNewIndent);
+   }
+
+   /**
+    * Finish a member or element.
+    * 
+    * @param frame  the object or array it belongs to
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static private void next(Frame frame, Writer writer, boolean pretty) throws IOException
+   {
+      if (--frame.mRemaining != 0) writer.write(',');
+      if (pretty || (frame.mElements != null)) writer.write(JSONObject.EOL);
+   }
+
+   /**
+    * Walk a tree in document order, with objects and arrays of every type
+    * walked into.
+    * 
+    * @param value   root of the tree
+    * @param visitor receives the parts of the tree
+    * @throws IOException on any failure of the visitor
+    */
+   @SuppressWarnings("unchecked")
+   static void visit(JSONValue value, Visitor visitor) throws IOException
+   {
+      ArrayDeque<Iterator<?>> pending = new ArrayDeque<Iterator<?>>();
+
+      for (;;)
+      {
+         if (value instanceof JSONObject)
+         {
+            JSONObject object = (JSONObject) value;
+            visitor.object(object.size());
+            pending.push(object.memberSet().iterator());
+         }
+         else if (value instanceof JSONArray)
+         {
+            List<JSONValue> elements = ((JSONArray) value).elementList();
+            visitor.array(elements.size());
+            pending.push(elements.iterator());
+         }
+         else
+         {
+            visitor.scalar(value);
+         }
+
+         // leave any finished objects and arrays
+         while (!pending.isEmpty() && !pending.peek().hasNext())
+         {
+            pending.pop();
+         }
+
+         if (pending.isEmpty()) return;
+
+         Object next = pending.peek().next();
+
+         if (next instanceof Map.Entry)
+         {
+            Map.Entry<String, JSONValue> entry = (Map.Entry<String, JSONValue>) next;
+            visitor.key(entry.getKey());
+            value = entry.getValue();
+         }
+         else
+         {
+            value = (JSONValue) next;
+         }
+      }
+   }
+
+   /**
+    * Create a deep copy of a value the way <code>deepCopy()</code> does:
+    * arrays copy each of their elements and objects share their members.
+    * Nested arrays are copied with a stack on the heap.
+    * 
+    * @param value the value to copy
+    * @return the copy
+    */
+   static JSONValue deepCopy(JSONValue value)
+   {
+      if (!isPlain(value)) return value.deepCopy();
+
+      ArrayDeque<JSONArray> pending = new ArrayDeque<JSONArray>();
+      JSONValue root = copyPlain(value, pending);
+
+      while (!pending.isEmpty())
+      {
+         List<JSONValue> elements = pending.pop().elements();
+         JSONArray source = pending.pop();
+
+         for (JSONValue element : source.elements())
+         {
+            elements.add(isPlain(element) ? copyPlain(element, pending) : element.deepCopy());
+         }
+      }
+
+      return root;
+   }
+
+   /**
+    * Copy a plain object, sharing its members, or create an empty copy of a
+    * plain array and queue it to be filled in.
+    * 
+    * @param value   the object or array
+    * @param pending queue of (source, target) pairs
+    * @return the copy
+    */
+   static private JSONValue copyPlain(JSONValue value, ArrayDeque<JSONArray> pending)
+   {
+      if (value instanceof JSONObject)
+      {
+         JSONObject copy = new JSONObject();
+         copy.copyValue(value);
+         return copy;
+      }
+
+      JSONArray copy = new JSONArray();
+
+      pending.push((JSONArray) value);
+      pending.push(copy);
+      return copy;
+   }
+
+   /**
+    * Compare two values by content. Objects are equal if they have the same
+    * keys with equal values in any order, arrays if they have equal elements
+    * in the same order, and numbers if their <code>BigDecimal</code> values
+    * are equal (so scale matters).
+    * 
+    * @param a a value
+    * @param b another value
+    * @return 'true' if equal
+    */
+   static boolean equals(JSONValue a, JSONValue b)
+   {
+      ArrayDeque<JSONValue> pending = new ArrayDeque<JSONValue>();
+
+      pending.push(a);
+      pending.push(b);
+
+      while (!pending.isEmpty())
+      {
+         JSONValue y = pending.pop();
+         JSONValue x = pending.pop();
+
+         if (x == y) continue;
+
+         // frozen values know their hash codes already
+         if ((x instanceof FrozenJSONValue) && (y instanceof FrozenJSONValue) && (x.hashCode() != y.hashCode())) return false;
+
+         if (x instanceof JSONObject)
+         {
+            if (!(y instanceof JSONObject)) return false;
+
+            JSONObject xObject = (JSONObject) x;
+            JSONObject yObject = (JSONObject) y;
+            if (xObject.size() != yObject.size()) return false;
+
+            for (Map.Entry<String, JSONValue> entry : xObject.memberSet())
+            {
+               JSONValue other = yObject.get(entry.getKey());
+               if (other == null) return false;
+
+               pending.push(entry.getValue());
+               pending.push(other);
+            }
+         }
+         else if (x instanceof JSONArray)
+         {
+            if (!(y instanceof JSONArray)) return false;
+
+            List<JSONValue> xList = ((JSONArray) x).elementList();
+            List<JSONValue> yList = ((JSONArray) y).elementList();
+            if (xList.size() != yList.size()) return false;
+
+            Iterator<JSONValue> iter = yList.iterator();
+
+            for (JSONValue element : xList)
+            {
+               pending.push(element);
+               pending.push(iter.next());
+            }
+         }
+         else if (x instanceof JSONString)
+         {
+            if (!(y instanceof JSONString) || !((JSONString) x).contentEquals((JSONString) y)) return false;
+         }
+         else if (x instanceof JSONNumber)
+         {
+            if (!(y instanceof JSONNumber) || !((JSONNumber) x).getBigDecimalValue().equals(((JSONNumber) y).getBigDecimalValue())) return false;
+         }
+         else if (x instanceof JSONBoolean)
+         {
+            if (!(y instanceof JSONBoolean) || (((JSONBoolean) x).getBooleanValue() != ((JSONBoolean) y).getBooleanValue())) return false;
+         }
+         else if (x instanceof JSONNull)
+         {
+            if (!(y instanceof JSONNull)) return false;
+         }
+         else if (!x.equals(y))
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+}
@@ -16,11 +16,15 @@
 package org.gavaghan.json;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PushbackReader;
 import java.io.Reader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * <p>
@@ -39,15 +43,145 @@ import java.text.MessageFormat;
  */
 public class JSONValueFactory
 {
+   /** ASCII whitespace as defined by <code>Character.isWhitespace()</code>. */
+   static private final boolean[] JAVA_WHITESPACE = new boolean[128];
+
+   /** ASCII whitespace as defined by the JSON grammar. */
+   static private final boolean[] JSON_WHITESPACE = new boolean[128];
+
+   static
+   {
+      for (int c = 0; c < 128; c++)
+      {
+         JAVA_WHITESPACE[c] = Character.isWhitespace(c);
+      }
+
+      JSON_WHITESPACE[' '] = true;
+      JSON_WHITESPACE['\t'] = true;
+      JSON_WHITESPACE['\n'] = true;
+      JSON_WHITESPACE['\r'] = true;
+   }
+
+   /** Value kind of a character that can't start a value. */
+   static private final byte KIND_UNKNOWN = 0;
+
+   /** Value kind for a leading quote. */
+   static private final byte KIND_STRING = 1;
+
+   /** Value kind for a leading digit or minus sign. */
+   static private final byte KIND_NUMBER = 2;
+
+   /** Value kind for a leading bracket. */
+   static private final byte KIND_ARRAY = 3;
+
+   /** Value kind for a leading brace. */
+   static private final byte KIND_OBJECT = 4;
+
+   /** Value kind for a leading 't' or 'f'. */
+   static private final byte KIND_BOOLEAN = 5;
+
+   /** Value kind for a leading 'n'. */
+   static private final byte KIND_NULL = 6;
+
+   /** Number of value kinds. */
+   static private final int KIND_COUNT = 7;
+
+   /** Value kind by first character for ASCII characters. */
+   static private final byte[] KINDS = new byte[128];
+
+   /** The callback that creates each kind of value. */
+   static private final String[] CALLBACKS = { "onUnknown", "onString", "onNumber", "onArray", "onObject", "onBoolean", "onNull" };
+
+   static
+   {
+      for (char c = '0'; c <= '9'; c++)
+      {
+         KINDS[c] = KIND_NUMBER;
+      }
+
+      KINDS['-'] = KIND_NUMBER;
+      KINDS['\"'] = KIND_STRING;
+      KINDS['['] = KIND_ARRAY;
+      KINDS['{'] = KIND_OBJECT;
+      KINDS['t'] = KIND_BOOLEAN;
+      KINDS['f'] = KIND_BOOLEAN;
+      KINDS['n'] = KIND_NULL;
+   }
+
    /** The default implementation. */
    static public final JSONValueFactory DEFAULT = new JSONValueFactory();
 
+   /**
+    * An implementation that only accepts the whitespace allowed by the JSON
+    * grammar.
+    * 
+    * @since 1.3
+    */
+   static public final JSONValueFactory STRICT = new JSONValueFactory(true);
+
+   /**
+    * Default limit on how deeply objects and arrays may nest.
+    * 
+    * @since 1.3
+    */
+   static public final int DEFAULT_MAX_DEPTH = 10000;
+
+   /**
+    * Default least size of an array read as a <code>JSONNumberArray</code>.
+    * 
+    * @since 1.3
+    */
+   static public final int DEFAULT_MIN_NUMBER_ARRAY_SIZE = 16;
+
    /** GC safe empty parameters. */
    static protected final Class<?> NO_PARAMS[] = new Class<?>[0];
 
    /** GC safe empty argument. */
    static protected final Object NO_ARGS[] = new Object[0];
 
+   /** 'true' to accept only JSON whitespace. */
+   private final boolean mStrictWhitespace;
+
+   /** Whitespace flags for ASCII characters. */
+   private final boolean[] mWhitespace;
+
+   /**
+    * For each value kind, 'true' if neither its callback nor
+    * <code>recast()</code> is overridden, so values can be built directly.
+    */
+   private final boolean[] mDirect;
+
+   /** 'true' if a subclass overrides <code>recast()</code>. */
+   private final boolean mRecasting;
+
+   /**
+    * 'true' if every value is built directly and whitespace isn't redefined,
+    * so a document can be built from a structural index.
+    */
+   private final boolean mIndexable;
+
+   /**
+    * For each value kind, 'true' if its callback isn't overridden, so it has
+    * the standard grammar and can be validated without reading it.
+    */
+   private final boolean[] mStandard;
+
+   /**
+    * Determine if a character is whitespace. By default this is
+    * <code>Character.isWhitespace()</code>. If this factory is strict, only the
+    * space, tab, line feed and carriage return are whitespace.
+    * 
+    * @since 1.3
+    * 
+    * @param c a character
+    * @return 'true' if the character is whitespace
+    */
+   public final boolean isWhitespace(int c)
+   {
+      if (c < 128) return (c >= 0) && mWhitespace[c];
+      return !mStrictWhitespace && Character.isWhitespace(c);
+   }
+
    /**
     * Skip to first non-whitespace character. Derived implementations may choose to
     * override this in order to redefine whitespace.
@@ -60,6 +194,13 @@ public class JSONValueFactory
     */
    public void skipWhitespace(PushbackReader pbr) throws IOException, JSONException
    {
+      // scan the buffer directly if we can
+      if (pbr instanceof JSONPushbackReader)
+      {
+         ((JSONPushbackReader) pbr).skipWhitespace(mWhitespace, !mStrictWhitespace);
+         return;
+      }
+
       for (;;)
       {
          int c = pbr.read();
@@ -67,7 +208,7 @@ public class JSONValueFactory
          if (c < 0) break; // bail on EOF
 
          // if non-whitespace found, push it back and exit
-         if (!Character.isWhitespace(c))
+         if (!isWhitespace(c))
          {
             pbr.unread(c);
             break;
@@ -212,10 +353,183 @@ public class JSONValueFactory
    }
 
    /**
-    * Create a new <code>JSONValueFactory</code>.
+    * Determine if objects, arrays and nulls are read without calling back into
+    * a subclass, so a codec may read them from the token stream itself.
+    * 
+    * @return 'true' if their callbacks aren't overridden
+    */
+   boolean isStandardStructure()
+   {
+      return mStandard[KIND_OBJECT] && mStandard[KIND_ARRAY] && mStandard[KIND_NULL];
+   }
+
+   /**
+    * Determine if values built without parsing text need to be passed to
+    * <code>recastValue()</code>.
+    * 
+    * @return 'true' if a subclass overrides <code>recast()</code>
+    */
+   boolean isRecasting()
+   {
+      return mRecasting;
+   }
+
+   /**
+    * Give a subclass the chance to recast a value that was built without
+    * parsing text, the same way <code>read()</code> does for parsed values.
+    * 
+    * @param path  JSON path to the value
+    * @param value the value to potentially recast
+    * @return the recast value, or 'value' if no recast was required
+    * @throws JSONException
+    */
+   JSONValue recastValue(String path, JSONValue value) throws JSONException
+   {
+      JSONValue recast = recast(path, value);
+      if (recast == null) return value;
+
+      recast.copyValue(value);
+      return recast;
+   }
+
+   /**
+    * Create a new <code>JSONValueFactory</code> that treats any character
+    * accepted by <code>Character.isWhitespace()</code> as whitespace.
     */
    public JSONValueFactory()
    {
+      this(false);
+   }
+
+   /**
+    * Create a new <code>JSONValueFactory</code>.
+    * 
+    * @since 1.3
+    * 
+    * @param strictWhitespace 'true' to accept only the whitespace allowed by
+    *                         the JSON grammar (space, tab, line feed and
+    *                         carriage return), 'false' to accept anything
+    *                         <code>Character.isWhitespace()</code> does
+    */
+   public JSONValueFactory(boolean strictWhitespace)
+   {
+      mStrictWhitespace = strictWhitespace;
+      mWhitespace = strictWhitespace ? JSON_WHITESPACE : JAVA_WHITESPACE;
+      mRecasting = isOverridden("recast", String.class, JSONValue.class);
+      mStandard = findStandardKinds();
+      mDirect = findDirectKinds();
+      mIndexable = findIndexable();
+   }
+
+   /**
+    * Determine if a subclass overrides a method of this class.
+    * 
+    * @param name       method name
+    * @param paramTypes method parameter types
+    * @return 'true' if overridden
+    */
+   private boolean isOverridden(String name, Class<?>... paramTypes)
+   {
+      for (Class<?> klass = getClass(); klass != JSONValueFactory.class; klass = klass.getSuperclass())
+      {
+         try
+         {
+            klass.getDeclaredMethod(name, paramTypes);
+            return true;
+         }
+         catch (NoSuchMethodException exc)
+         {
+            // keep looking
+         }
+         catch (SecurityException exc)
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Find the value kinds whose callbacks a subclass doesn't override.
+    * Unless <code>recast()</code> is overridden too, these can be built
+    * without calling back into the subclass.
+    * 
+    * @return flags indexed by value kind
+    */
+   private boolean[] findStandardKinds()
+   {
+      boolean[] standard = new boolean[KIND_COUNT];
+
+      standard[KIND_UNKNOWN] = !isOverridden(CALLBACKS[KIND_UNKNOWN], String.class, PushbackReader.class, char.class);
+
+      for (int kind = KIND_STRING; kind < KIND_COUNT; kind++)
+      {
+         standard[kind] = !isOverridden(CALLBACKS[kind], String.class, PushbackReader.class);
+      }
+
+      return standard;
+   }
+
+   /**
+    * Find the value kinds that can be built without calling back into a
+    * subclass.
+    * 
+    * @return flags indexed by value kind
+    */
+   private boolean[] findDirectKinds()
+   {
+      boolean[] direct = new boolean[KIND_COUNT];
+
+      if (mRecasting) return direct;
+
+      for (int kind = KIND_STRING; kind < KIND_COUNT; kind++)
+      {
+         direct[kind] = mStandard[kind];
+      }
+
+      return direct;
+   }
+
+   /**
+    * Determine if documents can be built from a structural index: every
+    * standard kind is built directly and <code>skipWhitespace()</code> isn't
+    * overridden.
+    * 
+    * @return 'true' if indexable
+    */
+   private boolean findIndexable()
+   {
+      for (int kind = KIND_STRING; kind < KIND_COUNT; kind++)
+      {
+         if (!mDirect[kind]) return false;
+      }
+
+      return !isOverridden("skipWhitespace", PushbackReader.class);
+   }
+
+   /**
+    * Get the value kind for the first character of a value.
+    * 
+    * @param c the first character
+    * @return the value kind
+    */
+   static private int kindOf(char c)
+   {
+      if (c < 128) return KINDS[c];
+      return Character.isDigit(c) ? KIND_NUMBER : KIND_UNKNOWN;
+   }
+
+   /**
+    * Determine if this factory only accepts JSON whitespace.
+    * 
+    * @since 1.3
+    * 
+    * @return 'true' if whitespace is strict
+    */
+   public boolean isStrictWhitespace()
+   {
+      return mStrictWhitespace;
    }
 
    /**
@@ -288,77 +602,506 @@ public class JSONValueFactory
    }
 
    /**
-    * Read the <code>JSONValue</code> that comes after the whitespace (if any).
+    * Get the limit on how deeply objects and arrays may nest in a document.
+    * Documents nested more deeply are rejected with a
+    * <code>JSONException</code>. Nesting is tracked on the heap, so raising
+    * this doesn't call for a larger thread stack unless a subclass's own
+    * <code>read()</code> implementations recurse.
     * 
-    * @param reader
-    * @return the next <code>JSONValue</code>
-    * @throws IOException
-    * @throws JSONException
+    * @since 1.3
+    * 
+    * @return the maximum depth
     */
-   final public JSONValue read(Reader reader) throws IOException, JSONException
+   public int getMaxDepth()
    {
-      PushbackReader pbr = new PushbackReader(reader, getPushbackBufferSize());
+      return DEFAULT_MAX_DEPTH;
+   }
 
-      // look for start of value
-      skipWhitespace(pbr);
-      int c = pbr.read();
+   /**
+    * Get the limit on the number of characters in a document, counted from
+    * the first character read by <code>read(Reader)</code>. Input beyond the
+    * limit is never read. By default there's no limit.
+    * 
+    * @since 1.3
+    * 
+    * @return the maximum input length
+    */
+   public long getMaxInputLength()
+   {
+      return Long.MAX_VALUE;
+   }
 
-      // bail out early if EOF
-      if (c < 0) return null;
+   /**
+    * Get the limit on the length of a string value or key once escapes are
+    * decoded. By default there's no limit.
+    * 
+    * @since 1.3
+    * 
+    * @return the maximum string length
+    */
+   public int getMaxStringLength()
+   {
+      return Integer.MAX_VALUE;
+   }
 
-      pbr.unread(c);
+   /**
+    * Get the limit on the number of characters in a number, including sign,
+    * decimal point and exponent. It's checked before the number is parsed.
+    * By default there's no limit.
+    * 
+    * @since 1.3
+    * 
+    * @return the maximum number length
+    */
+   public int getMaxNumberLength()
+   {
+      return Integer.MAX_VALUE;
+   }
 
-      return read("$", pbr);
+   /**
+    * Get the limit on the number of members in an object or elements in an
+    * array. By default there's no limit.
+    * 
+    * @since 1.3
+    * 
+    * @return the maximum member count
+    */
+   public int getMaxMembers()
+   {
+      return Integer.MAX_VALUE;
    }
 
    /**
-    * Read a <code>JSONValue</code>.
+    * Determine if numbers with a fraction or exponent are read as a
+    * <code>JSONDouble</code>, converted straight to the nearest
+    * <code>double</code> without building a <code>BigDecimal</code>. Integers,
+    * and numbers too large for a <code>double</code>, are still read as a
+    * <code>JSONNumber</code>. This only applies to numbers the factory builds
+    * itself, not those read through an overridden <code>onNumber()</code>. By
+    * default numbers are read exactly.
     * 
-    * @param path JSON path to the value we're reading
-    * @param pbr  a pushback reader
-    * @return the next <code>JSONValue</code>
-    * @throws IOException
-    * @throws JSONException
+    * @since 1.3
+    * 
+    * @return 'true' to read numbers as doubles
     */
-   final public JSONValue read(String path, PushbackReader pbr) throws IOException, JSONException
+   public boolean isDoublePrecision()
    {
-      JSONValue value;
-      char c = demand(pbr);
+      return false;
+   }
+
+   /**
+    * Get the least number of elements for an array made up only of numbers to
+    * be read as a <code>JSONNumberArray</code>, which holds the numbers in
+    * primitive arrays rather than as <code>JSONNumber</code> instances. This
+    * only applies to arrays the factory builds itself.
+    * 
+    * @since 1.3
+    * 
+    * @return the minimum size, or <code>Integer.MAX_VALUE</code> to read every
+    *         array as a plain <code>JSONArray</code>
+    */
+   public int getMinNumberArraySize()
+   {
+      return DEFAULT_MIN_NUMBER_ARRAY_SIZE;
+   }
+
+   /**
+    * Create the exception for an object or array with too many members.
+    * 
+    * @param path       path to the object or array
+    * @param object     'true' for an object, 'false' for an array
+    * @param maxMembers the maximum member count
+    * @return the exception
+    */
+   static JSONException tooMany(String path, boolean object, int maxMembers)
+   {
+      return new JSONException(path, object ? ("Object has more than " + maxMembers + " members") : ("Array has more than " + maxMembers + " elements"));
+   }
+
+   /**
+    * Count an object or array being opened by a recursive
+    * <code>read()</code>.
+    * 
+    * @param path path to the value being read
+    * @param pbr  source reader
+    * @throws JSONException if the maximum depth is exceeded
+    */
+   void enter(String path, PushbackReader pbr) throws JSONException
+   {
+      if (!(pbr instanceof JSONPushbackReader)) return;
 
-      // is it a string?
-      if (c == '\"')
+      JSONPushbackReader jpr = (JSONPushbackReader) pbr;
+      int depth = jpr.getDepth() + 1;
+      int maxDepth = getMaxDepth();
+
+      if (depth > maxDepth) throw tooDeep(path, maxDepth);
+      jpr.setDepth(depth);
+   }
+
+   /**
+    * Count an object or array being closed by a recursive <code>read()</code>.
+    * 
+    * @param pbr source reader
+    */
+   void exit(PushbackReader pbr)
+   {
+      if (pbr instanceof JSONPushbackReader)
       {
-         value = onString(path, pbr);
+         JSONPushbackReader jpr = (JSONPushbackReader) pbr;
+         jpr.setDepth(jpr.getDepth() - 1);
       }
-      // is it a number?
-      else if (Character.isDigit(c) || (c == '-'))
+   }
+
+   /**
+    * Create the exception for a document nested too deeply.
+    * 
+    * @param path     path to the value being read
+    * @param maxDepth the maximum depth
+    * @return the exception
+    */
+   static JSONException tooDeep(String path, int maxDepth)
+   {
+      return new JSONException(path, "Objects and arrays nested more than " + maxDepth + " deep");
+   }
+
+   /**
+    * Read the <code>JSONValue</code> that comes after the whitespace (if any).
+    * 
+    * @param reader
+    * @return the next <code>JSONValue</code>
+    * @throws IOException
+    * @throws JSONException
+    */
+   final public JSONValue read(Reader reader) throws IOException, JSONException
+   {
+      try (JSONContext context = JSONContext.acquire())
       {
-         value = onNumber(path, pbr);
+         return context.read(this, reader);
       }
-      // is it an array?
-      else if (c == '[')
+   }
+
+   /**
+    * Read the <code>JSONValue</code> encoded as UTF-8 in a stream. No locks are
+    * taken while reading, so this is a better fit than wrapping the stream in
+    * an <code>InputStreamReader</code> when parsing on virtual threads. Bytes
+    * past the end of the document may be consumed from the stream.
+    * 
+    * @since 1.3
+    * 
+    * @param in source of the JSON document
+    * @return the next <code>JSONValue</code>
+    * @throws IOException
+    * @throws JSONException
+    */
+   final public JSONValue read(InputStream in) throws IOException, JSONException
+   {
+      try (JSONContext context = JSONContext.acquire())
       {
-         value = onArray(path, pbr);
+         return context.read(this, in);
       }
-      // is it an object?
-      else if (c == '{')
+   }
+
+   /**
+    * Read the <code>JSONValue</code> encoded as UTF-8 in a byte array. Since
+    * the whole document is in memory, it's first scanned for structural
+    * characters a block at a time by the same indexer
+    * <code>JSONTape.parse(byte[], int, int)</code> uses, and the values are
+    * built by walking the index. A factory that overrides how values are
+    * built or what whitespace is, and any document the index doesn't handle
+    * or that breaks this factory's limits, is read the way
+    * <code>read(InputStream)</code> reads it, so the result and any
+    * <code>JSONException</code> are the same either way.
+    * 
+    * @since 1.3
+    * 
+    * @param utf8   buffer holding the document
+    * @param offset start of the document
+    * @param length length of the document in bytes
+    * @return the next <code>JSONValue</code>, or null if the range holds only
+    *         whitespace
+    * @throws JSONException
+    */
+   final public JSONValue read(byte[] utf8, int offset, int length) throws JSONException
+   {
+      try (JSONContext context = JSONContext.acquire())
       {
-         value = onObject(path, pbr);
+         return context.read(this, utf8, offset, length);
       }
-      // is it a boolean?
-      else if ((c == 't') || (c == 'f'))
-      {
-         value = onBoolean(path, pbr);
+   }
+
+   /**
+    * Check that a reader holds a well-formed JSON document without building
+    * any values. The document must be one <code>read(Reader)</code> would
+    * accept, within this factory's limits, with its whitespace and comments;
+    * a <code>JSONException</code> for a document that isn't has the same path
+    * and message <code>read()</code> would give it, and its offset. Values of
+    * kinds whose callbacks a subclass overrides are read as usual, since
+    * their grammar is the subclass's. <code>recast()</code> isn't called.
+    * 
+    * @since 1.3
+    * 
+    * @param reader source of the JSON document
+    * @return 'true' if a value was found, 'false' if the reader held only
+    *         whitespace
+    * @throws IOException
+    * @throws JSONException if the document isn't well-formed
+    */
+   final public boolean validate(Reader reader) throws IOException, JSONException
+   {
+      try (JSONContext context = JSONContext.acquire())
+      {
+         return context.validate(this, reader);
+      }
+   }
+
+   /**
+    * Check that a stream holds a well-formed JSON document encoded as UTF-8,
+    * the way <code>validate(Reader)</code> does. Bytes past the end of the
+    * document may be consumed from the stream.
+    * 
+    * @since 1.3
+    * 
+    * @param in source of the JSON document
+    * @return 'true' if a value was found, 'false' if the stream held only
+    *         whitespace
+    * @throws IOException
+    * @throws JSONException if the document isn't well-formed
+    */
+   final public boolean validate(InputStream in) throws IOException, JSONException
+   {
+      try (JSONContext context = JSONContext.acquire())
+      {
+         return context.validate(this, in);
+      }
+   }
+
+   /**
+    * Read a complete JSON document.
+    * 
+    * @param pbr a pushback reader over the document
+    * @return the next <code>JSONValue</code> or null if there is none
+    * @throws IOException
+    * @throws JSONException
+    */
+   JSONValue readDocument(PushbackReader pbr) throws IOException, JSONException
+   {
+      JSONPushbackReader jpr = (pbr instanceof JSONPushbackReader) ? (JSONPushbackReader) pbr : null;
+      long maxInputLength = getMaxInputLength();
+
+      if (jpr != null) jpr.setLimits(maxInputLength, getMaxStringLength(), getMaxNumberLength());
+
+      try
+      {
+         // look for start of value
+         skipWhitespace(pbr);
+         int c = pbr.read();
+
+         // bail out early if EOF
+         if (c < 0) return null;
+
+         pbr.unread(c);
+
+         return read("$", pbr);
+      }
+      catch (JSONException exc)
+      {
+         if (jpr == null) throw exc;
+         throw locate(exc, jpr, maxInputLength);
+      }
+   }
+
+   /**
+    * Build a UTF-8 document from a structural index.
+    * 
+    * @param utf8    buffer holding the document
+    * @param offset  start of the document
+    * @param length  length of the document in bytes
+    * @param indexer indexer to scan the document with
+    * @return the document, or null if it has to be read from text
+    */
+   JSONValue readIndexed(byte[] utf8, int offset, int length, StructuralIndexer indexer)
+   {
+      // a character never takes less than a byte
+      if (!mIndexable || (length > getMaxInputLength())) return null;
+      if (!indexer.index(utf8, offset, length)) return null;
+
+      return new IndexedParser<JSONValue>(utf8, offset + length, indexer, new ValueBuilder(this)).parse();
+   }
+
+   /**
+    * Read a complete JSON document and bind it with a codec.
+    * 
+    * @param pbr   a pushback reader over the document
+    * @param codec the codec to bind with
+    * @param <T>   the bound type
+    * @return the bound instance, or null if there is no value or it's a JSON
+    *         null
+    * @throws IOException
+    * @throws JSONException on grammar or binding error
+    */
+   <T> T bindDocument(PushbackReader pbr, AbstractJSONCodec<T> codec) throws IOException, JSONException
+   {
+      JSONPushbackReader jpr = (pbr instanceof JSONPushbackReader) ? (JSONPushbackReader) pbr : null;
+      long maxInputLength = getMaxInputLength();
+
+      if (jpr != null) jpr.setLimits(maxInputLength, getMaxStringLength(), getMaxNumberLength());
+
+      try
+      {
+         // look for start of value
+         skipWhitespace(pbr);
+         int c = pbr.read();
+
+         // bail out early if EOF
+         if (c < 0) return null;
+
+         pbr.unread(c);
+
+         return codec.read("$", this, pbr);
+      }
+      catch (JSONException exc)
+      {
+         if (jpr == null) throw exc;
+         throw locate(exc, jpr, maxInputLength);
+      }
+   }
+
+   /**
+    * Add the offset of the reader to an exception thrown while reading a
+    * document.
+    * 
+    * @param exc            the exception
+    * @param jpr            the reader
+    * @param maxInputLength the input length limit
+    * @return the exception to throw
+    */
+   static private JSONException locate(JSONException exc, JSONPushbackReader jpr, long maxInputLength)
+   {
+      // running out of data may only be because we stopped reading
+      if (jpr.isTruncated()) return new JSONException(exc.getPath(), "Input is longer than " + maxInputLength + " characters", exc).at(jpr.getOffset());
+      return exc.at(jpr.getOffset());
+   }
+
+   /**
+    * Check that a complete JSON document is well-formed without building any
+    * values.
+    * 
+    * @param jpr a pushback reader over the document
+    * @return 'true' if a value was found, 'false' if there is none
+    * @throws IOException
+    * @throws JSONException if the document isn't well-formed
+    */
+   boolean validateDocument(JSONPushbackReader jpr) throws IOException, JSONException
+   {
+      long maxInputLength = getMaxInputLength();
+
+      jpr.setLimits(maxInputLength, getMaxStringLength(), getMaxNumberLength());
+
+      try
+      {
+         // look for start of value
+         skipWhitespace(jpr);
+         int c = jpr.read();
+
+         // bail out early if EOF
+         if (c < 0) return false;
+
+         jpr.unread(c);
+
+         skipValue("$", jpr);
+
+         return true;
+      }
+      catch (JSONException exc)
+      {
+         throw locate(exc, jpr, maxInputLength);
+      }
+   }
+
+   /**
+    * Check the next value is well-formed and pass over it without building
+    * it, the way <code>validate()</code> checks a document.
+    * 
+    * @param path path to the value
+    * @param pbr  source reader, positioned at the start of the value
+    * @throws IOException
+    * @throws JSONException if the value isn't well-formed
+    */
+   void skipValue(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      // values can only be checked in place in our own buffer
+      if (!(pbr instanceof JSONPushbackReader))
+      {
+         read(path, pbr);
+         return;
+      }
+
+      JSONPushbackReader jpr = (JSONPushbackReader) pbr;
+      char c = demand(jpr);
+      int kind = kindOf(c);
+
+      if (!mStandard[kind])
+      {
+         jpr.unread(c);
+         read(path, jpr);
       }
-      // is it a null?
-      else if (c == 'n')
+      else if ((kind == KIND_ARRAY) || (kind == KIND_OBJECT))
       {
-         value = onNull(path, pbr);
+         validateTree(new StringBuilder(path), jpr, kind == KIND_OBJECT);
       }
-      // else, value type
       else
       {
-         value = onUnknown(path, pbr, c);
+         validateScalar(new StringBuilder(path), jpr, c, kind);
+      }
+   }
+
+   /**
+    * Read a <code>JSONValue</code>.
+    * 
+    * @param path JSON path to the value we're reading
+    * @param pbr  a pushback reader
+    * @return the next <code>JSONValue</code>
+    * @throws IOException
+    * @throws JSONException
+    */
+   final public JSONValue read(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      char c = demand(pbr);
+      int kind = kindOf(c);
+
+      // build the standard types directly if the subclass won't intervene
+      if (mDirect[kind])
+      {
+         if (kind == KIND_ARRAY) return readTree(path, pbr, new JSONArray());
+         if (kind == KIND_OBJECT) return readTree(path, pbr, new JSONObject());
+         return readScalar(path, pbr, c, kind);
+      }
+
+      JSONValue value;
+
+      switch (kind)
+      {
+         case KIND_STRING:
+            value = onString(path, pbr);
+            break;
+         case KIND_NUMBER:
+            value = onNumber(path, pbr);
+            break;
+         case KIND_ARRAY:
+            value = onArray(path, pbr);
+            break;
+         case KIND_OBJECT:
+            value = onObject(path, pbr);
+            break;
+         case KIND_BOOLEAN:
+            value = onBoolean(path, pbr);
+            break;
+         case KIND_NULL:
+            value = onNull(path, pbr);
+            break;
+         default:
+            value = onUnknown(path, pbr, c);
+            break;
       }
 
       // unread trigger character
@@ -379,4 +1122,617 @@ public class JSONValueFactory
 
       return value;
    }
+
+   /**
+    * Build a string, number, boolean or null directly.
+    * 
+    * @param path path to the value being read
+    * @param pbr  source reader
+    * @param c    the first character, already read
+    * @param kind the value kind
+    * @return the value
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   private JSONValue readScalar(String path, PushbackReader pbr, char c, int kind) throws IOException, JSONException
+   {
+      switch (kind)
+      {
+         case KIND_STRING:
+            return new JSONString(JSONString.readStringBody(path, pbr));
+
+         case KIND_NUMBER:
+            if (isDoublePrecision()) return JSONDouble.readDoubleNumber(path, pbr, c);
+            return new JSONNumber(JSONNumber.readNumber(path, pbr, c));
+
+         case KIND_BOOLEAN:
+            return new JSONBoolean(JSONBoolean.readBoolean(path, pbr, c));
+
+         default:
+            JSONNull.readNullBody(path, pbr);
+            return JSONNull.INSTANCE;
+      }
+   }
+
+   /**
+    * Read an object or array after its opening character. Nested objects and
+    * arrays that can be built directly are tracked on a stack of our own
+    * rather than by recursion, so nesting depth is bounded by
+    * <code>getMaxDepth()</code> and not by the thread's stack size. Values of
+    * kinds a subclass intervenes in are read through
+    * <code>read(String, PushbackReader)</code>. Each object or array is added
+    * to its parent once it's complete, by which time an array of numbers has
+    * been packed into a <code>JSONNumberArray</code>.
+    * 
+    * @param path path to the value being read
+    * @param pbr  source reader
+    * @param root the empty object or array being read
+    * @return the root, or the <code>JSONNumberArray</code> that replaced it
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   private JSONValue readTree(String path, PushbackReader pbr, JSONValue root) throws IOException, JSONException
+   {
+      JSONPushbackReader jpr = (pbr instanceof JSONPushbackReader) ? (JSONPushbackReader) pbr : null;
+      int base = (jpr != null) ? jpr.getDepth() : 0;
+      int maxDepth = getMaxDepth();
+      int maxMembers = getMaxMembers();
+      int minPacked = getMinNumberArraySize();
+
+      if (base >= maxDepth) throw tooDeep(path, maxDepth);
+
+      JSONValue[] containers = new JSONValue[16];
+      String[] paths = new String[16];
+      String[] keys = new String[16];
+      int[] counts = new int[16];
+      int depth = 1;
+      boolean opened = true;
+
+      containers[0] = root;
+      paths[0] = path;
+
+      for (;;)
+      {
+         JSONValue top = containers[depth - 1];
+         String topPath = paths[depth - 1];
+         String childPath;
+         String key = null;
+
+         skipWhitespace(pbr);
+         char c = demand(pbr);
+
+         if (top instanceof JSONObject)
+         {
+            // after a member, next must be comma or close
+            if (!opened)
+            {
+               if (c == ',')
+               {
+                  skipWhitespace(pbr);
+                  c = demand(pbr);
+               }
+               else if (c != '}')
+               {
+                  throw new JSONException(topPath, "JSON object is not grammatically correct.  Unexpected: " + c);
+               }
+            }
+
+            // next is either a key or a closing brace
+            if (c == '}')
+            {
+               JSONValue done = containers[--depth];
+               containers[depth] = null;
+               if (depth == 0) return done;
+
+               addMember(containers, depth - 1, keys[depth], done, minPacked);
+               opened = false;
+               continue;
+            }
+
+            if (c != '\"') throw new JSONException(topPath, "JSON object is not grammatically correct.  Unexpected: " + c);
+            if (++counts[depth - 1] > maxMembers) throw tooMany(topPath, true, maxMembers);
+
+            key = JSONString.readStringBody(topPath, pbr);
+            childPath = topPath + "." + key;
+
+            // next ought to be a colon
+            skipWhitespace(pbr);
+            c = demand(pbr);
+            if (c != ':') throw new JSONException(childPath, "Expected ':' after key value");
+            skipWhitespace(pbr);
+            c = demand(pbr);
+         }
+         else
+         {
+            // is end?
+            if (c == ']')
+            {
+               JSONValue done = containers[--depth];
+               containers[depth] = null;
+
+               // too few numbers to be worth packing
+               if ((done instanceof JSONNumberArray) && (((JSONNumberArray) done).size() < minPacked)) done = ((JSONNumberArray) done).toJSONArray();
+               if (depth == 0) return done;
+
+               addMember(containers, depth - 1, keys[depth], done, minPacked);
+               opened = false;
+               continue;
+            }
+
+            if (!opened)
+            {
+               if (c != ',') throw new JSONException(topPath, "Incorrectly formatted array: " + c);
+
+               skipWhitespace(pbr);
+               c = demand(pbr);
+            }
+
+            if (++counts[depth - 1] > maxMembers) throw tooMany(topPath, false, maxMembers);
+            childPath = topPath;
+         }
+
+         // build the value or open a nested container
+         int kind = kindOf(c);
+         JSONValue value;
+
+         if (mDirect[kind] && ((kind == KIND_ARRAY) || (kind == KIND_OBJECT)))
+         {
+            if (base + depth >= maxDepth) throw tooDeep(childPath, maxDepth);
+
+            value = (kind == KIND_ARRAY) ? new JSONArray() : new JSONObject();
+
+            if (depth == containers.length)
+            {
+               containers = Arrays.copyOf(containers, 2 * depth);
+               paths = Arrays.copyOf(paths, 2 * depth);
+               keys = Arrays.copyOf(keys, 2 * depth);
+               counts = Arrays.copyOf(counts, 2 * depth);
+            }
+
+            containers[depth] = value;
+            paths[depth] = childPath;
+            keys[depth] = key;
+            counts[depth] = 0;
+            depth++;
+            opened = true;
+            continue;
+         }
+         else
+         {
+            if (mDirect[kind])
+            {
+               value = readScalar(childPath, pbr, c, kind);
+            }
+            else
+            {
+               pbr.unread(c);
+
+               if (jpr != null) jpr.setDepth(base + depth);
+
+               try
+               {
+                  value = read(childPath, pbr);
+               }
+               finally
+               {
+                  if (jpr != null) jpr.setDepth(base);
+               }
+            }
+
+            opened = false;
+         }
+
+         addMember(containers, depth - 1, key, value, minPacked);
+      }
+   }
+
+   /**
+    * Add a complete value to the object or array being read. Numbers are
+    * packed into a <code>JSONNumberArray</code> from the first element of an
+    * array until something that can't be packed turns up.
+    * 
+    * @param containers the objects and arrays being read
+    * @param index      index of the parent in 'containers'
+    * @param key        the key in a parent object, or null for an array
+    * @param value      the value
+    * @param minPacked  least size of a packed array
+    */
+   static void addMember(JSONValue[] containers, int index, String key, JSONValue value, int minPacked)
+   {
+      JSONValue parent = containers[index];
+
+      if (key != null)
+      {
+         ((JSONObject) parent).put(key, value);
+      }
+      else if (parent instanceof JSONNumberArray)
+      {
+         JSONNumberArray numbers = (JSONNumberArray) parent;
+
+         if (!numbers.add(value))
+         {
+            JSONArray array = numbers.toJSONArray();
+            array.elements().add(value);
+            containers[index] = array;
+         }
+      }
+      else
+      {
+         JSONArray array = (JSONArray) parent;
+         List<JSONValue> elements = array.elements();
+
+         if (elements.isEmpty() && (minPacked != Integer.MAX_VALUE) && JSONNumberArray.canPack(value))
+         {
+            JSONNumberArray numbers = new JSONNumberArray();
+            numbers.add(value);
+            containers[index] = numbers;
+         }
+         else
+         {
+            elements.add(value);
+         }
+      }
+   }
+
+   /**
+    * Check an object or array after its opening character the way
+    * <code>readTree()</code> reads one, without building it. The path to the
+    * value being checked is kept in a builder, and only made a string for an
+    * exception or a value a subclass reads.
+    * 
+    * @param path   path to the object or array, extended in place while
+    *               checking its members
+    * @param jpr    source reader
+    * @param object 'true' for an object, 'false' for an array
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   private void validateTree(StringBuilder path, JSONPushbackReader jpr, boolean object) throws IOException, JSONException
+   {
+      int base = jpr.getDepth();
+      int maxDepth = getMaxDepth();
+      int maxMembers = getMaxMembers();
+
+      if (base >= maxDepth) throw tooDeep(path.toString(), maxDepth);
+
+      boolean[] objects = new boolean[16];
+      int[] lengths = new int[16];
+      int[] counts = new int[16];
+      int depth = 1;
+      boolean opened = true;
+
+      objects[0] = object;
+      lengths[0] = path.length();
+
+      for (;;)
+      {
+         int top = lengths[depth - 1];
+         path.setLength(top);
+
+         skipWhitespace(jpr);
+         char c = demand(jpr);
+
+         if (objects[depth - 1])
+         {
+            // after a member, next must be comma or close
+            if (!opened)
+            {
+               if (c == ',')
+               {
+                  skipWhitespace(jpr);
+                  c = demand(jpr);
+               }
+               else if (c != '}')
+               {
+                  throw new JSONException(path.toString(), "JSON object is not grammatically correct.  Unexpected: " + c);
+               }
+            }
+
+            // next is either a key or a closing brace
+            if (c == '}')
+            {
+               if (--depth == 0) return;
+               opened = false;
+               continue;
+            }
+
+            if (c != '\"') throw new JSONException(path.toString(), "JSON object is not grammatically correct.  Unexpected: " + c);
+            if (++counts[depth - 1] > maxMembers) throw tooMany(path.toString(), true, maxMembers);
+
+            // the key extends the path
+            path.append('.');
+            skipString(path, top, jpr, true);
+
+            // next ought to be a colon
+            skipWhitespace(jpr);
+            c = demand(jpr);
+            if (c != ':') throw new JSONException(path.toString(), "Expected ':' after key value");
+            skipWhitespace(jpr);
+            c = demand(jpr);
+         }
+         else
+         {
+            // is end?
+            if (c == ']')
+            {
+               if (--depth == 0) return;
+               opened = false;
+               continue;
+            }
+
+            if (!opened)
+            {
+               if (c != ',') throw new JSONException(path.toString(), "Incorrectly formatted array: " + c);
+
+               skipWhitespace(jpr);
+               c = demand(jpr);
+            }
+
+            if (++counts[depth - 1] > maxMembers) throw tooMany(path.toString(), false, maxMembers);
+         }
+
+         // check the value or open a nested container
+         int kind = kindOf(c);
+
+         if (mStandard[kind] && ((kind == KIND_ARRAY) || (kind == KIND_OBJECT)))
+         {
+            if (base + depth >= maxDepth) throw tooDeep(path.toString(), maxDepth);
+
+            if (depth == objects.length)
+            {
+               objects = Arrays.copyOf(objects, 2 * depth);
+               lengths = Arrays.copyOf(lengths, 2 * depth);
+               counts = Arrays.copyOf(counts, 2 * depth);
+            }
+
+            objects[depth] = (kind == KIND_OBJECT);
+            lengths[depth] = path.length();
+            counts[depth] = 0;
+            depth++;
+            opened = true;
+            continue;
+         }
+
+         if (mStandard[kind])
+         {
+            validateScalar(path, jpr, c, kind);
+         }
+         else
+         {
+            jpr.unread(c);
+            jpr.setDepth(base + depth);
+
+            try
+            {
+               read(path.toString(), jpr);
+            }
+            finally
+            {
+               jpr.setDepth(base);
+            }
+         }
+
+         opened = false;
+      }
+   }
+
+   /**
+    * Check a string, number, boolean or null the way
+    * <code>readScalar()</code> reads one, without building it.
+    * 
+    * @param path path to the value
+    * @param jpr  source reader
+    * @param c    the first character, already read
+    * @param kind the value kind
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   private void validateScalar(StringBuilder path, JSONPushbackReader jpr, char c, int kind) throws IOException, JSONException
+   {
+      switch (kind)
+      {
+         case KIND_STRING:
+            skipString(path, path.length(), jpr, false);
+            break;
+
+         case KIND_NUMBER:
+            skipNumber(path, jpr, c);
+            break;
+
+         case KIND_BOOLEAN:
+            skipLiteral(path, jpr, (c == 't') ? "rue" : "alse", "Content does not appear to be a boolean.");
+            break;
+
+         case KIND_NULL:
+            skipLiteral(path, jpr, "ull", "Content does not appear to be a null.");
+            break;
+
+         default:
+            throw new JSONException(path.toString(), "Illegal start of JSON value: " + c);
+      }
+   }
+
+   /**
+    * Check the rest of a literal.
+    * 
+    * @param path    path to the value
+    * @param jpr     source reader
+    * @param rest    the characters after the first
+    * @param message the message if they don't match
+    * @throws IOException   on read failure
+    * @throws JSONException if they don't match
+    */
+   static private void skipLiteral(StringBuilder path, JSONPushbackReader jpr, String rest, String message) throws IOException, JSONException
+   {
+      for (int i = 0; i < rest.length(); i++)
+      {
+         if (demand(jpr) != rest.charAt(i)) throw new JSONException(path.toString(), message);
+      }
+   }
+
+   /**
+    * Check a string after its leading quote the way
+    * <code>JSONString.readStringBody()</code> reads one. Runs of characters
+    * that aren't escaped are scanned in the reader's buffer.
+    * 
+    * @param path   path to the value, to which a key is appended
+    * @param length length of the path to report errors at
+    * @param jpr    source reader
+    * @param key    'true' to append the decoded string to the path
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   static private void skipString(StringBuilder path, int length, JSONPushbackReader jpr, boolean key) throws IOException, JSONException
+   {
+      int maxLength = jpr.getMaxStringLength();
+      long count = 0;
+
+      for (;;)
+      {
+         if (count > maxLength) throw new JSONException(path.substring(0, length), "String is longer than " + maxLength + " characters");
+         if (!jpr.ensureAvailable()) demand(jpr);
+
+         // pass over characters up to a quote, an escape or the length limit
+         char[] buf = jpr.getBuffer();
+         int start = jpr.getPosition();
+         int stop = (int) Math.min(jpr.getLimit(), start + (maxLength - count) + 1);
+         int pos = start;
+
+         while ((pos < stop) && (buf[pos] != '\"') && (buf[pos] != '\\'))
+            pos++;
+
+         if (key) path.append(buf, start, pos - start);
+         count += pos - start;
+         jpr.setPosition(pos);
+
+         if (pos == stop) continue;
+
+         // closing quote or escape
+         jpr.setPosition(pos + 1);
+         if (buf[pos] == '\"') return;
+
+         char c = demand(jpr);
+
+         switch (c)
+         {
+            case '\"':
+            case '/':
+            case '\\':
+               break;
+            case 'b':
+               c = '\b';
+               break;
+            case 'f':
+               c = '\f';
+               break;
+            case 'n':
+               c = '\n';
+               break;
+            case 'r':
+               c = '\r';
+               break;
+            case 't':
+               c = '\t';
+               break;
+            case 'u':
+               char c0 = demand(jpr);
+               char c1 = demand(jpr);
+               char c2 = demand(jpr);
+               char c3 = demand(jpr);
+
+               int value = JSONString.unicode(c0, c1, c2, c3);
+               if (value < 0) throw new JSONException(path.substring(0, length), "Illegal unicode value: " + new String(new char[] { c0, c1, c2, c3 }));
+
+               c = (char) value;
+               break;
+            default:
+               throw new JSONException(path.substring(0, length), "Illegal escape value in string: " + c);
+         }
+
+         if (key) path.append(c);
+         count++;
+      }
+   }
+
+   /**
+    * Check a number after its first character the way
+    * <code>JSONNumber.readNumber()</code> reads one. The text is collected in
+    * the reader's scratch builder, and only handed to
+    * <code>BigDecimal</code> when its exponent is long enough that it might
+    * be out of range.
+    * 
+    * @param path  path to the value
+    * @param jpr   source reader
+    * @param first the first character, already read
+    * @throws IOException   on read failure
+    * @throws JSONException on grammar error
+    */
+   static private void skipNumber(StringBuilder path, JSONPushbackReader jpr, char first) throws IOException, JSONException
+   {
+      StringBuilder text = jpr.scratch();
+      boolean digits = (first != '-');
+      int exponentDigits = -1;
+      char c;
+
+      text.append(first);
+
+      // whole part
+      if (first != '0')
+      {
+         while (Character.isDigit(c = demand(jpr)))
+         {
+            text.append(c);
+            digits = true;
+         }
+
+         jpr.unread(c);
+      }
+
+      // fractional part
+      c = demand(jpr);
+
+      if (c == '.')
+      {
+         text.append(c);
+         int point = text.length();
+
+         while (Character.isDigit(c = demand(jpr)))
+            text.append(c);
+
+         if (text.length() == point) throw new JSONException(path.toString(), "Digits expected after decimal points.");
+
+         digits = true;
+      }
+
+      jpr.unread(c);
+
+      // exponent
+      c = demand(jpr);
+
+      if ((c == 'e') || (c == 'E'))
+      {
+         text.append(c);
+         c = demand(jpr);
+
+         if (!Character.isDigit(c) && (c != '+') && (c != '-')) throw new JSONException(path.toString(), "Content does not appear to be a number");
+
+         text.append(c);
+         exponentDigits = Character.isDigit(c) ? 1 : 0;
+
+         while (Character.isDigit(c = demand(jpr)))
+         {
+            text.append(c);
+            exponentDigits++;
+         }
+      }
+
+      jpr.unread(c);
+
+      int maxLength = jpr.getMaxNumberLength();
+      if (text.length() > maxLength) throw JSONNumber.tooLong(path.toString(), maxLength);
+
+      // BigDecimal wants digits before any exponent and after its sign, and an exponent in range
+      if (!digits || (exponentDigits == 0)) throw new JSONException(path.toString(), "Illegal number format: " + text);
+      if (exponentDigits > 9) JSONNumber.parseNumber(path.toString(), text.toString());
+   }
 }
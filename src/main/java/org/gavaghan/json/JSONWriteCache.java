@@ -0,0 +1,651 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * An opt-in cache of the rendered form of <code>JSONObject</code> and
+ * <code>JSONArray</code> nodes. When enabled, a node whose rendering is at
+ * least <code>getMinimumLength()</code> characters remembers its last flat and
+ * pretty rendering, and writes it again in one bulk copy as long as nothing
+ * in the node's subtree has changed since and it's written at the same
+ * indent. Flat renderings depend on the indent too, since arrays break lines
+ * and indent their elements either way.
+ * </p>
+ * <p>
+ * Changes are detected with stamps. Once a value has been rendered through the
+ * cache, every later modification of it (<code>put()</code>,
+ * <code>remove()</code>, <code>set()</code>, <code>setValue()</code> and so
+ * on) takes a new stamp from a global clock, and a cached rendering is only
+ * used if no value in the subtree has a newer stamp than the rendering
+ * itself. Checking a subtree is a walk over its values, which is much cheaper
+ * than rendering it. Modifications made through views, such as
+ * <code>JSONObject.entrySet()</code> or <code>JSONArray.getListValue()</code>
+ * and their iterators, are stamped the same way. Those views only wrap the
+ * underlying collections while the cache is enabled, so enable it before
+ * taking views that are held across renders. A list handed to a
+ * <code>JSONArray</code> constructor or <code>setValue()</code> isn't a view,
+ * so it must not be modified directly once rendered. Only plain
+ * <code>JSONObject</code> and <code>JSONArray</code> nodes,
+ * <code>JSONNumberArray</code> nodes, frozen nodes, and the standard scalar
+ * types take part; a subtree containing anything else is
+ * never cached.
+ * </p>
+ * <p>
+ * Memory use is bounded by a global budget of cached characters. When the
+ * budget is exceeded the oldest renderings are dropped, giving those used
+ * since they were last considered a second chance. The cache is disabled
+ * until a budget is set with <code>setBudget()</code>. Usage and hit rates
+ * are available from the static getters.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class JSONWriteCache
+{
+   /** Default for the shortest rendering worth caching. */
+   static public final int DEFAULT_MINIMUM_LENGTH = 256;
+
+   /** Source of modification stamps. */
+   static private final AtomicLong CLOCK = new AtomicLong(1);
+
+   /**
+    * Guards <code>ENTRIES</code>. It's a lock rather than a monitor so a
+    * virtual thread waiting for it doesn't pin its carrier thread.
+    */
+   static private final ReentrantLock LOCK = new ReentrantLock();
+
+   /** Cached renderings, oldest first. Guarded by <code>LOCK</code>. */
+   static private final ArrayDeque<Entry> ENTRIES = new ArrayDeque<Entry>();
+
+   /** Number of characters held by live entries. */
+   static private final AtomicLong USAGE = new AtomicLong();
+
+   /** Number of renderings written from the cache. */
+   static private final LongAdder HITS = new LongAdder();
+
+   /** Number of renderings that had to be rendered again. */
+   static private final LongAdder MISSES = new LongAdder();
+
+   /** Number of entries dropped to stay within the budget. */
+   static private final LongAdder EVICTIONS = new LongAdder();
+
+   /** Most characters to cache, or 0 when disabled. */
+   static private volatile long sBudget;
+
+   /** Shortest rendering worth caching. */
+   static private volatile int sMinimumLength = DEFAULT_MINIMUM_LENGTH;
+
+   /** Fewest entries worth pruning. */
+   static private final int PRUNE_SIZE = 1024;
+
+   /** Entry count that triggers pruning. Guarded by <code>LOCK</code>. */
+   static private int sPruneAt = PRUNE_SIZE;
+
+   /**
+    * A cached rendering.
+    */
+   static final class Entry
+   {
+      /** Clears <code>mText</code> exactly once. */
+      static private final AtomicReferenceFieldUpdater<Entry, String> TEXT = AtomicReferenceFieldUpdater.newUpdater(Entry.class, String.class, "mText");
+
+      /** The rendering, or null once released. */
+      private volatile String mText;
+
+      /** Length of the rendering. */
+      private final int mLength;
+
+      /** Indent the rendering was made at. */
+      private final String mIndent;
+
+      /** Clock reading taken before the node was rendered. */
+      private final long mTime;
+
+      /** 'true' if used since eviction last considered it. */
+      private boolean mReferenced;
+
+      /**
+       * Create a new Entry.
+       * 
+       * @param text   the rendering
+       * @param indent indent the rendering was made at
+       * @param time   clock reading taken before rendering
+       */
+      private Entry(String text, String indent, long time)
+      {
+         mText = text;
+         mLength = text.length();
+         mIndent = indent;
+         mTime = time;
+      }
+
+      /**
+       * Drop the rendering and give its characters back to the budget.
+       */
+      void release()
+      {
+         String text = mText;
+
+         if ((text != null) && TEXT.compareAndSet(this, text, null)) USAGE.addAndGet(-mLength);
+      }
+   }
+
+   /**
+    * The cache state of an object or array. It's only created once the node
+    * is rendered through the cache, so other nodes carry just a null
+    * reference.
+    */
+   static final class Node
+   {
+      /** Stamp of the last modification. */
+      long mStamp = 1;
+
+      /** Cached flat rendering. */
+      private Entry mFlat;
+
+      /** Cached pretty rendering. */
+      private Entry mPretty;
+
+      /**
+       * Get a cached rendering.
+       * 
+       * @param pretty 'true' for the pretty rendering, 'false' for flat
+       * @return the cache entry or null
+       */
+      Entry get(boolean pretty)
+      {
+         return pretty ? mPretty : mFlat;
+      }
+
+      /**
+       * Replace a cached rendering.
+       * 
+       * @param pretty 'true' for the pretty rendering, 'false' for flat
+       * @param entry  the new cache entry
+       */
+      void set(boolean pretty, Entry entry)
+      {
+         Entry old = pretty ? mPretty : mFlat;
+         if (old != null) old.release();
+
+         if (pretty) mPretty = entry;
+         else mFlat = entry;
+      }
+   }
+
+   /**
+    * Static methods only.
+    */
+   private JSONWriteCache()
+   {
+   }
+
+   /**
+    * Set the most characters of rendered JSON to keep. Setting a budget
+    * enables the cache and setting it to 0 disables it and drops everything
+    * cached.
+    * 
+    * @param chars the budget in characters
+    */
+   static public void setBudget(long chars)
+   {
+      if (chars < 0) throw new IllegalArgumentException("Negative budget: " + chars);
+
+      sBudget = chars;
+      evict();
+   }
+
+   /**
+    * Get the most characters of rendered JSON to keep.
+    * 
+    * @return the budget in characters, or 0 if the cache is disabled
+    */
+   static public long getBudget()
+   {
+      return sBudget;
+   }
+
+   /**
+    * Set the length of the shortest rendering worth caching. Smaller nodes are
+    * always rendered, which saves memory and the cost of checking them.
+    * 
+    * @param chars shortest rendering to cache
+    */
+   static public void setMinimumLength(int chars)
+   {
+      if (chars < 1) throw new IllegalArgumentException("Minimum length must be positive: " + chars);
+
+      sMinimumLength = chars;
+   }
+
+   /**
+    * Get the length of the shortest rendering worth caching.
+    * 
+    * @return shortest rendering to cache
+    */
+   static public int getMinimumLength()
+   {
+      return sMinimumLength;
+   }
+
+   /**
+    * Determine if the cache is enabled.
+    * 
+    * @return 'true' if a budget has been set
+    */
+   static public boolean isEnabled()
+   {
+      return sBudget > 0;
+   }
+
+   /**
+    * Get the number of characters currently cached.
+    * 
+    * @return characters held by the cache
+    */
+   static public long getUsage()
+   {
+      return USAGE.get();
+   }
+
+   /**
+    * Get the number of renderings currently cached.
+    * 
+    * @return the entry count
+    */
+   static public int getEntryCount()
+   {
+      LOCK.lock();
+
+      try
+      {
+         int count = 0;
+
+         for (Entry entry : ENTRIES)
+         {
+            if (entry.mText != null) count++;
+         }
+
+         return count;
+      }
+      finally
+      {
+         LOCK.unlock();
+      }
+   }
+
+   /**
+    * Get the number of times a node was written from the cache.
+    * 
+    * @return the hit count
+    */
+   static public long getHits()
+   {
+      return HITS.sum();
+   }
+
+   /**
+    * Get the number of times a node had to be rendered again.
+    * 
+    * @return the miss count
+    */
+   static public long getMisses()
+   {
+      return MISSES.sum();
+   }
+
+   /**
+    * Get the number of renderings dropped to stay within the budget.
+    * 
+    * @return the eviction count
+    */
+   static public long getEvictions()
+   {
+      return EVICTIONS.sum();
+   }
+
+   /**
+    * Drop everything cached. The budget and statistics are unchanged.
+    */
+   static public void clear()
+   {
+      LOCK.lock();
+
+      try
+      {
+         for (Entry entry : ENTRIES)
+         {
+            entry.release();
+         }
+
+         ENTRIES.clear();
+         sPruneAt = PRUNE_SIZE;
+      }
+      finally
+      {
+         LOCK.unlock();
+      }
+   }
+
+   /**
+    * Drop the oldest entries until usage is within the budget.
+    */
+   static private void evict()
+   {
+      LOCK.lock();
+
+      try
+      {
+         // every entry gets at most one second chance per pass
+         int chances = ENTRIES.size();
+
+         while ((USAGE.get() > sBudget) && !ENTRIES.isEmpty())
+         {
+            Entry entry = ENTRIES.poll();
+
+            if (entry.mText == null) continue;
+
+            if (entry.mReferenced && (chances-- > 0))
+            {
+               entry.mReferenced = false;
+               ENTRIES.add(entry);
+               continue;
+            }
+
+            entry.release();
+            EVICTIONS.increment();
+         }
+
+      }
+      finally
+      {
+         LOCK.unlock();
+      }
+   }
+
+   /**
+    * Forget entries that were released because their node was rendered again.
+    * Must be called holding the lock on <code>ENTRIES</code>.
+    */
+   static private void prune()
+   {
+      Iterator<Entry> iter = ENTRIES.iterator();
+
+      while (iter.hasNext())
+      {
+         if (iter.next().mText == null) iter.remove();
+      }
+
+      sPruneAt = Math.max(PRUNE_SIZE, 2 * ENTRIES.size());
+   }
+
+   /**
+    * Get a new modification stamp.
+    * 
+    * @return a stamp newer than any rendering made so far
+    */
+   static long tick()
+   {
+      return CLOCK.incrementAndGet();
+   }
+
+   /**
+    * Note that a value is part of a rendering, so later modifications of it
+    * must be stamped.
+    * 
+    * @param value the value
+    */
+   static void observe(JSONValue value)
+   {
+      if (value instanceof JSONObject) ((JSONObject) value).observe();
+      else if (value instanceof JSONArray) ((JSONArray) value).observe();
+      else if (value instanceof JSONString) ((JSONString) value).observe();
+      else if (value instanceof JSONNumber) ((JSONNumber) value).observe();
+      else if (value instanceof JSONBoolean) ((JSONBoolean) value).observe();
+   }
+
+   /**
+    * Determine if a node may have its rendering cached.
+    * 
+    * @param value the node
+    * @return 'true' if cacheable
+    */
+   static private boolean isCacheable(JSONValue value)
+   {
+      Class<?> type = value.getClass();
+
+      return (type == JSONObject.class) || (type == JSONArray.class) || (type == JSONNumberArray.class) || (type == FrozenJSONObject.class) || (type == FrozenJSONArray.class);
+   }
+
+   /**
+    * Determine if nothing in a subtree has been modified since a clock
+    * reading. The subtree is walked with a stack on the heap so that nesting
+    * depth doesn't call for a larger thread stack.
+    * 
+    * @param value root of the subtree
+    * @param time  the clock reading
+    * @return 'true' if unchanged
+    */
+   static private boolean isUnchangedSince(JSONValue value, long time)
+   {
+      ArrayDeque<JSONValue> pending = new ArrayDeque<JSONValue>();
+      pending.push(value);
+
+      while (!pending.isEmpty())
+      {
+         value = pending.pop();
+
+         if ((value instanceof FrozenJSONValue) || (value instanceof JSONNull)) continue;
+
+         Class<?> type = value.getClass();
+
+         if (type == JSONString.class)
+         {
+            if (((JSONString) value).getStamp() > time) return false;
+         }
+         else if ((type == JSONNumber.class) || (type == JSONDouble.class))
+         {
+            if (((JSONNumber) value).getStamp() > time) return false;
+         }
+         else if (type == JSONBoolean.class)
+         {
+            if (((JSONBoolean) value).getStamp() > time) return false;
+         }
+         else if (type == JSONObject.class)
+         {
+            JSONObject object = (JSONObject) value;
+            if (object.getStamp() > time) return false;
+
+            for (Map.Entry<String, JSONValue> entry : object.memberSet())
+            {
+               pending.push(entry.getValue());
+            }
+         }
+         else if ((type == JSONArray.class) || (type == JSONNumberArray.class))
+         {
+            JSONArray array = (JSONArray) value;
+            if (array.getStamp() > time) return false;
+
+            // packed numbers only change through the array itself
+            if ((type == JSONNumberArray.class) && ((JSONNumberArray) array).isPacked()) continue;
+
+            for (JSONValue element : array.elements())
+            {
+               pending.push(element);
+            }
+         }
+         else
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Render a node's members or elements without the cache.
+    * 
+    * @param value  the node
+    * @param indent indent padding
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static private void render(JSONValue value, String indent, Writer writer, boolean pretty) throws IOException
+   {
+      if (value instanceof JSONObject) ((JSONObject) value).writeMembers(indent, writer, pretty);
+      else ((JSONArray) value).writeElements(indent, writer, pretty);
+   }
+
+   /**
+    * Get the current clock reading.
+    * 
+    * @return the clock reading
+    */
+   static long now()
+   {
+      return CLOCK.get();
+   }
+
+   /**
+    * Write a node's cached rendering if it's still current.
+    * 
+    * @param value  the node
+    * @param indent indent padding
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @return 'true' if written, or 'false' if the node must be rendered
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static boolean writeCached(JSONValue value, String indent, Writer writer, boolean pretty) throws IOException
+   {
+      Entry entry = (value instanceof JSONObject) ? ((JSONObject) value).getCache(pretty) : ((JSONArray) value).getCache(pretty);
+
+      if (entry != null)
+      {
+         String text = entry.mText;
+
+         if ((text != null) && indent.equals(entry.mIndent) && isUnchangedSince(value, entry.mTime))
+         {
+            entry.mReferenced = true;
+            HITS.increment();
+            writer.write(text);
+            return true;
+         }
+      }
+
+      MISSES.increment();
+      return false;
+   }
+
+   /**
+    * Write a node through the cache.
+    * 
+    * @param value  the node
+    * @param indent indent padding
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @return 'false' if the node isn't cacheable and must be written normally
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static boolean write(JSONValue value, String indent, Writer writer, boolean pretty) throws IOException
+   {
+      if (!isCacheable(value)) return false;
+      if (writeCached(value, indent, writer, pretty)) return true;
+
+      observe(value);
+
+      long time = CLOCK.get();
+
+      // capture the rendering as it's written
+      if (writer instanceof StringBuilderWriter)
+      {
+         StringBuilderWriter builder = (StringBuilderWriter) writer;
+         int start = builder.length();
+
+         render(value, indent, builder, pretty);
+         store(value, builder, start, indent, pretty, time);
+      }
+      else
+      {
+         try (JSONContext context = JSONContext.acquire())
+         {
+            StringBuilderWriter builder = context.getWriter();
+
+            render(value, indent, builder, pretty);
+            store(value, builder, 0, indent, pretty, time);
+            writer.write(builder.toString());
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Cache a node's rendering if it's worth keeping.
+    * 
+    * @param value   the node
+    * @param builder the writer the node was rendered to
+    * @param start   where the rendering starts in <code>builder</code>
+    * @param indent  indent padding
+    * @param pretty  'true' for pretty-print, 'false' for flat
+    * @param time    clock reading taken before the node was rendered
+    */
+   static void store(JSONValue value, StringBuilderWriter builder, int start, String indent, boolean pretty, long time)
+   {
+      int length = builder.length() - start;
+      if (length < sMinimumLength) return;
+
+      // don't bother with anything that would take a big share of the budget
+      long budget = sBudget;
+      if (length > budget / 4) return;
+
+      Entry fresh = new Entry(builder.substring(start), indent, time);
+
+      if (value instanceof JSONObject) ((JSONObject) value).setCache(pretty, fresh);
+      else ((JSONArray) value).setCache(pretty, fresh);
+
+      USAGE.addAndGet(length);
+
+      LOCK.lock();
+
+      try
+      {
+         ENTRIES.add(fresh);
+         if (ENTRIES.size() >= sPruneAt) prune();
+      }
+      finally
+      {
+         LOCK.unlock();
+      }
+
+      if (USAGE.get() > budget) evict();
+   }
+}
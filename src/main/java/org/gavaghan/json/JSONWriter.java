@@ -0,0 +1,154 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Base for the writers this package renders into. Besides plain character
+ * output they keep a bounded cache of member keys already rendered in their
+ * own encoding, so objects of the same shape can have each key written in a
+ * single bulk copy, and they write the literals 'true', 'false' and 'null'
+ * without going through a <code>String</code>.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+abstract class JSONWriter extends Writer
+{
+   /** The literal 'true'. */
+   static final char[] TRUE = "true".toCharArray();
+
+   /** The literal 'false'. */
+   static final char[] FALSE = "false".toCharArray();
+
+   /** The literal 'null'. */
+   static final char[] NULL = "null".toCharArray();
+
+   /** Most keys remembered by each writer. */
+   static private final int MAX_KEYS = 1024;
+
+   /** Longest key worth remembering. */
+   static private final int MAX_KEY_LENGTH = 256;
+
+   /**
+    * Write an object member's key, its quotes and the following colon, and a
+    * space when pretty-printing.
+    * 
+    * @param key    the key
+    * @param writer target writer
+    * @param pretty 'true' for pretty-print, 'false' for flat
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static void writeKey(String key, Writer writer, boolean pretty) throws IOException
+   {
+      if ((writer instanceof JSONWriter) && (key.length() <= MAX_KEY_LENGTH))
+      {
+         ((JSONWriter) writer).writeKey(key);
+      }
+      else
+      {
+         writer.write('\"');
+         writer.write(key);
+         writer.write("\":");
+      }
+
+      if (pretty) writer.write(' ');
+   }
+
+   /**
+    * Write one of the ASCII literals.
+    * 
+    * @param literal <code>TRUE</code>, <code>FALSE</code> or <code>NULL</code>
+    * @param writer  target writer
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static void writeLiteral(char[] literal, Writer writer) throws IOException
+   {
+      if (writer instanceof JSONWriter) ((JSONWriter) writer).writeLiteral(literal);
+      else writer.write(literal);
+   }
+
+   /**
+    * Write a quoted string whose characters are all printable ASCII other than
+    * the quote and backslash, so nothing needs escaping.
+    * 
+    * @param ascii  source of the characters, one per byte
+    * @param offset start of the characters
+    * @param length number of characters
+    * @param writer target writer
+    * @throws IOException on any failure of the <code>Writer</code>
+    */
+   static void writeQuoted(byte[] ascii, int offset, int length, Writer writer) throws IOException
+   {
+      writer.write('\"');
+
+      if (writer instanceof JSONWriter) ((JSONWriter) writer).writeASCII(ascii, offset, length);
+      else writer.write(new String(ascii, offset, length, StandardCharsets.ISO_8859_1));
+
+      writer.write('\"');
+   }
+
+   /**
+    * Create a bounded cache of encoded keys that drops the least recently used
+    * key when full.
+    * 
+    * @param <T> type of the encoded form
+    * @return an empty cache
+    */
+   static <T> Map<String, T> createKeyCache()
+   {
+      return new LinkedHashMap<String, T>(64, 0.75f, true)
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, T> eldest)
+         {
+            return size() > MAX_KEYS;
+         }
+      };
+   }
+
+   /**
+    * Write a key with its quotes and the following colon.
+    * 
+    * @param key the key
+    * @throws IOException on any failure of the target
+    */
+   abstract void writeKey(String key) throws IOException;
+
+   /**
+    * Write an ASCII literal.
+    * 
+    * @param literal the literal
+    * @throws IOException on any failure of the target
+    */
+   abstract void writeLiteral(char[] literal) throws IOException;
+
+   /**
+    * Write ASCII characters held one per byte.
+    * 
+    * @param ascii  source of the characters
+    * @param offset start of the characters
+    * @param length number of characters
+    * @throws IOException on any failure of the target
+    */
+   abstract void writeASCII(byte[] ascii, int offset, int length) throws IOException;
+}
@@ -0,0 +1,807 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Encodes <code>JSONValue</code> trees as MessagePack and decodes them again.
+ * Objects become maps with string keys, arrays become arrays, strings become
+ * UTF-8 strings, and booleans and null become the matching MessagePack
+ * values. A <code>JSONNumber</code> that is an integer within the 64 bit
+ * signed or unsigned range is written in the smallest integer format. Any
+ * other number is written as an extension of type
+ * <code>DECIMAL_EXT_TYPE</code>, so every <code>BigDecimal</code>, including
+ * its scale, survives the round trip.
+ * </p>
+ * <p>
+ * The decimal extension's payload is the scale as a big-endian 32 bit
+ * integer followed by the unscaled value as a big-endian two's complement
+ * integer of as few bytes as possible. For example, 273.15 is the ext 8
+ * <code>c7 06 01 00 00 00 02 6a b3</code>.
+ * </p>
+ * <p>
+ * The decoder also accepts 32 and 64 bit floats. Binary data and extensions
+ * of other types have no JSON equivalent and are rejected, as are map keys
+ * that aren't strings. Encoding to a stream or buffer goes through a fixed
+ * size block, and decoding a heap <code>ByteBuffer</code> or array reads it in
+ * place with strings decoded directly from the caller's bytes. When a
+ * <code>JSONValueFactory</code> is given, its <code>recast()</code> is applied
+ * to every decoded value, so <code>TypedJSONValueFactory</code> restores
+ * <code>TypedJSONObject</code> subclasses just as it does for text, and
+ * nesting is limited by its <code>getMaxDepth()</code>. The other factory
+ * callbacks only apply to parsing text.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class MessagePack
+{
+   /** Extension type used for numbers that aren't 64 bit integers. */
+   static public final int DECIMAL_EXT_TYPE = 1;
+
+   /** Format byte for nil. */
+   static private final int NIL = 0xC0;
+
+   /** Format byte for false. */
+   static private final int FALSE = 0xC2;
+
+   /** Format byte for true. */
+   static private final int TRUE = 0xC3;
+
+   /** Format byte for 8 bit binary. */
+   static private final int BIN8 = 0xC4;
+
+   /** Format byte for 32 bit binary. */
+   static private final int BIN32 = 0xC6;
+
+   /** Format byte for an extension with an 8 bit length. */
+   static private final int EXT8 = 0xC7;
+
+   /** Format byte for an extension with a 16 bit length. */
+   static private final int EXT16 = 0xC8;
+
+   /** Format byte for an extension with a 32 bit length. */
+   static private final int EXT32 = 0xC9;
+
+   /** Format byte for a 32 bit float. */
+   static private final int FLOAT32 = 0xCA;
+
+   /** Format byte for a 64 bit float. */
+   static private final int FLOAT64 = 0xCB;
+
+   /** Format byte for an 8 bit unsigned integer. */
+   static private final int UINT8 = 0xCC;
+
+   /** Format byte for a 16 bit unsigned integer. */
+   static private final int UINT16 = 0xCD;
+
+   /** Format byte for a 32 bit unsigned integer. */
+   static private final int UINT32 = 0xCE;
+
+   /** Format byte for a 64 bit unsigned integer. */
+   static private final int UINT64 = 0xCF;
+
+   /** Format byte for an 8 bit signed integer. */
+   static private final int INT8 = 0xD0;
+
+   /** Format byte for a 16 bit signed integer. */
+   static private final int INT16 = 0xD1;
+
+   /** Format byte for a 32 bit signed integer. */
+   static private final int INT32 = 0xD2;
+
+   /** Format byte for a 64 bit signed integer. */
+   static private final int INT64 = 0xD3;
+
+   /** Format byte for an extension with a 1 byte payload. */
+   static private final int FIXEXT1 = 0xD4;
+
+   /** Format byte for an extension with an 8 byte payload. */
+   static private final int FIXEXT8 = 0xD7;
+
+   /** Format byte for an extension with a 16 byte payload. */
+   static private final int FIXEXT16 = 0xD8;
+
+   /** Format byte for a string with an 8 bit length. */
+   static private final int STR8 = 0xD9;
+
+   /** Format byte for a string with a 16 bit length. */
+   static private final int STR16 = 0xDA;
+
+   /** Format byte for a string with a 32 bit length. */
+   static private final int STR32 = 0xDB;
+
+   /** Format byte for an array with a 16 bit length. */
+   static private final int ARRAY16 = 0xDC;
+
+   /** Format byte for an array with a 32 bit length. */
+   static private final int ARRAY32 = 0xDD;
+
+   /** Format byte for a map with a 16 bit length. */
+   static private final int MAP16 = 0xDE;
+
+   /** Format byte for a map with a 32 bit length. */
+   static private final int MAP32 = 0xDF;
+
+   /** Largest value that fits in 64 bits unsigned. */
+   static private final BigInteger MAX_UNSIGNED = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+   /**
+    * Static methods only.
+    */
+   private MessagePack()
+   {
+   }
+
+   /**
+    * Encode a <code>JSONValue</code>.
+    * 
+    * @param value the value to encode
+    * @return the encoded bytes
+    */
+   static public byte[] encode(JSONValue value)
+   {
+      ByteSink sink = new ByteSink();
+
+      try
+      {
+         writeValue(sink, value);
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to encode value", exc);
+      }
+
+      return sink.toByteArray();
+   }
+
+   /**
+    * Encode a <code>JSONValue</code> to a stream. The stream is flushed but not
+    * closed.
+    * 
+    * @param value the value to encode
+    * @param out   the target stream
+    * @throws IOException on any failure of the stream
+    */
+   static public void encode(JSONValue value, OutputStream out) throws IOException
+   {
+      ByteSink sink = new ByteSink(out);
+      writeValue(sink, value);
+      sink.flush();
+   }
+
+   /**
+    * Encode a <code>JSONValue</code> into a buffer, starting at its position.
+    * 
+    * @param value  the value to encode
+    * @param target the target buffer
+    * @throws IOException if the buffer doesn't have enough room
+    */
+   static public void encode(JSONValue value, ByteBuffer target) throws IOException
+   {
+      ByteSink sink = new ByteSink(target);
+      writeValue(sink, value);
+      sink.flush();
+   }
+
+   /**
+    * Decode a <code>JSONValue</code>. Bytes after the first value are ignored.
+    * 
+    * @param bytes the encoded value
+    * @return the decoded value, or null if there are no bytes
+    * @throws JSONException if the bytes aren't a MessagePack encoded JSON value
+    */
+   static public JSONValue decode(byte[] bytes) throws JSONException
+   {
+      return decode(JSONValueFactory.DEFAULT, bytes, 0, bytes.length);
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from part of an array. Bytes after the
+    * first value are ignored.
+    * 
+    * @param bytes  array holding the encoded value
+    * @param offset start of the encoded value
+    * @param length number of bytes available
+    * @return the decoded value, or null if there are no bytes
+    * @throws JSONException if the bytes aren't a MessagePack encoded JSON value
+    */
+   static public JSONValue decode(byte[] bytes, int offset, int length) throws JSONException
+   {
+      return decode(JSONValueFactory.DEFAULT, bytes, offset, length);
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from a buffer, starting at its position.
+    * On success the position is left just past the value.
+    * 
+    * @param source the buffer
+    * @return the decoded value, or null if the buffer has no bytes remaining
+    * @throws JSONException if the bytes aren't a MessagePack encoded JSON value
+    */
+   static public JSONValue decode(ByteBuffer source) throws JSONException
+   {
+      return decode(JSONValueFactory.DEFAULT, source);
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from a stream. The stream is read in
+    * blocks, so bytes after the value may be consumed.
+    * 
+    * @param in the stream
+    * @return the decoded value, or null if the stream is empty
+    * @throws IOException   on read failure
+    * @throws JSONException if the bytes aren't a MessagePack encoded JSON value
+    */
+   static public JSONValue decode(InputStream in) throws IOException, JSONException
+   {
+      return decode(JSONValueFactory.DEFAULT, in);
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from part of an array. Bytes after the
+    * first value are ignored.
+    * 
+    * @param factory the factory whose <code>recast()</code> is applied
+    * @param bytes   array holding the encoded value
+    * @param offset  start of the encoded value
+    * @param length  number of bytes available
+    * @return the decoded value, or null if there are no bytes
+    * @throws JSONException if the bytes aren't a MessagePack encoded JSON value
+    */
+   static public JSONValue decode(JSONValueFactory factory, byte[] bytes, int offset, int length) throws JSONException
+   {
+      try
+      {
+         return decode(factory, new ByteSource(bytes, offset, length));
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to read array", exc);
+      }
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from a buffer, starting at its position.
+    * On success the position is left just past the value, so a sequence of
+    * values can be decoded one after another.
+    * 
+    * @param factory the factory whose <code>recast()</code> is applied
+    * @param source  the buffer
+    * @return the decoded value, or null if the buffer has no bytes remaining
+    * @throws JSONException if the bytes aren't a MessagePack encoded JSON value
+    */
+   static public JSONValue decode(JSONValueFactory factory, ByteBuffer source) throws JSONException
+   {
+      ByteSource bytes = new ByteSource(source);
+
+      try
+      {
+         JSONValue value = decode(factory, bytes);
+         bytes.finish();
+         return value;
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException("Unexpectedly failed to read buffer", exc);
+      }
+   }
+
+   /**
+    * Decode a <code>JSONValue</code> from a stream. The stream is read in
+    * blocks, so bytes after the value may be consumed.
+    * 
+    * @param factory the factory whose <code>recast()</code> is applied
+    * @param in      the stream
+    * @return the decoded value, or null if the stream is empty
+    * @throws IOException   on read failure
+    * @throws JSONException if the bytes aren't a MessagePack encoded JSON value
+    */
+   static public JSONValue decode(JSONValueFactory factory, InputStream in) throws IOException, JSONException
+   {
+      return decode(factory, new ByteSource(in));
+   }
+
+   /**
+    * Decode the first value.
+    * 
+    * @param factory the factory whose <code>recast()</code> is applied
+    * @param source  the input
+    * @return the decoded value, or null if there is no input
+    * @throws IOException   on read failure
+    * @throws JSONException if the bytes aren't a MessagePack encoded JSON value
+    */
+   static private JSONValue decode(JSONValueFactory factory, ByteSource source) throws IOException, JSONException
+   {
+      if (source.atEnd()) return null;
+
+      return readValue(source, factory.isRecasting() ? factory : null, "$", factory.getMaxDepth());
+   }
+
+   /**
+    * Write the header of a string, array or map.
+    * 
+    * @param sink   the output
+    * @param fixed  format byte of the fixed size form
+    * @param limit  largest length of the fixed size form plus one
+    * @param first  format byte of the first sized form
+    * @param length the length
+    * @throws IOException on any failure of the output
+    */
+   static private void writeHeader(ByteSink sink, int fixed, int limit, int first, int length) throws IOException
+   {
+      if (length < limit) sink.write(fixed | length);
+      else if (length <= 0xFFFF) sink.write2(first, length);
+      else sink.write4(first + 1, length);
+   }
+
+   /**
+    * Write a string.
+    * 
+    * @param sink the output
+    * @param str  the string
+    * @throws IOException on any failure of the output
+    */
+   static private void writeString(ByteSink sink, String str) throws IOException
+   {
+      writeStringHead(sink, ByteSink.utf8Length(str));
+      sink.writeUTF8(str);
+   }
+
+   /**
+    * Write the format and length of a string.
+    * 
+    * @param sink   the output
+    * @param length encoded length in bytes
+    * @throws IOException on any failure of the output
+    */
+   static private void writeStringHead(ByteSink sink, int length) throws IOException
+   {
+      if (length < 32) sink.write(0xA0 | length);
+      else if (length <= 0xFF)
+      {
+         sink.write(STR8);
+         sink.write(length);
+      }
+      else if (length <= 0xFFFF) sink.write2(STR16, length);
+      else sink.write4(STR32, length);
+   }
+
+   /**
+    * Write an integer in the smallest format.
+    * 
+    * @param sink  the output
+    * @param value the integer
+    * @throws IOException on any failure of the output
+    */
+   static private void writeLong(ByteSink sink, long value) throws IOException
+   {
+      if (value >= 0)
+      {
+         if (value < 0x80) sink.write((int) value);
+         else if (value <= 0xFF)
+         {
+            sink.write(UINT8);
+            sink.write((int) value);
+         }
+         else if (value <= 0xFFFF) sink.write2(UINT16, (int) value);
+         else if (value <= 0xFFFFFFFFL) sink.write4(UINT32, (int) value);
+         else sink.write8(UINT64, value);
+      }
+      else
+      {
+         if (value >= -32) sink.write((int) value);
+         else if (value >= Byte.MIN_VALUE)
+         {
+            sink.write(INT8);
+            sink.write((int) value);
+         }
+         else if (value >= Short.MIN_VALUE) sink.write2(INT16, (int) value);
+         else if (value >= Integer.MIN_VALUE) sink.write4(INT32, (int) value);
+         else sink.write8(INT64, value);
+      }
+   }
+
+   /**
+    * Write a number.
+    * 
+    * @param sink  the output
+    * @param value the number
+    * @throws IOException on any failure of the output
+    */
+   static private void writeNumber(ByteSink sink, BigDecimal value) throws IOException
+   {
+      if (value.scale() == 0)
+      {
+         BigInteger integer = value.unscaledValue();
+
+         if (integer.bitLength() < 64)
+         {
+            writeLong(sink, integer.longValue());
+            return;
+         }
+
+         if ((integer.signum() > 0) && (integer.compareTo(MAX_UNSIGNED) <= 0))
+         {
+            sink.write8(UINT64, integer.longValue());
+            return;
+         }
+      }
+
+      byte[] unscaled = value.unscaledValue().toByteArray();
+      int length = 4 + unscaled.length;
+
+      switch (length)
+      {
+         case 8:
+            sink.write(FIXEXT8);
+            break;
+         case 16:
+            sink.write(FIXEXT16);
+            break;
+         default:
+            if (length <= 0xFF)
+            {
+               sink.write(EXT8);
+               sink.write(length);
+            }
+            else if (length <= 0xFFFF) sink.write2(EXT16, length);
+            else sink.write4(EXT32, length);
+            break;
+      }
+
+      sink.write4(DECIMAL_EXT_TYPE, value.scale());
+      sink.write(unscaled, 0, unscaled.length);
+   }
+
+   /**
+    * Write a value. Nested objects and arrays are tracked on the heap rather
+    * than by recursion.
+    * 
+    * @param sink  the output
+    * @param value the value
+    * @throws IOException on any failure of the output
+    */
+   static void writeValue(final ByteSink sink, JSONValue value) throws IOException
+   {
+      JSONTree.visit(value, new JSONTree.Visitor()
+      {
+         @Override
+         public void object(int size) throws IOException
+         {
+            writeHeader(sink, 0x80, 16, MAP16, size);
+         }
+
+         @Override
+         public void key(String key) throws IOException
+         {
+            writeString(sink, key);
+         }
+
+         @Override
+         public void array(int size) throws IOException
+         {
+            writeHeader(sink, 0x90, 16, ARRAY16, size);
+         }
+
+         @Override
+         public void scalar(JSONValue value) throws IOException
+         {
+            writeScalar(sink, value);
+         }
+      });
+   }
+
+   /**
+    * Write a value that isn't an object or array.
+    * 
+    * @param sink  the output
+    * @param value the value
+    * @throws IOException on any failure of the output
+    */
+   static private void writeScalar(ByteSink sink, JSONValue value) throws IOException
+   {
+      if (value instanceof JSONString)
+      {
+         JSONString str = (JSONString) value;
+         writeStringHead(sink, str.utf8Length());
+         str.writeUTF8(sink);
+      }
+      else if (value instanceof JSONNumber)
+      {
+         writeNumber(sink, ((JSONNumber) value).getBigDecimalValue());
+      }
+      else if (value instanceof JSONBoolean)
+      {
+         sink.write(((JSONBoolean) value).getBooleanValue() ? TRUE : FALSE);
+      }
+      else if (value instanceof JSONNull)
+      {
+         sink.write(NIL);
+      }
+      else
+      {
+         throw new RuntimeException("Don't know how to encode a " + ((value == null) ? "null" : value.getClass().getName()));
+      }
+   }
+
+   /**
+    * Read a 32 bit length, which must fit in an <code>int</code>.
+    * 
+    * @param source the input
+    * @param path   path of the value being read
+    * @return the length
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private int readLength32(ByteSource source, String path) throws IOException, JSONException
+   {
+      int length = source.read4(path);
+      if (length < 0) throw new JSONException(path, "MessagePack length too large: " + (length & 0xFFFFFFFFL));
+      return length;
+   }
+
+   /**
+    * Read the length of a string, array or map whose format byte has been
+    * read.
+    * 
+    * @param source the input
+    * @param path   path of the value being read
+    * @param format the format byte
+    * @param first  format byte of the first sized form
+    * @return the length
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private int readLength(ByteSource source, String path, int format, int first) throws IOException, JSONException
+   {
+      if (format == first) return source.read2(path);
+      return readLength32(source, path);
+   }
+
+   /**
+    * Read the payload of an extension, which must be a decimal.
+    * 
+    * @param source the input
+    * @param path   path of the value being read
+    * @param length the payload length
+    * @return the number
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private BigDecimal readDecimal(ByteSource source, String path, int length) throws IOException, JSONException
+   {
+      int type = (byte) source.read(path);
+
+      if (type != DECIMAL_EXT_TYPE) throw new JSONException(path, "JSON has no representation for MessagePack extension type " + type);
+      if (length < 5) throw new JSONException(path, "Decimal extension too short: " + length);
+
+      int scale = source.read4(path);
+      return new BigDecimal(new BigInteger(source.readBytes(path, length - 4)), scale);
+   }
+
+   /**
+    * Convert a float to a number.
+    * 
+    * @param path   path of the value being read
+    * @param value  the float
+    * @param single 'true' if it was a 32 bit float
+    * @return the number
+    * @throws JSONException if the float is infinite or NaN
+    */
+   static private BigDecimal toNumber(String path, double value, boolean single) throws JSONException
+   {
+      if (Double.isNaN(value) || Double.isInfinite(value)) throw new JSONException(path, "JSON has no representation for " + value);
+
+      return single ? new BigDecimal(Float.toString((float) value)) : BigDecimal.valueOf(value);
+   }
+
+   /**
+    * Read the key of a member.
+    * 
+    * @param source the input
+    * @param path   path of the object
+    * @return the key
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private String readKey(ByteSource source, String path) throws IOException, JSONException
+   {
+      int format = source.read(path);
+      int length;
+
+      if ((format & 0xE0) == 0xA0) length = format & 0x1F;
+      else if (format == STR8) length = source.read(path);
+      else if ((format == STR16) || (format == STR32)) length = readLength(source, path, format, STR16);
+      else throw new JSONException(path, "JSON object keys must be MessagePack strings, not format 0x" + Integer.toHexString(format));
+
+      return source.readUTF8(path, length);
+   }
+
+   /**
+    * Read a value. Nested objects and arrays are tracked on the heap rather
+    * than by recursion, so nesting depth is bounded by the maximum depth and
+    * not by the thread's stack size.
+    * 
+    * @param source   the input
+    * @param factory  the factory to recast values with, or null
+    * @param path     path of the value being read; only maintained when
+    *                 recasting
+    * @param maxDepth the maximum nesting depth
+    * @return the value
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static JSONValue readValue(ByteSource source, JSONValueFactory factory, String path, int maxDepth) throws IOException, JSONException
+   {
+      JSONTree.Container open = null;
+
+      for (;;)
+      {
+         JSONValue value;
+
+         if ((open != null) && (open.mRemaining == 0))
+         {
+            // close a complete object or array
+            value = open.mValue;
+            path = open.mPath;
+            open = open.mParent;
+         }
+         else
+         {
+            if (open != null)
+            {
+               path = open.mPath;
+               open.mRemaining--;
+
+               if (open.mValue instanceof JSONObject)
+               {
+                  open.mKey = readKey(source, path);
+                  if (factory != null) path = path + "." + open.mKey;
+               }
+            }
+
+            int format = source.read(path);
+            boolean array = ((format & 0xF0) == 0x90) || (format == ARRAY16) || (format == ARRAY32);
+            boolean map = ((format & 0xF0) == 0x80) || (format == MAP16) || (format == MAP32);
+
+            if (array || map)
+            {
+               int count = (format < 0xA0) ? (format & 0x0F) : readLength(source, path, format, array ? ARRAY16 : MAP16);
+               open = new JSONTree.Container(open, array ? new JSONArray() : new JSONObject(), path, count, maxDepth);
+               continue;
+            }
+
+            value = readScalar(source, path, format);
+         }
+
+         if (factory != null) value = factory.recastValue(path, value);
+         if (open == null) return value;
+
+         open.add(value);
+      }
+   }
+
+   /**
+    * Read a value that isn't an array or map.
+    * 
+    * @param source the input
+    * @param path   path of the value being read
+    * @param format the format byte, already read
+    * @return the value
+    * @throws IOException   on read failure
+    * @throws JSONException on bad input
+    */
+   static private JSONValue readScalar(ByteSource source, String path, int format) throws IOException, JSONException
+   {
+      JSONValue value;
+
+      if (format < 0x80)
+      {
+         value = new JSONNumber(BigDecimal.valueOf(format));
+      }
+      else if (format >= 0xE0)
+      {
+         value = new JSONNumber(BigDecimal.valueOf((byte) format));
+      }
+      else if (format < 0xC0)
+      {
+         value = source.readJSONString(path, format & 0x1F);
+      }
+      else
+      {
+         switch (format)
+         {
+            case NIL:
+               value = JSONNull.INSTANCE;
+               break;
+            case FALSE:
+               value = new JSONBoolean(Boolean.FALSE);
+               break;
+            case TRUE:
+               value = new JSONBoolean(Boolean.TRUE);
+               break;
+            case FLOAT32:
+               value = new JSONNumber(toNumber(path, Float.intBitsToFloat(source.read4(path)), true));
+               break;
+            case FLOAT64:
+               value = new JSONNumber(toNumber(path, Double.longBitsToDouble(source.read8(path)), false));
+               break;
+            case UINT8:
+               value = new JSONNumber(BigDecimal.valueOf(source.read(path)));
+               break;
+            case UINT16:
+               value = new JSONNumber(BigDecimal.valueOf(source.read2(path)));
+               break;
+            case UINT32:
+               value = new JSONNumber(BigDecimal.valueOf(source.read4(path) & 0xFFFFFFFFL));
+               break;
+            case UINT64:
+               long unsigned = source.read8(path);
+               value = new JSONNumber((unsigned >= 0) ? BigDecimal.valueOf(unsigned) : new BigDecimal(new BigInteger(Long.toUnsignedString(unsigned))));
+               break;
+            case INT8:
+               value = new JSONNumber(BigDecimal.valueOf((byte) source.read(path)));
+               break;
+            case INT16:
+               value = new JSONNumber(BigDecimal.valueOf((short) source.read2(path)));
+               break;
+            case INT32:
+               value = new JSONNumber(BigDecimal.valueOf(source.read4(path)));
+               break;
+            case INT64:
+               value = new JSONNumber(BigDecimal.valueOf(source.read8(path)));
+               break;
+            case STR8:
+               value = source.readJSONString(path, source.read(path));
+               break;
+            case STR16:
+            case STR32:
+               value = source.readJSONString(path, readLength(source, path, format, STR16));
+               break;
+            case EXT8:
+               value = new JSONNumber(readDecimal(source, path, source.read(path)));
+               break;
+            case EXT16:
+               value = new JSONNumber(readDecimal(source, path, source.read2(path)));
+               break;
+            case EXT32:
+               value = new JSONNumber(readDecimal(source, path, readLength32(source, path)));
+               break;
+            default:
+               if ((format >= FIXEXT1) && (format <= FIXEXT16))
+               {
+                  value = new JSONNumber(readDecimal(source, path, 1 << (format - FIXEXT1)));
+                  break;
+               }
+
+               if ((format >= BIN8) && (format <= BIN32)) throw new JSONException(path, "JSON has no representation for MessagePack binary data");
+               throw new JSONException(path, "Illegal MessagePack format: 0x" + Integer.toHexString(format));
+         }
+      }
+
+      return value;
+   }
+}
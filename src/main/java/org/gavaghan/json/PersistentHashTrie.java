@@ -0,0 +1,403 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+/**
+ * An immutable map from <code>String</code> keys, stored as a hash array mapped
+ * trie. Each level consumes five bits of the key's hash and keeps only the
+ * occupied slots, located through a 32-bit bitmap. Lookups and updates run in
+ * O(log32 n) and every update shares all but one path of the trie with the
+ * version it was derived from. Iteration order is unspecified.
+ * 
+ * @param <V> value type
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class PersistentHashTrie<V>
+{
+   /** Bits of the hash consumed per level. */
+   static private final int BITS = 5;
+
+   /** The empty trie. */
+   static private final PersistentHashTrie<Object> EMPTY = new PersistentHashTrie<Object>(null, 0);
+
+   /** Root node, or null if empty. */
+   private final Node mRoot;
+
+   /** Number of entries. */
+   private final int mSize;
+
+   /**
+    * Get the empty trie.
+    * 
+    * @param <V> value type
+    * @return the empty trie
+    */
+   @SuppressWarnings("unchecked")
+   static <V> PersistentHashTrie<V> empty()
+   {
+      return (PersistentHashTrie<V>) EMPTY;
+   }
+
+   /**
+    * Create a new PersistentHashTrie.
+    * 
+    * @param root root node
+    * @param size number of entries
+    */
+   private PersistentHashTrie(Node root, int size)
+   {
+      mRoot = root;
+      mSize = size;
+   }
+
+   /**
+    * Get the number of entries.
+    * 
+    * @return number of entries
+    */
+   int size()
+   {
+      return mSize;
+   }
+
+   /**
+    * Look up a key.
+    * 
+    * @param key the key
+    * @return the value or null if the key isn't present
+    */
+   @SuppressWarnings("unchecked")
+   V get(Object key)
+   {
+      if ((mRoot == null) || !(key instanceof String)) return null;
+      return (V) mRoot.find(0, key.hashCode(), (String) key);
+   }
+
+   /**
+    * Create a version with a key mapped to a value.
+    * 
+    * @param key   the key
+    * @param value the value (not null)
+    * @return the new version
+    */
+   PersistentHashTrie<V> with(String key, V value)
+   {
+      boolean[] added = new boolean[1];
+      Node root = (mRoot != null) ? mRoot : BitmapNode.EMPTY;
+      Node newRoot = root.put(0, key.hashCode(), key, value, added);
+
+      if (newRoot == mRoot) return this;
+      return new PersistentHashTrie<V>(newRoot, added[0] ? mSize + 1 : mSize);
+   }
+
+   /**
+    * Create a version without a key.
+    * 
+    * @param key the key
+    * @return the new version
+    */
+   PersistentHashTrie<V> without(String key)
+   {
+      if (mRoot == null) return this;
+
+      Node newRoot = mRoot.remove(0, key.hashCode(), key);
+      if (newRoot == mRoot) return this;
+
+      return new PersistentHashTrie<V>(newRoot, mSize - 1);
+   }
+
+   /**
+    * A node of the trie.
+    */
+   static private abstract class Node
+   {
+      /**
+       * Look up a key.
+       * 
+       * @param shift hash shift of this node
+       * @param hash  hash of the key
+       * @param key   the key
+       * @return the value or null
+       */
+      abstract Object find(int shift, int hash, String key);
+
+      /**
+       * Copy the path to a key, mapping it to a value.
+       * 
+       * @param shift hash shift of this node
+       * @param hash  hash of the key
+       * @param key   the key
+       * @param value the value
+       * @param added set to 'true' if the key is new
+       * @return the new node, or this node if nothing changed
+       */
+      abstract Node put(int shift, int hash, String key, Object value, boolean[] added);
+
+      /**
+       * Copy the path to a key, removing it.
+       * 
+       * @param shift hash shift of this node
+       * @param hash  hash of the key
+       * @param key   the key
+       * @return the new node, null if the node is now empty, or this node if
+       *         the key wasn't found
+       */
+      abstract Node remove(int shift, int hash, String key);
+   }
+
+   /**
+    * A node holding a sparse array of slots. Each slot is a pair of entries in
+    * <code>mArray</code>: a key and its value, or null and a child node.
+    */
+   static private final class BitmapNode extends Node
+   {
+      /** An empty node. */
+      static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+      /** Bit set for each occupied slot. */
+      private final int mBitmap;
+
+      /** Key/value or null/child pairs for each occupied slot. */
+      private final Object[] mArray;
+
+      BitmapNode(int bitmap, Object[] array)
+      {
+         mBitmap = bitmap;
+         mArray = array;
+      }
+
+      /**
+       * Get the position of a slot in the array.
+       * 
+       * @param bit the slot bit
+       * @return the pair index
+       */
+      private int indexOf(int bit)
+      {
+         return Integer.bitCount(mBitmap & (bit - 1));
+      }
+
+      @Override
+      Object find(int shift, int hash, String key)
+      {
+         int bit = 1 << ((hash >>> shift) & 31);
+         if ((mBitmap & bit) == 0) return null;
+
+         int idx = indexOf(bit);
+         Object keyOrNull = mArray[2 * idx];
+         Object valOrNode = mArray[2 * idx + 1];
+
+         if (keyOrNull == null) return ((Node) valOrNode).find(shift + BITS, hash, key);
+         if (key.equals(keyOrNull)) return valOrNode;
+         return null;
+      }
+
+      @Override
+      Node put(int shift, int hash, String key, Object value, boolean[] added)
+      {
+         int bit = 1 << ((hash >>> shift) & 31);
+         int idx = indexOf(bit);
+
+         if ((mBitmap & bit) != 0)
+         {
+            Object keyOrNull = mArray[2 * idx];
+            Object valOrNode = mArray[2 * idx + 1];
+
+            // descend into child
+            if (keyOrNull == null)
+            {
+               Node child = ((Node) valOrNode).put(shift + BITS, hash, key, value, added);
+               if (child == valOrNode) return this;
+               return replace(idx, null, child);
+            }
+
+            // replace value
+            if (key.equals(keyOrNull))
+            {
+               if (value == valOrNode) return this;
+               return replace(idx, keyOrNull, value);
+            }
+
+            // split slot into a child
+            added[0] = true;
+            return replace(idx, null, createNode(shift + BITS, (String) keyOrNull, valOrNode, hash, key, value));
+         }
+
+         // insert new slot
+         added[0] = true;
+
+         Object[] array = new Object[mArray.length + 2];
+         System.arraycopy(mArray, 0, array, 0, 2 * idx);
+         array[2 * idx] = key;
+         array[2 * idx + 1] = value;
+         System.arraycopy(mArray, 2 * idx, array, 2 * idx + 2, mArray.length - 2 * idx);
+
+         return new BitmapNode(mBitmap | bit, array);
+      }
+
+      @Override
+      Node remove(int shift, int hash, String key)
+      {
+         int bit = 1 << ((hash >>> shift) & 31);
+         if ((mBitmap & bit) == 0) return this;
+
+         int idx = indexOf(bit);
+         Object keyOrNull = mArray[2 * idx];
+         Object valOrNode = mArray[2 * idx + 1];
+
+         if (keyOrNull == null)
+         {
+            Node child = ((Node) valOrNode).remove(shift + BITS, hash, key);
+            if (child == valOrNode) return this;
+            if (child != null) return replace(idx, null, child);
+         }
+         else if (!key.equals(keyOrNull))
+         {
+            return this;
+         }
+
+         // drop the slot
+         if (mBitmap == bit) return null;
+
+         Object[] array = new Object[mArray.length - 2];
+         System.arraycopy(mArray, 0, array, 0, 2 * idx);
+         System.arraycopy(mArray, 2 * idx + 2, array, 2 * idx, array.length - 2 * idx);
+
+         return new BitmapNode(mBitmap ^ bit, array);
+      }
+
+      /**
+       * Copy this node with one slot replaced.
+       * 
+       * @param idx       pair index
+       * @param keyOrNull new key
+       * @param valOrNode new value
+       * @return the new node
+       */
+      private BitmapNode replace(int idx, Object keyOrNull, Object valOrNode)
+      {
+         Object[] array = mArray.clone();
+         array[2 * idx] = keyOrNull;
+         array[2 * idx + 1] = valOrNode;
+         return new BitmapNode(mBitmap, array);
+      }
+
+      /**
+       * Create a node holding two entries.
+       * 
+       * @param shift  hash shift of the new node
+       * @param key1   first key
+       * @param value1 first value
+       * @param hash2  hash of second key
+       * @param key2   second key
+       * @param value2 second value
+       * @return the new node
+       */
+      static private Node createNode(int shift, String key1, Object value1, int hash2, String key2, Object value2)
+      {
+         int hash1 = key1.hashCode();
+         if (hash1 == hash2) return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+
+         boolean[] added = new boolean[1];
+         return EMPTY.put(shift, hash1, key1, value1, added).put(shift, hash2, key2, value2, added);
+      }
+   }
+
+   /**
+    * A node holding keys whose hashes are identical.
+    */
+   static private final class CollisionNode extends Node
+   {
+      /** The shared hash. */
+      private final int mHash;
+
+      /** Key/value pairs. */
+      private final Object[] mArray;
+
+      CollisionNode(int hash, Object[] array)
+      {
+         mHash = hash;
+         mArray = array;
+      }
+
+      /**
+       * Find the pair index of a key.
+       * 
+       * @param key the key
+       * @return the pair index or -1
+       */
+      private int indexOf(String key)
+      {
+         for (int i = 0; i < mArray.length; i += 2)
+         {
+            if (key.equals(mArray[i])) return i / 2;
+         }
+
+         return -1;
+      }
+
+      @Override
+      Object find(int shift, int hash, String key)
+      {
+         int idx = indexOf(key);
+         return (idx < 0) ? null : mArray[2 * idx + 1];
+      }
+
+      @Override
+      Node put(int shift, int hash, String key, Object value, boolean[] added)
+      {
+         // a different hash means this node must move down a level
+         if (hash != mHash)
+         {
+            BitmapNode parent = new BitmapNode(1 << ((mHash >>> shift) & 31), new Object[] { null, this });
+            return parent.put(shift, hash, key, value, added);
+         }
+
+         int idx = indexOf(key);
+
+         if (idx >= 0)
+         {
+            if (mArray[2 * idx + 1] == value) return this;
+
+            Object[] array = mArray.clone();
+            array[2 * idx + 1] = value;
+            return new CollisionNode(mHash, array);
+         }
+
+         added[0] = true;
+
+         Object[] array = new Object[mArray.length + 2];
+         System.arraycopy(mArray, 0, array, 0, mArray.length);
+         array[mArray.length] = key;
+         array[mArray.length + 1] = value;
+         return new CollisionNode(mHash, array);
+      }
+
+      @Override
+      Node remove(int shift, int hash, String key)
+      {
+         int idx = indexOf(key);
+         if (idx < 0) return this;
+         if (mArray.length == 2) return null;
+
+         Object[] array = new Object[mArray.length - 2];
+         System.arraycopy(mArray, 0, array, 0, 2 * idx);
+         System.arraycopy(mArray, 2 * idx + 2, array, 2 * idx, array.length - 2 * idx);
+         return new CollisionNode(mHash, array);
+      }
+   }
+}
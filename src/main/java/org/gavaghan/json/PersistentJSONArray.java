@@ -0,0 +1,223 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Writer;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>
+ * A persistent <code>JSONArray</code> backed by a 32-way vector trie.
+ * Instances never change; instead, <code>with()</code> and
+ * <code>append()</code> return a new version in O(log n) that shares all
+ * unchanged structure with this one.
+ * </p>
+ * <p>
+ * The list returned by <code>getListValue()</code> is read-only, and every
+ * method that would modify the array in place throws
+ * <code>UnsupportedOperationException</code>. Elements are shared between
+ * versions, not copied.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class PersistentJSONArray extends JSONArray
+{
+   /** Message of the exception thrown on any attempt to modify in place. */
+   static private final String IMMUTABLE = "Persistent JSON arrays can't be modified.  Use with() or append() instead.";
+
+   /** The empty array. */
+   static public final PersistentJSONArray EMPTY = new PersistentJSONArray(PersistentVector.<JSONValue> empty());
+
+   /** The elements. */
+   private final PersistentVector<JSONValue> mVector;
+
+   /** Read-only list view of the elements. */
+   private final List<JSONValue> mList;
+
+   /**
+    * Create a new PersistentJSONArray.
+    * 
+    * @param vector the elements
+    */
+   private PersistentJSONArray(PersistentVector<JSONValue> vector)
+   {
+      this(vector, new VectorList(vector));
+   }
+
+   /**
+    * Create a new PersistentJSONArray.
+    * 
+    * @param vector the elements
+    * @param list   read-only view of the elements
+    */
+   private PersistentJSONArray(PersistentVector<JSONValue> vector, List<JSONValue> list)
+   {
+      super(list);
+      mVector = vector;
+      mList = list;
+   }
+
+   /**
+    * Create a persistent copy of a list of values. Elements are shared, not
+    * copied.
+    * 
+    * @param source the elements to copy
+    * @return a new <code>PersistentJSONArray</code>
+    */
+   static public PersistentJSONArray valueOf(List<JSONValue> source)
+   {
+      PersistentVector<JSONValue> vector = PersistentVector.empty();
+
+      for (JSONValue value : source)
+      {
+         if (value == null) throw new NullPointerException("Null value not allowed.  Use JSONNull instead.");
+         vector = vector.append(value);
+      }
+
+      return new PersistentJSONArray(vector);
+   }
+
+   /**
+    * Get a version of this array with an element replaced.
+    * 
+    * @param index position of the element
+    * @param value the new element
+    * @return the new version
+    * @throws IndexOutOfBoundsException if the index is out of range(index < 0 ||
+    *                                   index >= size())
+    */
+   public PersistentJSONArray with(int index, JSONValue value)
+   {
+      if (value == null) throw new NullPointerException("Null value not allowed.  Use JSONNull instead.");
+      return new PersistentJSONArray(mVector.set(index, value));
+   }
+
+   /**
+    * Get a version of this array with an element added at the end.
+    * 
+    * @param value the new element
+    * @return the new version
+    */
+   public PersistentJSONArray append(JSONValue value)
+   {
+      if (value == null) throw new NullPointerException("Null value not allowed.  Use JSONNull instead.");
+      return new PersistentJSONArray(mVector.append(value));
+   }
+
+   @Override
+   public void setValue(List<JSONValue> value)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public Object getValue()
+   {
+      return mList;
+   }
+
+   @Override
+   public List<JSONValue> getListValue()
+   {
+      return mList;
+   }
+
+   @Override
+   public JSONValue get(int index)
+   {
+      return mVector.get(index);
+   }
+
+   @Override
+   public void set(int index, JSONValue value)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public JSONValue remove(int index)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public int size()
+   {
+      return mVector.size();
+   }
+
+   @Override
+   public void copyValue(JSONValue value)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public void read(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public void write(String indent, Writer writer, boolean pretty) throws IOException
+   {
+      write(mList, indent, writer, pretty);
+   }
+
+   @Override
+   public Iterator<JSONValue> iterator()
+   {
+      return mVector.iterator();
+   }
+
+   /**
+    * Read-only <code>List</code> view of a vector.
+    */
+   static private final class VectorList extends AbstractList<JSONValue>
+   {
+      private final PersistentVector<JSONValue> mVector;
+
+      VectorList(PersistentVector<JSONValue> vector)
+      {
+         mVector = vector;
+      }
+
+      @Override
+      public JSONValue get(int index)
+      {
+         return mVector.get(index);
+      }
+
+      @Override
+      public int size()
+      {
+         return mVector.size();
+      }
+
+      @Override
+      public Iterator<JSONValue> iterator()
+      {
+         return mVector.iterator();
+      }
+   }
+}
@@ -0,0 +1,451 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * A persistent <code>JSONObject</code>. Instances never change; instead,
+ * <code>with()</code> and <code>without()</code> return a new version in
+ * O(log n) that shares all unchanged structure with this one, so keeping many
+ * versions of a large object costs little more than keeping one.
+ * </p>
+ * <p>
+ * Members are indexed by a hash array mapped trie and kept in insertion order
+ * by a persistent vector, so iteration and <code>write()</code> behave exactly
+ * as they do for a <code>JSONObject</code>. Replacing the value of an existing
+ * key keeps its position. The inherited <code>LinkedHashMap</code> is left
+ * empty and every <code>Map</code> operation that would modify it throws
+ * <code>UnsupportedOperationException</code>.
+ * </p>
+ * <p>
+ * Member values are shared between versions, not copied. Store frozen values
+ * (see <code>AbstractJSONValue.freeze()</code>) or don't modify them once
+ * added.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class PersistentJSONObject extends JSONObject
+{
+   /** Message of the exception thrown on any attempt to modify in place. */
+   static private final String IMMUTABLE = "Persistent JSON objects can't be modified.  Use with() or without() instead.";
+
+   /** The empty object. */
+   static public final PersistentJSONObject EMPTY = new PersistentJSONObject(PersistentHashTrie.<Member> empty(), PersistentVector.<Member> empty());
+
+   /** Index of members by key. */
+   private final PersistentHashTrie<Member> mIndex;
+
+   /** Members in insertion order, with null where a member was removed. */
+   private final PersistentVector<Member> mOrder;
+
+   /**
+    * Create a new PersistentJSONObject.
+    * 
+    * @param index members by key
+    * @param order members in order
+    */
+   private PersistentJSONObject(PersistentHashTrie<Member> index, PersistentVector<Member> order)
+   {
+      mIndex = index;
+      mOrder = order;
+   }
+
+   /**
+    * Create a persistent copy of a <code>Map</code>, preserving its iteration
+    * order. Member values are shared, not copied.
+    * 
+    * @param source the members to copy
+    * @return a new <code>PersistentJSONObject</code>
+    */
+   static public PersistentJSONObject valueOf(Map<String, ? extends JSONValue> source)
+   {
+      if (source instanceof PersistentJSONObject) return (PersistentJSONObject) source;
+
+      PersistentJSONObject result = EMPTY;
+
+      for (Map.Entry<String, ? extends JSONValue> entry : source.entrySet())
+      {
+         result = result.with(entry.getKey(), entry.getValue());
+      }
+
+      return result;
+   }
+
+   /**
+    * Get a version of this object with a key mapped to a value. An existing key
+    * keeps its position; a new key is added at the end.
+    * 
+    * @param key   the member name
+    * @param value the member value
+    * @return the new version, or this instance if the value is already present
+    */
+   public PersistentJSONObject with(String key, JSONValue value)
+   {
+      if (key == null) throw new NullPointerException("Null key not allowed.");
+      if (value == null) throw new NullPointerException("Null value not allowed.  Use JSONNull instead.");
+
+      Member old = mIndex.get(key);
+
+      // replace in place
+      if (old != null)
+      {
+         if (old.mValue == value) return this;
+
+         Member member = new Member(key, value, old.mPosition);
+         return new PersistentJSONObject(mIndex.with(key, member), mOrder.set(old.mPosition, member));
+      }
+
+      // add to the end
+      Member member = new Member(key, value, mOrder.size());
+      return new PersistentJSONObject(mIndex.with(key, member), mOrder.append(member));
+   }
+
+   /**
+    * Get a version of this object without a key.
+    * 
+    * @param key the member name
+    * @return the new version, or this instance if the key isn't present
+    */
+   public PersistentJSONObject without(String key)
+   {
+      Member old = mIndex.get(key);
+      if (old == null) return this;
+
+      PersistentHashTrie<Member> index = mIndex.without(key);
+      if (index.size() == 0) return EMPTY;
+
+      // once most of the order vector is holes, rebuild it
+      if (mOrder.size() > 2 * index.size() + 32)
+      {
+         PersistentJSONObject result = EMPTY;
+
+         for (Member member : mOrder)
+         {
+            if ((member != null) && (member != old)) result = result.with(member.mKey, member.mValue);
+         }
+
+         return result;
+      }
+
+      return new PersistentJSONObject(index, mOrder.set(old.mPosition, null));
+   }
+
+   @Override
+   public int size()
+   {
+      return mIndex.size();
+   }
+
+   @Override
+   public boolean isEmpty()
+   {
+      return mIndex.size() == 0;
+   }
+
+   @Override
+   public JSONValue get(Object key)
+   {
+      Member member = mIndex.get(key);
+      return (member == null) ? null : member.mValue;
+   }
+
+   @Override
+   public JSONValue getOrDefault(Object key, JSONValue defaultValue)
+   {
+      Member member = mIndex.get(key);
+      return (member == null) ? defaultValue : member.mValue;
+   }
+
+   @Override
+   public boolean containsKey(Object key)
+   {
+      return mIndex.get(key) != null;
+   }
+
+   @Override
+   public boolean containsValue(Object value)
+   {
+      for (Member member : mOrder)
+      {
+         if ((member != null) && member.mValue.equals(value)) return true;
+      }
+
+      return false;
+   }
+
+   @Override
+   public void forEach(BiConsumer<? super String, ? super JSONValue> action)
+   {
+      for (Member member : mOrder)
+      {
+         if (member != null) action.accept(member.mKey, member.mValue);
+      }
+   }
+
+   @Override
+   public Set<String> keySet()
+   {
+      return new AbstractSet<String>()
+      {
+         @Override
+         public Iterator<String> iterator()
+         {
+            final Iterator<Map.Entry<String, JSONValue>> iter = new MemberIterator();
+
+            return new Iterator<String>()
+            {
+               @Override
+               public boolean hasNext()
+               {
+                  return iter.hasNext();
+               }
+
+               @Override
+               public String next()
+               {
+                  return iter.next().getKey();
+               }
+            };
+         }
+
+         @Override
+         public int size()
+         {
+            return mIndex.size();
+         }
+
+         @Override
+         public boolean contains(Object o)
+         {
+            return mIndex.get(o) != null;
+         }
+      };
+   }
+
+   @Override
+   public Collection<JSONValue> values()
+   {
+      return new AbstractCollection<JSONValue>()
+      {
+         @Override
+         public Iterator<JSONValue> iterator()
+         {
+            final Iterator<Map.Entry<String, JSONValue>> iter = new MemberIterator();
+
+            return new Iterator<JSONValue>()
+            {
+               @Override
+               public boolean hasNext()
+               {
+                  return iter.hasNext();
+               }
+
+               @Override
+               public JSONValue next()
+               {
+                  return iter.next().getValue();
+               }
+            };
+         }
+
+         @Override
+         public int size()
+         {
+            return mIndex.size();
+         }
+      };
+   }
+
+   @Override
+   public Set<Map.Entry<String, JSONValue>> entrySet()
+   {
+      return new AbstractSet<Map.Entry<String, JSONValue>>()
+      {
+         @Override
+         public Iterator<Map.Entry<String, JSONValue>> iterator()
+         {
+            return new MemberIterator();
+         }
+
+         @Override
+         public int size()
+         {
+            return mIndex.size();
+         }
+      };
+   }
+
+   @Override
+   public JSONValue put(String key, JSONValue value)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public void putAll(Map<? extends String, ? extends JSONValue> m)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public JSONValue remove(Object key)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public boolean remove(Object key, Object value)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public void clear()
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public JSONValue putIfAbsent(String key, JSONValue value)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public boolean replace(String key, JSONValue oldValue, JSONValue newValue)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public JSONValue replace(String key, JSONValue value)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public void replaceAll(BiFunction<? super String, ? super JSONValue, ? extends JSONValue> function)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public JSONValue computeIfAbsent(String key, Function<? super String, ? extends JSONValue> mappingFunction)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public JSONValue computeIfPresent(String key, BiFunction<? super String, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public JSONValue compute(String key, BiFunction<? super String, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public JSONValue merge(String key, JSONValue value, BiFunction<? super JSONValue, ? super JSONValue, ? extends JSONValue> remappingFunction)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public void copyValue(JSONValue value)
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   @Override
+   public void read(String path, PushbackReader pbr) throws IOException, JSONException
+   {
+      throw new UnsupportedOperationException(IMMUTABLE);
+   }
+
+   /**
+    * A member of the object and its position in the order vector.
+    */
+   static private final class Member extends AbstractMap.SimpleImmutableEntry<String, JSONValue>
+   {
+      private final String mKey;
+      private final JSONValue mValue;
+      private final int mPosition;
+
+      Member(String key, JSONValue value, int position)
+      {
+         super(key, value);
+         mKey = key;
+         mValue = value;
+         mPosition = position;
+      }
+   }
+
+   /**
+    * Iterates over members in order, skipping removed positions.
+    */
+   private final class MemberIterator implements Iterator<Map.Entry<String, JSONValue>>
+   {
+      private final Iterator<Member> mIter = mOrder.iterator();
+      private Member mNext = advance();
+
+      private Member advance()
+      {
+         while (mIter.hasNext())
+         {
+            Member member = mIter.next();
+            if (member != null) return member;
+         }
+
+         return null;
+      }
+
+      @Override
+      public boolean hasNext()
+      {
+         return mNext != null;
+      }
+
+      @Override
+      public Map.Entry<String, JSONValue> next()
+      {
+         if (mNext == null) throw new NoSuchElementException();
+
+         Member member = mNext;
+         mNext = advance();
+         return member;
+      }
+   }
+}
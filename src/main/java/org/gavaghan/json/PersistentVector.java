@@ -0,0 +1,292 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, indexed sequence stored as a 32-way trie with a detached tail.
+ * <code>get()</code>, <code>set()</code> and <code>append()</code> run in
+ * O(log32 n) and every update shares all but one path of the trie with the
+ * version it was derived from.
+ * 
+ * @param <T> element type
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class PersistentVector<T> implements Iterable<T>
+{
+   /** Bits of the index consumed per level. */
+   static private final int BITS = 5;
+
+   /** Children per node. */
+   static private final int WIDTH = 1 << BITS;
+
+   /** Index mask for one level. */
+   static private final int MASK = WIDTH - 1;
+
+   /** The empty vector. */
+   static private final PersistentVector<Object> EMPTY = new PersistentVector<Object>(0, BITS, new Object[WIDTH], new Object[0]);
+
+   /** Number of elements. */
+   private final int mCount;
+
+   /** Shift of the root level. */
+   private final int mShift;
+
+   /** Root of the trie. */
+   private final Object[] mRoot;
+
+   /** The last, partially filled block of elements. */
+   private final Object[] mTail;
+
+   /**
+    * Get the empty vector.
+    * 
+    * @param <T> element type
+    * @return the empty vector
+    */
+   @SuppressWarnings("unchecked")
+   static <T> PersistentVector<T> empty()
+   {
+      return (PersistentVector<T>) EMPTY;
+   }
+
+   /**
+    * Create a new PersistentVector.
+    * 
+    * @param count number of elements
+    * @param shift shift of the root level
+    * @param root  root of the trie
+    * @param tail  the tail block
+    */
+   private PersistentVector(int count, int shift, Object[] root, Object[] tail)
+   {
+      mCount = count;
+      mShift = shift;
+      mRoot = root;
+      mTail = tail;
+   }
+
+   /**
+    * Get the number of elements.
+    * 
+    * @return number of elements
+    */
+   int size()
+   {
+      return mCount;
+   }
+
+   /**
+    * Get the index of the first element in the tail.
+    * 
+    * @return tail offset
+    */
+   private int tailOffset()
+   {
+      return (mCount < WIDTH) ? 0 : (((mCount - 1) >>> BITS) << BITS);
+   }
+
+   /**
+    * Get the block holding an index.
+    * 
+    * @param index element index
+    * @return the block containing the element
+    */
+   private Object[] blockFor(int index)
+   {
+      if ((index < 0) || (index >= mCount)) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mCount);
+
+      if (index >= tailOffset()) return mTail;
+
+      Object[] node = mRoot;
+      for (int level = mShift; level > 0; level -= BITS)
+      {
+         node = (Object[]) node[(index >>> level) & MASK];
+      }
+
+      return node;
+   }
+
+   /**
+    * Get an element.
+    * 
+    * @param index element index
+    * @return the element
+    */
+   @SuppressWarnings("unchecked")
+   T get(int index)
+   {
+      return (T) blockFor(index)[index & MASK];
+   }
+
+   /**
+    * Create a version with one element replaced.
+    * 
+    * @param index element index
+    * @param value the new element
+    * @return the new version
+    */
+   PersistentVector<T> set(int index, T value)
+   {
+      if ((index < 0) || (index >= mCount)) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mCount);
+
+      if (index >= tailOffset())
+      {
+         Object[] tail = mTail.clone();
+         tail[index & MASK] = value;
+         return new PersistentVector<T>(mCount, mShift, mRoot, tail);
+      }
+
+      return new PersistentVector<T>(mCount, mShift, set(mShift, mRoot, index, value), mTail);
+   }
+
+   /**
+    * Copy the path to an element, replacing the element.
+    * 
+    * @param level shift of this node
+    * @param node  the node
+    * @param index element index
+    * @param value the new element
+    * @return the copied node
+    */
+   static private Object[] set(int level, Object[] node, int index, Object value)
+   {
+      Object[] copy = node.clone();
+
+      if (level == 0)
+      {
+         copy[index & MASK] = value;
+      }
+      else
+      {
+         int slot = (index >>> level) & MASK;
+         copy[slot] = set(level - BITS, (Object[]) node[slot], index, value);
+      }
+
+      return copy;
+   }
+
+   /**
+    * Create a version with an element added at the end.
+    * 
+    * @param value the new element
+    * @return the new version
+    */
+   PersistentVector<T> append(T value)
+   {
+      // room in the tail
+      if (mCount - tailOffset() < WIDTH)
+      {
+         Object[] tail = new Object[mTail.length + 1];
+         System.arraycopy(mTail, 0, tail, 0, mTail.length);
+         tail[mTail.length] = value;
+         return new PersistentVector<T>(mCount + 1, mShift, mRoot, tail);
+      }
+
+      // push the full tail into the trie
+      Object[] root;
+      int shift = mShift;
+
+      if ((mCount >>> BITS) > (1 << mShift))
+      {
+         root = new Object[WIDTH];
+         root[0] = mRoot;
+         root[1] = newPath(mShift, mTail);
+         shift += BITS;
+      }
+      else
+      {
+         root = pushTail(mShift, mRoot, mTail);
+      }
+
+      return new PersistentVector<T>(mCount + 1, shift, root, new Object[] { value });
+   }
+
+   /**
+    * Copy the rightmost path of the trie, hanging a full tail off of it.
+    * 
+    * @param level  shift of this node
+    * @param parent the node
+    * @param tail   the block to add
+    * @return the copied node
+    */
+   private Object[] pushTail(int level, Object[] parent, Object[] tail)
+   {
+      int slot = ((mCount - 1) >>> level) & MASK;
+      Object[] copy = parent.clone();
+
+      if (level == BITS)
+      {
+         copy[slot] = tail;
+      }
+      else
+      {
+         Object[] child = (Object[]) parent[slot];
+         copy[slot] = (child != null) ? pushTail(level - BITS, child, tail) : newPath(level - BITS, tail);
+      }
+
+      return copy;
+   }
+
+   /**
+    * Build a path of single-child nodes down to a block.
+    * 
+    * @param level shift of the top node
+    * @param block the block at the bottom
+    * @return the top node
+    */
+   static private Object[] newPath(int level, Object[] block)
+   {
+      if (level == 0) return block;
+
+      Object[] node = new Object[WIDTH];
+      node[0] = newPath(level - BITS, block);
+      return node;
+   }
+
+   /**
+    * Iterate over the elements in order.
+    * 
+    * @return an iterator
+    */
+   @Override
+   public Iterator<T> iterator()
+   {
+      return new Iterator<T>()
+      {
+         private int mIndex;
+         private Object[] mBlock;
+
+         @Override
+         public boolean hasNext()
+         {
+            return mIndex < mCount;
+         }
+
+         @SuppressWarnings("unchecked")
+         @Override
+         public T next()
+         {
+            if (mIndex >= mCount) throw new NoSuchElementException();
+            if ((mIndex & MASK) == 0) mBlock = blockFor(mIndex);
+            return (T) mBlock[mIndex++ & MASK];
+         }
+      };
+   }
+}
@@ -0,0 +1,180 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * An unsynchronized <code>Writer</code> over a <code>StringBuilder</code> that
+ * can be emptied and reused. Unlike <code>StringWriter</code> it doesn't lock
+ * a <code>StringBuffer</code> on every write.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class StringBuilderWriter extends JSONWriter
+{
+   /** The accumulated characters. */
+   private StringBuilder mBuilder;
+
+   /** Keys already rendered with their quotes and colon. */
+   private final Map<String, char[]> mKeys = createKeyCache();
+
+   /**
+    * Create a new <code>StringBuilderWriter</code>.
+    * 
+    * @param capacity initial capacity
+    */
+   StringBuilderWriter(int capacity)
+   {
+      mBuilder = new StringBuilder(capacity);
+   }
+
+   /**
+    * Discard the accumulated characters. The buffer is kept for reuse unless it
+    * has grown beyond a limit.
+    * 
+    * @param maxCapacity largest buffer worth keeping
+    */
+   void reset(int maxCapacity)
+   {
+      if (mBuilder.capacity() > maxCapacity) mBuilder = new StringBuilder(maxCapacity / 4);
+      else mBuilder.setLength(0);
+   }
+
+   /**
+    * Get the number of characters written.
+    * 
+    * @return the length
+    */
+   int length()
+   {
+      return mBuilder.length();
+   }
+
+   /**
+    * Get the characters written since a given length.
+    * 
+    * @param start length before the characters wanted
+    * @return the characters from 'start' on
+    */
+   String substring(int start)
+   {
+      return mBuilder.substring(start);
+   }
+
+   @Override
+   public void write(int c)
+   {
+      mBuilder.append((char) c);
+   }
+
+   @Override
+   public void write(char[] cbuf, int off, int len)
+   {
+      mBuilder.append(cbuf, off, len);
+   }
+
+   @Override
+   public void write(String str)
+   {
+      mBuilder.append(str);
+   }
+
+   @Override
+   public void write(String str, int off, int len)
+   {
+      mBuilder.append(str, off, off + len);
+   }
+
+   @Override
+   public Writer append(CharSequence csq)
+   {
+      mBuilder.append(csq);
+      return this;
+   }
+
+   @Override
+   public Writer append(CharSequence csq, int start, int end)
+   {
+      mBuilder.append(csq, start, end);
+      return this;
+   }
+
+   @Override
+   public Writer append(char c)
+   {
+      mBuilder.append(c);
+      return this;
+   }
+
+   @Override
+   void writeKey(String key)
+   {
+      char[] chars = mKeys.get(key);
+
+      if (chars == null)
+      {
+         chars = new char[key.length() + 3];
+         chars[0] = '\"';
+         key.getChars(0, key.length(), chars, 1);
+         chars[chars.length - 2] = '\"';
+         chars[chars.length - 1] = ':';
+         mKeys.put(key, chars);
+      }
+
+      mBuilder.append(chars);
+   }
+
+   @Override
+   void writeASCII(byte[] ascii, int offset, int length)
+   {
+      StringBuilder builder = mBuilder;
+      builder.ensureCapacity(builder.length() + length);
+
+      for (int i = offset, end = offset + length; i < end; i++)
+      {
+         builder.append((char) ascii[i]);
+      }
+   }
+
+   @Override
+   void writeLiteral(char[] literal)
+   {
+      mBuilder.append(literal);
+   }
+
+   @Override
+   public void flush()
+   {
+   }
+
+   @Override
+   public void close()
+   {
+   }
+
+   /**
+    * Get the accumulated characters.
+    * 
+    * @return the characters written so far
+    */
+   @Override
+   public String toString()
+   {
+      return mBuilder.toString();
+   }
+}
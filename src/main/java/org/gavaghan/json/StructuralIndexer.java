@@ -0,0 +1,293 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Stage one of an indexed parse: finds every structural character of a UTF-8
+ * document in a single pass over 64-byte blocks. Each block is read as eight
+ * <code>long</code> words and compared a word at a time using SWAR ("SIMD
+ * within a register") arithmetic to produce 64-bit masks of quotes,
+ * backslashes, brackets, colons, commas and whitespace. Escaped quotes are
+ * removed, string interiors are found with a prefix XOR of the remaining
+ * quotes, and the positions of structural characters, quotes and the first
+ * byte of every number or literal are written to an index for the parser to
+ * walk.
+ * </p>
+ * <p>
+ * <code>index()</code> gives up and returns 'false' if it finds anything
+ * outside of a string that the fast path doesn't handle: a non-ASCII byte or a
+ * control character other than space, tab, CR and LF. The caller is expected
+ * to fall back to the scalar parser, which defines the grammar.
+ * </p>
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class StructuralIndexer
+{
+   /** Low seven bits of each byte. */
+   static private final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+   /** High bit of each byte. */
+   static private final long HIGH = 0x8080808080808080L;
+
+   /** A one in each byte. */
+   static private final long ONES = 0x0101010101010101L;
+
+   /** Gathers the low bit of each byte into the top byte. */
+   static private final long GATHER = 0x0102040810204080L;
+
+   /** Positions found, in order. */
+   private int[] mPositions = new int[64];
+
+   /** Number of positions found. */
+   private int mCount;
+
+   /** Block used to pad the end of the input. */
+   private final byte[] mPad = new byte[64];
+
+   /** Word reader over the padding block. */
+   private final ByteBuffer mPadBuffer = ByteBuffer.wrap(mPad).order(ByteOrder.LITTLE_ENDIAN);
+
+   /**
+    * Get the positions found by the last call to <code>index()</code>.
+    * 
+    * @return the positions (only the first <code>getCount()</code> are valid)
+    */
+   int[] getPositions()
+   {
+      return mPositions;
+   }
+
+   /**
+    * Get the number of positions found by the last call to
+    * <code>index()</code>.
+    * 
+    * @return the position count
+    */
+   int getCount()
+   {
+      return mCount;
+   }
+
+   /**
+    * Broadcast a byte to every byte of a word.
+    * 
+    * @param b the byte
+    * @return the word
+    */
+   static private long broadcast(int b)
+   {
+      return ONES * b;
+   }
+
+   /**
+    * Find the zero bytes of a word.
+    * 
+    * @param x the word
+    * @return 0x80 in every byte of the word that is zero
+    */
+   static private long zeroBytes(long x)
+   {
+      return ~(((x & LOW7) + LOW7) | x | LOW7);
+   }
+
+   /**
+    * Find the bytes of a word equal to a broadcast byte.
+    * 
+    * @param x the word
+    * @param c the broadcast byte
+    * @return 0x80 in every matching byte
+    */
+   static private long equalBytes(long x, long c)
+   {
+      return zeroBytes(x ^ c);
+   }
+
+   /**
+    * Find the ASCII bytes of a word that are less than a value.
+    * 
+    * @param x the word
+    * @param n broadcast of (0x80 - limit)
+    * @return 0x80 in every byte less than the limit
+    */
+   static private long lessBytes(long x, long n)
+   {
+      return ~(((x & LOW7) + n) | x) & HIGH;
+   }
+
+   /**
+    * Gather the high bit of each byte into an 8-bit mask.
+    * 
+    * @param x word with only high bits set
+    * @return bit i set if byte i had its high bit set
+    */
+   static private long movemask(long x)
+   {
+      return ((x >>> 7) * GATHER) >>> 56;
+   }
+
+   /**
+    * Compute the prefix XOR of a mask: bit i becomes the XOR of bits 0..i.
+    * 
+    * @param x the mask
+    * @return the prefix XOR
+    */
+   static private long prefixXor(long x)
+   {
+      x ^= x << 1;
+      x ^= x << 2;
+      x ^= x << 4;
+      x ^= x << 8;
+      x ^= x << 16;
+      x ^= x << 32;
+      return x;
+   }
+
+   /**
+    * Index a UTF-8 document.
+    * 
+    * @param json   buffer holding the document
+    * @param offset start of the document
+    * @param length length of the document
+    * @return 'false' if the document needs the scalar parser
+    */
+   boolean index(byte[] json, int offset, int length)
+   {
+      final long quoteChar = broadcast('\"');
+      final long backslashChar = broadcast('\\');
+      final long openChar = broadcast('{');
+      final long closeChar = broadcast('}');
+      final long colonChar = broadcast(':');
+      final long commaChar = broadcast(',');
+      final long caseBit = broadcast(0x20);
+      final long spaceChar = broadcast(' ');
+      final long tabChar = broadcast('\t');
+      final long lfChar = broadcast('\n');
+      final long crChar = broadcast('\r');
+      final long belowBang = broadcast(0x80 - 0x21);
+
+      ByteBuffer input = ByteBuffer.wrap(json).order(ByteOrder.LITTLE_ENDIAN);
+
+      long inStringCarry = 0;
+      long prevOther = 0;
+      boolean escapeCarry = false;
+
+      mCount = 0;
+
+      for (int base = 0; base < length; base += 64)
+      {
+         ByteBuffer buffer;
+         int at;
+
+         // pad the last partial block with spaces
+         if (length - base < 64)
+         {
+            Arrays.fill(mPad, (byte) ' ');
+            System.arraycopy(json, offset + base, mPad, 0, length - base);
+            buffer = mPadBuffer;
+            at = 0;
+         }
+         else
+         {
+            buffer = input;
+            at = offset + base;
+         }
+
+         long quote = 0;
+         long backslash = 0;
+         long structural = 0;
+         long low = 0;
+         long unusual = 0;
+
+         for (int i = 0; i < 8; i++)
+         {
+            long x = buffer.getLong(at + 8 * i);
+            long folded = x | caseBit;
+            int shift = 8 * i;
+
+            quote |= movemask(equalBytes(x, quoteChar)) << shift;
+            structural |= movemask(equalBytes(folded, openChar) | equalBytes(folded, closeChar) | equalBytes(x, colonChar) | equalBytes(x, commaChar)) << shift;
+
+            long b = equalBytes(x, backslashChar);
+            if (b != 0) backslash |= movemask(b) << shift;
+
+            // whitespace and control characters
+            long lt = lessBytes(x, belowBang);
+            if (lt != 0)
+            {
+               low |= movemask(lt) << shift;
+
+               long control = lt & ~equalBytes(x, spaceChar);
+               if (control != 0) control &= ~(equalBytes(x, tabChar) | equalBytes(x, lfChar) | equalBytes(x, crChar));
+               if (control != 0) unusual |= movemask(control) << shift;
+            }
+
+            // non-ASCII
+            long high = x & HIGH;
+            if (high != 0) unusual |= movemask(high) << shift;
+         }
+
+         // find escaped characters; backslashes are rare, so walk them
+         long escaped = escapeCarry ? 1L : 0L;
+         escapeCarry = false;
+
+         for (long b = backslash; b != 0; b &= b - 1)
+         {
+            int bit = Long.numberOfTrailingZeros(b);
+            if (((escaped >>> bit) & 1) != 0) continue;
+
+            if (bit == 63) escapeCarry = true;
+            else escaped |= 1L << (bit + 1);
+         }
+
+         // find string interiors
+         long realQuote = quote & ~escaped;
+         long inString = prefixXor(realQuote) ^ inStringCarry;
+         inStringCarry = inString >> 63;
+
+         long outside = ~inString & ~realQuote;
+
+         // bail out on anything the fast path doesn't handle
+         if ((unusual & outside) != 0) return false;
+
+         // find the first byte of each number or literal
+         long other = outside & ~structural & ~low;
+         long atomStart = other & ~((other << 1) | prevOther);
+         prevOther = other >>> 63;
+
+         long marks = (structural & outside) | realQuote | atomStart;
+
+         // drop anything in the padding
+         if (length - base < 64) marks &= (1L << (length - base)) - 1;
+
+         // record positions
+         int needed = mCount + Long.bitCount(marks);
+         if (needed > mPositions.length) mPositions = Arrays.copyOf(mPositions, Math.max(needed, mPositions.length * 2));
+
+         for (; marks != 0; marks &= marks - 1)
+         {
+            mPositions[mCount++] = offset + base + Long.numberOfTrailingZeros(marks);
+         }
+      }
+
+      return true;
+   }
+}
@@ -0,0 +1,301 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the entries and text of a <code>JSONTape</code> as a document is
+ * parsed. The builder tracks the open containers so it can patch their start
+ * entries when they close and describe the current path for error messages.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class TapeBuilder implements DocumentBuilder<JSONTape>
+{
+   /** The tape. */
+   private long[] mTape;
+
+   /** Number of entries on the tape. */
+   private int mTapeLength;
+
+   /** The text buffer. */
+   private char[] mText;
+
+   /** Number of chars in the text buffer. */
+   private int mTextLength;
+
+   /** Tape positions of the open containers. */
+   private int[] mOpen = new int[16];
+
+   /** Child counts of the open containers. */
+   private int[] mCounts = new int[16];
+
+   /** Tape position of the current key of each open object, or -1. */
+   private int[] mKeys = new int[16];
+
+   /** Number of open containers. */
+   private int mDepth;
+
+   /** Start of the text run being written. */
+   private int mTextStart;
+
+   /**
+    * Create a new TapeBuilder.
+    * 
+    * @param tapeHint expected number of tape entries
+    * @param textHint expected number of text chars
+    */
+   TapeBuilder(int tapeHint, int textHint)
+   {
+      mTape = new long[Math.max(16, tapeHint)];
+      mText = new char[Math.max(16, textHint)];
+   }
+
+   /**
+    * Get the number of open containers.
+    * 
+    * @return the depth
+    */
+   @Override
+   public int getDepth()
+   {
+      return mDepth;
+   }
+
+   /**
+    * Determine if the innermost open container is an object.
+    * 
+    * @return 'true' if in an object
+    */
+   @Override
+   public boolean inObject()
+   {
+      return JSONTape.tagOf(mTape[mOpen[mDepth - 1]]) == JSONTape.TAG_OBJECT;
+   }
+
+   /**
+    * Describe the path to the value being parsed, in the form used by
+    * <code>JSONValueFactory</code>.
+    * 
+    * @return the path
+    */
+   String getPath()
+   {
+      StringBuilder path = new StringBuilder("$");
+
+      for (int i = 0; i < mDepth; i++)
+      {
+         if (mKeys[i] >= 0)
+         {
+            int offset = (int) mTape[mKeys[i]];
+            int length = (mText[offset] << 16) | mText[offset + 1];
+            path.append('.').append(mText, offset + 2, length);
+         }
+      }
+
+      return path.toString();
+   }
+
+   /**
+    * Append an entry to the tape.
+    * 
+    * @param entry the entry
+    * @return its position
+    */
+   private int add(long entry)
+   {
+      if (mTapeLength == mTape.length) mTape = Arrays.copyOf(mTape, mTape.length * 2);
+
+      mTape[mTapeLength] = entry;
+      return mTapeLength++;
+   }
+
+   /**
+    * Count a new value in the innermost open container.
+    */
+   private void countValue()
+   {
+      if (mDepth > 0) mCounts[mDepth - 1]++;
+   }
+
+   /**
+    * Add a value with no payload.
+    * 
+    * @param tag the value tag
+    */
+   @Override
+   public void literal(int tag)
+   {
+      countValue();
+      add(JSONTape.entry(tag, 0));
+   }
+
+   /**
+    * Open an object or array.
+    * 
+    * @param tag the container tag
+    */
+   @Override
+   public void open(int tag)
+   {
+      countValue();
+
+      if (mDepth == mOpen.length)
+      {
+         mOpen = Arrays.copyOf(mOpen, mDepth * 2);
+         mCounts = Arrays.copyOf(mCounts, mDepth * 2);
+         mKeys = Arrays.copyOf(mKeys, mDepth * 2);
+      }
+
+      mOpen[mDepth] = add(JSONTape.entry(tag, 0));
+      mCounts[mDepth] = 0;
+      mKeys[mDepth] = -1;
+      mDepth++;
+   }
+
+   /**
+    * Close the innermost object or array.
+    */
+   @Override
+   public void close()
+   {
+      mDepth--;
+
+      int start = mOpen[mDepth];
+      int tag = JSONTape.tagOf(mTape[start]);
+      int end = add(JSONTape.entry((tag == JSONTape.TAG_OBJECT) ? JSONTape.TAG_OBJECT_END : JSONTape.TAG_ARRAY_END, start));
+
+      mTape[start] = JSONTape.containerEntry(tag, end, mCounts[mDepth]);
+   }
+
+   /**
+    * Make room in the text buffer.
+    * 
+    * @param count number of chars about to be written
+    */
+   private void ensureText(int count)
+   {
+      if (mTextLength + count > mText.length) mText = Arrays.copyOf(mText, Math.max(mText.length * 2, mTextLength + count));
+   }
+
+   /**
+    * Start a run of text, reserving room for its length.
+    */
+   @Override
+   public void startText()
+   {
+      ensureText(2);
+      mTextStart = mTextLength;
+      mTextLength += 2;
+   }
+
+   /**
+    * Append a char to the current text run.
+    * 
+    * @param c the char
+    */
+   @Override
+   public void appendText(char c)
+   {
+      ensureText(1);
+      mText[mTextLength++] = c;
+   }
+
+   /**
+    * Append chars to the current text run.
+    * 
+    * @param src    source buffer
+    * @param offset start in the source
+    * @param length number of chars
+    */
+   void appendText(char[] src, int offset, int length)
+   {
+      ensureText(length);
+      System.arraycopy(src, offset, mText, mTextLength, length);
+      mTextLength += length;
+   }
+
+   /**
+    * Get the text buffer so a decoder can write into it directly. Call
+    * <code>reserveText()</code> first and <code>commitText()</code> after.
+    * 
+    * @param count number of chars about to be written
+    * @return the text buffer
+    */
+   @Override
+   public char[] reserveText(int count)
+   {
+      ensureText(count);
+      return mText;
+   }
+
+   /**
+    * Get the offset at which the next text char will be written.
+    * 
+    * @return the text length
+    */
+   @Override
+   public int getTextLength()
+   {
+      return mTextLength;
+   }
+
+   /**
+    * Record chars written directly into the text buffer.
+    * 
+    * @param length the new text length
+    */
+   @Override
+   public void commitText(int length)
+   {
+      mTextLength = length;
+   }
+
+   /**
+    * Finish the current text run as a string, key or number.
+    * 
+    * @param tag the entry tag
+    */
+   @Override
+   public void endText(int tag)
+   {
+      int length = mTextLength - mTextStart - 2;
+      mText[mTextStart] = (char) (length >>> 16);
+      mText[mTextStart + 1] = (char) length;
+
+      if (tag == JSONTape.TAG_KEY)
+      {
+         mKeys[mDepth - 1] = add(JSONTape.entry(tag, mTextStart));
+      }
+      else
+      {
+         countValue();
+         add(JSONTape.entry(tag, mTextStart));
+      }
+   }
+
+   /**
+    * Create the finished tape.
+    * 
+    * @return the tape
+    */
+   @Override
+   public JSONTape build()
+   {
+      return new JSONTape(mTape, mTapeLength, mText);
+   }
+}
@@ -0,0 +1,367 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+/**
+ * Parses a document held in a <code>char[]</code> onto a
+ * <code>JSONTape</code>. The grammar, whitespace and error messages follow
+ * <code>JSONValueFactory.DEFAULT</code>, except that a number may end the
+ * document. Nesting is handled with the builder's stack rather than
+ * recursion.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class TapeParser
+{
+   /** The document. */
+   private final char[] mJSON;
+
+   /** End of the document. */
+   private final int mEnd;
+
+   /** Current position in the document. */
+   private int mPos;
+
+   /** The tape being built. */
+   private final TapeBuilder mBuilder;
+
+   /**
+    * Create a new TapeParser.
+    * 
+    * @param json  buffer holding the document
+    * @param start start of the document
+    * @param end   end of the document
+    */
+   TapeParser(char[] json, int start, int end)
+   {
+      mJSON = json;
+      mPos = start;
+      mEnd = end;
+      mBuilder = new TapeBuilder((end - start) / 8, (end - start) / 2);
+   }
+
+   /**
+    * Build an exception for the current path.
+    * 
+    * @param message a description of the problem
+    * @return the exception
+    */
+   private JSONException error(String message)
+   {
+      return new JSONException(mBuilder.getPath(), message);
+   }
+
+   /**
+    * Get the next char, failing at the end of the document.
+    * 
+    * @return the next char
+    * @throws JSONException at end of document
+    */
+   private char demand() throws JSONException
+   {
+      if (mPos >= mEnd) throw error("Out of data while reading JSON object.");
+      return mJSON[mPos++];
+   }
+
+   /**
+    * Skip whitespace.
+    */
+   private void skipWhitespace()
+   {
+      while ((mPos < mEnd) && JSONValueFactory.DEFAULT.isWhitespace(mJSON[mPos]))
+         mPos++;
+   }
+
+   /**
+    * Parse the first value of the document.
+    * 
+    * @return the tape or null if the document holds only whitespace
+    * @throws JSONException on grammar error
+    */
+   JSONTape parse() throws JSONException
+   {
+      skipWhitespace();
+      if (mPos >= mEnd) return null;
+
+      for (;;)
+      {
+         // read a value
+         char c = demand();
+
+         switch (c)
+         {
+            case '{':
+               mBuilder.open(JSONTape.TAG_OBJECT);
+               skipWhitespace();
+               if ((mPos < mEnd) && (mJSON[mPos] == '}'))
+               {
+                  mPos++;
+                  mBuilder.close();
+                  break;
+               }
+               readKey();
+               continue;
+
+            case '[':
+               mBuilder.open(JSONTape.TAG_ARRAY);
+               skipWhitespace();
+               if ((mPos < mEnd) && (mJSON[mPos] == ']'))
+               {
+                  mPos++;
+                  mBuilder.close();
+                  break;
+               }
+               continue;
+
+            case '\"':
+               readString(JSONTape.TAG_STRING);
+               break;
+
+            case 't':
+               readLiteral("rue", "boolean");
+               mBuilder.literal(JSONTape.TAG_TRUE);
+               break;
+
+            case 'f':
+               readLiteral("alse", "boolean");
+               mBuilder.literal(JSONTape.TAG_FALSE);
+               break;
+
+            case 'n':
+               readLiteral("ull", "null");
+               mBuilder.literal(JSONTape.TAG_NULL);
+               break;
+
+            default:
+               if ((c == '-') || Character.isDigit(c))
+               {
+                  readNumber(c);
+                  break;
+               }
+
+               throw error("Illegal start of JSON value: " + c);
+         }
+
+         // after a value, close containers until we find a comma
+         for (;;)
+         {
+            if (mBuilder.getDepth() == 0) return mBuilder.build();
+
+            skipWhitespace();
+            c = demand();
+
+            if (mBuilder.inObject())
+            {
+               if (c == '}')
+               {
+                  mBuilder.close();
+                  continue;
+               }
+
+               if (c != ',') throw error("JSON object is not grammatically correct.  Unexpected: " + c);
+
+               skipWhitespace();
+               readKey();
+               break;
+            }
+
+            if (c == ']')
+            {
+               mBuilder.close();
+               continue;
+            }
+
+            if (c != ',') throw error("Incorrectly formatted array: " + c);
+
+            skipWhitespace();
+            break;
+         }
+      }
+   }
+
+   /**
+    * Read an object key and the colon after it.
+    * 
+    * @throws JSONException on grammar error
+    */
+   private void readKey() throws JSONException
+   {
+      char c = demand();
+      if (c != '\"') throw error("JSON object is not grammatically correct.  Unexpected: " + c);
+
+      readString(JSONTape.TAG_KEY);
+
+      skipWhitespace();
+      if (demand() != ':') throw error("Expected ':' after key value");
+      skipWhitespace();
+   }
+
+   /**
+    * Read the rest of a literal.
+    * 
+    * @param rest the chars after the first
+    * @param what the literal type for error messages
+    * @throws JSONException on grammar error
+    */
+   private void readLiteral(String rest, String what) throws JSONException
+   {
+      for (int i = 0; i < rest.length(); i++)
+      {
+         if (demand() != rest.charAt(i)) throw error("Content does not appear to be a " + what + ".");
+      }
+   }
+
+   /**
+    * Read a string after its opening quote.
+    * 
+    * @param tag the tag to record it with
+    * @throws JSONException on grammar error
+    */
+   private void readString(int tag) throws JSONException
+   {
+      mBuilder.startText();
+
+      for (;;)
+      {
+         // copy the run up to a quote or escape in bulk
+         int start = mPos;
+         while ((mPos < mEnd) && (mJSON[mPos] != '\"') && (mJSON[mPos] != '\\'))
+            mPos++;
+
+         mBuilder.appendText(mJSON, start, mPos - start);
+
+         char c = demand();
+         if (c == '\"') break;
+
+         c = demand();
+
+         switch (c)
+         {
+            case '\"':
+            case '/':
+            case '\\':
+               mBuilder.appendText(c);
+               break;
+            case 'b':
+               mBuilder.appendText('\b');
+               break;
+            case 'f':
+               mBuilder.appendText('\f');
+               break;
+            case 'n':
+               mBuilder.appendText('\n');
+               break;
+            case 'r':
+               mBuilder.appendText('\r');
+               break;
+            case 't':
+               mBuilder.appendText('\t');
+               break;
+            case 'u':
+               mBuilder.appendText(readHex());
+               break;
+            default:
+               throw error("Illegal escape value in string: " + c);
+         }
+      }
+
+      mBuilder.endText(tag);
+   }
+
+   /**
+    * Read the four hex digits of a unicode escape.
+    * 
+    * @return the char
+    * @throws JSONException on grammar error
+    */
+   private char readHex() throws JSONException
+   {
+      int value = 0;
+
+      for (int i = 0; i < 4; i++)
+      {
+         char c = demand();
+         int digit = Character.digit(c, 16);
+         if (digit < 0) throw error("Illegal unicode value: " + new String(mJSON, mPos - i - 1, Math.min(4, mEnd - mPos + i + 1)));
+         value = (value << 4) | digit;
+      }
+
+      return (char) value;
+   }
+
+   /**
+    * Scan a run of digits.
+    */
+   private void skipDigits()
+   {
+      while ((mPos < mEnd) && Character.isDigit(mJSON[mPos]))
+         mPos++;
+   }
+
+   /**
+    * Read a number, keeping its text as-is. It's checked the way
+    * <code>JSONValueFactory</code> checks one, and only handed to
+    * <code>BigDecimal</code> when its exponent is long enough that it might be
+    * out of range.
+    * 
+    * @param first the first char, already consumed
+    * @throws JSONException on grammar error
+    */
+   private void readNumber(char first) throws JSONException
+   {
+      int start = mPos - 1;
+      boolean digits = (first != '-');
+      int exponentDigits = -1;
+
+      // whole part
+      if (first != '0')
+      {
+         int whole = mPos;
+         skipDigits();
+         if (mPos != whole) digits = true;
+      }
+
+      // fractional part
+      if ((mPos < mEnd) && (mJSON[mPos] == '.'))
+      {
+         mPos++;
+         int point = mPos;
+         skipDigits();
+         if (mPos == point) throw error("Digits expected after decimal points.");
+         digits = true;
+      }
+
+      // exponent
+      if ((mPos < mEnd) && ((mJSON[mPos] == 'e') || (mJSON[mPos] == 'E')))
+      {
+         mPos++;
+         char c = demand();
+         if (!Character.isDigit(c) && (c != '+') && (c != '-')) throw error("Content does not appear to be a number");
+
+         int exponent = mPos;
+         skipDigits();
+         exponentDigits = mPos - exponent + (Character.isDigit(c) ? 1 : 0);
+      }
+
+      // BigDecimal wants digits before any exponent and after its sign, and an exponent in range
+      if (!digits || (exponentDigits == 0)) throw error("Illegal number format: " + new String(mJSON, start, mPos - start));
+      if (exponentDigits > 9) JSONNumber.parseNumber(mBuilder.getPath(), new String(mJSON, start, mPos - start));
+
+      mBuilder.startText();
+      mBuilder.appendText(mJSON, start, mPos - start);
+      mBuilder.endText(JSONTape.TAG_NUMBER);
+   }
+}
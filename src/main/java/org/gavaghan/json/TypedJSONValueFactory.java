@@ -18,6 +18,26 @@ public class TypedJSONValueFactory extends JSONValueFactory
    /** The default implementation. */
    static public final TypedJSONValueFactory TYPED_DEFAULT = new TypedJSONValueFactory();
 
+   /**
+    * Create a new <code>TypedJSONValueFactory</code>.
+    */
+   public TypedJSONValueFactory()
+   {
+   }
+
+   /**
+    * Create a new <code>TypedJSONValueFactory</code>.
+    * 
+    * @since 1.3
+    * 
+    * @param strictWhitespace 'true' to accept only the whitespace allowed by
+    *                         the JSON grammar
+    */
+   public TypedJSONValueFactory(boolean strictWhitespace)
+   {
+      super(strictWhitespace);
+   }
+
    /**
     * Look for the 'type' value in a populated <code>JSONObject</code> and create a
     * default instance of it. If 'value' is not a <code>JSONObject</code> or if
@@ -62,6 +82,9 @@ public class TypedJSONValueFactory extends JSONValueFactory
          throw new JSONException(path, MessageFormat.format("Read a JSON object with type attribute ''{0}'' but that class could not be found", typeName), exc);
       }
 
+      // classes bound by a generated codec stay as plain JSONObjects
+      if (klass.isAnnotationPresent(JSONBinding.class)) return super.recast(path, value);
+
       // ensure the class is an appropriate subtype
       if (!TypedJSONObject.class.isAssignableFrom(klass))
       {
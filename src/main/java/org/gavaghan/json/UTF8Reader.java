@@ -0,0 +1,186 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A <code>Reader</code> that decodes UTF-8 from an <code>InputStream</code>
+ * without taking any locks, unlike <code>InputStreamReader</code>, which
+ * synchronizes every read before Java 21. Malformed input is replaced with
+ * U+FFFD just as <code>InputStreamReader</code> does. Instances are reused
+ * by a <code>JSONContext</code> and are not thread-safe.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class UTF8Reader extends Reader
+{
+   /** Size of each read from the stream. */
+   static private final int BLOCK_SIZE = 8192;
+
+   /** The source stream, or null if detached. */
+   private InputStream mIn;
+
+   /** Bytes read but not yet decoded, ready for reading. */
+   private final ByteBuffer mBytes = ByteBuffer.allocate(BLOCK_SIZE);
+
+   /** The decoder. */
+   private final CharsetDecoder mDecoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+   /** Room for a surrogate pair when only one character is wanted. */
+   private final CharBuffer mPair = CharBuffer.allocate(2);
+
+   /** 'true' once the stream is exhausted. */
+   private boolean mEOF;
+
+   /** 'true' once the decoder is flushed. */
+   private boolean mFlushed;
+
+   /**
+    * Create a detached <code>UTF8Reader</code>.
+    */
+   UTF8Reader()
+   {
+      mBytes.flip();
+      mPair.flip();
+   }
+
+   /**
+    * Start reading a stream.
+    * 
+    * @param in the stream
+    */
+   void attach(InputStream in)
+   {
+      if (in == null) throw new NullPointerException("Null input stream");
+
+      mIn = in;
+      mBytes.clear();
+      mBytes.flip();
+      mPair.clear();
+      mPair.flip();
+      mDecoder.reset();
+      mEOF = false;
+      mFlushed = false;
+   }
+
+   /**
+    * Stop reading without closing the stream.
+    */
+   void detach()
+   {
+      mIn = null;
+   }
+
+   /**
+    * Decode into a buffer with room for at least two characters, reading from
+    * the stream until at least one character is decoded.
+    * 
+    * @param out the target buffer
+    * @return 'false' if the stream is exhausted and nothing was decoded
+    * @throws IOException on read failure
+    */
+   private boolean decode(CharBuffer out) throws IOException
+   {
+      int start = out.position();
+
+      for (;;)
+      {
+         if (mFlushed) return false;
+
+         CoderResult result = mDecoder.decode(mBytes, out, mEOF);
+
+         // the decoder mustn't be used again once flushed
+         if (mEOF && result.isUnderflow())
+         {
+            mDecoder.flush(out);
+            mFlushed = true;
+         }
+
+         if (out.position() > start) return true;
+         if (mEOF) continue;
+
+         // keep any partial sequence and read more
+         mBytes.compact();
+         int count = mIn.read(mBytes.array(), mBytes.position(), mBytes.remaining());
+
+         if (count < 0) mEOF = true;
+         else mBytes.position(mBytes.position() + count);
+
+         mBytes.flip();
+      }
+   }
+
+   @Override
+   public int read(char[] cbuf, int off, int len) throws IOException
+   {
+      if ((off < 0) || (len < 0) || (off + len > cbuf.length)) throw new IndexOutOfBoundsException();
+      if (len == 0) return 0;
+
+      // a single character may be half of a pair
+      if ((len == 1) || mPair.hasRemaining())
+      {
+         int c = read();
+         if (c < 0) return -1;
+
+         cbuf[off] = (char) c;
+         return 1;
+      }
+
+      if (mIn == null) throw new IOException("Stream closed");
+
+      CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+      return decode(out) ? (out.position() - off) : -1;
+   }
+
+   @Override
+   public int read() throws IOException
+   {
+      if (mIn == null) throw new IOException("Stream closed");
+
+      if (!mPair.hasRemaining())
+      {
+         mPair.clear();
+         boolean more = decode(mPair);
+         mPair.flip();
+
+         if (!more) return -1;
+      }
+
+      return mPair.get();
+   }
+
+   @Override
+   public boolean ready() throws IOException
+   {
+      return (mIn != null) && (mPair.hasRemaining() || mBytes.hasRemaining() || (mIn.available() > 0));
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      if (mIn != null) mIn.close();
+      mIn = null;
+   }
+}
@@ -0,0 +1,593 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * <p>
+ * A <code>Writer</code> that encodes UTF-8 directly into a byte buffer and
+ * hands the bytes to an <code>OutputStream</code>, a
+ * <code>WritableByteChannel</code> or a <code>ByteBuffer</code>. Runs of ASCII
+ * characters, which make up keys, numbers and most strings, are copied with a
+ * single range check per character. Output to a
+ * <code>GatheringByteChannel</code> is collected in several blocks and
+ * written with one gathering write.
+ * </p>
+ * <p>
+ * The bytes produced are the same as those from an
+ * <code>OutputStreamWriter</code> using UTF-8, including the '?' written in
+ * place of an unpaired surrogate. Instances are not thread-safe.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class UTF8Writer extends JSONWriter
+{
+   /** Size of each block of encoded bytes. */
+   static private final int BLOCK_SIZE = 8192;
+
+   /** Most blocks collected for a gathering write. */
+   static private final int MAX_BLOCKS = 8;
+
+   /** The target stream, if writing to a stream. */
+   private OutputStream mOut;
+
+   /** The target channel, if writing to a channel. */
+   private WritableByteChannel mChannel;
+
+   /** The target buffer, if writing to a buffer. */
+   private ByteBuffer mTarget;
+
+   /** Encoded blocks. Only the first is used unless gathering. */
+   private final byte[][] mBlocks = new byte[MAX_BLOCKS][];
+
+   /** Wrappers over <code>mBlocks</code> for gathering writes. */
+   private final ByteBuffer[] mGather = new ByteBuffer[MAX_BLOCKS];
+
+   /** Index of the block being filled. */
+   private int mBlock;
+
+   /** The block being filled. */
+   private byte[] mBuf;
+
+   /** Number of bytes in the block being filled. */
+   private int mCount;
+
+   /** Keys already encoded with their quotes and colon. */
+   private final Map<String, byte[]> mKeys = createKeyCache();
+
+   /** A high surrogate waiting for its low surrogate, or 0. */
+   private char mHighSurrogate;
+
+   /** 'true' once closed. */
+   private boolean mClosed;
+
+   /**
+    * Create a detached <code>UTF8Writer</code> for a <code>JSONContext</code>.
+    */
+   UTF8Writer()
+   {
+      mBuf = mBlocks[0] = new byte[BLOCK_SIZE];
+      mClosed = true;
+   }
+
+   /**
+    * Create a new <code>UTF8Writer</code> that writes to a stream.
+    * 
+    * @param out the target stream
+    */
+   public UTF8Writer(OutputStream out)
+   {
+      this();
+      attach(out);
+   }
+
+   /**
+    * Create a new <code>UTF8Writer</code> that writes to a channel.
+    * 
+    * @param channel the target channel
+    */
+   public UTF8Writer(WritableByteChannel channel)
+   {
+      this();
+      attach(channel);
+   }
+
+   /**
+    * Create a new <code>UTF8Writer</code> that writes into a buffer. Writing
+    * more bytes than the buffer has room for fails with an
+    * <code>IOException</code>.
+    * 
+    * @param target the target buffer
+    */
+   public UTF8Writer(ByteBuffer target)
+   {
+      this();
+      attach(target);
+   }
+
+   /**
+    * Start writing to a stream.
+    * 
+    * @param out the target stream
+    */
+   void attach(OutputStream out)
+   {
+      if (out == null) throw new NullPointerException("Null output stream");
+
+      detach();
+      mOut = out;
+      mClosed = false;
+   }
+
+   /**
+    * Start writing to a channel.
+    * 
+    * @param channel the target channel
+    */
+   void attach(WritableByteChannel channel)
+   {
+      if (channel == null) throw new NullPointerException("Null channel");
+
+      detach();
+      mChannel = channel;
+      mClosed = false;
+   }
+
+   /**
+    * Start writing into a buffer.
+    * 
+    * @param target the target buffer
+    */
+   void attach(ByteBuffer target)
+   {
+      if (target == null) throw new NullPointerException("Null buffer");
+
+      detach();
+      mTarget = target;
+      mClosed = false;
+   }
+
+   /**
+    * Stop writing, discarding anything that hasn't been flushed. The target is
+    * not closed.
+    */
+   void detach()
+   {
+      mOut = null;
+      mChannel = null;
+      mTarget = null;
+      mBlock = 0;
+      mBuf = mBlocks[0];
+      mCount = 0;
+      mHighSurrogate = 0;
+      mClosed = true;
+   }
+
+   /**
+    * Assert the writer is open.
+    * 
+    * @throws IOException if closed
+    */
+   private void ensureOpen() throws IOException
+   {
+      if (mClosed) throw new IOException("Stream closed");
+   }
+
+   /**
+    * Make room in the buffer when the current block is full.
+    * 
+    * @throws IOException on any failure of the target
+    */
+   private void full() throws IOException
+   {
+      // collect blocks for a gathering write
+      if ((mChannel instanceof GatheringByteChannel) && (mBlock < MAX_BLOCKS - 1))
+      {
+         mBlock++;
+         if (mBlocks[mBlock] == null) mBlocks[mBlock] = new byte[BLOCK_SIZE];
+         mBuf = mBlocks[mBlock];
+         mCount = 0;
+         return;
+      }
+
+      drain();
+   }
+
+   /**
+    * Hand all encoded bytes to the target.
+    * 
+    * @throws IOException on any failure of the target
+    */
+   private void drain() throws IOException
+   {
+      if (mOut != null)
+      {
+         if (mCount > 0) mOut.write(mBuf, 0, mCount);
+      }
+      else if (mChannel != null)
+      {
+         if (mBlock > 0)
+         {
+            for (int i = 0; i <= mBlock; i++)
+            {
+               if (mGather[i] == null) mGather[i] = ByteBuffer.wrap(mBlocks[i]);
+               mGather[i].clear();
+            }
+
+            mGather[mBlock].limit(mCount);
+
+            GatheringByteChannel channel = (GatheringByteChannel) mChannel;
+
+            while (mGather[mBlock].hasRemaining())
+            {
+               channel.write(mGather, 0, mBlock + 1);
+            }
+         }
+         else
+         {
+            ByteBuffer bytes = ByteBuffer.wrap(mBuf, 0, mCount);
+
+            while (bytes.hasRemaining())
+            {
+               mChannel.write(bytes);
+            }
+         }
+      }
+      else
+      {
+         if (mTarget.remaining() < mCount) throw new IOException("Insufficient room in target buffer");
+         mTarget.put(mBuf, 0, mCount);
+      }
+
+      mBlock = 0;
+      mBuf = mBlocks[0];
+      mCount = 0;
+   }
+
+   /**
+    * Encode a character that isn't ASCII.
+    * 
+    * @param c the character
+    * @throws IOException on any failure of the target
+    */
+   private void encode(char c) throws IOException
+   {
+      if (mCount > BLOCK_SIZE - 4) full();
+
+      byte[] buf = mBuf;
+      int count = mCount;
+
+      if (mHighSurrogate != 0)
+      {
+         char high = mHighSurrogate;
+         mHighSurrogate = 0;
+
+         if (Character.isLowSurrogate(c))
+         {
+            int cp = Character.toCodePoint(high, c);
+            buf[count++] = (byte) (0xF0 | (cp >> 18));
+            buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buf[count++] = (byte) (0x80 | (cp & 0x3F));
+            mCount = count;
+            return;
+         }
+
+         buf[count++] = '?';
+         if (c < 0x80)
+         {
+            buf[count++] = (byte) c;
+            mCount = count;
+            return;
+         }
+      }
+
+      if (c < 0x800)
+      {
+         buf[count++] = (byte) (0xC0 | (c >> 6));
+         buf[count++] = (byte) (0x80 | (c & 0x3F));
+      }
+      else if (Character.isHighSurrogate(c))
+      {
+         mHighSurrogate = c;
+      }
+      else if (Character.isLowSurrogate(c))
+      {
+         buf[count++] = '?';
+      }
+      else
+      {
+         buf[count++] = (byte) (0xE0 | (c >> 12));
+         buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+         buf[count++] = (byte) (0x80 | (c & 0x3F));
+      }
+
+      mCount = count;
+   }
+
+   @Override
+   public void write(int c) throws IOException
+   {
+      ensureOpen();
+
+      char ch = (char) c;
+
+      if ((ch < 0x80) && (mHighSurrogate == 0))
+      {
+         if (mCount == BLOCK_SIZE) full();
+         mBuf[mCount++] = (byte) ch;
+      }
+      else
+      {
+         encode(ch);
+      }
+   }
+
+   @Override
+   public void write(char[] cbuf, int off, int len) throws IOException
+   {
+      ensureOpen();
+      if ((off < 0) || (len < 0) || (off + len > cbuf.length)) throw new IndexOutOfBoundsException();
+
+      int end = off + len;
+      int i = off;
+
+      while (i < end)
+      {
+         // a pending surrogate decides how the next character is encoded
+         if (mHighSurrogate != 0)
+         {
+            encode(cbuf[i++]);
+            continue;
+         }
+
+         if (mCount == BLOCK_SIZE) full();
+
+         // copy ASCII until something else or the block fills
+         byte[] buf = mBuf;
+         int count = mCount;
+         int stop = Math.min(end, i + (BLOCK_SIZE - count));
+         char c;
+
+         while ((i < stop) && ((c = cbuf[i]) < 0x80))
+         {
+            buf[count++] = (byte) c;
+            i++;
+         }
+
+         mCount = count;
+
+         if ((i < stop) && (cbuf[i] >= 0x80)) encode(cbuf[i++]);
+      }
+   }
+
+   @Override
+   public void write(String str, int off, int len) throws IOException
+   {
+      ensureOpen();
+      if ((off < 0) || (len < 0) || (off + len > str.length())) throw new IndexOutOfBoundsException();
+
+      // a whole string may be encoded faster in one piece, unless it leaves a surrogate pending
+      if ((off == 0) && (len == str.length()) && (mHighSurrogate == 0) && (len != 0) && !Character.isHighSurrogate(str.charAt(len - 1)))
+      {
+         byte[] bytes = JSONIntrinsics.encodeUTF8(str);
+
+         if (bytes != null)
+         {
+            writeBytes(bytes);
+            return;
+         }
+      }
+
+      int end = off + len;
+      int i = off;
+
+      while (i < end)
+      {
+         // a pending surrogate decides how the next character is encoded
+         if (mHighSurrogate != 0)
+         {
+            encode(str.charAt(i++));
+            continue;
+         }
+
+         if (mCount == BLOCK_SIZE) full();
+
+         // copy ASCII until something else or the block fills
+         byte[] buf = mBuf;
+         int count = mCount;
+         int stop = Math.min(end, i + (BLOCK_SIZE - count));
+         char c;
+
+         while ((i < stop) && ((c = str.charAt(i)) < 0x80))
+         {
+            buf[count++] = (byte) c;
+            i++;
+         }
+
+         mCount = count;
+
+         if ((i < stop) && (str.charAt(i) >= 0x80)) encode(str.charAt(i++));
+      }
+   }
+
+   @Override
+   public void write(String str) throws IOException
+   {
+      write(str, 0, str.length());
+   }
+
+   /**
+    * Copy already encoded bytes.
+    * 
+    * @param bytes the bytes
+    * @throws IOException on any failure of the target
+    */
+   private void writeBytes(byte[] bytes) throws IOException
+   {
+      writeBytes(bytes, 0, bytes.length);
+   }
+
+   /**
+    * Copy a range of already encoded bytes.
+    * 
+    * @param bytes  source of the bytes
+    * @param off    start of the bytes
+    * @param length number of bytes
+    * @throws IOException on any failure of the target
+    */
+   private void writeBytes(byte[] bytes, int off, int length) throws IOException
+   {
+      int end = off + length;
+
+      while (off < end)
+      {
+         if (mCount == BLOCK_SIZE) full();
+
+         int count = Math.min(end - off, BLOCK_SIZE - mCount);
+         System.arraycopy(bytes, off, mBuf, mCount, count);
+         mCount += count;
+         off += count;
+      }
+   }
+
+   @Override
+   void writeASCII(byte[] ascii, int offset, int length) throws IOException
+   {
+      ensureOpen();
+      if (length == 0) return;
+
+      // a pending surrogate becomes '?' ahead of the first character
+      if (mHighSurrogate != 0)
+      {
+         encode((char) ascii[offset]);
+         offset++;
+         length--;
+      }
+
+      writeBytes(ascii, offset, length);
+   }
+
+   @Override
+   void writeKey(String key) throws IOException
+   {
+      ensureOpen();
+
+      // a pending surrogate changes the bytes before the key
+      if (mHighSurrogate != 0)
+      {
+         write('\"');
+         write(key);
+         write("\":");
+         return;
+      }
+
+      byte[] bytes = mKeys.get(key);
+
+      if (bytes == null)
+      {
+         bytes = ('\"' + key + "\":").getBytes(StandardCharsets.UTF_8);
+         mKeys.put(key, bytes);
+      }
+
+      writeBytes(bytes);
+   }
+
+   @Override
+   void writeLiteral(char[] literal) throws IOException
+   {
+      ensureOpen();
+
+      if ((mHighSurrogate != 0) || (mCount > BLOCK_SIZE - literal.length))
+      {
+         write(literal, 0, literal.length);
+         return;
+      }
+
+      byte[] buf = mBuf;
+      int count = mCount;
+
+      for (char c : literal)
+      {
+         buf[count++] = (byte) c;
+      }
+
+      mCount = count;
+   }
+
+   @Override
+   public Writer append(char c) throws IOException
+   {
+      write(c);
+      return this;
+   }
+
+   /**
+    * Hand all encoded bytes to the target and flush it. A trailing high
+    * surrogate is kept back until the next character arrives.
+    * 
+    * @throws IOException on any failure of the target
+    */
+   @Override
+   public void flush() throws IOException
+   {
+      ensureOpen();
+      drain();
+
+      if (mOut != null) mOut.flush();
+   }
+
+   /**
+    * Flush and close the target. A trailing high surrogate is written as '?'.
+    * 
+    * @throws IOException on any failure of the target
+    */
+   @Override
+   public void close() throws IOException
+   {
+      if (mClosed) return;
+
+      try
+      {
+         if (mHighSurrogate != 0)
+         {
+            if (mCount == BLOCK_SIZE) full();
+            mBuf[mCount++] = '?';
+            mHighSurrogate = 0;
+         }
+
+         flush();
+
+         if (mOut != null) mOut.close();
+         if (mChannel != null) mChannel.close();
+      }
+      finally
+      {
+         detach();
+      }
+   }
+}
@@ -0,0 +1,268 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.util.Arrays;
+
+/**
+ * Builds <code>JSONValue</code>s for <code>IndexedParser</code> the way
+ * <code>JSONValueFactory.read()</code> builds them from text, packing arrays of
+ * numbers the same way. Only an object or array is built: the scalar parser
+ * reads a lone scalar just as quickly, and decides what may follow a number at
+ * the end of input.
+ * <p>
+ * A document that breaks one of the factory's limits isn't built, and the
+ * caller reparses it with the scalar parser to get the authoritative
+ * <code>JSONException</code>.
+ * </p>
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class ValueBuilder implements DocumentBuilder<JSONValue>
+{
+   /** Greatest nesting depth. */
+   private final int mMaxDepth;
+
+   /** Greatest number of members in an object or array. */
+   private final int mMaxMembers;
+
+   /** Greatest length of a key or string. */
+   private final int mMaxStringLength;
+
+   /** Greatest length of a number. */
+   private final int mMaxNumberLength;
+
+   /** Least size of a packed array. */
+   private final int mMinPacked;
+
+   /** 'true' to read fractional numbers as doubles. */
+   private final boolean mDoublePrecision;
+
+   /** The open objects and arrays. */
+   private JSONValue[] mContainers = new JSONValue[16];
+
+   /** Key of each open container in its parent, or null. */
+   private String[] mKeys = new String[16];
+
+   /** Member counts of the open containers. */
+   private int[] mCounts = new int[16];
+
+   /** 'true' for each open container that's an object. */
+   private boolean[] mObjects = new boolean[16];
+
+   /** Number of open containers. */
+   private int mDepth;
+
+   /** Key of the next member of the innermost object. */
+   private String mKey;
+
+   /** The text buffer. */
+   private char[] mText = new char[64];
+
+   /** Number of chars in the text buffer. */
+   private int mTextLength;
+
+   /** The finished root. */
+   private JSONValue mRoot;
+
+   /** 'true' once the document can't be built. */
+   private boolean mFailed;
+
+   /**
+    * Create a new ValueBuilder.
+    * 
+    * @param factory factory whose limits and number handling to follow
+    */
+   ValueBuilder(JSONValueFactory factory)
+   {
+      mMaxDepth = factory.getMaxDepth();
+      mMaxMembers = factory.getMaxMembers();
+      mMaxStringLength = factory.getMaxStringLength();
+      mMaxNumberLength = factory.getMaxNumberLength();
+      mMinPacked = factory.getMinNumberArraySize();
+      mDoublePrecision = factory.isDoublePrecision();
+   }
+
+   @Override
+   public int getDepth()
+   {
+      return mDepth;
+   }
+
+   @Override
+   public boolean inObject()
+   {
+      return mObjects[mDepth - 1];
+   }
+
+   /**
+    * Add a complete value to the innermost open container, or make it the
+    * root.
+    * 
+    * @param value the value
+    */
+   private void add(JSONValue value)
+   {
+      if (mDepth == 0)
+      {
+         mRoot = value;
+         return;
+      }
+
+      if (++mCounts[mDepth - 1] > mMaxMembers) mFailed = true;
+      if (mFailed) return;
+
+      JSONValueFactory.addMember(mContainers, mDepth - 1, mKey, value, mMinPacked);
+      mKey = null;
+   }
+
+   /**
+    * Add a scalar, which can't be the root.
+    * 
+    * @param value the value
+    */
+   private void addScalar(JSONValue value)
+   {
+      if (mDepth == 0) mFailed = true;
+      else add(value);
+   }
+
+   @Override
+   public void literal(int tag)
+   {
+      if (tag == JSONTape.TAG_TRUE) addScalar(new JSONBoolean(Boolean.TRUE));
+      else if (tag == JSONTape.TAG_FALSE) addScalar(new JSONBoolean(Boolean.FALSE));
+      else addScalar(JSONNull.INSTANCE);
+   }
+
+   @Override
+   public void open(int tag)
+   {
+      if (mDepth >= mMaxDepth) mFailed = true;
+
+      if (mDepth == mContainers.length)
+      {
+         mContainers = Arrays.copyOf(mContainers, mDepth * 2);
+         mKeys = Arrays.copyOf(mKeys, mDepth * 2);
+         mCounts = Arrays.copyOf(mCounts, mDepth * 2);
+         mObjects = Arrays.copyOf(mObjects, mDepth * 2);
+      }
+
+      boolean object = (tag == JSONTape.TAG_OBJECT);
+
+      // the structure is still tracked after a failure so the parser can walk
+      // the rest of the document
+      if (!mFailed) mContainers[mDepth] = object ? new JSONObject() : new JSONArray();
+      mKeys[mDepth] = mKey;
+      mCounts[mDepth] = 0;
+      mObjects[mDepth] = object;
+      mDepth++;
+      mKey = null;
+   }
+
+   @Override
+   public void close()
+   {
+      mDepth--;
+
+      JSONValue value = mContainers[mDepth];
+      mContainers[mDepth] = null;
+      mKey = mKeys[mDepth];
+
+      // too few numbers to be worth packing
+      if ((value instanceof JSONNumberArray) && (((JSONNumberArray) value).size() < mMinPacked)) value = ((JSONNumberArray) value).toJSONArray();
+
+      add(value);
+   }
+
+   @Override
+   public void startText()
+   {
+      mTextLength = 0;
+   }
+
+   @Override
+   public void appendText(char c)
+   {
+      if (mTextLength == mText.length) mText = Arrays.copyOf(mText, mText.length * 2);
+      mText[mTextLength++] = c;
+   }
+
+   @Override
+   public char[] reserveText(int count)
+   {
+      if (mTextLength + count > mText.length) mText = Arrays.copyOf(mText, Math.max(mText.length * 2, mTextLength + count));
+      return mText;
+   }
+
+   @Override
+   public int getTextLength()
+   {
+      return mTextLength;
+   }
+
+   @Override
+   public void commitText(int length)
+   {
+      mTextLength = length;
+   }
+
+   @Override
+   public void endText(int tag)
+   {
+      if (mFailed) return;
+
+      if (tag == JSONTape.TAG_NUMBER)
+      {
+         if (mTextLength > mMaxNumberLength)
+         {
+            mFailed = true;
+            return;
+         }
+
+         String text = new String(mText, 0, mTextLength);
+
+         try
+         {
+            addScalar(mDoublePrecision ? JSONDouble.parseDoubleNumber("$", text) : new JSONNumber(JSONNumber.parseNumber("$", text)));
+         }
+         catch (JSONException exc)
+         {
+            // the scalar parser reports it
+            mFailed = true;
+         }
+
+         return;
+      }
+
+      if (mTextLength > mMaxStringLength)
+      {
+         mFailed = true;
+         return;
+      }
+
+      String text = new String(mText, 0, mTextLength);
+
+      if (tag == JSONTape.TAG_KEY) mKey = text;
+      else addScalar(new JSONString(text));
+   }
+
+   @Override
+   public JSONValue build()
+   {
+      return mFailed ? null : mRoot;
+   }
+}
@@ -0,0 +1,52 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json.processor;
+
+import javax.lang.model.element.Element;
+
+/**
+ * Exception thrown when a <code>@JSONBinding</code> class can't be bound.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+class BindingException extends Exception
+{
+   /** The offending element. */
+   private final Element mElement;
+
+   /**
+    * Create a new BindingException.
+    * 
+    * @param element the offending element
+    * @param message a description of the exception
+    */
+   BindingException(Element element, String message)
+   {
+      super(message);
+
+      mElement = element;
+   }
+
+   /**
+    * Get the offending element.
+    * 
+    * @return the offending element
+    */
+   Element getElement()
+   {
+      return mElement;
+   }
+}
@@ -0,0 +1,1272 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import org.gavaghan.json.JSONBinder;
+import org.gavaghan.json.JSONBinding;
+import org.gavaghan.json.JSONField;
+
+/**
+ * Generates the source of the codec for one <code>@JSONBinding</code> class.
+ *
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+class CodecGenerator
+{
+   /** Classification of bindable types. */
+   private enum Kind
+   {
+      BOOLEAN, BYTE, SHORT, INT, LONG, CHAR, FLOAT, DOUBLE, STRING, BIG_DECIMAL, BIG_INTEGER, ENUM, JSON_VALUE, BOUND, LIST, MAP
+   }
+
+   /** A bound field. */
+   static private class Member
+   {
+      /** The field. */
+      VariableElement mField;
+
+      /** The JSON key. */
+      String mKey;
+
+      /** Expression that reads the field from 'value'. */
+      String mGetter;
+
+      /** Setter name, or null to assign the field directly. */
+      String mSetter;
+   }
+
+   /** Indent of generated code. */
+   static private final String TAB = "   ";
+
+   /** Processing environment. */
+   private final ProcessingEnvironment mEnv;
+
+   /** Element utilities. */
+   private final Elements mElements;
+
+   /** Type utilities. */
+   private final Types mTypes;
+
+   /** The class being bound. */
+   private final TypeElement mType;
+
+   /** All classes bound in this round. */
+   private final List<TypeElement> mBound;
+
+   /** Package name of the bound class (empty for the default package). */
+   private final String mPackage;
+
+   /** Generated source. */
+   private final StringBuilder mOut = new StringBuilder();
+
+   /** Current indent of generated code. */
+   private String mIndent = "";
+
+   /** Counter for unique local variable names. */
+   private int mVar;
+
+   /**
+    * Create a new CodecGenerator.
+    *
+    * @param env   processing environment
+    * @param type  the class to bind
+    * @param bound all classes bound in this round
+    */
+   CodecGenerator(ProcessingEnvironment env, TypeElement type, List<TypeElement> bound)
+   {
+      mEnv = env;
+      mElements = env.getElementUtils();
+      mTypes = env.getTypeUtils();
+      mType = type;
+      mBound = bound;
+      mPackage = mElements.getPackageOf(type).getQualifiedName().toString();
+   }
+
+   /**
+    * Get the simple name of the codec generated for a class.
+    *
+    * @param type the bound class
+    * @return the codec class name without its package
+    */
+   private String codecSimpleName(TypeElement type)
+   {
+      String binary = mElements.getBinaryName(type).toString();
+      PackageElement pkg = mElements.getPackageOf(type);
+
+      if (!pkg.isUnnamed()) binary = binary.substring(pkg.getQualifiedName().length() + 1);
+
+      return binary + JSONBinder.CODEC_SUFFIX;
+   }
+
+   /**
+    * Get the qualified name of the codec generated for a class.
+    *
+    * @param type the bound class
+    * @return the codec class name
+    */
+   private String codecName(TypeElement type)
+   {
+      PackageElement pkg = mElements.getPackageOf(type);
+      if (pkg.isUnnamed()) return codecSimpleName(type);
+      return pkg.getQualifiedName() + "." + codecSimpleName(type);
+   }
+
+   /**
+    * Determine if an element can be accessed from the generated codec.
+    *
+    * @param element the element
+    * @return 'true' if accessible
+    */
+   private boolean isAccessible(Element element)
+   {
+      Set<Modifier> mods = element.getModifiers();
+
+      if (mods.contains(Modifier.PUBLIC)) return true;
+      if (mods.contains(Modifier.PRIVATE)) return false;
+
+      return mElements.getPackageOf(element).getQualifiedName().contentEquals(mPackage);
+   }
+
+   /**
+    * Ensure the bound class itself can be instantiated by the codec.
+    *
+    * @throws BindingException if it can't
+    */
+   private void checkType() throws BindingException
+   {
+      if (!mType.getTypeParameters().isEmpty()) throw new BindingException(mType, "@JSONBinding does not support generic classes");
+
+      for (Element enclosing = mType; enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement())
+      {
+         TypeElement type = (TypeElement) enclosing;
+
+         if ((type.getNestingKind() == NestingKind.LOCAL) || (type.getNestingKind() == NestingKind.ANONYMOUS))
+         {
+            throw new BindingException(mType, "@JSONBinding does not support local or anonymous classes");
+         }
+
+         if ((type.getNestingKind() == NestingKind.MEMBER) && !type.getModifiers().contains(Modifier.STATIC))
+         {
+            throw new BindingException(mType, "@JSONBinding does not support inner classes.  Make the class static.");
+         }
+
+         if (!isAccessible(type)) throw new BindingException(mType, "@JSONBinding class must not be private");
+      }
+
+      if (isAbstract()) return;
+
+      for (ExecutableElement ctor : ElementFilter.constructorsIn(mType.getEnclosedElements()))
+      {
+         if (ctor.getParameters().isEmpty() && isAccessible(ctor)) return;
+      }
+
+      throw new BindingException(mType, "@JSONBinding class must have a non-private default constructor");
+   }
+
+   /**
+    * Determine if the bound class is abstract.
+    *
+    * @return 'true' if abstract
+    */
+   private boolean isAbstract()
+   {
+      return mType.getModifiers().contains(Modifier.ABSTRACT);
+   }
+
+   /**
+    * Find an accessor method.
+    *
+    * @param name       method name
+    * @param returnType expected return type, or null for a setter
+    * @param paramType  expected parameter type, or null for a getter
+    * @return the method, or null if not found
+    */
+   private ExecutableElement findMethod(String name, TypeMirror returnType, TypeMirror paramType)
+   {
+      for (ExecutableElement method : ElementFilter.methodsIn(mElements.getAllMembers(mType)))
+      {
+         if (!method.getSimpleName().contentEquals(name)) continue;
+         if (method.getModifiers().contains(Modifier.STATIC) || !isAccessible(method)) continue;
+
+         if (paramType == null)
+         {
+            if (method.getParameters().isEmpty() && mTypes.isSameType(method.getReturnType(), returnType)) return method;
+         }
+         else
+         {
+            if ((method.getParameters().size() == 1) && mTypes.isSameType(method.getParameters().get(0).asType(), paramType)) return method;
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Collect the bound fields of the class and its superclasses, superclass
+    * fields first.
+    *
+    * @return the bound members
+    * @throws BindingException if a field can't be bound
+    */
+   private List<Member> collectMembers() throws BindingException
+   {
+      List<TypeElement> hierarchy = new ArrayList<TypeElement>();
+
+      for (TypeElement type = mType; type != null;)
+      {
+         hierarchy.add(0, type);
+
+         TypeMirror superclass = type.getSuperclass();
+         if (superclass.getKind() != TypeKind.DECLARED) break;
+
+         type = (TypeElement) ((DeclaredType) superclass).asElement();
+         if (type.getQualifiedName().contentEquals("java.lang.Object")) break;
+      }
+
+      List<Member> members = new ArrayList<Member>();
+      Set<String> keys = new HashSet<String>();
+
+      for (TypeElement type : hierarchy)
+      {
+         for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements()))
+         {
+            Set<Modifier> mods = field.getModifiers();
+            if (mods.contains(Modifier.STATIC) || mods.contains(Modifier.TRANSIENT)) continue;
+
+            JSONField annotation = field.getAnnotation(JSONField.class);
+            if ((annotation != null) && annotation.ignore()) continue;
+
+            Member member = new Member();
+            member.mField = field;
+            member.mKey = field.getSimpleName().toString();
+
+            if ((annotation != null) && !annotation.name().isEmpty()) member.mKey = annotation.name();
+
+            if (!keys.add(member.mKey)) throw new BindingException(field, "Duplicate JSON key: " + member.mKey);
+
+            // prefer direct field access
+            if (isAccessible(field))
+            {
+               if (mods.contains(Modifier.FINAL)) throw new BindingException(field, "Final fields can't be bound.  Mark it transient or @JSONField(ignore = true).");
+
+               member.mGetter = "value." + field.getSimpleName();
+            }
+            // else, look for bean accessors
+            else
+            {
+               String name = field.getSimpleName().toString();
+               String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+               TypeMirror fieldType = field.asType();
+
+               ExecutableElement getter = findMethod("get" + suffix, fieldType, null);
+               if ((getter == null) && (fieldType.getKind() == TypeKind.BOOLEAN)) getter = findMethod("is" + suffix, fieldType, null);
+               ExecutableElement setter = findMethod("set" + suffix, null, fieldType);
+
+               if ((getter == null) || (setter == null))
+               {
+                  throw new BindingException(field, "Field is not accessible and has no accessible getter and setter");
+               }
+
+               member.mGetter = "value." + getter.getSimpleName() + "()";
+               member.mSetter = setter.getSimpleName().toString();
+            }
+
+            // validate the type now so errors point at the field
+            checkBindable(field, field.asType());
+
+            members.add(member);
+         }
+      }
+
+      return members;
+   }
+
+   /**
+    * Find the subtypes of the bound class that are bound in this round.
+    *
+    * @return the known subtypes
+    */
+   private List<TypeElement> collectSubtypes()
+   {
+      List<TypeElement> subtypes = new ArrayList<TypeElement>();
+      TypeMirror erasure = mTypes.erasure(mType.asType());
+
+      for (TypeElement other : mBound)
+      {
+         if (other.equals(mType)) continue;
+         if (mTypes.isSubtype(mTypes.erasure(other.asType()), erasure)) subtypes.add(other);
+      }
+
+      return subtypes;
+   }
+
+   /**
+    * Resolve a generic type argument to a concrete type.
+    *
+    * @param context element for error reporting
+    * @param arg     the type argument
+    * @return the type to bind
+    * @throws BindingException if the argument is unbounded
+    */
+   private TypeMirror resolve(Element context, TypeMirror arg) throws BindingException
+   {
+      if (arg.getKind() == TypeKind.WILDCARD)
+      {
+         TypeMirror bound = ((WildcardType) arg).getExtendsBound();
+         if (bound == null) throw new BindingException(context, "Unbounded wildcards can't be bound: " + arg);
+         return bound;
+      }
+
+      return arg;
+   }
+
+   /**
+    * Classify a type.
+    *
+    * @param context element for error reporting
+    * @param type    the type
+    * @return the kind of binding
+    * @throws BindingException if the type can't be bound
+    */
+   private Kind kindOf(Element context, TypeMirror type) throws BindingException
+   {
+      TypeMirror primitive = type;
+
+      if (type.getKind() == TypeKind.DECLARED)
+      {
+         try
+         {
+            primitive = mTypes.unboxedType(type);
+         }
+         catch (IllegalArgumentException exc)
+         {
+            // not a boxed primitive
+         }
+      }
+
+      switch (primitive.getKind())
+      {
+         case BOOLEAN:
+            return Kind.BOOLEAN;
+         case BYTE:
+            return Kind.BYTE;
+         case SHORT:
+            return Kind.SHORT;
+         case INT:
+            return Kind.INT;
+         case LONG:
+            return Kind.LONG;
+         case CHAR:
+            return Kind.CHAR;
+         case FLOAT:
+            return Kind.FLOAT;
+         case DOUBLE:
+            return Kind.DOUBLE;
+         case DECLARED:
+            break;
+         default:
+            throw new BindingException(context, "Type can't be bound: " + type);
+      }
+
+      TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+      String name = element.getQualifiedName().toString();
+
+      if (name.equals("java.lang.String")) return Kind.STRING;
+      if (name.equals("java.math.BigDecimal")) return Kind.BIG_DECIMAL;
+      if (name.equals("java.math.BigInteger")) return Kind.BIG_INTEGER;
+      if (element.getKind() == ElementKind.ENUM) return Kind.ENUM;
+      if (mTypes.isAssignable(type, mElements.getTypeElement("org.gavaghan.json.JSONValue").asType())) return Kind.JSON_VALUE;
+
+      if (element.getAnnotation(JSONBinding.class) != null)
+      {
+         if (!element.getTypeParameters().isEmpty()) throw new BindingException(context, "Generic types can't be bound: " + type);
+         return Kind.BOUND;
+      }
+
+      if (name.equals("java.util.List") || name.equals("java.util.Collection") || name.equals("java.util.ArrayList"))
+      {
+         if (((DeclaredType) type).getTypeArguments().size() != 1) throw new BindingException(context, "Raw collections can't be bound: " + type);
+         return Kind.LIST;
+      }
+
+      if (name.equals("java.util.Map") || name.equals("java.util.HashMap") || name.equals("java.util.LinkedHashMap"))
+      {
+         List<? extends TypeMirror> args = ((DeclaredType) type).getTypeArguments();
+         if (args.size() != 2) throw new BindingException(context, "Raw maps can't be bound: " + type);
+         if (!resolve(context, args.get(0)).toString().equals("java.lang.String")) throw new BindingException(context, "Only maps with String keys can be bound: " + type);
+         return Kind.MAP;
+      }
+
+      throw new BindingException(context, "Type can't be bound.  Use a JSONValue type or annotate the class with @JSONBinding: " + type);
+   }
+
+   /**
+    * Recursively verify that a type can be bound.
+    *
+    * @param context element for error reporting
+    * @param type    the type
+    * @throws BindingException if the type can't be bound
+    */
+   private void checkBindable(Element context, TypeMirror type) throws BindingException
+   {
+      Kind kind = kindOf(context, type);
+
+      if (kind == Kind.LIST) checkBindable(context, elementType(context, type));
+      else if (kind == Kind.MAP) checkBindable(context, valueType(context, type));
+   }
+
+   /**
+    * Get the element type of a list type.
+    *
+    * @param context element for error reporting
+    * @param type    the list type
+    * @return the element type
+    * @throws BindingException if the element type is unbounded
+    */
+   private TypeMirror elementType(Element context, TypeMirror type) throws BindingException
+   {
+      return resolve(context, ((DeclaredType) type).getTypeArguments().get(0));
+   }
+
+   /**
+    * Get the value type of a map type.
+    *
+    * @param context element for error reporting
+    * @param type    the map type
+    * @return the value type
+    * @throws BindingException if the value type is unbounded
+    */
+   private TypeMirror valueType(Element context, TypeMirror type) throws BindingException
+   {
+      return resolve(context, ((DeclaredType) type).getTypeArguments().get(1));
+   }
+
+   /**
+    * Get a unique local variable name.
+    *
+    * @param prefix variable prefix
+    * @return the variable name
+    */
+   private String var(String prefix)
+   {
+      return prefix + (mVar++);
+   }
+
+   /**
+    * Append a line of code.
+    *
+    * @param code the code
+    */
+   private void line(String code)
+   {
+      mOut.append(mIndent).append(code).append('\n');
+   }
+
+   /**
+    * Append a blank line.
+    */
+   private void blank()
+   {
+      mOut.append('\n');
+   }
+
+   /**
+    * Open a block.
+    */
+   private void open()
+   {
+      line("{");
+      mIndent += TAB;
+   }
+
+   /**
+    * Close a block.
+    */
+   private void close()
+   {
+      mIndent = mIndent.substring(TAB.length());
+      line("}");
+   }
+
+   /**
+    * Get a Java string literal.
+    *
+    * @param value the string
+    * @return the quoted and escaped literal
+    */
+   private String literal(String value)
+   {
+      return mElements.getConstantExpression(value);
+   }
+
+   /**
+    * Emit statements that convert a Java value to a <code>JSONValue</code>.
+    *
+    * @param context element for error reporting
+    * @param type    the Java type
+    * @param src     variable holding the Java value
+    * @param dst     declared <code>JSONValue</code> variable to assign
+    * @throws BindingException if the type can't be bound
+    */
+   private void encode(Element context, TypeMirror type, String src, String dst) throws BindingException
+   {
+      Kind kind = kindOf(context, type);
+      boolean primitive = type.getKind().isPrimitive();
+
+      if (!primitive)
+      {
+         line("if (" + src + " == null) " + dst + " = JSONNull.INSTANCE;");
+         line("else");
+         open();
+      }
+
+      switch (kind)
+      {
+         case BOOLEAN:
+            line(dst + " = new JSONBoolean(Boolean.valueOf(" + src + "));");
+            break;
+         case BYTE:
+         case SHORT:
+         case INT:
+         case LONG:
+            line(dst + " = new JSONNumber(" + (primitive ? "(long) " + src : src + ".longValue()") + ");");
+            break;
+         case CHAR:
+            line(dst + " = new JSONString(String.valueOf(" + src + "));");
+            break;
+         case FLOAT:
+            line(dst + " = new JSONNumber(new BigDecimal(Float.toString(" + src + ")));");
+            break;
+         case DOUBLE:
+            line(dst + " = new JSONNumber(BigDecimal.valueOf(" + src + "));");
+            break;
+         case STRING:
+            line(dst + " = new JSONString(" + src + ");");
+            break;
+         case BIG_DECIMAL:
+            line(dst + " = new JSONNumber(" + src + ");");
+            break;
+         case BIG_INTEGER:
+            line(dst + " = new JSONNumber(new BigDecimal(" + src + "));");
+            break;
+         case ENUM:
+            line(dst + " = new JSONString(" + src + ".name());");
+            break;
+         case JSON_VALUE:
+            line(dst + " = " + src + ";");
+            break;
+         case BOUND:
+            line(dst + " = " + codecName((TypeElement) mTypes.asElement(type)) + ".INSTANCE.toJSON(" + src + ");");
+            break;
+         case LIST:
+         {
+            TypeMirror elementType = elementType(context, type);
+            String array = var("array");
+            String element = var("element");
+            String json = var("json");
+
+            line("JSONArray " + array + " = new JSONArray();");
+            line("for (" + elementType + " " + element + " : " + src + ")");
+            open();
+            line("JSONValue " + json + ";");
+            encode(context, elementType, element, json);
+            line(array + ".getListValue().add(" + json + ");");
+            close();
+            line(dst + " = " + array + ";");
+            break;
+         }
+         case MAP:
+         {
+            TypeMirror valueType = valueType(context, type);
+            String object = var("object");
+            String entry = var("entry");
+            String item = var("item");
+            String json = var("json");
+
+            line("JSONObject " + object + " = new JSONObject();");
+            line("for (Map.Entry<String, " + ((DeclaredType) type).getTypeArguments().get(1) + "> " + entry + " : " + src + ".entrySet())");
+            open();
+            line(valueType + " " + item + " = " + entry + ".getValue();");
+            line("JSONValue " + json + ";");
+            encode(context, valueType, item, json);
+            line(object + ".put(" + entry + ".getKey(), " + json + ");");
+            close();
+            line(dst + " = " + object + ";");
+            break;
+         }
+      }
+
+      if (!primitive) close();
+   }
+
+   /**
+    * Emit statements that bind a <code>JSONValue</code> to a Java value.
+    *
+    * @param context element for error reporting
+    * @param type    the Java type
+    * @param src     variable holding the <code>JSONValue</code>
+    * @param path    expression for the JSON path of the value
+    * @param dst     declared Java variable to assign
+    * @throws BindingException if the type can't be bound
+    */
+   private void decode(Element context, TypeMirror type, String src, String path, String dst) throws BindingException
+   {
+      Kind kind = kindOf(context, type);
+      boolean nullCheck = !type.getKind().isPrimitive() && (kind != Kind.JSON_VALUE) && (kind != Kind.BOUND);
+
+      if (nullCheck)
+      {
+         line("if (" + src + " instanceof JSONNull) " + dst + " = null;");
+         line("else");
+         open();
+      }
+
+      switch (kind)
+      {
+         case BOOLEAN:
+            line(dst + " = decodeBoolean(" + path + ", " + src + ");");
+            break;
+         case BYTE:
+            line(dst + " = decodeByte(" + path + ", " + src + ");");
+            break;
+         case SHORT:
+            line(dst + " = decodeShort(" + path + ", " + src + ");");
+            break;
+         case INT:
+            line(dst + " = decodeInt(" + path + ", " + src + ");");
+            break;
+         case LONG:
+            line(dst + " = decodeLong(" + path + ", " + src + ");");
+            break;
+         case CHAR:
+            line(dst + " = decodeChar(" + path + ", " + src + ");");
+            break;
+         case FLOAT:
+            line(dst + " = decodeFloat(" + path + ", " + src + ");");
+            break;
+         case DOUBLE:
+            line(dst + " = decodeDouble(" + path + ", " + src + ");");
+            break;
+         case STRING:
+            line(dst + " = decodeString(" + path + ", " + src + ");");
+            break;
+         case BIG_DECIMAL:
+            line(dst + " = decodeBigDecimal(" + path + ", " + src + ");");
+            break;
+         case BIG_INTEGER:
+            line(dst + " = decodeBigInteger(" + path + ", " + src + ");");
+            break;
+         case ENUM:
+         {
+            TypeElement enumType = (TypeElement) mTypes.asElement(type);
+            String name = var("name");
+
+            line("String " + name + " = decodeString(" + path + ", " + src + ");");
+            line("switch (" + name + ")");
+            open();
+
+            for (Element constant : enumType.getEnclosedElements())
+            {
+               if (constant.getKind() != ElementKind.ENUM_CONSTANT) continue;
+
+               line("case " + literal(constant.getSimpleName().toString()) + ":");
+               line(TAB + dst + " = " + enumType.getQualifiedName() + "." + constant.getSimpleName() + ";");
+               line(TAB + "break;");
+            }
+
+            line("default:");
+            line(TAB + "throw new JSONException(" + path + ", " + literal("Unknown " + enumType.getQualifiedName() + " constant: ") + " + " + name + ");");
+            close();
+            break;
+         }
+         case JSON_VALUE:
+         {
+            String typeName = mTypes.erasure(type).toString();
+
+            if (typeName.equals("org.gavaghan.json.JSONValue"))
+            {
+               line(dst + " = " + src + ";");
+            }
+            else
+            {
+               line("if (" + src + " instanceof " + typeName + ") " + dst + " = (" + typeName + ") " + src + ";");
+               line("else if (" + src + " instanceof JSONNull) " + dst + " = null;");
+               line("else throw mismatch(" + path + ", " + src + ", " + literal(typeName) + ");");
+            }
+            break;
+         }
+         case BOUND:
+            line(dst + " = " + codecName((TypeElement) mTypes.asElement(type)) + ".INSTANCE.fromJSON(" + path + ", " + src + ");");
+            break;
+         case LIST:
+         {
+            TypeMirror elementType = elementType(context, type);
+            String array = var("array");
+            String list = var("list");
+            String json = var("json");
+            String element = var("element");
+
+            line("JSONArray " + array + " = requireArray(" + path + ", " + src + ");");
+            line("ArrayList<" + elementType + "> " + list + " = new ArrayList<" + elementType + ">(" + array + ".size());");
+            line("for (JSONValue " + json + " : " + array + ")");
+            open();
+            line(elementType + " " + element + ";");
+            decode(context, elementType, json, path, element);
+            line(list + ".add(" + element + ");");
+            close();
+            line(dst + " = " + list + ";");
+            break;
+         }
+         case MAP:
+         {
+            TypeMirror valueType = valueType(context, type);
+            String object = var("object");
+            String map = var("map");
+            String entry = var("entry");
+            String item = var("item");
+
+            line("JSONObject " + object + " = requireObject(" + path + ", " + src + ");");
+            line("LinkedHashMap<String, " + valueType + "> " + map + " = new LinkedHashMap<String, " + valueType + ">();");
+            line("for (Map.Entry<String, JSONValue> " + entry + " : " + object + ".entrySet())");
+            open();
+            line(valueType + " " + item + ";");
+            String value = var("value");
+            line("JSONValue " + value + " = " + entry + ".getValue();");
+            decode(context, valueType, value, path + " + \".\" + " + entry + ".getKey()", item);
+            line(map + ".put(" + entry + ".getKey(), " + item + ");");
+            close();
+            line(dst + " = " + map + ";");
+            break;
+         }
+      }
+
+      if (nullCheck) close();
+   }
+
+   /**
+    * Emit statements that bind the value at the current position of 'pbr' to
+    * a Java value. Objects and arrays are read a token at a time; scalars are
+    * built by the factory and bound the way <code>decode()</code> binds them.
+    *
+    * @param context element for error reporting
+    * @param type    the Java type
+    * @param path    expression for the JSON path of the value
+    * @param dst     declared Java variable to assign
+    * @throws BindingException if the type can't be bound
+    */
+   private void readValue(Element context, TypeMirror type, String path, String dst) throws BindingException
+   {
+      Kind kind = kindOf(context, type);
+
+      switch (kind)
+      {
+         case BOUND:
+            line(dst + " = " + codecName((TypeElement) mTypes.asElement(type)) + ".INSTANCE.read(" + path + ", factory, pbr);");
+            return;
+         case LIST:
+         {
+            TypeMirror elementType = elementType(context, type);
+            String at = var("path");
+            String list = var("list");
+            String count = var("count");
+            String more = var("more");
+            String element = var("element");
+
+            line("String " + at + " = " + path + ";");
+            line("if (readNull(" + at + ", pbr)) " + dst + " = null;");
+            line("else");
+            open();
+            line("ArrayList<" + elementType + "> " + list + " = new ArrayList<" + elementType + ">();");
+            line("int " + count + " = 1;");
+            line("for (boolean " + more + " = beginArray(" + at + ", factory, pbr); " + more + "; " + more + " = nextElement(" + at + ", factory, pbr, ++" + count + "))");
+            open();
+            line(elementType + " " + element + ";");
+            readValue(context, elementType, at, element);
+            line(list + ".add(" + element + ");");
+            close();
+            line(dst + " = " + list + ";");
+            close();
+            return;
+         }
+         case MAP:
+         {
+            TypeMirror valueType = valueType(context, type);
+            String at = var("path");
+            String map = var("map");
+            String count = var("count");
+            String key = var("key");
+            String item = var("item");
+
+            line("String " + at + " = " + path + ";");
+            line("if (readNull(" + at + ", pbr)) " + dst + " = null;");
+            line("else");
+            open();
+            line("LinkedHashMap<String, " + valueType + "> " + map + " = new LinkedHashMap<String, " + valueType + ">();");
+            line("int " + count + " = 1;");
+            line("for (String " + key + " = beginObject(" + at + ", factory, pbr); " + key + " != null; " + key + " = nextKey(" + at + ", factory, pbr, ++" + count + "))");
+            open();
+            line(valueType + " " + item + ";");
+            readValue(context, valueType, at + " + \".\" + " + key, item);
+            line(map + ".put(" + key + ", " + item + ");");
+            close();
+            line(dst + " = " + map + ";");
+            close();
+            return;
+         }
+         default:
+         {
+            String at = var("path");
+            String json = var("json");
+
+            line("String " + at + " = " + path + ";");
+            line("JSONValue " + json + " = factory.read(" + at + ", pbr);");
+            decode(context, type, json, at, dst);
+            return;
+         }
+      }
+   }
+
+   /**
+    * Emit statements that render a Java value to 'writer'.
+    *
+    * @param context element for error reporting
+    * @param type    the Java type
+    * @param src     variable holding the Java value
+    * @param path    expression holding the path of the value
+    * @throws BindingException if the type can't be bound
+    */
+   private void writeValue(Element context, TypeMirror type, String src, String path) throws BindingException
+   {
+      Kind kind = kindOf(context, type);
+      boolean primitive = type.getKind().isPrimitive();
+
+      switch (kind)
+      {
+         case STRING:
+            line("writeString(" + src + ", writer);");
+            return;
+         case BIG_DECIMAL:
+            line("writeBigDecimal(" + src + ", writer);");
+            return;
+         case BOUND:
+            line(codecName((TypeElement) mTypes.asElement(type)) + ".INSTANCE.write(" + src + ", newIndent, writer, pretty);");
+            return;
+         case LIST:
+         case MAP:
+         {
+            String json = var("json");
+            line("JSONValue " + json + ";");
+            encode(context, type, src, json);
+            line(json + ".write(newIndent, writer, pretty);");
+            return;
+         }
+         default:
+            break;
+      }
+
+      if (!primitive)
+      {
+         line("if (" + src + " == null) writer.write(\"null\");");
+         line("else");
+         open();
+      }
+
+      switch (kind)
+      {
+         case BOOLEAN:
+            line("writeBoolean(" + src + ", writer);");
+            break;
+         case BYTE:
+         case SHORT:
+         case INT:
+         case LONG:
+            line("writeLong(" + src + ", writer);");
+            break;
+         case CHAR:
+            line("writeString(String.valueOf(" + src + "), writer);");
+            break;
+         case FLOAT:
+            line("writeFloat(" + path + ", " + src + ", writer);");
+            break;
+         case DOUBLE:
+            line("writeDouble(" + path + ", " + src + ", writer);");
+            break;
+         case BIG_INTEGER:
+            line("writer.write(" + src + ".toString());");
+            break;
+         case ENUM:
+            line("writeString(" + src + ".name(), writer);");
+            break;
+         case JSON_VALUE:
+            line(src + ".write(newIndent, writer, pretty);");
+            break;
+         default:
+            break;
+      }
+
+      if (!primitive) close();
+   }
+
+   /**
+    * Emit the typed subtype dispatch shared by <code>toJSON()</code> and
+    * <code>write()</code>.
+    *
+    * @param subtypes known subtypes
+    * @param call     the call to make on the selected codec, with '%s' standing
+    *                 for the value argument
+    * @param returns  'true' if the method returns a value
+    */
+   private void dispatch(List<TypeElement> subtypes, String call, boolean returns)
+   {
+      String prefix = returns ? "return " : "";
+      String suffix = returns ? ";" : "; return; }";
+
+      for (TypeElement subtype : subtypes)
+      {
+         String cast = "(" + subtype.getQualifiedName() + ") value";
+         line("if (value.getClass() == " + subtype.getQualifiedName() + ".class) " + (returns ? "" : "{ ") + prefix + codecName(subtype) + ".INSTANCE." + String.format(call, cast) + suffix);
+      }
+
+      line("AbstractJSONCodec<" + mType.getQualifiedName() + "> subtype = subtypeCodec(value);");
+      line("if (subtype != null) " + (returns ? "" : "{ ") + prefix + "subtype." + String.format(call, "value") + suffix);
+      blank();
+   }
+
+   /**
+    * Emit the switch that resolves a type discriminator held in 'typeName'.
+    * Only the subtypes bound in this round are resolved; the bound class
+    * itself falls out of the switch.
+    *
+    * @param subtypes known subtypes
+    * @param call     the expression binding the subtype, with '%s' standing
+    *                 for the subtype's codec
+    */
+   private void subtypeSwitch(List<TypeElement> subtypes, String call)
+   {
+      line("switch (typeName)");
+      open();
+
+      for (TypeElement subtype : subtypes)
+      {
+         line("case " + literal(mElements.getBinaryName(subtype).toString()) + ":");
+         line(TAB + "return " + String.format(call, codecName(subtype) + ".INSTANCE") + ";");
+      }
+
+      line("case " + literal(mElements.getBinaryName(mType).toString()) + ":");
+      line(TAB + "break;");
+      line("default:");
+      line(TAB + "throw unknownSubtype(path, typeName);");
+      close();
+   }
+
+   /**
+    * Generate and write the codec source.
+    *
+    * @throws BindingException if the class can't be bound
+    * @throws IOException      if the source can't be written
+    */
+   void generate() throws BindingException, IOException
+   {
+      checkType();
+
+      List<Member> members = collectMembers();
+      boolean typed = mType.getAnnotation(JSONBinding.class).typed();
+      List<TypeElement> subtypes = typed ? collectSubtypes() : new ArrayList<TypeElement>();
+      String typeName = mType.getQualifiedName().toString();
+      String binaryName = mElements.getBinaryName(mType).toString();
+      String codec = codecSimpleName(mType);
+
+      if (!mPackage.isEmpty())
+      {
+         line("package " + mPackage + ";");
+         blank();
+      }
+
+      line("import java.io.IOException;");
+      line("import java.io.PushbackReader;");
+      line("import java.io.Writer;");
+      line("import java.math.BigDecimal;");
+      line("import java.util.ArrayList;");
+      line("import java.util.LinkedHashMap;");
+      line("import java.util.Map;");
+      blank();
+      line("import org.gavaghan.json.AbstractJSONCodec;");
+      line("import org.gavaghan.json.JSONArray;");
+      line("import org.gavaghan.json.JSONBoolean;");
+      line("import org.gavaghan.json.JSONException;");
+      line("import org.gavaghan.json.JSONNull;");
+      line("import org.gavaghan.json.JSONNumber;");
+      line("import org.gavaghan.json.JSONObject;");
+      line("import org.gavaghan.json.JSONString;");
+      line("import org.gavaghan.json.JSONValue;");
+      line("import org.gavaghan.json.JSONValueFactory;");
+      line("import org.gavaghan.json.TypedJSONObject;");
+      blank();
+      line("/**");
+      line(" * JSON codec for <code>" + typeName + "</code>. Generated by");
+      line(" * <code>" + JSONBindingProcessor.class.getName() + "</code> - do not edit.");
+      line(" */");
+      line("@SuppressWarnings(\"unused\")");
+      line("public final class " + codec + " extends AbstractJSONCodec<" + typeName + ">");
+      open();
+      line("/** The singleton instance. */");
+      line("static public final " + codec + " INSTANCE = new " + codec + "();");
+      blank();
+
+      // getType()
+      line("@Override");
+      line("public Class<" + typeName + "> getType()");
+      open();
+      line("return " + typeName + ".class;");
+      close();
+      blank();
+
+      // toJSON()
+      line("@Override");
+      line("public JSONValue toJSON(" + typeName + " value)");
+      open();
+      line("if (value == null) return JSONNull.INSTANCE;");
+      blank();
+      if (typed) dispatch(subtypes, "toJSON(%s)", true);
+      line("JSONObject json = new JSONObject();");
+      if (typed) line("json.put(TypedJSONObject.TYPE_KEY, new JSONString(" + literal(binaryName) + "));");
+
+      for (Member member : members)
+      {
+         TypeMirror type = member.mField.asType();
+         String local = var("field");
+         String json = var("json");
+
+         open();
+         line(type + " " + local + " = " + member.mGetter + ";");
+         line("JSONValue " + json + ";");
+         encode(member.mField, type, local, json);
+         line("json.put(" + literal(member.mKey) + ", " + json + ");");
+         close();
+      }
+
+      line("return json;");
+      close();
+      blank();
+
+      // fromJSON()
+      line("@Override");
+      line("public " + typeName + " fromJSON(String path, JSONValue json) throws JSONException");
+      open();
+      line("if (json instanceof JSONNull) return null;");
+      blank();
+      line("JSONObject object = requireObject(path, json);");
+
+      if (typed)
+      {
+         line("String typeName = typeOf(path, object);");
+         line("if (typeName != null)");
+         open();
+         subtypeSwitch(subtypes, "%s.fromJSON(path, object)");
+         close();
+      }
+
+      blank();
+
+      if (isAbstract())
+      {
+         line("throw new JSONException(path, " + literal("Can't bind abstract type " + typeName + " without a type value") + ");");
+      }
+      else
+      {
+         line(typeName + " value = new " + typeName + "();");
+         line("JSONValue member;");
+
+         for (Member member : members)
+         {
+            TypeMirror type = member.mField.asType();
+            String local = var("field");
+
+            blank();
+            line("member = object.get(" + literal(member.mKey) + ");");
+            line("if (member != null)");
+            open();
+            line(type + " " + local + ";");
+            decode(member.mField, type, "member", "path + " + literal("." + member.mKey), local);
+            if (member.mSetter == null) line(member.mGetter + " = " + local + ";");
+            else line("value." + member.mSetter + "(" + local + ");");
+            close();
+         }
+
+         blank();
+         line("return value;");
+      }
+
+      close();
+      blank();
+
+      // readValue()
+      line("@Override");
+      line("protected " + typeName + " readValue(String path, JSONValueFactory factory, PushbackReader pbr) throws IOException, JSONException");
+      open();
+      line("if (readNull(path, pbr)) return null;");
+      blank();
+      line("String key = beginObject(path, factory, pbr);");
+
+      if (typed)
+      {
+         blank();
+         line("// without a leading type, the object has to be read whole to find it");
+         line("if (!TypedJSONObject.TYPE_KEY.equals(key)) return fromJSON(path, readObject(path, factory, pbr, key, 1));");
+         blank();
+         line("String typeName = readType(path, factory, pbr);");
+         subtypeSwitch(subtypes, "readSubtype(%s, path, factory, pbr, 1)");
+         blank();
+         line("return readMembers(path, factory, pbr, nextKey(path, factory, pbr, 2), 2);");
+      }
+      else
+      {
+         line("return readMembers(path, factory, pbr, key, 1);");
+      }
+
+      close();
+      blank();
+
+      // readMembers()
+      if (!isAbstract())
+      {
+         line("@Override");
+         line("protected " + typeName + " readMembers(String path, JSONValueFactory factory, PushbackReader pbr, String key, int count) throws IOException, JSONException");
+         open();
+         line(typeName + " value = new " + typeName + "();");
+         blank();
+         line("for (; key != null; key = nextKey(path, factory, pbr, ++count))");
+         open();
+         line("switch (key)");
+         open();
+
+         for (Member member : members)
+         {
+            TypeMirror type = member.mField.asType();
+            String local = var("field");
+
+            line("case " + literal(member.mKey) + ":");
+            open();
+            line(type + " " + local + ";");
+            readValue(member.mField, type, "path + " + literal("." + member.mKey), local);
+            if (member.mSetter == null) line(member.mGetter + " = " + local + ";");
+            else line("value." + member.mSetter + "(" + local + ");");
+            line("break;");
+            close();
+         }
+
+         line("default:");
+         line(TAB + "skipValue(path + \".\" + key, factory, pbr);");
+         line(TAB + "break;");
+         close();
+         close();
+         blank();
+         line("return value;");
+         close();
+         blank();
+      }
+
+      // write()
+      int count = members.size() + (typed ? 1 : 0);
+
+      line("@Override");
+      line("public void write(" + typeName + " value, String indent, Writer writer, boolean pretty) throws IOException, JSONException");
+      open();
+      line("if (value == null)");
+      open();
+      line("writer.write(\"null\");");
+      line("return;");
+      close();
+      blank();
+      if (typed) dispatch(subtypes, "write(%s, indent, writer, pretty)", false);
+
+      if (count == 0)
+      {
+         line("writer.write(\"{}\");");
+      }
+      else
+      {
+         line("String newIndent = nextIndent(indent);");
+         blank();
+         line("writer.write('{');");
+         line("if (pretty) writer.write(JSONObject.EOL);");
+
+         int index = 0;
+
+         if (typed)
+         {
+            index++;
+            blank();
+            line("writeKey(TypedJSONObject.TYPE_KEY, newIndent, writer, pretty);");
+            line("writeString(" + literal(binaryName) + ", writer);");
+            if (index != count) line("writer.write(',');");
+            line("if (pretty) writer.write(JSONObject.EOL);");
+         }
+
+         for (Member member : members)
+         {
+            TypeMirror type = member.mField.asType();
+            String local = var("field");
+
+            index++;
+            blank();
+            line("writeKey(" + literal(member.mKey) + ", newIndent, writer, pretty);");
+            open();
+            line(type + " " + local + " = " + member.mGetter + ";");
+            writeValue(member.mField, type, local, literal("$." + member.mKey));
+            close();
+            if (index != count) line("writer.write(',');");
+            line("if (pretty) writer.write(JSONObject.EOL);");
+         }
+
+         blank();
+         line("writer.write(indent);");
+         line("writer.write('}');");
+      }
+
+      close();
+      close();
+
+      try (Writer writer = mEnv.getFiler().createSourceFile(codecName(mType), mType).openWriter())
+      {
+         writer.write(mOut.toString());
+      }
+   }
+}
@@ -0,0 +1,123 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+
+import org.gavaghan.json.JSONBinding;
+
+/**
+ * <p>
+ * Annotation processor that generates an <code>AbstractJSONCodec</code> for
+ * every class annotated with <code>@JSONBinding</code>. The generated codec is
+ * named <code>&lt;ClassName&gt;_JSONCodec</code>, lives in the same package as
+ * the bound class, and reads and writes fields directly so no reflection is
+ * needed at runtime.
+ * </p>
+ * <p>
+ * The processor is registered as a service, so it runs whenever this library
+ * is on the compiler's processor path.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+@SupportedAnnotationTypes("org.gavaghan.json.JSONBinding")
+public class JSONBindingProcessor extends AbstractProcessor
+{
+   /**
+    * Create a new JSONBindingProcessor.
+    */
+   public JSONBindingProcessor()
+   {
+   }
+
+   /*
+    * (non-Javadoc)
+    * 
+    * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+    */
+   @Override
+   public SourceVersion getSupportedSourceVersion()
+   {
+      return SourceVersion.latestSupported();
+   }
+
+   /*
+    * (non-Javadoc)
+    * 
+    * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set,
+    * javax.annotation.processing.RoundEnvironment)
+    */
+   @Override
+   public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+   {
+      List<TypeElement> bound = new ArrayList<TypeElement>();
+
+      for (Element element : roundEnv.getElementsAnnotatedWith(JSONBinding.class))
+      {
+         if (element.getKind() != ElementKind.CLASS)
+         {
+            error(element, "@JSONBinding may only be applied to classes");
+            continue;
+         }
+
+         bound.add((TypeElement) element);
+      }
+
+      for (TypeElement type : bound)
+      {
+         try
+         {
+            new CodecGenerator(processingEnv, type, bound).generate();
+         }
+         catch (BindingException exc)
+         {
+            error(exc.getElement(), exc.getMessage());
+         }
+         catch (IOException exc)
+         {
+            error(type, "Failed to write JSON codec: " + exc.getMessage());
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Report an error against an element.
+    * 
+    * @param element the offending element
+    * @param message a description of the error
+    */
+   private void error(Element element, String message)
+   {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+   }
+}
@@ -0,0 +1,84 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Primitive operations on hot paths, for Java 17 and later. See the Java 8
+ * implementation for the contract; results must be identical.
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class JSONIntrinsics
+{
+   /** Shortest string worth encoding in one piece. */
+   static private final int MIN_ENCODE_LENGTH = 64;
+
+   /** Big-endian int view of a byte array. */
+   static private final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+   /** Big-endian long view of a byte array. */
+   static private final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+   /**
+    * Not instantiable.
+    */
+   private JSONIntrinsics()
+   {
+   }
+
+   static int release()
+   {
+      return 17;
+   }
+
+   static int getIntBE(byte[] buf, int pos)
+   {
+      return (int) INT_BE.get(buf, pos);
+   }
+
+   static long getLongBE(byte[] buf, int pos)
+   {
+      return (long) LONG_BE.get(buf, pos);
+   }
+
+   static void putIntBE(byte[] buf, int pos, int value)
+   {
+      INT_BE.set(buf, pos, value);
+   }
+
+   static void putLongBE(byte[] buf, int pos, long value)
+   {
+      LONG_BE.set(buf, pos, value);
+   }
+
+   static long unsignedMultiplyHigh(long x, long y)
+   {
+      // correct the signed product for operands with the top bit set
+      return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+   }
+
+   static byte[] encodeUTF8(String str)
+   {
+      // compact Latin-1 strings are checked and copied with vectorized intrinsics
+      if (str.length() < MIN_ENCODE_LENGTH) return null;
+      return str.getBytes(StandardCharsets.UTF_8);
+   }
+}
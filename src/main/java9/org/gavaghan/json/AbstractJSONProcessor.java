@@ -0,0 +1,316 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Common plumbing of the <code>Flow.Processor</code> adapters. Each item
+ * received from upstream is turned into any number of items for downstream,
+ * which are queued until downstream asks for them. Upstream is only asked
+ * for one item at a time, and only when the queue is empty and downstream
+ * has outstanding demand, so a slow subscriber holds back the publisher.
+ * </p>
+ * <p>
+ * Signals to the subscriber are serialized by a work-in-progress counter, so
+ * <code>request()</code> and <code>cancel()</code> may be called from any
+ * thread, including from within <code>onNext()</code>. There is a single
+ * subscriber.
+ * </p>
+ * 
+ * @param <T> type of items received
+ * @param <R> type of items published
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+abstract class AbstractJSONProcessor<T, R> implements Flow.Processor<T, R>
+{
+   /** Items waiting for demand. */
+   private final ConcurrentLinkedQueue<R> mQueue = new ConcurrentLinkedQueue<R>();
+
+   /** Work-in-progress counter serializing <code>drain()</code>. */
+   private final AtomicInteger mWip = new AtomicInteger();
+
+   /** Outstanding downstream demand. */
+   private final AtomicLong mRequested = new AtomicLong();
+
+   /** 'true' while a request to upstream is unanswered. */
+   private final AtomicBoolean mPending = new AtomicBoolean();
+
+   /** 'true' once a subscriber has subscribed. */
+   private final AtomicBoolean mSubscribed = new AtomicBoolean();
+
+   /** The upstream subscription. */
+   private volatile Flow.Subscription mUpstream;
+
+   /** The subscriber. */
+   private volatile Flow.Subscriber<? super R> mDownstream;
+
+   /** 'true' once upstream is finished or failed. */
+   private volatile boolean mDone;
+
+   /** The failure to report, if any. */
+   private volatile Throwable mError;
+
+   /** 'true' once the subscriber has cancelled. */
+   private volatile boolean mCancelled;
+
+   /** 'true' once the subscriber has been sent a terminal signal. */
+   private boolean mTerminated;
+
+   /**
+    * Handle an item from upstream, passing results to <code>emit()</code>.
+    * Called serially.
+    * 
+    * @param item the item
+    * @throws Exception to fail the stream
+    */
+   abstract void process(T item) throws Exception;
+
+   /**
+    * Handle the end of upstream, passing any final results to
+    * <code>emit()</code>.
+    * 
+    * @throws Exception to fail the stream
+    */
+   abstract void finish() throws Exception;
+
+   /**
+    * Queue an item for the subscriber.
+    * 
+    * @param item the item
+    */
+   final void emit(R item)
+   {
+      mQueue.offer(item);
+   }
+
+   @Override
+   public final void subscribe(Flow.Subscriber<? super R> subscriber)
+   {
+      Objects.requireNonNull(subscriber);
+
+      if (!mSubscribed.compareAndSet(false, true))
+      {
+         subscriber.onSubscribe(new Flow.Subscription()
+         {
+            @Override
+            public void request(long n)
+            {
+            }
+
+            @Override
+            public void cancel()
+            {
+            }
+         });
+         subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+         return;
+      }
+
+      subscriber.onSubscribe(new Flow.Subscription()
+      {
+         @Override
+         public void request(long n)
+         {
+            if (n <= 0)
+            {
+               fail(new IllegalArgumentException("Non-positive request: " + n));
+            }
+            else
+            {
+               long current;
+               do
+               {
+                  current = mRequested.get();
+               }
+               while (!mRequested.compareAndSet(current, (current + n < 0) ? Long.MAX_VALUE : current + n));
+            }
+
+            drain();
+         }
+
+         @Override
+         public void cancel()
+         {
+            mCancelled = true;
+
+            Flow.Subscription upstream = mUpstream;
+            if (upstream != null) upstream.cancel();
+
+            drain();
+         }
+      });
+
+      mDownstream = subscriber;
+      drain();
+   }
+
+   @Override
+   public final void onSubscribe(Flow.Subscription subscription)
+   {
+      Objects.requireNonNull(subscription);
+
+      if ((mUpstream != null) || mCancelled)
+      {
+         subscription.cancel();
+         return;
+      }
+
+      mUpstream = subscription;
+      drain();
+   }
+
+   @Override
+   public final void onNext(T item)
+   {
+      Objects.requireNonNull(item);
+      mPending.set(false);
+
+      if (mDone || mCancelled) return;
+
+      try
+      {
+         process(item);
+      }
+      catch (Exception exc)
+      {
+         mUpstream.cancel();
+         fail(exc);
+      }
+
+      drain();
+   }
+
+   @Override
+   public final void onError(Throwable throwable)
+   {
+      Objects.requireNonNull(throwable);
+      fail(throwable);
+      drain();
+   }
+
+   @Override
+   public final void onComplete()
+   {
+      if (mDone) return;
+
+      try
+      {
+         finish();
+         mDone = true;
+      }
+      catch (Exception exc)
+      {
+         fail(exc);
+      }
+
+      drain();
+   }
+
+   /**
+    * Record a failure.
+    * 
+    * @param throwable the failure
+    */
+   private void fail(Throwable throwable)
+   {
+      if (mDone) return;
+
+      mError = throwable;
+      mDone = true;
+   }
+
+   /**
+    * Deliver queued items to meet demand, report the end of the stream, and ask
+    * upstream for more when the queue runs dry.
+    */
+   private void drain()
+   {
+      if (mWip.getAndIncrement() != 0) return;
+
+      int missed = 1;
+
+      for (;;)
+      {
+         Flow.Subscriber<? super R> downstream = mDownstream;
+
+         if (mCancelled)
+         {
+            mQueue.clear();
+         }
+         else if ((downstream != null) && !mTerminated)
+         {
+            Throwable error = mError;
+
+            if (error != null)
+            {
+               mTerminated = true;
+               mQueue.clear();
+               downstream.onError(error);
+            }
+            else
+            {
+               long requested = mRequested.get();
+               long emitted = 0;
+
+               while ((emitted != requested) && !mCancelled)
+               {
+                  R item = mQueue.poll();
+                  if (item == null) break;
+
+                  downstream.onNext(item);
+                  emitted++;
+               }
+
+               if ((emitted != 0) && (requested != Long.MAX_VALUE)) mRequested.addAndGet(-emitted);
+
+               if (!mCancelled && mQueue.isEmpty())
+               {
+                  Flow.Subscription upstream = mUpstream;
+
+                  if (mDone)
+                  {
+                     if (mError == null)
+                     {
+                        mTerminated = true;
+                        downstream.onComplete();
+                     }
+                     else
+                     {
+                        // failed since the check above, so go round again to report it
+                        continue;
+                     }
+                  }
+                  else if ((upstream != null) && (mRequested.get() > 0) && mPending.compareAndSet(false, true))
+                  {
+                     upstream.request(1);
+                  }
+               }
+            }
+         }
+
+         missed = mWip.addAndGet(-missed);
+         if (missed == 0) break;
+      }
+   }
+}
@@ -0,0 +1,104 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+/**
+ * <p>
+ * A <code>Flow.Processor</code> that decodes chunks of UTF-8 JSON into
+ * <code>JSONValue</code> instances as soon as each one is complete. The input
+ * may be a sequence of values such as newline-delimited JSON records, or, if
+ * arrays are streamed, a top-level array whose elements are published one by
+ * one. Parsing is done by a <code>JSONPushParser</code>, so the factory's
+ * callbacks and <code>recast()</code> apply as usual.
+ * </p>
+ * <p>
+ * Chunks are requested from upstream one at a time and only while the
+ * subscriber has unmet demand, and each chunk is fully consumed before
+ * <code>onNext()</code> returns, so the publisher may reuse its buffer. A
+ * malformed document cancels upstream and fails the subscriber with the
+ * <code>JSONException</code>.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class JSONDecodingProcessor extends AbstractJSONProcessor<ByteBuffer, JSONValue>
+{
+   /** The parser. */
+   private final JSONPushParser mParser;
+
+   /**
+    * Create a new <code>JSONDecodingProcessor</code> that publishes each
+    * top-level value using <code>JSONValueFactory.DEFAULT</code>.
+    */
+   public JSONDecodingProcessor()
+   {
+      this(JSONValueFactory.DEFAULT, false);
+   }
+
+   /**
+    * Create a new <code>JSONDecodingProcessor</code>.
+    * 
+    * @param factory      the factory that creates values
+    * @param streamArrays 'true' to publish the elements of each top-level array
+    *                     instead of the array itself
+    */
+   public JSONDecodingProcessor(JSONValueFactory factory, boolean streamArrays)
+   {
+      mParser = new JSONPushParser(factory, streamArrays);
+   }
+
+   @Override
+   void process(ByteBuffer item) throws JSONException
+   {
+      mParser.feed(item);
+      publish();
+   }
+
+   @Override
+   void finish() throws JSONException
+   {
+      mParser.endOfInput();
+      publish();
+   }
+
+   /**
+    * Queue every completed value.
+    */
+   private void publish()
+   {
+      for (JSONValue value = mParser.poll(); value != null; value = mParser.poll())
+      {
+         emit(value);
+      }
+   }
+
+   /**
+    * Convenience for connecting a publisher of chunks to this processor.
+    * 
+    * @param publisher the source of chunks
+    * @return this processor, as a publisher of values
+    */
+   public Flow.Publisher<JSONValue> from(Flow.Publisher<ByteBuffer> publisher)
+   {
+      publisher.subscribe(this);
+      return this;
+   }
+}
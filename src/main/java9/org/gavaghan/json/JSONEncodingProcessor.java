@@ -0,0 +1,121 @@
+/******************************************************************************
+   Copyright 2018 Mike Gavaghan
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+******************************************************************************/
+package org.gavaghan.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+
+/**
+ * <p>
+ * A <code>Flow.Processor</code> that encodes <code>JSONValue</code> instances
+ * as UTF-8 JSON, publishing one <code>ByteBuffer</code> per value. Values are
+ * rendered flat by their own <code>write()</code> methods. They are framed
+ * either as newline-delimited JSON, one value per line, or as the elements of
+ * a single JSON array whose brackets are added to the first and last chunks.
+ * </p>
+ * <p>
+ * Values are requested from upstream one at a time and only while the
+ * subscriber has unmet demand. Each chunk is a new buffer owned by the
+ * subscriber.
+ * </p>
+ * 
+ * @since 1.3
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public final class JSONEncodingProcessor extends AbstractJSONProcessor<JSONValue, ByteBuffer>
+{
+   /** 'true' to frame values as a JSON array. */
+   private final boolean mArray;
+
+   /** Number of values encoded. */
+   private long mCount;
+
+   /** Reused output buffer. */
+   private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream(1024);
+
+   /**
+    * Create a new <code>JSONEncodingProcessor</code> that writes
+    * newline-delimited JSON.
+    */
+   public JSONEncodingProcessor()
+   {
+      this(false);
+   }
+
+   /**
+    * Create a new <code>JSONEncodingProcessor</code>.
+    * 
+    * @param array 'true' to frame the values as a JSON array, 'false' for
+    *              newline-delimited JSON
+    */
+   public JSONEncodingProcessor(boolean array)
+   {
+      mArray = array;
+   }
+
+   @Override
+   void process(JSONValue item) throws IOException
+   {
+      mBytes.reset();
+
+      if (mArray) mBytes.write((mCount == 0) ? '[' : ',');
+      AbstractJSONValue.write(item, mBytes, false);
+      mCount++;
+
+      byte[] bytes = mBytes.toByteArray();
+      int length = bytes.length;
+
+      if (!mArray)
+      {
+         // a flat rendering still breaks lines between array elements, but
+         // strings escape line breaks, so any raw ones are only whitespace
+         length = 0;
+         for (byte b : bytes)
+         {
+            if ((b != '\n') && (b != '\r')) bytes[length++] = b;
+         }
+
+         if (length == bytes.length) bytes = Arrays.copyOf(bytes, length + 1);
+         bytes[length++] = '\n';
+      }
+
+      emit(ByteBuffer.wrap(bytes, 0, length));
+   }
+
+   @Override
+   void finish()
+   {
+      if (!mArray) return;
+
+      emit(ByteBuffer.wrap((mCount == 0) ? new byte[] { '[', ']' } : new byte[] { ']' }));
+   }
+
+   /**
+    * Convenience for connecting a publisher of values to this processor.
+    * 
+    * @param publisher the source of values
+    * @return this processor, as a publisher of chunks
+    */
+   public Flow.Publisher<ByteBuffer> from(Flow.Publisher<? extends JSONValue> publisher)
+   {
+      publisher.subscribe(this);
+      return this;
+   }
+}
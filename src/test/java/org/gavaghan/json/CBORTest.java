@@ -0,0 +1,204 @@
+package org.gavaghan.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class CBORTest
+{
+   static private void assertEncoding(String hex, String json) throws IOException, JSONException
+   {
+      // wrapped because the parser needs a character after a top-level number
+      JSONValue value = ((JSONArray) JSONValueFactory.DEFAULT.read(new StringReader("[" + json + "]"))).getListValue().get(0);
+
+      Assert.assertEquals(hex, TestSupport.hex(CBOR.encode(value)));
+      Assert.assertEquals(value.toFlatString(), CBOR.decode(TestSupport.unhex(hex)).toFlatString());
+   }
+
+   @Test
+   public void testSpecificationExamples() throws IOException, JSONException
+   {
+      // from RFC 8949 Appendix A
+      assertEncoding("00", "0");
+      assertEncoding("17", "23");
+      assertEncoding("1818", "24");
+      assertEncoding("1864", "100");
+      assertEncoding("1a000f4240", "1000000");
+      assertEncoding("1bffffffffffffffff", "18446744073709551615");
+      assertEncoding("c249010000000000000000", "18446744073709551616");
+      assertEncoding("3bffffffffffffffff", "-18446744073709551616");
+      assertEncoding("c349010000000000000000", "-18446744073709551617");
+      assertEncoding("20", "-1");
+      assertEncoding("3903e7", "-1000");
+      assertEncoding("c48221196ab3", "273.15");
+      assertEncoding("6161", "\"a\"");
+      assertEncoding("f4", "false");
+      assertEncoding("f5", "true");
+      assertEncoding("f6", "null");
+      assertEncoding("80", "[]");
+      assertEncoding("8301820203820405", "[1,[2,3],[4,5]]");
+      assertEncoding("a26161016162820203", "{\"a\":1,\"b\":[2,3]}");
+
+      // floats and indefinite lengths are only read
+      Assert.assertEquals(new BigDecimal("1.1"), CBOR.decode(TestSupport.unhex("fb3ff199999999999a")).getValue());
+      Assert.assertEquals(new BigDecimal("1.5"), CBOR.decode(TestSupport.unhex("f93e00")).getValue());
+      Assert.assertEquals(new BigDecimal("100000.0"), CBOR.decode(TestSupport.unhex("fa47c35000")).getValue());
+      Assert.assertEquals(new BigDecimal("1.5"), CBOR.decode(TestSupport.unhex("c5822003")).getValue());
+      Assert.assertEquals("[1,[2,3],[4,5]]", CBOR.decode(TestSupport.unhex("9f018202039f0405ffff")).toFlatString().replaceAll("\\s", ""));
+      Assert.assertEquals("\"streaming\"", CBOR.decode(TestSupport.unhex("7f657374726561646d696e67ff")).toFlatString());
+      Assert.assertEquals("{\"a\":1}", CBOR.decode(TestSupport.unhex("bf616101ff")).toFlatString().replaceAll("\\s", ""));
+   }
+
+   @Test
+   public void testRoundTrips() throws IOException, JSONException
+   {
+      JSONValue plain = TestSupport.readResource(JSONValueFactory.DEFAULT, "JSONObjectTest.json");
+      JSONValue commented = TestSupport.readResource(CommentedJSONValueFactory.COMMENTED_DEFAULT, "CommentedJSONObjectTest.json");
+
+      Assert.assertEquals(plain.toPrettyString(), CBOR.decode(CBOR.encode(plain)).toPrettyString());
+      Assert.assertEquals(commented.toPrettyString(), CBOR.decode(CBOR.encode(commented)).toPrettyString());
+
+      // scale survives
+      JSONValue scaled = CBOR.decode(CBOR.encode(new JSONNumber(new BigDecimal("1.500"))));
+      Assert.assertEquals(3, ((BigDecimal) scaled.getValue()).scale());
+
+      JSONValue huge = new JSONNumber(new BigDecimal(BigInteger.TEN.pow(40).negate(), -7));
+      Assert.assertEquals(huge.getValue(), CBOR.decode(CBOR.encode(huge)).getValue());
+
+      // surrogate pairs and other multi-byte text
+      JSONString text = new JSONString("café € 😀");
+      Assert.assertEquals(text.getValue(), CBOR.decode(CBOR.encode(text)).getValue());
+   }
+
+   @Test
+   public void testTypedRoundTrip() throws IOException, JSONException
+   {
+      TestTypedJSONObject json = new TestTypedJSONObject();
+      json.setString("Hello, World!");
+      json.setBigDecimal(new BigDecimal("123.45"));
+
+      byte[] bytes = CBOR.encode(json);
+      JSONValue copy = CBOR.decode(TypedJSONValueFactory.TYPED_DEFAULT, bytes, 0, bytes.length);
+
+      Assert.assertTrue(copy instanceof TestTypedJSONObject);
+      Assert.assertEquals("Hello, World!", ((TestTypedJSONObject) copy).getString());
+      Assert.assertEquals(new BigDecimal("123.45"), ((TestTypedJSONObject) copy).getBigDecimal());
+   }
+
+   @Test
+   public void testBuffersAndStreams() throws IOException, JSONException
+   {
+      JSONValue plain = TestSupport.readResource(JSONValueFactory.DEFAULT, "JSONObjectTest.json");
+      byte[] bytes = CBOR.encode(plain);
+
+      // two items back to back in a direct buffer
+      ByteBuffer direct = ByteBuffer.allocateDirect(2 * bytes.length);
+      CBOR.encode(plain, direct);
+      CBOR.encode(plain, direct);
+      direct.flip();
+
+      Assert.assertEquals(plain.toFlatString(), CBOR.decode(direct).toFlatString());
+      Assert.assertEquals(bytes.length, direct.position());
+      Assert.assertEquals(plain.toFlatString(), CBOR.decode(direct).toFlatString());
+      Assert.assertNull(CBOR.decode(direct));
+
+      try
+      {
+         CBOR.encode(plain, ByteBuffer.allocate(bytes.length - 1));
+         Assert.fail("Exception expected");
+      }
+      catch (IOException exc)
+      {
+         // expected
+      }
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      CBOR.encode(plain, out);
+      Assert.assertArrayEquals(bytes, out.toByteArray());
+      Assert.assertEquals(plain.toFlatString(), CBOR.decode(new ByteArrayInputStream(bytes)).toFlatString());
+      Assert.assertNull(CBOR.decode(new ByteArrayInputStream(new byte[0])));
+   }
+
+   @Test
+   public void testBadInput() throws IOException, JSONException
+   {
+      byte[] bytes = CBOR.encode(TestSupport.readResource(JSONValueFactory.DEFAULT, "JSONObjectTest.json"));
+      String[] bad = { "40", "a10101", "f97c00", "1c", "ff" };
+
+      for (int i = 1; i < bytes.length; i++)
+      {
+         try
+         {
+            CBOR.decode(bytes, 0, i);
+            Assert.fail("Exception expected");
+         }
+         catch (JSONException exc)
+         {
+            // expected
+         }
+      }
+
+      for (String hex : bad)
+      {
+         try
+         {
+            CBOR.decode(TestSupport.unhex(hex));
+            Assert.fail("Exception expected for " + hex);
+         }
+         catch (JSONException exc)
+         {
+            // expected
+         }
+      }
+   }
+
+   @Test
+   public void testDeepNesting() throws IOException, JSONException
+   {
+      // arrays nested far past the depth limit
+      byte[] deep = new byte[200001];
+      Arrays.fill(deep, (byte) 0x81);
+      deep[deep.length - 1] = (byte) 0xF6;
+
+      try
+      {
+         CBOR.decode(deep);
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertTrue(exc.getMessage(), exc.getMessage().contains("nested more than " + JSONValueFactory.DEFAULT_MAX_DEPTH + " deep"));
+      }
+
+      // as deep as allowed, with a map and an indefinite array in the middle
+      byte[] allowed = Arrays.copyOfRange(deep, deep.length - JSONValueFactory.DEFAULT_MAX_DEPTH - 1, deep.length);
+      allowed[100] = (byte) 0xA1;
+      allowed = concat(Arrays.copyOfRange(allowed, 0, 101), TestSupport.unhex("616b"), Arrays.copyOfRange(allowed, 101, allowed.length));
+
+      JSONValue value = CBOR.decode(allowed);
+      Assert.assertArrayEquals(allowed, CBOR.encode(value));
+
+      byte[] indefinite = concat(TestSupport.unhex("9f"), Arrays.copyOfRange(allowed, 1, allowed.length), TestSupport.unhex("ff"));
+      Assert.assertTrue(AbstractJSONValue.deepEquals(value, CBOR.decode(indefinite)));
+   }
+
+   static private byte[] concat(byte[]... parts)
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (byte[] part : parts)
+         out.write(part, 0, part.length);
+      return out.toByteArray();
+   }
+}
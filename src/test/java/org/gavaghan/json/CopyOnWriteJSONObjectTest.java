@@ -0,0 +1,88 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class CopyOnWriteJSONObjectTest
+{
+   @Test
+   public void testUnmodifiedCopy() throws IOException, JSONException
+   {
+      JSONObject source = TestSupport.getTestObject();
+      JSONObject copy = source.copyOnWrite();
+
+      Assert.assertEquals(source.toPrettyString(), copy.toPrettyString());
+   }
+
+   @Test
+   public void testIsolation() throws IOException, JSONException
+   {
+      JSONObject source = TestSupport.getTestObject();
+      String original = source.toFlatString();
+
+      JSONObject copy = source.copyOnWrite();
+      JSONObject object = (JSONObject) copy.get("object");
+      object.put("color", new JSONString("blue"));
+      ((JSONString) object.get("size")).setValue("small");
+      ((JSONArray) copy.get("array")).set(0, JSONNull.INSTANCE);
+      copy.remove("number");
+
+      Assert.assertEquals(original, source.toFlatString());
+      Assert.assertEquals("blue", ((JSONObject) copy.get("object")).get("color").getValue());
+      Assert.assertEquals("small", ((JSONObject) copy.get("object")).get("size").getValue());
+      Assert.assertSame(JSONNull.INSTANCE, ((JSONArray) copy.get("array")).get(0));
+      Assert.assertFalse(copy.containsKey("number"));
+   }
+
+   @Test
+   public void testCopyOfCopy() throws IOException, JSONException
+   {
+      JSONObject source = TestSupport.getTestObject();
+      JSONObject copy = source.copyOnWrite();
+      JSONObject copy2 = copy.copyOnWrite();
+
+      copy.put("string", new JSONString("changed"));
+
+      Assert.assertEquals("Hello, World!", copy2.get("string").getValue());
+      Assert.assertEquals("Hello, World!", source.get("string").getValue());
+
+      JSONArray array = ((JSONArray) copy2.get("array")).copyOnWrite();
+      array.getListValue().add(new JSONString("more"));
+
+      Assert.assertEquals(4, array.size());
+      Assert.assertEquals(3, ((JSONArray) copy2.get("array")).size());
+      Assert.assertEquals(3, ((JSONArray) source.get("array")).size());
+   }
+
+   @Test
+   public void testDeepCopyOfView() throws IOException, JSONException
+   {
+      JSONObject source = TestSupport.getTestObject();
+      JSONValue copy = source.copyOnWrite().deepCopy();
+
+      Assert.assertEquals(JSONObject.class, copy.getClass());
+      Assert.assertEquals(source.toPrettyString(), copy.toPrettyString());
+   }
+
+   @Test
+   public void testSubclassesCopied() throws IOException, JSONException
+   {
+      JSONObject source = TestSupport.getTestObject();
+      JSONNumberArray numbers = new JSONNumberArray(new long[] { 1, 2, 3 });
+      source.put("numbers", numbers);
+
+      JSONObject copy = source.copyOnWrite();
+      JSONValue member = copy.get("numbers");
+
+      Assert.assertEquals(JSONNumberArray.class, member.getClass());
+      Assert.assertNotSame(numbers, member);
+      Assert.assertTrue(numbers.isPacked());
+      Assert.assertEquals(source.toPrettyString(), copy.toPrettyString());
+   }
+}
@@ -0,0 +1,120 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class FrozenJSONObjectTest
+{
+   @Test
+   public void testSameOutput() throws IOException, JSONException
+   {
+      JSONObject source = TestSupport.getTestObject();
+      JSONObject frozen = source.freeze();
+
+      Assert.assertEquals(source.toPrettyString(), frozen.toPrettyString());
+      Assert.assertEquals(source.toFlatString(), frozen.toFlatString());
+      Assert.assertEquals(source.keySet().toString(), frozen.keySet().toString());
+      Assert.assertTrue(AbstractJSONValue.isFrozen(frozen.get("object")));
+      Assert.assertSame(frozen, frozen.freeze());
+   }
+
+   @Test
+   public void testLargeObject()
+   {
+      JSONObject source = new JSONObject();
+      for (int i = 0; i < 100; i++)
+         source.put("key" + i, new JSONNumber(i));
+
+      JSONObject frozen = source.freeze();
+
+      for (int i = 0; i < 100; i++)
+         Assert.assertEquals(i, ((JSONNumber) frozen.get("key" + i)).getBigDecimalValue().intValue());
+
+      Assert.assertNull(frozen.get("missing"));
+      Assert.assertFalse(frozen.containsKey("key100"));
+   }
+
+   @Test
+   public void testWritesThrow() throws IOException, JSONException
+   {
+      JSONObject frozen = TestSupport.getTestObject().freeze();
+
+      try
+      {
+         frozen.put("string", new JSONString("changed"));
+         Assert.fail();
+      }
+      catch (UnsupportedOperationException expected)
+      {
+      }
+
+      try
+      {
+         ((JSONString) frozen.get("string")).setValue("changed");
+         Assert.fail();
+      }
+      catch (UnsupportedOperationException expected)
+      {
+      }
+
+      try
+      {
+         ((JSONArray) frozen.get("array")).getListValue().add(JSONNull.INSTANCE);
+         Assert.fail();
+      }
+      catch (UnsupportedOperationException expected)
+      {
+      }
+
+      try
+      {
+         frozen.entrySet().iterator().next().setValue(JSONNull.INSTANCE);
+         Assert.fail();
+      }
+      catch (UnsupportedOperationException expected)
+      {
+      }
+
+      Assert.assertEquals("Hello, World!", frozen.get("string").getValue());
+   }
+
+   @Test
+   public void testEquality() throws IOException, JSONException
+   {
+      JSONObject frozen1 = TestSupport.getTestObject().freeze();
+      JSONObject frozen2 = TestSupport.getTestObject().freeze();
+
+      Assert.assertEquals(frozen1, frozen2);
+      Assert.assertEquals(frozen1.hashCode(), frozen2.hashCode());
+
+      JSONObject changed = TestSupport.getTestObject();
+      ((JSONObject) changed.get("object")).put("size", new JSONString("small"));
+
+      Assert.assertNotEquals(frozen1, changed.freeze());
+   }
+
+   @Test
+   public void testMutableCopy() throws IOException, JSONException
+   {
+      JSONObject frozen = TestSupport.getTestObject().freeze();
+      String original = frozen.toFlatString();
+
+      JSONObject copy = frozen.copyOnWrite();
+      ((JSONString) copy.get("string")).setValue("changed");
+      ((JSONArray) copy.get("array")).getListValue().add(JSONNull.INSTANCE);
+
+      JSONValue deep = frozen.deepCopy();
+      ((JSONObject) deep).remove("number");
+
+      Assert.assertEquals(original, frozen.toFlatString());
+      Assert.assertEquals("changed", copy.get("string").getValue());
+      Assert.assertEquals(4, ((JSONArray) copy.get("array")).size());
+      Assert.assertFalse(((JSONObject) deep).containsKey("number"));
+   }
+}
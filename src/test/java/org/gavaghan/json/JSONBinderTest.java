@@ -0,0 +1,300 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONBinderTest
+{
+   static private TestBoundObject getTestObject()
+   {
+      TestBoundObject obj = new TestBoundObject();
+      obj.string = "Hello, \"World\"!";
+      obj.count = 42;
+      obj.boxed = null;
+      obj.ratio = 0.1;
+      obj.flag = true;
+      obj.amount = new BigDecimal("123.450");
+      obj.color = TestBoundObject.Color.GREEN;
+      obj.tags = Arrays.asList("a", "b");
+      obj.scores = new LinkedHashMap<String, Integer>();
+      obj.scores.put("x", Integer.valueOf(1));
+      obj.scores.put("y", null);
+      obj.extra = new JSONObject();
+      obj.extra.put("color", new JSONString("red"));
+      obj.child = new TestBoundChild("kid");
+      obj.children = Arrays.asList(new TestBoundChild("one"), new TestBoundGrandchild("two", 2));
+      obj.original = "renamed";
+      obj.ignored = "ignored";
+      obj.setHidden("hidden");
+      return obj;
+   }
+
+   @Test
+   public void testWriteMatchesTree()
+   {
+      TestBoundObject obj = getTestObject();
+      JSONValue tree = TestBoundObject_JSONCodec.INSTANCE.toJSON(obj);
+
+      Assert.assertEquals(tree.toPrettyString(), JSONBinder.toPrettyString(obj));
+      Assert.assertEquals(tree.toFlatString(), JSONBinder.toFlatString(obj));
+   }
+
+   @Test
+   public void testRoundTrip() throws IOException, JSONException
+   {
+      TestBoundObject obj = getTestObject();
+      String text = JSONBinder.toPrettyString(obj);
+
+      TestBoundObject copy = JSONBinder.read(new StringReader(text), TestBoundObject.class);
+
+      Assert.assertEquals(obj.string, copy.string);
+      Assert.assertEquals(obj.count, copy.count);
+      Assert.assertNull(copy.boxed);
+      Assert.assertEquals(obj.ratio, copy.ratio, 0.0);
+      Assert.assertTrue(copy.flag);
+      Assert.assertEquals(obj.amount, copy.amount);
+      Assert.assertEquals(TestBoundObject.Color.GREEN, copy.color);
+      Assert.assertEquals(obj.tags, copy.tags);
+      Assert.assertEquals(obj.scores, copy.scores);
+      Assert.assertEquals("red", copy.extra.get("color").getValue());
+      Assert.assertEquals("kid", copy.child.name);
+      Assert.assertEquals("renamed", copy.original);
+      Assert.assertNull(copy.ignored);
+      Assert.assertEquals("hidden", copy.getHidden());
+
+      Assert.assertEquals(2, copy.children.size());
+      Assert.assertEquals(TestBoundChild.class, copy.children.get(0).getClass());
+      Assert.assertEquals(TestBoundGrandchild.class, copy.children.get(1).getClass());
+      Assert.assertEquals(2, ((TestBoundGrandchild) copy.children.get(1)).age);
+
+      Assert.assertEquals(text, JSONBinder.toPrettyString(copy));
+   }
+
+   @Test
+   public void testTypeDiscriminator() throws IOException, JSONException
+   {
+      JSONObject json = (JSONObject) JSONBinder.toJSON(new TestBoundGrandchild("two", 2));
+      Assert.assertEquals("org.gavaghan.json.TestBoundGrandchild", json.get(TypedJSONObject.TYPE_KEY).getValue());
+
+      // the typed factory must leave bound classes alone
+      String text = json.toFlatString();
+      TestBoundChild child = TestBoundChild_JSONCodec.INSTANCE.read(TypedJSONValueFactory.TYPED_DEFAULT, new StringReader(text));
+      Assert.assertEquals(TestBoundGrandchild.class, child.getClass());
+   }
+
+   @Test
+   public void testBindingErrors() throws IOException
+   {
+      try
+      {
+         JSONBinder.read(new StringReader("{ \"count\": \"ten\" }"), TestBoundObject.class);
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals("$.count", exc.getPath());
+      }
+
+      try
+      {
+         JSONBinder.read(new StringReader("{ \"color\": \"BLUE\" }"), TestBoundObject.class);
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals("$.color", exc.getPath());
+      }
+   }
+
+   @Test
+   public void testStreamingMatchesTree() throws IOException, JSONException
+   {
+      String[] texts = { JSONBinder.toPrettyString(getTestObject()), //
+            "{ \"count\" : 1 , \"unknown\" : { \"a\" : [ 1, { \"b\": null } ] }, \"tags\" : [ ], \"scores\": { }, \"child\": null, }", //
+            "{ \"children\": [ { \"name\": \"late\", \"" + TypedJSONObject.TYPE_KEY + "\": \"org.gavaghan.json.TestBoundGrandchild\", \"age\": 3 }, {} ] }", //
+            "{ \"count\": 1, \"count\": 2, \"scores\": { \"x\": 1, \"x\": 2 } }", //
+            "{}" };
+
+      for (String text : texts)
+      {
+         TestBoundObject streamed = TestBoundObject_JSONCodec.INSTANCE.read(new StringReader(text));
+         TestBoundObject tree = TestBoundObject_JSONCodec.INSTANCE.fromJSON("$", JSONValueFactory.DEFAULT.read(new StringReader(text)));
+
+         Assert.assertEquals(text, JSONBinder.toFlatString(tree), JSONBinder.toFlatString(streamed));
+      }
+
+      // the type needn't come first
+      TestBoundObject obj = JSONBinder.read(new StringReader(texts[2]), TestBoundObject.class);
+      Assert.assertEquals(TestBoundGrandchild.class, obj.children.get(0).getClass());
+      Assert.assertEquals(3, ((TestBoundGrandchild) obj.children.get(0)).age);
+      Assert.assertEquals(TestBoundChild.class, obj.children.get(1).getClass());
+
+      // whitespace and comments are the factory's
+      obj = TestBoundObject_JSONCodec.INSTANCE.read(CommentedJSONValueFactory.COMMENTED_DEFAULT, new StringReader("{ /* one */ \"count\" : 1 // two\n }"));
+      Assert.assertEquals(1, obj.count);
+   }
+
+   @Test
+   public void testStreamingLeavesRest() throws IOException, JSONException
+   {
+      StringReader reader = new StringReader("{ \"name\": \"one\" } null {\"" + TypedJSONObject.TYPE_KEY + "\":\"org.gavaghan.json.TestBoundGrandchild\",\"age\":2}");
+
+      Assert.assertEquals("one", TestBoundChild_JSONCodec.INSTANCE.read(reader).name);
+      Assert.assertNull(TestBoundChild_JSONCodec.INSTANCE.read(reader));
+      Assert.assertEquals(2, ((TestBoundGrandchild) TestBoundChild_JSONCodec.INSTANCE.read(reader)).age);
+      Assert.assertNull(TestBoundChild_JSONCodec.INSTANCE.read(reader));
+   }
+
+   @Test
+   public void testUnknownSubtype() throws IOException
+   {
+      String text = "{ \"" + TypedJSONObject.TYPE_KEY + "\": \"java.lang.Thread\" }";
+
+      try
+      {
+         JSONBinder.read(new StringReader(text), TestBoundChild.class);
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals("$", exc.getPath());
+         Assert.assertTrue(exc.getMessage(), exc.getMessage().contains("not a known subtype"));
+      }
+
+      try
+      {
+         TestBoundChild_JSONCodec.INSTANCE.fromJSON("$", JSONValueFactory.DEFAULT.read(new StringReader(text)));
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertTrue(exc.getMessage(), exc.getMessage().contains("not a known subtype"));
+      }
+   }
+
+   @Test
+   public void testStreamingErrors() throws IOException
+   {
+      String[][] cases = { { "{ \"tags\": {} }", "$.tags" }, //
+            { "{ \"scores\": { \"x\": \"one\" } }", "$.scores.x" }, //
+            { "{ \"child\": [] }", "$.child" }, //
+            { "{ \"children\": [ { \"" + TypedJSONObject.TYPE_KEY + "\": 1 } ] }", "$.children" }, //
+            { "{ \"count\": 1 \"flag\": true }", "$" }, //
+            { "{ \"tags\": [ \"a\" \"b\" ] }", "$.tags" }, //
+            { "{ \"tags\": nul }", "$.tags" }, //
+            { "[]", "$" } };
+
+      for (String[] item : cases)
+      {
+         try
+         {
+            JSONBinder.read(new StringReader(item[0]), TestBoundObject.class);
+            Assert.fail("Exception expected: " + item[0]);
+         }
+         catch (JSONException exc)
+         {
+            Assert.assertEquals(item[0], item[1], exc.getPath());
+         }
+      }
+
+      JSONValueFactory shallow = new JSONValueFactory()
+      {
+         @Override
+         public int getMaxDepth()
+         {
+            return 2;
+         }
+
+         @Override
+         public int getMaxMembers()
+         {
+            return 2;
+         }
+      };
+
+      try
+      {
+         TestBoundObject_JSONCodec.INSTANCE.read(shallow, new StringReader("{ \"children\": [ { \"name\": \"x\" } ] }"));
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals("$.children", exc.getPath());
+      }
+
+      try
+      {
+         TestBoundObject_JSONCodec.INSTANCE.read(shallow, new StringReader("{ \"tags\": [ \"a\", \"b\", \"c\" ] }"));
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals("$.tags", exc.getPath());
+      }
+   }
+
+   @Test
+   public void testNonFiniteRejected() throws IOException
+   {
+      TestBoundObject obj = getTestObject();
+      obj.ratio = Double.NaN;
+
+      try
+      {
+         JSONBinder.write(obj, new StringWriter(), false);
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals("$.ratio", exc.getPath());
+      }
+
+      obj.ratio = Double.POSITIVE_INFINITY;
+
+      try
+      {
+         JSONBinder.toFlatString(obj);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalArgumentException exc)
+      {
+         Assert.assertTrue(exc.getCause() instanceof JSONException);
+      }
+   }
+
+   @Test
+   public void testTreeFallback() throws IOException, JSONException
+   {
+      Assert.assertNull(JSONBinder.getCodec(JSONObject.class));
+
+      JSONObject json = JSONBinder.read(new StringReader("{ \"a\": 1 }"), JSONObject.class);
+      Assert.assertEquals(new BigDecimal(1), json.get("a").getValue());
+
+      Assert.assertSame(json, JSONBinder.toJSON(json));
+      Assert.assertEquals(json.toFlatString(), JSONBinder.toFlatString(json));
+
+      try
+      {
+         JSONBinder.toJSON(new Object());
+         Assert.fail("Exception expected");
+      }
+      catch (RuntimeException expected)
+      {
+      }
+
+      Map<String, JSONValue> map = json;
+      Assert.assertEquals(1, map.size());
+   }
+}
@@ -0,0 +1,116 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONContextTest
+{
+   @Test
+   public void testReuse() throws IOException, JSONException
+   {
+      try (JSONContext context = JSONContext.acquire())
+      {
+         for (int i = 0; i < 100; i++)
+         {
+            String json = "{\"id\":" + i + ",\"name\":\"item\\u00e9" + i + "\",\"a\":\"b\\tc\",\"t\":true,\"n\":null}";
+            JSONObject obj = (JSONObject) context.read(JSONValueFactory.DEFAULT, json);
+
+            Assert.assertEquals(i, ((JSONNumber) obj.get("id")).getBigDecimalValue().intValue());
+            Assert.assertEquals("item\u00e9" + i, obj.get("name").getValue());
+            Assert.assertEquals(json, context.toString(obj, false));
+            Assert.assertEquals(obj.toPrettyString(), context.toString(obj, true));
+         }
+
+         Assert.assertNull(context.read(JSONValueFactory.DEFAULT, "   "));
+      }
+   }
+
+   @Test
+   public void testClosed() throws IOException, JSONException
+   {
+      JSONContext context = JSONContext.acquire();
+      context.close();
+      context.close();
+
+      try
+      {
+         context.read(JSONValueFactory.DEFAULT, new StringReader("1"));
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalStateException exc)
+      {
+         // expected
+      }
+   }
+
+   @Test
+   public void testDeepIndentation() throws IOException, JSONException
+   {
+      StringBuilder json = new StringBuilder();
+      for (int i = 0; i < 100; i++)
+         json.append('[');
+      for (int i = 0; i < 100; i++)
+         json.append(']');
+
+      String pretty = JSONValueFactory.DEFAULT.read(new StringReader(json.toString())).toPrettyString();
+      String expected = "";
+      for (int i = 0; i < 99; i++)
+         expected += "   ";
+
+      Assert.assertTrue(pretty.contains(JSONObject.EOL + expected + "[]" + JSONObject.EOL));
+   }
+
+   @Test
+   public void testConcurrentUse() throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+
+      try
+      {
+         List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+         for (int t = 0; t < 8; t++)
+         {
+            final int seed = t;
+
+            results.add(executor.submit(new Callable<Boolean>()
+            {
+               @Override
+               public Boolean call() throws Exception
+               {
+                  for (int i = 0; i < 2000; i++)
+                  {
+                     String json = "{\"thread\":" + seed + ",\"i\":" + i + ",\"s\":\"" + seed + "/" + i + "\"}";
+                     JSONValue value = JSONValueFactory.DEFAULT.read(new StringReader(json));
+                     if (!json.equals(value.toFlatString())) return Boolean.FALSE;
+                  }
+
+                  return Boolean.TRUE;
+               }
+            }));
+         }
+
+         for (Future<Boolean> result : results)
+         {
+            Assert.assertTrue(result.get());
+         }
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+   }
+}
@@ -0,0 +1,328 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONDoubleTest
+{
+   /** Numbers known to trip up conversions. */
+   static private final String[] HARD_CASES = { "9007199254740993.0", "9007199254740995e0", "2.2250738585072011e-308", "2.2250738585072012e-308", "2.2250738585072014e-308", "4.9e-324", "2.4703282292062327e-324", "2.4703282292062328e-324", "1.7976931348623157e308", "1.7976931348623158e308", "7.3177701707893310e15", "3.0540412796175e-2", "1e23", "8.41e21", "9.5e-5", "0.1", "0.3", "1.00000000000000011102230246251565404236316680908203125", "1.00000000000000011102230246251565404236316680908203124", "1.00000000000000011102230246251565404236316680908203126", "0.000000000000000000000000000000000000000000000001e48", "-0.0", "-0.0e5", "-0e-3", "-0E+0", "0e-999999", "123456789012345678901234567890e-10" };
+
+   /**
+    * A factory that reads doubles.
+    */
+   static private class DoubleFactory extends JSONValueFactory
+   {
+      @Override
+      public boolean isDoublePrecision()
+      {
+         return true;
+      }
+   }
+
+   /**
+    * A reader that hands out a few characters at a time, so numbers are split
+    * across buffer refills.
+    */
+   static private class TrickleReader extends StringReader
+   {
+      private final Random mRandom = new Random(47);
+
+      private final int mMax;
+
+      TrickleReader(String str, int max)
+      {
+         super(str);
+         mMax = max;
+      }
+
+      @Override
+      public int read(char[] cbuf, int off, int len) throws IOException
+      {
+         return super.read(cbuf, off, Math.min(len, 1 + mRandom.nextInt(mMax)));
+      }
+   }
+
+   static private void assertSameDouble(String text, double actual)
+   {
+      double expected = Double.parseDouble(text);
+      if (Double.doubleToRawLongBits(expected) != Double.doubleToRawLongBits(actual)) Assert.fail(text + ": expected " + expected + " but was " + actual);
+   }
+
+   static private String randomNumber(Random random)
+   {
+      switch (random.nextInt(6))
+      {
+         case 0:
+         {
+            // any finite double
+            double value;
+            do
+            {
+               value = Double.longBitsToDouble(random.nextLong());
+            }
+            while (Double.isNaN(value) || Double.isInfinite(value));
+            return Double.toString(value);
+         }
+
+         case 1:
+         {
+            // a double rounded to fewer digits
+            double value = random.nextDouble() * Math.pow(10, random.nextInt(40) - 20);
+            String text = new BigDecimal(value).round(new java.math.MathContext(1 + random.nextInt(19))).toString();
+            return ((text.indexOf('.') < 0) && (text.indexOf('E') < 0)) ? (text + ".0") : text;
+         }
+
+         case 2:
+         {
+            // digits and a point
+            StringBuilder builder = new StringBuilder();
+            if (random.nextBoolean()) builder.append('-');
+            builder.append(1 + random.nextInt(9));
+            for (int i = random.nextInt(12); i > 0; i--)
+               builder.append(random.nextInt(10));
+            builder.append('.');
+            for (int i = 1 + random.nextInt(12); i > 0; i--)
+               builder.append(random.nextInt(10));
+            return builder.toString();
+         }
+
+         case 3:
+         {
+            // up to 19 digits and any exponent
+            long significand = random.nextLong() >>> (1 + random.nextInt(63));
+            return significand + (random.nextBoolean() ? "e" : "E-") + random.nextInt(360);
+         }
+
+         case 4:
+         {
+            // more digits than fit in a long
+            StringBuilder builder = new StringBuilder("0.");
+            for (int i = random.nextInt(5); i > 0; i--)
+               builder.append('0');
+            for (int i = 20 + random.nextInt(30); i > 0; i--)
+               builder.append(random.nextInt(10));
+            return builder.append("e").append(random.nextInt(600) - 300).toString();
+         }
+
+         default:
+         {
+            // subnormals
+            return Double.toString(Double.longBitsToDouble(random.nextLong() & 0x000FFFFFFFFFFFFFL));
+         }
+      }
+   }
+
+   @Test
+   public void testConverterMatchesParseDouble()
+   {
+      Random random = new Random(47);
+
+      for (int i = 0; i < 1000000; i++)
+      {
+         long significand = random.nextLong() >>> random.nextInt(64);
+         String digits = Long.toUnsignedString(significand);
+         if (digits.length() > DoubleParser.MAX_DIGITS) continue;
+
+         int exponent = random.nextInt(700) - 360;
+         boolean negative = random.nextBoolean();
+
+         assertSameDouble((negative ? "-" : "") + digits + "e" + exponent, DoubleParser.toDouble(negative, significand, exponent));
+      }
+   }
+
+   @Test
+   public void testHardCases() throws IOException, JSONException
+   {
+      JSONValueFactory factory = new DoubleFactory();
+
+      for (String text : HARD_CASES)
+      {
+         JSONValue value = factory.read(new StringReader("[" + text + "]"));
+         JSONNumber number = (JSONNumber) ((JSONArray) value).get(0);
+
+         Assert.assertEquals(text, JSONDouble.class, number.getClass());
+         assertSameDouble(text, number.getDoubleValue());
+      }
+   }
+
+   @Test
+   public void testRandomCorpus() throws IOException, JSONException
+   {
+      Random random = new Random(47);
+      List<String> texts = new ArrayList<String>(Arrays.asList("-0.0", "-0.0e5", "-0e-3", "-0.000E+12"));
+      StringBuilder json = new StringBuilder("[");
+
+      while (texts.size() < 200000)
+      {
+         texts.add(randomNumber(random));
+      }
+
+      for (String text : texts)
+      {
+         json.append((json.length() == 1) ? "" : ",").append(text);
+      }
+
+      json.append(']');
+
+      JSONValueFactory factory = new DoubleFactory();
+
+      // in one buffer, split across refills, and a character at a time
+      for (Reader reader : new Reader[] { new StringReader(json.toString()), new TrickleReader(json.toString(), 7), new TrickleReader(json.toString(), 1) })
+      {
+         JSONArray array = (JSONArray) factory.read(reader);
+         Assert.assertEquals(texts.size(), array.size());
+
+         for (int i = 0; i < texts.size(); i++)
+         {
+            // too large for a double stays exact
+            String text = texts.get(i);
+            boolean infinite = Double.isInfinite(Double.parseDouble(text));
+
+            Assert.assertEquals(text, infinite ? JSONNumber.class : JSONDouble.class, array.get(i).getClass());
+            if (infinite) Assert.assertEquals(text, new BigDecimal(text), array.get(i).getValue());
+            else assertSameDouble(text, ((JSONNumber) array.get(i)).getDoubleValue());
+         }
+      }
+   }
+
+   @Test
+   public void testIntegersAndHugeNumbersStayExact() throws IOException, JSONException
+   {
+      JSONArray array = (JSONArray) new DoubleFactory().read(new StringReader("[ 12345678901234567890123, -0, 1e400, -2.5e-1 ]"));
+
+      Assert.assertEquals(JSONNumber.class, array.get(0).getClass());
+      Assert.assertEquals(new BigDecimal("12345678901234567890123"), array.get(0).getValue());
+      Assert.assertEquals(JSONNumber.class, array.get(1).getClass());
+      Assert.assertEquals(JSONNumber.class, array.get(2).getClass());
+      Assert.assertEquals(new BigDecimal("1e400"), array.get(2).getValue());
+      Assert.assertEquals(JSONDouble.class, array.get(3).getClass());
+      Assert.assertEquals(-0.25, ((JSONNumber) array.get(3)).getDoubleValue(), 0);
+   }
+
+   @Test
+   public void testErrorsMatchExactMode() throws IOException, JSONException
+   {
+      String[] bad = { "[1.]", "[1.x]", "[1e]", "[1e+]", "[-]", "[-x]", "[1.5e-]" };
+      JSONValueFactory factory = new DoubleFactory();
+
+      for (String json : bad)
+      {
+         String expected = null;
+
+         try
+         {
+            JSONValueFactory.DEFAULT.read(new StringReader(json));
+            Assert.fail("Expected JSONException for " + json);
+         }
+         catch (JSONException exc)
+         {
+            expected = exc.getMessage();
+         }
+
+         try
+         {
+            factory.read(new StringReader(json));
+            Assert.fail("Expected JSONException for " + json);
+         }
+         catch (JSONException exc)
+         {
+            Assert.assertEquals(json, expected, exc.getMessage());
+         }
+      }
+   }
+
+   @Test
+   public void testMaxNumberLength() throws IOException, JSONException
+   {
+      JSONValueFactory factory = new DoubleFactory()
+      {
+         @Override
+         public int getMaxNumberLength()
+         {
+            return 6;
+         }
+      };
+
+      Assert.assertEquals(JSONDouble.class, ((JSONArray) factory.read(new StringReader("[-2.5e1]"))).get(0).getClass());
+
+      try
+      {
+         factory.read(new StringReader("[-2.5e10]"));
+         Assert.fail("Expected JSONException");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertTrue(exc.getMessage(), exc.getMessage().endsWith("Number is longer than 6 characters"));
+      }
+   }
+
+   @Test
+   public void testValue() throws IOException, JSONException
+   {
+      JSONDouble number = new JSONDouble(0.1);
+
+      Assert.assertEquals(new BigDecimal("0.1"), number.getBigDecimalValue());
+      Assert.assertEquals(new BigDecimal("0.1"), number.getValue());
+
+      StringWriter writer = new StringWriter();
+      number.write("", writer, false);
+      Assert.assertEquals("0.1", writer.toString());
+
+      // copies
+      JSONValue copy = number.deepCopy();
+      Assert.assertEquals(JSONDouble.class, copy.getClass());
+      Assert.assertEquals(0.1, ((JSONNumber) copy).getDoubleValue(), 0);
+
+      JSONNumber exact = new JSONNumber();
+      exact.copyValue(number);
+      Assert.assertEquals(new BigDecimal("0.1"), exact.getBigDecimalValue());
+
+      number.copyValue(new JSONNumber(new BigDecimal("2.5")));
+      Assert.assertEquals(2.5, number.getDoubleValue(), 0);
+
+      Assert.assertEquals(new BigDecimal("2.5"), ((JSONNumber) AbstractJSONValue.freeze(number)).getBigDecimalValue());
+
+      try
+      {
+         number.setDoubleValue(Double.NaN);
+         Assert.fail("Expected NumberFormatException");
+      }
+      catch (NumberFormatException exc)
+      {
+         Assert.assertEquals(2.5, number.getDoubleValue(), 0);
+      }
+   }
+
+   @Test
+   public void testRead() throws IOException, JSONException
+   {
+      JSONDouble number = new JSONDouble();
+      number.read("$", new java.io.PushbackReader(new StringReader("12e-1 "), 1));
+      Assert.assertEquals(1.2, number.getDoubleValue(), 0);
+
+      try
+      {
+         new JSONDouble().read("$", new java.io.PushbackReader(new StringReader("1e400 "), 1));
+         Assert.fail("Expected JSONException");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals("$", exc.getPath());
+      }
+   }
+}
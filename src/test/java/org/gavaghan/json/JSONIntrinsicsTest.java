@@ -0,0 +1,91 @@
+package org.gavaghan.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONIntrinsicsTest
+{
+   @Test
+   public void testRelease()
+   {
+      // the java17 profile runs the suite a second time against the Java 17 classes
+      Assert.assertEquals(Integer.getInteger("expectedIntrinsics", 8).intValue(), JSONIntrinsics.release());
+   }
+
+   @Test
+   public void testBigEndian()
+   {
+      Random random = new Random(46);
+      byte[] buf = new byte[13];
+
+      for (int i = 0; i < 1000; i++)
+      {
+         int pos = random.nextInt(5);
+         int intValue = random.nextInt();
+         long longValue = random.nextLong();
+
+         JSONIntrinsics.putIntBE(buf, pos, intValue);
+         Assert.assertEquals((byte) (intValue >> 24), buf[pos]);
+         Assert.assertEquals((byte) intValue, buf[pos + 3]);
+         Assert.assertEquals(intValue, JSONIntrinsics.getIntBE(buf, pos));
+
+         JSONIntrinsics.putLongBE(buf, pos, longValue);
+         Assert.assertEquals((byte) (longValue >> 56), buf[pos]);
+         Assert.assertEquals((byte) longValue, buf[pos + 7]);
+         Assert.assertEquals(longValue, JSONIntrinsics.getLongBE(buf, pos));
+      }
+   }
+
+   @Test
+   public void testEncodeUTF8()
+   {
+      String[] strings = { "", "short", repeat("ascii ", 20), repeat("café ", 20), repeat("€😀", 40), repeat("x", 70) + "\udc00" + "\ud800y" };
+
+      for (String str : strings)
+      {
+         byte[] bytes = JSONIntrinsics.encodeUTF8(str);
+         if (bytes != null) Assert.assertArrayEquals(str.getBytes(StandardCharsets.UTF_8), bytes);
+      }
+   }
+
+   @Test
+   public void testUTF8WriterMatchesOutputStreamWriter() throws IOException
+   {
+      String[] strings = { repeat("café ", 20), repeat("€😀", 40), repeat("x", 70) + "\udc00" + "\ud800y", repeat("x", 70) + "\ud83d", "\ude00" + repeat("z", 70) };
+
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      ByteArrayOutputStream actual = new ByteArrayOutputStream();
+
+      try (Writer osw = new OutputStreamWriter(expected, StandardCharsets.UTF_8); Writer utf8 = new UTF8Writer(actual))
+      {
+         // consecutive strings so a pending high surrogate meets the next one
+         for (String str : strings)
+         {
+            osw.write(str);
+            utf8.write(str);
+         }
+      }
+
+      Assert.assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+   }
+
+   static private String repeat(String str, int count)
+   {
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0; i < count; i++)
+         builder.append(str);
+      return builder.toString();
+   }
+}
@@ -0,0 +1,275 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONNumberArrayTest
+{
+   /**
+    * A factory that never packs arrays.
+    */
+   static private class UnpackedFactory extends JSONValueFactory
+   {
+      @Override
+      public int getMinNumberArraySize()
+      {
+         return Integer.MAX_VALUE;
+      }
+   }
+
+   /**
+    * A factory that reads doubles.
+    */
+   static private class DoubleFactory extends JSONValueFactory
+   {
+      @Override
+      public boolean isDoublePrecision()
+      {
+         return true;
+      }
+   }
+
+   /**
+    * A factory that reads doubles and never packs arrays.
+    */
+   static private class UnpackedDoubleFactory extends DoubleFactory
+   {
+      @Override
+      public int getMinNumberArraySize()
+      {
+         return Integer.MAX_VALUE;
+      }
+   }
+
+   static private String render(JSONValue value, boolean pretty) throws IOException
+   {
+      StringWriter writer = new StringWriter();
+      value.write("", writer, pretty);
+      return writer.toString();
+   }
+
+   static private String array(String... numbers)
+   {
+      StringBuilder builder = new StringBuilder("[");
+
+      for (int i = 0; i < 20; i++)
+      {
+         builder.append((i == 0) ? "" : ", ").append(numbers[i % numbers.length]);
+      }
+
+      return builder.append(']').toString();
+   }
+
+   /**
+    * Make sure packing doesn't change what's read or written.
+    */
+   static private JSONNumberArray assertSameAsUnpacked(JSONValueFactory packed, JSONValueFactory unpacked, String json) throws IOException, JSONException
+   {
+      JSONValue value = packed.read(new StringReader(json));
+      JSONValue plain = unpacked.read(new StringReader(json));
+
+      Assert.assertEquals(json, JSONNumberArray.class, value.getClass());
+      Assert.assertEquals(JSONArray.class, plain.getClass());
+
+      for (boolean pretty : new boolean[] { false, true })
+      {
+         Assert.assertEquals(json, render(plain, pretty), render(value, pretty));
+      }
+
+      JSONNumberArray numbers = (JSONNumberArray) value;
+      JSONArray list = (JSONArray) plain;
+      Assert.assertEquals(list.size(), numbers.size());
+
+      for (int i = 0; i < list.size(); i++)
+      {
+         Assert.assertEquals(json, ((JSONNumber) list.get(i)).getBigDecimalValue(), numbers.getBigDecimal(i));
+         Assert.assertEquals(json, ((JSONNumber) list.get(i)).getDoubleValue(), numbers.getDouble(i), 0);
+      }
+
+      Assert.assertTrue(json, AbstractJSONValue.deepEquals(plain, packed.read(new StringReader(json))));
+
+      return numbers;
+   }
+
+   @Test
+   public void testLongs() throws IOException, JSONException
+   {
+      JSONNumberArray numbers = assertSameAsUnpacked(JSONValueFactory.DEFAULT, new UnpackedFactory(), array("1", "-2", "0", "-0", "9223372036854775", "42"));
+
+      Assert.assertEquals(-2, numbers.getLong(1));
+      Assert.assertEquals(20, numbers.toLongArray().length);
+      Assert.assertEquals(9223372036854775L, numbers.toLongArray()[4]);
+      Assert.assertEquals(42.0, numbers.toDoubleArray()[5], 0);
+   }
+
+   @Test
+   public void testDecimals() throws IOException, JSONException
+   {
+      JSONNumberArray numbers = assertSameAsUnpacked(JSONValueFactory.DEFAULT, new UnpackedFactory(), array("1.50", "-0.0", "1e2", "2.5E-3", "-7", "0.1"));
+
+      Assert.assertEquals(new BigDecimal("1.50"), numbers.getBigDecimal(0));
+      Assert.assertEquals(100, numbers.getLong(2));
+      Assert.assertEquals(0.0025, numbers.getDouble(3), 0);
+
+      try
+      {
+         numbers.getLong(0);
+         Assert.fail("Expected ArithmeticException");
+      }
+      catch (ArithmeticException exc)
+      {
+         // has a fraction
+      }
+   }
+
+   @Test
+   public void testBigDecimalFallback() throws IOException, JSONException
+   {
+      JSONNumberArray numbers = assertSameAsUnpacked(JSONValueFactory.DEFAULT, new UnpackedFactory(), array("1", "2.5", "123456789012345678901234567890.5", "-9223372036854775808", "1e400"));
+
+      Assert.assertEquals(new BigDecimal("123456789012345678901234567890.5"), numbers.getBigDecimal(2));
+      Assert.assertEquals(Long.MIN_VALUE, numbers.getLong(3));
+   }
+
+   @Test
+   public void testDoubles() throws IOException, JSONException
+   {
+      JSONNumberArray numbers = assertSameAsUnpacked(new DoubleFactory(), new UnpackedDoubleFactory(), array("1.5", "2", "-3.25e2", "1e-7", "-0", "0.1"));
+
+      Assert.assertEquals(-325.0, numbers.toDoubleArray()[2], 0);
+      Assert.assertEquals(2, numbers.getLong(1));
+
+      // integers starting the array, and integers among doubles
+      assertSameAsUnpacked(new DoubleFactory(), new UnpackedDoubleFactory(), array("1", "2", "3", "4.5"));
+
+      // elements keep their types once unpacked
+      Assert.assertEquals(JSONDouble.class, numbers.get(0).getClass());
+      Assert.assertEquals(JSONNumber.class, numbers.get(1).getClass());
+   }
+
+   @Test
+   public void testNotPacked() throws IOException, JSONException
+   {
+      // too small, not all numbers, or integers that a double can't hold among doubles
+      String[] plain = { "[1, 2, 3]", array("1", "\"a\""), array("1", "[2]"), array("1", "true") };
+
+      for (String json : plain)
+      {
+         Assert.assertEquals(json, JSONArray.class, JSONValueFactory.DEFAULT.read(new StringReader(json)).getClass());
+      }
+
+      Assert.assertEquals(JSONArray.class, new DoubleFactory().read(new StringReader(array("1.5", "12345678901234567"))).getClass());
+   }
+
+   @Test
+   public void testNested() throws IOException, JSONException
+   {
+      String json = "{ \"a\" : " + array("1.5") + ", \"b\" : [ " + array("1") + ", 2, " + array("3") + " ], \"c\" : 4 }";
+      JSONObject object = (JSONObject) JSONValueFactory.DEFAULT.read(new StringReader(json));
+      JSONArray b = (JSONArray) object.get("b");
+
+      Assert.assertEquals(JSONNumberArray.class, object.get("a").getClass());
+      Assert.assertEquals(JSONArray.class, b.getClass());
+      Assert.assertEquals(JSONNumberArray.class, b.get(0).getClass());
+      Assert.assertEquals(JSONNumber.class, b.get(1).getClass());
+      Assert.assertEquals(JSONNumberArray.class, b.get(2).getClass());
+      Assert.assertEquals("[a, b, c]", object.keySet().toString());
+
+      Assert.assertEquals(render(new UnpackedFactory().read(new StringReader(json)), true), render(object, true));
+   }
+
+   @Test
+   public void testUnpack() throws IOException, JSONException
+   {
+      JSONNumberArray numbers = (JSONNumberArray) JSONValueFactory.DEFAULT.read(new StringReader(array("1", "2.5")));
+      JSONNumberArray copy = (JSONNumberArray) numbers.deepCopy();
+
+      // modify through the list view
+      numbers.set(0, new JSONString("x"));
+      numbers.remove(19);
+
+      Assert.assertEquals(19, numbers.size());
+      Assert.assertEquals(new BigDecimal("2.5"), numbers.getBigDecimal(1));
+      Assert.assertTrue(render(numbers, false).startsWith("[" + JSONObject.EOL + "   \"x\"," + JSONObject.EOL + "   2.5,"));
+
+      try
+      {
+         numbers.getDouble(0);
+         Assert.fail("Expected RuntimeException");
+      }
+      catch (RuntimeException exc)
+      {
+         // not a number
+      }
+
+      // the copy was taken before
+      Assert.assertEquals(20, copy.size());
+      Assert.assertEquals(1, copy.getLong(0));
+   }
+
+   @Test
+   public void testConstructors() throws IOException
+   {
+      JSONNumberArray doubles = new JSONNumberArray(new double[] { 1.5, -2 });
+      JSONNumberArray longs = new JSONNumberArray(new long[] { 3, 4 });
+
+      // arrays are always laid out one element per line
+      Assert.assertEquals("[" + JSONObject.EOL + "   1.5," + JSONObject.EOL + "   -2.0" + JSONObject.EOL + "]", render(doubles, false));
+      Assert.assertEquals("[" + JSONObject.EOL + "   3," + JSONObject.EOL + "   4" + JSONObject.EOL + "]", render(longs, false));
+      Assert.assertEquals("[]", render(new JSONNumberArray(), false));
+      Assert.assertEquals(new JSONDouble(1.5).getBigDecimalValue(), ((JSONNumber) doubles.get(0)).getBigDecimalValue());
+   }
+
+   @Test
+   public void testRandomArrays() throws IOException, JSONException
+   {
+      Random random = new Random(48);
+      JSONValueFactory[][] factories = { { JSONValueFactory.DEFAULT, new UnpackedFactory() }, { new DoubleFactory(), new UnpackedDoubleFactory() } };
+
+      for (int n = 0; n < 500; n++)
+      {
+         StringBuilder json = new StringBuilder("[");
+         int size = 16 + random.nextInt(100);
+         int style = random.nextInt(4);
+
+         for (int i = 0; i < size; i++)
+         {
+            if (i != 0) json.append(',');
+
+            switch ((style == 3) ? random.nextInt(3) : style)
+            {
+               case 0:
+                  json.append(random.nextInt() >> random.nextInt(32));
+                  break;
+               case 1:
+                  json.append(new BigDecimal(random.nextGaussian()).round(new java.math.MathContext(1 + random.nextInt(17))));
+                  break;
+               default:
+                  json.append(random.nextDouble() * 1000).append(random.nextBoolean() ? "e" + (random.nextInt(40) - 20) : "");
+                  break;
+            }
+         }
+
+         String text = json.append(']').toString();
+
+         for (JSONValueFactory[] pair : factories)
+         {
+            JSONValue packed = pair[0].read(new StringReader(text));
+            JSONValue plain = pair[1].read(new StringReader(text));
+
+            Assert.assertEquals(text, render(plain, false), render(packed, false));
+            Assert.assertTrue(text, AbstractJSONValue.deepEquals(plain, packed));
+         }
+      }
+   }
+}
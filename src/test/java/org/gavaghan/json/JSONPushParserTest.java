@@ -0,0 +1,305 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONPushParserTest
+{
+   static private String readResource(String name) throws IOException
+   {
+      StringBuilder builder = new StringBuilder();
+
+      try (InputStream instr = JSONPushParserTest.class.getResourceAsStream(name); InputStreamReader rdr = new InputStreamReader(instr, "UTF-8"))
+      {
+         char[] buf = new char[1024];
+         int count;
+         while ((count = rdr.read(buf)) > 0)
+            builder.append(buf, 0, count);
+      }
+
+      return builder.toString();
+   }
+
+   static private List<JSONValue> feedBytes(JSONPushParser parser, byte[] bytes, int chunk) throws JSONException
+   {
+      List<JSONValue> values = new ArrayList<JSONValue>();
+
+      for (int i = 0; i < bytes.length; i += chunk)
+      {
+         parser.feed(ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i)));
+         for (JSONValue value = parser.poll(); value != null; value = parser.poll())
+            values.add(value);
+      }
+
+      parser.endOfInput();
+      for (JSONValue value = parser.poll(); value != null; value = parser.poll())
+         values.add(value);
+
+      return values;
+   }
+
+   @Test
+   public void testChunks() throws IOException, JSONException
+   {
+      String json = readResource("JSONObjectTest.json") + " \"café € 😀\"";
+      byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+      String expected = JSONValueFactory.DEFAULT.read(new StringReader(json)).toPrettyString();
+
+      for (int chunk : new int[] { 1, 2, 3, 7, 100, bytes.length })
+      {
+         List<JSONValue> values = feedBytes(new JSONPushParser(), bytes, chunk);
+
+         Assert.assertEquals(2, values.size());
+         Assert.assertEquals(expected, values.get(0).toPrettyString());
+         Assert.assertEquals("café € 😀", values.get(1).getValue());
+      }
+   }
+
+   @Test
+   public void testValueSequence() throws JSONException
+   {
+      JSONPushParser parser = new JSONPushParser();
+
+      parser.feed("{\"a\":[1,\"]}\"]}[2]\"x\"12 tr");
+      Assert.assertEquals(4, parser.available());
+      Assert.assertEquals("{\"a\":[1,\"]}\"]}", parser.poll().toFlatString().replaceAll("\\s", ""));
+      Assert.assertEquals("[2]", parser.poll().toFlatString().replaceAll("\\s", ""));
+      Assert.assertEquals("x", parser.poll().getValue());
+      Assert.assertEquals("12", parser.poll().getValue().toString());
+      Assert.assertNull(parser.poll());
+
+      parser.feed("ue\nnull");
+      Assert.assertEquals(Boolean.TRUE, parser.poll().getValue());
+      Assert.assertNull(parser.poll());
+
+      try
+      {
+         parser.feed(",");
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         // values are separated by whitespace, not commas
+      }
+
+      Assert.assertSame(JSONNull.INSTANCE, parser.poll());
+   }
+
+   @Test
+   public void testStreamArrays() throws JSONException
+   {
+      JSONPushParser parser = new JSONPushParser(JSONValueFactory.DEFAULT, true);
+
+      parser.feed(" [ {\"a\": [1, 2]}, 3");
+      Assert.assertEquals(1, parser.available());
+      Assert.assertEquals(2, ((JSONArray) ((JSONObject) parser.poll()).get("a")).size());
+
+      parser.feed(", \"x\" ] [] [true]\n\"y\"");
+      parser.endOfInput();
+
+      Assert.assertEquals("3", parser.poll().getValue().toString());
+      Assert.assertEquals("x", parser.poll().getValue());
+      Assert.assertEquals(Boolean.TRUE, parser.poll().getValue());
+      Assert.assertEquals("y", parser.poll().getValue());
+      Assert.assertNull(parser.poll());
+
+      for (String bad : new String[] { "[1,]", "[,1]", "[1 2]", "[1," })
+      {
+         try
+         {
+            parser = new JSONPushParser(JSONValueFactory.DEFAULT, true);
+            parser.feed(bad);
+            parser.endOfInput();
+            Assert.fail("Exception expected for " + bad);
+         }
+         catch (JSONException exc)
+         {
+            // expected
+         }
+      }
+   }
+
+   @Test
+   public void testEndOfInput() throws JSONException
+   {
+      JSONPushParser parser = new JSONPushParser();
+      parser.feed("-1.5e3");
+      Assert.assertNull(parser.poll());
+
+      parser.endOfInput();
+      Assert.assertEquals("-1.5E+3", parser.poll().getValue().toString());
+      Assert.assertTrue(parser.isEnded());
+
+      try
+      {
+         parser.feed("1");
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalStateException exc)
+      {
+         // expected
+      }
+
+      for (String bad : new String[] { "{\"a\":", "[1, {}", "\"open", "]", "{\"a\" 1}" })
+      {
+         try
+         {
+            parser = new JSONPushParser();
+            parser.feed(bad);
+            parser.endOfInput();
+            Assert.fail("Exception expected for " + bad);
+         }
+         catch (JSONException exc)
+         {
+            // expected
+         }
+      }
+   }
+
+   @Test
+   public void testFactories() throws IOException, JSONException
+   {
+      String commented = readResource("CommentedJSONObjectTest.json");
+      String expected = CommentedJSONValueFactory.COMMENTED_DEFAULT.read(new StringReader(commented)).toPrettyString();
+
+      List<JSONValue> values = feedBytes(new JSONPushParser(CommentedJSONValueFactory.COMMENTED_DEFAULT), ("/* { */ // [\n" + commented + " /* } */").getBytes(StandardCharsets.UTF_8), 5);
+      Assert.assertEquals(1, values.size());
+      Assert.assertEquals(expected, values.get(0).toPrettyString());
+
+      // callbacks and recast run as the values complete
+      final int[] strings = new int[1];
+      JSONValueFactory counting = new JSONValueFactory()
+      {
+         @Override
+         protected JSONValue onString(String path, PushbackReader pbr) throws IOException, JSONException
+         {
+            strings[0]++;
+            return super.onString(path, pbr);
+         }
+      };
+
+      JSONPushParser parser = new JSONPushParser(counting);
+      parser.feed("[\"a\", \"b\"] \"c\"");
+      Assert.assertEquals(3, strings[0]);
+
+      TestTypedJSONObject typed = new TestTypedJSONObject();
+      typed.setString("Hello, World!");
+
+      parser = new JSONPushParser(TypedJSONValueFactory.TYPED_DEFAULT);
+      parser.feed(typed.toFlatString());
+      Assert.assertEquals("Hello, World!", ((TestTypedJSONObject) parser.poll()).getString());
+   }
+
+   @Test
+   public void testSelectorServer() throws Exception
+   {
+      final String json = readResource("JSONObjectTest.json");
+      final byte[] bytes = (json + "\n" + json + "\n[\"€\"]\n").getBytes(StandardCharsets.UTF_8);
+      List<JSONValue> values = new ArrayList<JSONValue>();
+
+      try (Selector selector = Selector.open(); ServerSocketChannel server = ServerSocketChannel.open())
+      {
+         server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+         server.configureBlocking(false);
+         server.register(selector, SelectionKey.OP_ACCEPT);
+
+         final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+
+         // a slow client that sends a few bytes at a time
+         Thread client = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try (SocketChannel channel = SocketChannel.open(address))
+               {
+                  for (int i = 0; i < bytes.length; i += 13)
+                  {
+                     channel.write(ByteBuffer.wrap(bytes, i, Math.min(13, bytes.length - i)));
+                     Thread.sleep(1);
+                  }
+               }
+               catch (Exception exc)
+               {
+                  throw new RuntimeException(exc);
+               }
+            }
+         };
+         client.start();
+
+         ByteBuffer buffer = ByteBuffer.allocate(64);
+         long deadline = System.currentTimeMillis() + 10000;
+         boolean done = false;
+
+         while (!done && (System.currentTimeMillis() < deadline))
+         {
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+            while (keys.hasNext())
+            {
+               SelectionKey key = keys.next();
+               keys.remove();
+
+               if (key.isAcceptable())
+               {
+                  SocketChannel channel = server.accept();
+                  channel.configureBlocking(false);
+                  channel.register(selector, SelectionKey.OP_READ, new JSONPushParser());
+               }
+               else if (key.isReadable())
+               {
+                  JSONPushParser parser = (JSONPushParser) key.attachment();
+                  int count = ((SocketChannel) key.channel()).read(buffer);
+
+                  if (count < 0)
+                  {
+                     parser.endOfInput();
+                     key.channel().close();
+                     done = true;
+                  }
+                  else
+                  {
+                     buffer.flip();
+                     parser.feed(buffer);
+                     buffer.clear();
+                  }
+
+                  for (JSONValue value = parser.poll(); value != null; value = parser.poll())
+                     values.add(value);
+               }
+            }
+         }
+
+         client.join(10000);
+      }
+
+      String expected = JSONValueFactory.DEFAULT.read(new StringReader(json)).toPrettyString();
+
+      Assert.assertEquals(3, values.size());
+      Assert.assertEquals(expected, values.get(0).toPrettyString());
+      Assert.assertEquals(expected, values.get(1).toPrettyString());
+      Assert.assertEquals("€", ((JSONArray) values.get(2)).get(0).getValue());
+   }
+}
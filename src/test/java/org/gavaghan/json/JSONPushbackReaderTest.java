@@ -0,0 +1,120 @@
+package org.gavaghan.json;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONPushbackReaderTest
+{
+   /** Hands out one character per read to exercise buffer refills. */
+   static private class TrickleReader extends StringReader
+   {
+      public TrickleReader(String s)
+      {
+         super(s);
+      }
+
+      @Override
+      public int read(char[] cbuf, int off, int len) throws IOException
+      {
+         return super.read(cbuf, off, Math.min(len, 1));
+      }
+   }
+
+   @Test
+   public void testPushbackAcrossRefill() throws IOException
+   {
+      try (JSONPushbackReader pbr = new JSONPushbackReader(new TrickleReader("abc"), 2))
+      {
+         Assert.assertEquals('a', pbr.read());
+         Assert.assertEquals('b', pbr.read());
+         pbr.unread('b');
+         pbr.unread('x');
+         Assert.assertEquals('x', pbr.read());
+         Assert.assertEquals('b', pbr.read());
+         Assert.assertEquals('c', pbr.read());
+         Assert.assertEquals(-1, pbr.read());
+      }
+   }
+
+   @Test
+   public void testConcatenatedDocuments() throws IOException, JSONException
+   {
+      StringBuilder big = new StringBuilder("[");
+      for (int i = 0; i < 3000; i++)
+         big.append(i > 0 ? "," : "").append(i);
+      big.append(']');
+
+      String json = "{\"a\":1} {\"b\":2}\n[3] " + big + " 4 \"x\"";
+      String[] expected = { "{\"a\":1}", "{\"b\":2}", "[3]", big.toString(), "4", "\"x\"" };
+
+      // with and without mark() support, and split into small reads
+      Reader[] readers = { new StringReader(json), new BufferedReader(new StringReader(json), 16), new InputStreamReader(new ByteArrayInputStream(json.getBytes("UTF-8")), "UTF-8"), new TrickleReader(json) };
+
+      for (Reader reader : readers)
+      {
+         for (String text : expected)
+         {
+            JSONValue value = JSONValueFactory.DEFAULT.read(reader);
+            // a top-level number needs a character after it
+            Assert.assertEquals(JSONValueFactory.DEFAULT.read(new StringReader(text + " ")).toFlatString(), value.toFlatString());
+         }
+
+         Assert.assertNull(JSONValueFactory.DEFAULT.read(reader));
+      }
+
+      // validating leaves the rest of the input too
+      Reader reader = new StringReader(json);
+      Assert.assertTrue(JSONValueFactory.DEFAULT.validate(reader));
+      Assert.assertEquals("{\"b\":2}", JSONValueFactory.DEFAULT.read(reader).toFlatString());
+   }
+
+   @Test
+   public void testSharedArray() throws IOException
+   {
+      char[] source = "hello".toCharArray();
+
+      try (JSONPushbackReader pbr = new JSONPushbackReader(source, 1, 3, 1))
+      {
+         Assert.assertEquals('e', pbr.read());
+         pbr.unread('e');
+         Assert.assertEquals('e', pbr.read());
+
+         // pushing back something else copies rather than writing to the array
+         pbr.unread('E');
+         Assert.assertEquals('E', pbr.read());
+         Assert.assertEquals('l', pbr.read());
+         Assert.assertEquals('l', pbr.read());
+         Assert.assertEquals(-1, pbr.read());
+      }
+
+      Assert.assertEquals("hello", new String(source));
+   }
+
+   @Test
+   public void testSkipWhitespace() throws IOException, JSONException
+   {
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < 20000; i++)
+         text.append(" \t\r\n".charAt(i % 4));
+      text.append("x");
+
+      Reader reader = new TrickleReader(text.toString());
+
+      try (JSONPushbackReader pbr = new JSONPushbackReader(reader, 1))
+      {
+         JSONValueFactory.STRICT.skipWhitespace(pbr);
+         Assert.assertEquals('x', pbr.read());
+      }
+   }
+}
@@ -0,0 +1,129 @@
+package org.gavaghan.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONSnapshotTest
+{
+   @Rule
+   public TemporaryFolder mFolder = new TemporaryFolder();
+
+   static private void assertEqualTrees(JSONValue expected, JSONValue actual)
+   {
+      // mutable values compare by identity, so compare frozen copies
+      Assert.assertEquals(AbstractJSONValue.freeze(expected), AbstractJSONValue.freeze(actual));
+   }
+
+   static private byte[] snapshot(JSONValue value) throws IOException
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      JSONSnapshot.write(value, out);
+      return out.toByteArray();
+   }
+
+   @Test
+   public void testRoundTrips() throws IOException, JSONException
+   {
+      JSONValue plain = TestSupport.readResource(JSONValueFactory.DEFAULT, "JSONObjectTest.json");
+      JSONValue commented = TestSupport.readResource(CommentedJSONValueFactory.COMMENTED_DEFAULT, "CommentedJSONObjectTest.json");
+
+      for (JSONValue value : new JSONValue[] { plain, commented })
+      {
+         JSONValue copy = JSONSnapshot.wrap(ByteBuffer.wrap(snapshot(value))).toJSONValue();
+
+         assertEqualTrees(value, copy);
+         Assert.assertEquals(value.toPrettyString(), copy.toPrettyString());
+      }
+
+      String json = "[0, -1, 36028797018963967, -36028797018963968, 36028797018963968, 18446744073709551616, 1.500, -2.5E-20, \"café € 😀\"]";
+      JSONValue numbers = JSONValueFactory.DEFAULT.read(new StringReader(json));
+      JSONArray copy = (JSONArray) JSONSnapshot.wrap(ByteBuffer.wrap(snapshot(numbers))).toJSONValue();
+
+      assertEqualTrees(numbers, copy);
+      Assert.assertEquals(3, ((BigDecimal) copy.get(6).getValue()).scale());
+   }
+
+   @Test
+   public void testMappedFile() throws IOException, JSONException
+   {
+      JSONValue plain = TestSupport.readResource(JSONValueFactory.DEFAULT, "JSONObjectTest.json");
+      JSONArray big = new JSONArray();
+
+      for (int i = 0; i < 1000; i++)
+         big.getListValue().add(plain);
+
+      File file = mFolder.newFile("snapshot.bin");
+      try (OutputStream out = new FileOutputStream(file))
+      {
+         JSONSnapshot.write(big, out);
+      }
+
+      JSONSnapshot snapshot = JSONSnapshot.open(file.toPath());
+
+      // keys and strings are stored once however often they occur
+      Assert.assertEquals(17, snapshot.getStringCount());
+      assertEqualTrees(big, snapshot.toJSONValue());
+
+      // navigate without materializing
+      int root = snapshot.getRoot();
+      Assert.assertEquals(JSONTape.Type.ARRAY, snapshot.getType(root));
+      Assert.assertEquals(1000, snapshot.size(root));
+
+      int last = snapshot.getElement(root, 999);
+      Assert.assertEquals(JSONTape.Type.OBJECT, snapshot.getType(last));
+      Assert.assertEquals(10, snapshot.size(last));
+      Assert.assertEquals(new BigDecimal(123), snapshot.getBigDecimal(snapshot.getMember(last, "number")));
+      Assert.assertEquals("Hello, World!", snapshot.getString(snapshot.getMember(last, "string")));
+      Assert.assertTrue(snapshot.getBoolean(snapshot.getMember(last, "true")));
+      Assert.assertTrue(snapshot.isNull(snapshot.getMember(last, "null")));
+      Assert.assertEquals(-1, snapshot.getMember(last, "missing"));
+      Assert.assertEquals(-1, snapshot.first(snapshot.getMember(last, "emptyarray")));
+
+      int object = snapshot.getMember(last, "object");
+      Assert.assertEquals("color", snapshot.getKey(snapshot.first(object)));
+      assertEqualTrees(((JSONObject) plain).get("object"), snapshot.toJSONValue(object));
+   }
+
+   @Test
+   public void testBadSnapshots() throws IOException, JSONException
+   {
+      byte[] bytes = snapshot(TestSupport.readResource(JSONValueFactory.DEFAULT, "JSONObjectTest.json"));
+
+      byte[] badMagic = bytes.clone();
+      badMagic[0] = 'X';
+
+      byte[] badVersion = bytes.clone();
+      badVersion[7] = 99;
+
+      byte[][] bad = { badMagic, badVersion, new byte[3], Arrays.copyOf(bytes, bytes.length - 8) };
+
+      for (byte[] snapshot : bad)
+      {
+         try
+         {
+            JSONSnapshot.wrap(ByteBuffer.wrap(snapshot));
+            Assert.fail("Exception expected");
+         }
+         catch (IOException exc)
+         {
+            // expected
+         }
+      }
+   }
+}
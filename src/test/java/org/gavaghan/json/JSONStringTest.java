@@ -15,9 +15,20 @@
 ******************************************************************************/
 package org.gavaghan.json;
 
+import java.io.ByteArrayOutputStream;
 import java.io.PushbackReader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -85,4 +96,162 @@ public class JSONStringTest
 			Assert.assertEquals("\"ABC\\b\\n\\\"DE\\u123dF\\\\\"", output);
 		}
 	}
+
+	static private String randomString(Random random)
+	{
+		// mostly ASCII, Latin-1 or anything, to reach each of the compact forms
+		int range = new int[] { 0x7F, 0xFF, 0x10FFFF }[random.nextInt(3)];
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = random.nextInt(20); i > 0; i--)
+		{
+			int cp = random.nextBoolean() ? (32 + random.nextInt(95)) : random.nextInt(range + 1);
+			if ((cp >= 0xD800) && (cp <= 0xDFFF)) cp = 'x';
+			builder.appendCodePoint(cp);
+		}
+
+		return builder.toString();
+	}
+
+	static private String render(JSONValue value, Writer writer) throws Exception
+	{
+		value.write("", writer, false);
+		writer.flush();
+		return writer.toString();
+	}
+
+	@Test
+	public void testLazyUTF8() throws Exception
+	{
+		Random random = new Random(49);
+
+		for (int n = 0; n < 20000; n++)
+		{
+			String text = randomString(random);
+			String other = (random.nextInt(4) == 0) ? text : randomString(random);
+			byte[] utf8 = ("<<" + text + ">>").getBytes(StandardCharsets.UTF_8);
+
+			JSONString lazy = JSONString.fromUTF8(utf8, 2, utf8.length - 4, random.nextBoolean());
+			JSONString plain = new JSONString(text);
+
+			// compared and written without decoding
+			Assert.assertEquals(text, text.length(), lazy.length());
+			Assert.assertEquals(text, text.equals(other), lazy.contentEquals(other));
+			Assert.assertEquals(text, Integer.signum(text.compareTo(other)), Integer.signum(lazy.compareTo(other)));
+			Assert.assertTrue(text, lazy.contentEquals(plain));
+			Assert.assertEquals(text, text.equals(other), lazy.contentEquals(JSONString.fromUTF8(other.getBytes(StandardCharsets.UTF_8), 0, other.getBytes(StandardCharsets.UTF_8).length, true)));
+
+			Assert.assertEquals(render(plain, new StringWriter()), render(lazy, new StringWriter()));
+			Assert.assertEquals(render(plain, new StringWriter()), render(lazy, new StringBuilderWriter(16)));
+
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			render(plain, new UTF8Writer(expected));
+			render(lazy, new UTF8Writer(actual));
+			Assert.assertArrayEquals(text, expected.toByteArray(), actual.toByteArray());
+
+			Assert.assertEquals(text, ByteSink.utf8Length(text), lazy.utf8Length());
+			ByteSink sink = new ByteSink();
+			lazy.writeUTF8(sink);
+			Assert.assertArrayEquals(text, text.getBytes(StandardCharsets.UTF_8), sink.toByteArray());
+
+			// copies share the bytes
+			JSONString copy = (JSONString) lazy.deepCopy();
+			Assert.assertTrue(text, copy.contentEquals(text));
+
+			Assert.assertEquals(text, lazy.getStringValue());
+			Assert.assertEquals(text, lazy.compareTo(other) == 0, lazy.contentEquals(other));
+			Assert.assertEquals(text, copy.getValue());
+		}
+	}
+
+	@Test
+	public void testLazyConcurrentReaders() throws Exception
+	{
+		final String text = "caf\u00e9 \u20ac\ud83d\ude00 text";
+		final byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try
+		{
+			for (int n = 0; n < 2000; n++)
+			{
+				final JSONString lazy = JSONString.fromUTF8(utf8, 0, utf8.length, true);
+				final CountDownLatch start = new CountDownLatch(1);
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+
+				for (int t = 0; t < 4; t++)
+				{
+					final int task = t;
+
+					futures.add(executor.submit(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							try
+							{
+								start.await();
+
+								if ((task & 1) == 0) Assert.assertEquals(text, lazy.getStringValue());
+								Assert.assertEquals(text.length(), lazy.length());
+								Assert.assertTrue(lazy.contentEquals(text));
+								Assert.assertEquals(0, lazy.compareTo(text));
+							}
+							catch (Throwable exc)
+							{
+								failure.compareAndSet(null, exc);
+							}
+						}
+					}));
+				}
+
+				start.countDown();
+
+				for (Future<?> future : futures)
+				{
+					future.get();
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		if (failure.get() != null) throw new AssertionError(failure.get());
+	}
+
+	@Test
+	public void testLazyMalformedUTF8() throws Exception
+	{
+		byte[][] malformed = { { (byte) 0xC0, (byte) 0x80 }, { 'a', (byte) 0xE0, (byte) 0x80, (byte) 0x80 }, { (byte) 0xED, (byte) 0xA0, (byte) 0x80 }, { (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80 }, { 'a', (byte) 0xC3 }, { (byte) 0x80 }, { (byte) 0xE2, (byte) 0x82, 'x' } };
+
+		for (byte[] utf8 : malformed)
+		{
+			String expected = new String(utf8, StandardCharsets.UTF_8);
+			JSONString str = JSONString.fromUTF8(utf8, 0, utf8.length, false);
+
+			Assert.assertTrue(str.contentEquals(expected));
+			Assert.assertEquals(expected, str.getStringValue());
+		}
+	}
+
+	@Test
+	public void testLazyDecoders() throws Exception
+	{
+		JSONObject object = new JSONObject();
+		object.put("ascii", new JSONString("plain \"text\""));
+		object.put("latin", new JSONString("caf\u00e9"));
+		object.put("other", new JSONString("\u20ac\ud83d\ude00"));
+
+		JSONValue packed = MessagePack.decode(MessagePack.encode(object));
+		JSONValue cbor = CBOR.decode(CBOR.encode(object));
+
+		Assert.assertTrue(AbstractJSONValue.deepEquals(object, packed));
+		Assert.assertTrue(AbstractJSONValue.deepEquals(object, cbor));
+		Assert.assertArrayEquals(MessagePack.encode(object), MessagePack.encode(packed));
+		Assert.assertTrue(((JSONString) ((JSONObject) packed).get("latin")).contentEquals("caf\u00e9"));
+	}
 }
@@ -0,0 +1,156 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONTapeTest
+{
+   static private JSONTape getTestTape() throws IOException, JSONException
+   {
+      try (InputStream instr = JSONObjectTest.class.getResourceAsStream("JSONObjectTest.json"); InputStreamReader rdr = new InputStreamReader(instr))
+      {
+         return JSONTape.parse(rdr);
+      }
+   }
+
+   @Test
+   public void testToJSONValue() throws IOException, JSONException
+   {
+      try (InputStream instr = JSONObjectTest.class.getResourceAsStream("JSONObjectTest.json"); InputStreamReader rdr = new InputStreamReader(instr))
+      {
+         JSONValue expected = JSONValueFactory.DEFAULT.read(rdr);
+         Assert.assertEquals(expected.toPrettyString(), getTestTape().toJSONValue().toPrettyString());
+      }
+
+      String json = "[1, -2.5e+3, \"a\\\"b\\u0041\\n\", {\"x\":[[],{}]}, true, false, null, 0.25]";
+      Assert.assertEquals(JSONValueFactory.DEFAULT.read(new StringReader(json)).toFlatString(), JSONTape.parse(json).toJSONValue().toFlatString());
+   }
+
+   @Test
+   public void testNavigation() throws IOException, JSONException
+   {
+      JSONTape tape = getTestTape();
+      int root = tape.getRoot();
+
+      Assert.assertEquals(JSONTape.Type.OBJECT, tape.getType(root));
+      Assert.assertEquals(10, tape.size(root));
+
+      Assert.assertEquals(new BigDecimal(123), tape.getBigDecimal(tape.getMember(root, "number")));
+      Assert.assertEquals("Hello, World!", tape.getString(tape.getMember(root, "string")));
+      Assert.assertTrue(tape.isNull(tape.getMember(root, "null")));
+      Assert.assertEquals(-1, tape.getMember(root, "missing"));
+
+      int array = tape.getMember(root, "array");
+      Assert.assertEquals(3, tape.size(array));
+      Assert.assertEquals("json", tape.getString(tape.getElement(array, 2)));
+      Assert.assertEquals(-1, tape.first(tape.getMember(root, "emptyarray")));
+
+      int object = tape.getMember(root, "object");
+      Assert.assertEquals("large", tape.getString(tape.getMember(object, "size")));
+      Assert.assertEquals("emptyobject", tape.getKey(tape.next(object)));
+
+      StringBuilder keys = new StringBuilder();
+      for (int child = tape.first(root); child >= 0; child = tape.next(child))
+         keys.append(tape.getKey(child)).append(' ');
+
+      Assert.assertEquals("number string emptystring true false emptyarray array object emptyobject null ", keys.toString());
+   }
+
+   @Test
+   public void testCursor() throws IOException, JSONException
+   {
+      JSONTape.Cursor cursor = getTestTape().cursor();
+
+      Assert.assertTrue(cursor.find("object"));
+      Assert.assertTrue(cursor.down());
+      Assert.assertEquals("color", cursor.getKey());
+      Assert.assertEquals("red", cursor.getString());
+      Assert.assertTrue(cursor.next());
+      Assert.assertEquals("large", cursor.getString());
+      Assert.assertFalse(cursor.next());
+      Assert.assertTrue(cursor.up());
+      Assert.assertEquals("object", cursor.getKey());
+      Assert.assertTrue(cursor.up());
+      Assert.assertFalse(cursor.up());
+
+      Assert.assertTrue(cursor.find("array"));
+      Assert.assertTrue(cursor.element(1));
+      Assert.assertFalse(cursor.getBoolean());
+      Assert.assertNull(cursor.getKey());
+      Assert.assertEquals(2, cursor.getDepth());
+   }
+
+   @Test
+   public void testErrors() throws JSONException
+   {
+      Assert.assertNull(JSONTape.parse("   "));
+
+      String[] bad = { "{\"a\":{\"b\":tru}}", "[1,2", "{\"a\" 1}", "[1.]", "-", "\"abc", "[1 2]", "{\"a\":1,}" };
+
+      for (String json : bad)
+      {
+         try
+         {
+            JSONTape.parse(json);
+            Assert.fail("Exception expected for " + json);
+         }
+         catch (JSONException exc)
+         {
+            // expected
+         }
+      }
+
+      try
+      {
+         JSONTape.parse("{\"a\":{\"b\":tru}}");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals("$.a.b", exc.getPath());
+      }
+   }
+
+   @Test
+   public void testErrorParity() throws IOException, JSONException
+   {
+      String[] cases = { "[-]", "[-a]", "[1.]", "[1.e5]", "[1e]", "[1e+]", "[1E-]", "[1ex]", "[-.5]", "[-e5]", "[--1]", "[1.5e]", "[1e999999999]", "[1e99999999999]", "[1e-99999999999]", "[0e99999999999]", "[1e0000000001]", "[tru]", "[tx]", "[nul]", "[fals]", "[\"\\x\"]", "[\"\\u12g4\"]", "{\"a\":tru}", "{\"a\":[1e+]}" };
+
+      for (String json : cases)
+      {
+         String expected = describe(JSONValueFactory.DEFAULT, json);
+         byte[] utf8 = json.getBytes("UTF-8");
+
+         Assert.assertEquals(json, expected, describe(null, json));
+         Assert.assertEquals(json, expected, describe(null, utf8));
+      }
+   }
+
+   /**
+    * Parse a document and describe the result or error.
+    */
+   static private String describe(JSONValueFactory factory, Object json) throws IOException
+   {
+      try
+      {
+         if (factory != null) return factory.read(new StringReader((String) json)).toFlatString();
+         if (json instanceof String) return JSONTape.parse((String) json).toJSONValue().toFlatString();
+
+         byte[] utf8 = (byte[]) json;
+         return JSONTape.parse(utf8, 0, utf8.length, true).toJSONValue().toFlatString();
+      }
+      catch (JSONException exc)
+      {
+         return exc.getPath() + " " + exc.getMessage();
+      }
+   }
+}
@@ -0,0 +1,330 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONTreeTest
+{
+   /** Nesting depth of the deep test trees. */
+   static private final int DEPTH = 100000;
+
+   /**
+    * Nesting depth of the deep test documents. Arrays are indented even when
+    * flat, so rendering grows with the square of the depth.
+    */
+   static private final int WRITE_DEPTH = 5000;
+
+   /** A factory that accepts the deep test documents. */
+   static private final JSONValueFactory DEEP = new JSONValueFactory()
+   {
+      @Override
+      public int getMaxDepth()
+      {
+         return DEPTH + 1;
+      }
+   };
+
+   /**
+    * Build alternating nested arrays and objects.
+    */
+   static private JSONValue buildDeep(int depth)
+   {
+      JSONValue value = new JSONString("bottom");
+
+      for (int i = 0; i < depth; i++)
+      {
+         if ((i & 1) == 0)
+         {
+            JSONArray array = new JSONArray();
+            array.getListValue().add(new JSONNumber(i));
+            array.getListValue().add(value);
+            value = array;
+         }
+         else
+         {
+            JSONObject object = new JSONObject();
+            object.put("level", new JSONNumber(i));
+            object.put("next", value);
+            value = object;
+         }
+      }
+
+      return value;
+   }
+
+   /**
+    * Find the string at the bottom of a tree from <code>buildDeep()</code>.
+    */
+   static private JSONString bottom(JSONValue value)
+   {
+      for (;;)
+      {
+         if (value instanceof JSONString) return (JSONString) value;
+         if (value instanceof JSONArray) value = ((JSONArray) value).get(1);
+         else value = ((JSONObject) value).get("next");
+      }
+   }
+
+   static private String nest(int depth)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      for (int i = 0; i < depth; i++)
+      {
+         builder.append('[');
+      }
+
+      for (int i = 0; i < depth; i++)
+      {
+         builder.append(']');
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Run a task on a thread with a small stack.
+    */
+   static private void runOnSmallStack(final Runnable task) throws Throwable
+   {
+      final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+      Thread thread = new Thread(null, new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               task.run();
+            }
+            catch (Throwable exc)
+            {
+               failure.set(exc);
+            }
+         }
+      }, "small-stack", 128 * 1024);
+
+      thread.start();
+      thread.join();
+
+      if (failure.get() != null) throw failure.get();
+   }
+
+   @Test
+   public void testDeepRoundTrip() throws Throwable
+   {
+      runOnSmallStack(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               JSONValue original = buildDeep(WRITE_DEPTH);
+
+               String flat = original.toFlatString();
+               String pretty = original.toPrettyString();
+
+               JSONValue fromFlat = DEEP.read(new StringReader(flat));
+               JSONValue fromPretty = DEEP.read(new StringReader(pretty));
+
+               Assert.assertTrue(AbstractJSONValue.deepEquals(original, fromFlat));
+               Assert.assertTrue(AbstractJSONValue.deepEquals(original, fromPretty));
+               Assert.assertEquals(flat, fromFlat.toFlatString());
+            }
+            catch (IOException | JSONException exc)
+            {
+               throw new RuntimeException(exc);
+            }
+         }
+      });
+   }
+
+   @Test
+   public void testDeepWriteCache() throws Throwable
+   {
+      runOnSmallStack(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            JSONWriteCache.setBudget(10000000);
+
+            try
+            {
+               JSONValue original = buildDeep(WRITE_DEPTH);
+               String flat = original.toFlatString();
+
+               Assert.assertEquals(flat, original.toFlatString());
+               Assert.assertEquals(original.toPrettyString(), original.toPrettyString());
+
+               bottom(original).setValue("changed");
+               Assert.assertEquals(flat.replace("bottom", "changed"), original.toFlatString());
+            }
+            finally
+            {
+               JSONWriteCache.setBudget(0);
+            }
+         }
+      });
+   }
+
+   @Test
+   public void testDeepCopyAndEquals() throws Throwable
+   {
+      runOnSmallStack(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            JSONValue original = buildDeep(DEPTH);
+            JSONValue copy = original.deepCopy();
+
+            Assert.assertNotSame(original, copy);
+            Assert.assertTrue(AbstractJSONValue.deepEquals(original, copy));
+
+            // arrays copy their elements all the way down
+            JSONArray array = new JSONArray();
+            array.getListValue().add(new JSONNumber(0));
+            array.getListValue().add(new JSONString("bottom"));
+
+            for (int i = 1; i < DEPTH; i++)
+            {
+               JSONArray outer = new JSONArray();
+               outer.getListValue().add(new JSONNumber(i));
+               outer.getListValue().add(array);
+               array = outer;
+            }
+
+            JSONValue arrayCopy = array.deepCopy();
+            bottom(arrayCopy).setValue("changed");
+
+            Assert.assertFalse(AbstractJSONValue.deepEquals(array, arrayCopy));
+            Assert.assertEquals("bottom", bottom(array).getStringValue());
+         }
+      });
+   }
+
+   @Test
+   public void testDeepParse() throws Throwable
+   {
+      runOnSmallStack(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               JSONValue value = DEEP.read(new StringReader(nest(DEPTH)));
+               JSONValue copy = value.deepCopy();
+
+               Assert.assertTrue(AbstractJSONValue.deepEquals(value, copy));
+               Assert.assertFalse(AbstractJSONValue.deepEquals(value, DEEP.read(new StringReader(nest(DEPTH - 1)))));
+            }
+            catch (IOException | JSONException exc)
+            {
+               throw new RuntimeException(exc);
+            }
+         }
+      });
+   }
+
+   @Test
+   public void testObjectDeepCopy() throws IOException, JSONException
+   {
+      JSONObject original = (JSONObject) JSONValueFactory.DEFAULT.read(new StringReader("{\"a\":{\"b\":[1,{\"c\":true}]},\"d\":null}"));
+      JSONObject copy = (JSONObject) original.deepCopy();
+
+      // an object's copy shares its members, so it equals the original
+      Assert.assertNotSame(original, copy);
+      Assert.assertSame(original.get("a"), copy.get("a"));
+      Assert.assertEquals(original, copy);
+      Assert.assertTrue(AbstractJSONValue.deepEquals(original, copy));
+
+      copy.put("e", new JSONString("new"));
+      Assert.assertFalse(original.containsKey("e"));
+
+      // but an array's copy copies its elements
+      JSONArray list = (JSONArray) ((JSONObject) original.get("a")).get("b");
+      JSONArray listCopy = (JSONArray) list.deepCopy();
+      Assert.assertNotSame(list.get(1), listCopy.get(1));
+      Assert.assertSame(((JSONObject) list.get(1)).get("c"), ((JSONObject) listCopy.get(1)).get("c"));
+   }
+
+   @Test
+   public void testEquality() throws IOException, JSONException
+   {
+      JSONValue a = JSONValueFactory.DEFAULT.read(new StringReader("{\"x\":[1,2.5,\"s\",true,null],\"y\":{}}"));
+      JSONValue b = JSONValueFactory.DEFAULT.read(new StringReader("{\"y\":{},\"x\":[1,2.5,\"s\",true,null]}"));
+      JSONValue c = JSONValueFactory.DEFAULT.read(new StringReader("{\"x\":[1,2.50,\"s\",true,null],\"y\":{}}"));
+      JSONValue d = JSONValueFactory.DEFAULT.read(new StringReader("{\"x\":[2.5,1,\"s\",true,null],\"y\":{}}"));
+
+      Assert.assertTrue(AbstractJSONValue.deepEquals(a, b));
+      Assert.assertTrue(AbstractJSONValue.deepEquals(AbstractJSONValue.freeze(a), b));
+      Assert.assertEquals(AbstractJSONValue.freeze(a), AbstractJSONValue.freeze(b));
+      Assert.assertFalse(AbstractJSONValue.deepEquals(a, c));
+      Assert.assertFalse(AbstractJSONValue.deepEquals(a, d));
+      Assert.assertNotEquals(AbstractJSONValue.freeze(a), AbstractJSONValue.freeze(d));
+   }
+
+   @Test
+   public void testMaxDepth() throws IOException, JSONException
+   {
+      int max = JSONValueFactory.DEFAULT.getMaxDepth();
+
+      JSONValue value = JSONValueFactory.DEFAULT.read(new StringReader(nest(max)));
+      Assert.assertTrue(value instanceof JSONArray);
+
+      try
+      {
+         JSONValueFactory.DEFAULT.read(new StringReader(nest(max + 1)));
+         Assert.fail("Expected JSONException");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertTrue(exc.getMessage().contains(Integer.toString(max)));
+      }
+   }
+
+   @Test
+   public void testMaxDepthWithCallbacks() throws IOException, JSONException
+   {
+      // overriding a callback sends objects through the recursive read
+      JSONValueFactory factory = new JSONValueFactory()
+      {
+         @Override
+         protected JSONValue onObject(String path, PushbackReader pbr) throws IOException, JSONException
+         {
+            return new JSONObject(this);
+         }
+
+         @Override
+         public int getMaxDepth()
+         {
+            return 4;
+         }
+      };
+
+      factory.read(new StringReader("[{\"a\":[{\"b\":1}]}]"));
+
+      try
+      {
+         factory.read(new StringReader("[{\"a\":[{\"b\":[1]}]}]"));
+         Assert.fail("Expected JSONException");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals("$.a.b", exc.getPath());
+      }
+   }
+}
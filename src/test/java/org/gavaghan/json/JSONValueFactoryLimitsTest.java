@@ -0,0 +1,168 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONValueFactoryLimitsTest
+{
+   /**
+    * A factory with a small budget.
+    */
+   static private class LimitedFactory extends JSONValueFactory
+   {
+      @Override
+      public long getMaxInputLength()
+      {
+         return 20000;
+      }
+
+      @Override
+      public int getMaxStringLength()
+      {
+         return 8;
+      }
+
+      @Override
+      public int getMaxNumberLength()
+      {
+         return 6;
+      }
+
+      @Override
+      public int getMaxMembers()
+      {
+         return 3;
+      }
+
+      @Override
+      public int getMaxDepth()
+      {
+         return 3;
+      }
+   }
+
+   /**
+    * The same budget, with objects read through a callback.
+    */
+   static private class LimitedCallbackFactory extends LimitedFactory
+   {
+      @Override
+      protected JSONValue onObject(String path, PushbackReader pbr) throws IOException, JSONException
+      {
+         return new JSONObject(this);
+      }
+   }
+
+   static private void assertRejected(JSONValueFactory factory, String json, String path, String message) throws IOException
+   {
+      try
+      {
+         factory.read(new StringReader(json));
+         Assert.fail("Expected JSONException for " + json);
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals(path, exc.getPath());
+         Assert.assertTrue(exc.getMessage(), exc.getMessage().contains(message));
+      }
+   }
+
+   static private String padded(int length)
+   {
+      StringBuilder builder = new StringBuilder("[1]");
+
+      while (builder.length() < length)
+      {
+         builder.append(' ');
+      }
+
+      return builder.toString();
+   }
+
+   @Test
+   public void testWithinLimits() throws IOException, JSONException
+   {
+      String json = "{\"abcdefgh\":[\"12345678\",-2.5e1,[true]],\"b\":{\"c\":null},\"d\":\"\\u0041\"}";
+
+      for (JSONValueFactory factory : new JSONValueFactory[] { new LimitedFactory(), new LimitedCallbackFactory() })
+      {
+         JSONValue value = factory.read(new StringReader(json));
+         Assert.assertTrue(AbstractJSONValue.deepEquals(JSONValueFactory.DEFAULT.read(new StringReader(json)), value));
+      }
+   }
+
+   @Test
+   public void testStringLength() throws IOException
+   {
+      for (JSONValueFactory factory : new JSONValueFactory[] { new LimitedFactory(), new LimitedCallbackFactory() })
+      {
+         assertRejected(factory, "{\"a\":[\"123456789\"]}", "$.a", "String is longer than 8");
+         assertRejected(factory, "{\"123456789\":1}", "$", "String is longer than 8");
+         assertRejected(factory, "\"\\n\\n\\n\\n\\n\\n\\n\\n\\n\"", "$", "String is longer than 8");
+      }
+   }
+
+   @Test
+   public void testNumberLength() throws IOException
+   {
+      for (JSONValueFactory factory : new JSONValueFactory[] { new LimitedFactory(), new LimitedCallbackFactory() })
+      {
+         assertRejected(factory, "{\"n\":1234567}", "$.n", "Number is longer than 6");
+         assertRejected(factory, "[1e10000]", "$", "Number is longer than 6");
+      }
+   }
+
+   @Test
+   public void testMembers() throws IOException
+   {
+      for (JSONValueFactory factory : new JSONValueFactory[] { new LimitedFactory(), new LimitedCallbackFactory() })
+      {
+         assertRejected(factory, "{\"a\":1,\"b\":2,\"c\":3,\"d\":4}", "$", "Object has more than 3 members");
+         assertRejected(factory, "{\"a\":[1,2,3,4]}", "$.a", "Array has more than 3 elements");
+      }
+   }
+
+   @Test
+   public void testDepth() throws IOException
+   {
+      for (JSONValueFactory factory : new JSONValueFactory[] { new LimitedFactory(), new LimitedCallbackFactory() })
+      {
+         assertRejected(factory, "{\"a\":[{\"b\":{}}]}", "$.a.b", "nested more than 3 deep");
+      }
+   }
+
+   @Test
+   public void testInputLength() throws IOException, JSONException
+   {
+      JSONValueFactory factory = new JSONValueFactory()
+      {
+         @Override
+         public long getMaxInputLength()
+         {
+            return 20000;
+         }
+      };
+
+      Assert.assertNotNull(factory.read(new StringReader(padded(20000))));
+
+      // the reader buffers 8K at a time, so the limit falls mid-buffer
+      assertRejected(factory, "[\"" + padded(20000) + "\"]", "$", "Input is longer than 20000 characters");
+      assertRejected(factory, "[" + padded(15000).substring(3).replace(" ", "1,") + "2]", "$", "Input is longer than 20000 characters");
+   }
+
+   @Test
+   public void testContextReuse() throws IOException, JSONException
+   {
+      // a limited read mustn't leave limits behind for the next
+      assertRejected(new LimitedFactory(), "[\"123456789\"]", "$", "String is longer than 8");
+      Assert.assertNotNull(JSONValueFactory.DEFAULT.read(new StringReader("[\"123456789\"]")));
+   }
+}
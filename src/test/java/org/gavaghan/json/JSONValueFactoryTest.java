@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PushbackReader;
+import java.io.StringReader;
 import java.io.Writer;
 import java.math.BigDecimal;
 
@@ -86,6 +87,94 @@ public class JSONValueFactoryTest
          // expected
       }
    }
+
+   @Test
+   public void testStrictWhitespace() throws IOException, JSONException
+   {
+      String json = "[1,\u20032]";
+
+      Assert.assertEquals(2, ((JSONArray) JSONValueFactory.DEFAULT.read(new StringReader(json))).size());
+
+      try
+      {
+         JSONValueFactory.STRICT.read(new StringReader(json));
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         // expected
+      }
+
+      Assert.assertEquals(2, ((JSONArray) JSONValueFactory.STRICT.read(new StringReader(" [ 1 ,\r\n\t2 ] "))).size());
+   }
+
+   @Test
+   public void testLongIndentation() throws IOException, JSONException
+   {
+      // indentation runs that cross the reader's buffer boundaries
+      StringBuilder json = new StringBuilder("{");
+      for (int i = 0; i < 50; i++)
+      {
+         if (i > 0) json.append(',');
+         json.append('\n');
+         for (int j = 0; j < 997; j++)
+            json.append(' ');
+         json.append("\"key").append(i).append("\" :\t ").append(i);
+      }
+      json.append("\n}");
+
+      JSONObject strict = (JSONObject) JSONValueFactory.STRICT.read(new StringReader(json.toString()));
+      JSONObject commented = (JSONObject) CommentedJSONValueFactory.COMMENTED_DEFAULT.read(new StringReader(json.toString()));
+
+      Assert.assertEquals(50, strict.size());
+      Assert.assertEquals(strict.toFlatString(), commented.toFlatString());
+      Assert.assertEquals(new BigDecimal(49), strict.get("key49").getValue());
+   }
+
+   @Test
+   public void testCommentsAfterWhitespace() throws IOException, JSONException
+   {
+      String json = "  /* block */ [ 1, // line\n  2 /**/ , 3 ]  ";
+      JSONArray array = (JSONArray) CommentedJSONValueFactory.COMMENTED_DEFAULT.read(new StringReader(json));
+
+      Assert.assertEquals("[1,2,3]", array.toFlatString().replaceAll("\\s", ""));
+   }
+
+   @Test
+   public void testOverriddenCallbacks() throws IOException, JSONException
+   {
+      String json = "{ \"a\" : [ \"x\", -1.5e3, true, false, null, { } ], \"b\" : \"y\" }";
+      final int[] strings = new int[1];
+      final int[] recasts = new int[1];
+
+      JSONValueFactory counting = new JSONValueFactory()
+      {
+         @Override
+         protected JSONValue onString(String path, PushbackReader pbr) throws IOException, JSONException
+         {
+            strings[0]++;
+            return super.onString(path, pbr);
+         }
+      };
+
+      JSONValueFactory recasting = new JSONValueFactory()
+      {
+         @Override
+         protected JSONValue recast(String path, JSONValue value)
+         {
+            recasts[0]++;
+            return (value instanceof JSONString) ? new JSONString() : null;
+         }
+      };
+
+      JSONValue direct = JSONValueFactory.DEFAULT.read(new StringReader(json));
+
+      Assert.assertEquals(direct.toFlatString(), counting.read(new StringReader(json)).toFlatString());
+      Assert.assertEquals(2, strings[0]);
+
+      Assert.assertEquals(direct.toFlatString(), recasting.read(new StringReader(json)).toFlatString());
+      Assert.assertEquals(9, recasts[0]);
+   }
 }
 
 class NoGoodConstructor implements JSONValue
@@ -0,0 +1,241 @@
+package org.gavaghan.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONValueFactoryValidateTest
+{
+   /** Pieces mutations are made from. */
+   static private final String[] PIECES = { "{", "}", "[", "]", ",", ":", "\"", "\\", "\\u", "\\u00e9", "\\uzz", "\\x", "-", ".", "e", "E+", "0", "7", "1e999999999999", "true", "fals", "null", "nul", " ", "\t", " ", "/*", "*/", "//", "\n", "٣", "x" };
+
+   /**
+    * A factory with a small budget.
+    */
+   static private class LimitedFactory extends JSONValueFactory
+   {
+      @Override
+      public long getMaxInputLength()
+      {
+         return 300;
+      }
+
+      @Override
+      public int getMaxStringLength()
+      {
+         return 6;
+      }
+
+      @Override
+      public int getMaxNumberLength()
+      {
+         return 5;
+      }
+
+      @Override
+      public int getMaxMembers()
+      {
+         return 4;
+      }
+
+      @Override
+      public int getMaxDepth()
+      {
+         return 4;
+      }
+   }
+
+   /**
+    * A factory that reads strings through a callback.
+    */
+   static private class CallbackFactory extends JSONValueFactory
+   {
+      @Override
+      protected JSONValue onString(String path, PushbackReader pbr) throws IOException, JSONException
+      {
+         return new JSONString();
+      }
+   }
+
+   /**
+    * A factory that reads doubles.
+    */
+   static private class DoubleFactory extends JSONValueFactory
+   {
+      @Override
+      public boolean isDoublePrecision()
+      {
+         return true;
+      }
+   }
+
+   static private String randomValue(Random random, int depth)
+   {
+      switch (random.nextInt((depth < 4) ? 8 : 6))
+      {
+         case 0:
+            return "\"" + new String[] { "", "abc", "a\\\"b", "café", "\\u0041\\n", "longer string" }[random.nextInt(6)] + "\"";
+         case 1:
+            return new String[] { "0", "-12", "3.25", "1e5", "-0.5E-3", "12345678" }[random.nextInt(6)];
+         case 2:
+            return new String[] { "true", "false" }[random.nextInt(2)];
+         case 3:
+            return "null";
+         case 4:
+         case 5:
+            return random.nextBoolean() ? "\"k\"" : "42";
+         case 6:
+         {
+            StringBuilder builder = new StringBuilder("[");
+            for (int i = random.nextInt(5); i > 0; i--)
+               builder.append(randomValue(random, depth + 1)).append((i > 1) ? ", " : "");
+            return builder.append(']').toString();
+         }
+         default:
+         {
+            StringBuilder builder = new StringBuilder("{ ");
+            for (int i = random.nextInt(5); i > 0; i--)
+               builder.append("\"k").append(i).append("\" : ").append(randomValue(random, depth + 1)).append((i > 1) ? ", " : "");
+            return builder.append('}').toString();
+         }
+      }
+   }
+
+   static private String mutate(Random random, String json)
+   {
+      StringBuilder builder = new StringBuilder(json);
+
+      for (int i = random.nextInt(3); i > 0; i--)
+      {
+         int pos = random.nextInt(builder.length() + 1);
+
+         switch (random.nextInt(3))
+         {
+            case 0:
+               if (pos < builder.length()) builder.deleteCharAt(pos);
+               break;
+            case 1:
+               builder.insert(pos, PIECES[random.nextInt(PIECES.length)]);
+               break;
+            default:
+               builder.setLength(pos);
+               break;
+         }
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Make sure validating a document has the same outcome as reading it.
+    */
+   static private void assertSameOutcome(JSONValueFactory factory, String json) throws IOException
+   {
+      JSONException expected = null;
+      JSONValue value = null;
+
+      try
+      {
+         value = factory.read(new StringReader(json));
+      }
+      catch (JSONException exc)
+      {
+         expected = exc;
+      }
+
+      try
+      {
+         boolean found = factory.validate(new StringReader(json));
+         if (expected != null) Assert.fail(json + ": expected " + expected.getMessage());
+         Assert.assertEquals(json, value != null, found);
+      }
+      catch (JSONException exc)
+      {
+         if (expected == null) throw new AssertionError(json + ": unexpected " + exc.getMessage(), exc);
+
+         Assert.assertEquals(json, expected.getMessage(), exc.getMessage());
+         Assert.assertEquals(json, expected.getPath(), exc.getPath());
+         Assert.assertEquals(json, expected.getOffset(), exc.getOffset());
+      }
+   }
+
+   @Test
+   public void testMatchesRead() throws IOException
+   {
+      Random random = new Random(50);
+      JSONValueFactory[] factories = { JSONValueFactory.DEFAULT, JSONValueFactory.STRICT, CommentedJSONValueFactory.COMMENTED_DEFAULT, new LimitedFactory(), new CallbackFactory(), new DoubleFactory() };
+
+      for (int n = 0; n < 20000; n++)
+      {
+         String json = random.nextBoolean() ? randomValue(random, 0) : ("[" + randomValue(random, 0) + "]");
+         if (n % 10 != 0) json = mutate(random, json);
+
+         for (JSONValueFactory factory : factories)
+         {
+            assertSameOutcome(factory, json);
+         }
+      }
+   }
+
+   @Test
+   public void testOffset() throws IOException
+   {
+      try
+      {
+         JSONValueFactory.DEFAULT.validate(new StringReader("{ \"a\" : [ 1, 2 x ] }"));
+         Assert.fail("Expected JSONException");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals("$.a", exc.getPath());
+         Assert.assertEquals(16, exc.getOffset());
+      }
+
+      try
+      {
+         JSONValueFactory.DEFAULT.read(new StringReader("[ \"café\", nul ]"));
+         Assert.fail("Expected JSONException");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertEquals(14, exc.getOffset());
+      }
+
+      Assert.assertEquals(-1, new JSONException("$", "made up").getOffset());
+   }
+
+   @Test
+   public void testValidate() throws IOException, JSONException
+   {
+      String json = "{ \"a\" : [ 1, -2.5e3, \"x\\u0041\" ], // comment\n \"b\" : { \"c\" : null, \"d\" : true } }";
+
+      Assert.assertTrue(CommentedJSONValueFactory.COMMENTED_DEFAULT.validate(new StringReader(json)));
+      Assert.assertTrue(CommentedJSONValueFactory.COMMENTED_DEFAULT.validate(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
+      Assert.assertFalse(JSONValueFactory.DEFAULT.validate(new StringReader("  \n ")));
+
+      try (JSONContext context = JSONContext.acquire())
+      {
+         Assert.assertTrue(context.validate(JSONValueFactory.DEFAULT, "[ 1, 2 ]"));
+      }
+
+      try
+      {
+         JSONValueFactory.DEFAULT.validate(new StringReader(json));
+         Assert.fail("Expected JSONException");
+      }
+      catch (JSONException exc)
+      {
+         // no comments without the commented factory
+      }
+   }
+}
@@ -0,0 +1,288 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONWriteCacheTest
+{
+   @Before
+   public void enable()
+   {
+      JSONWriteCache.setBudget(1000000);
+      JSONWriteCache.setMinimumLength(16);
+   }
+
+   @After
+   public void disable()
+   {
+      JSONWriteCache.setBudget(0);
+      JSONWriteCache.setMinimumLength(JSONWriteCache.DEFAULT_MINIMUM_LENGTH);
+   }
+
+   static private JSONObject createDocument() throws IOException, JSONException
+   {
+      StringBuilder json = new StringBuilder("{ \"static\" : { \"list\" : [");
+      for (int i = 0; i < 50; i++)
+         json.append(i > 0 ? "," : "").append("{ \"name\" : \"item").append(i).append("\", \"value\" : ").append(i).append(", \"on\" : true }");
+      json.append("] }, \"dynamic\" : { \"count\" : 0, \"label\" : \"x\" } }");
+
+      return (JSONObject) JSONValueFactory.DEFAULT.read(new StringReader(json.toString()));
+   }
+
+   /**
+    * Render without the cache.
+    */
+   static private String uncached(JSONValue value, boolean pretty)
+   {
+      long budget = JSONWriteCache.getBudget();
+      JSONWriteCache.setBudget(0);
+
+      try
+      {
+         return AbstractJSONValue.toString(value, pretty);
+      }
+      finally
+      {
+         JSONWriteCache.setBudget(budget);
+      }
+   }
+
+   @Test
+   public void testHitsAndInvalidation() throws IOException, JSONException
+   {
+      JSONObject doc = createDocument();
+      String flat = uncached(doc, false);
+
+      Assert.assertEquals(flat, doc.toFlatString());
+      long hits = JSONWriteCache.getHits();
+      Assert.assertEquals(flat, doc.toFlatString());
+      Assert.assertEquals(hits + 1, JSONWriteCache.getHits());
+
+      // modify a scalar deep in the tree
+      JSONObject item = (JSONObject) ((JSONArray) ((JSONObject) doc.get("static")).get("list")).get(7);
+      ((JSONString) item.get("name")).setValue("changed");
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+      Assert.assertTrue(doc.toFlatString().contains("changed"));
+
+      // modify the dynamic part only
+      JSONObject dynamic = (JSONObject) doc.get("dynamic");
+      for (int i = 1; i < 20; i++)
+      {
+         ((JSONNumber) dynamic.get("count")).setValue(new BigDecimal(i));
+         dynamic.put("label", new JSONString("label" + i));
+         Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+      }
+
+      // modify through views
+      ((JSONArray) ((JSONObject) doc.get("static")).get("list")).getListValue().add(new JSONBoolean(false));
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+
+      doc.entrySet().iterator().next().setValue(JSONNull.INSTANCE);
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+      Assert.assertTrue(doc.toFlatString().startsWith("{\"static\":null"));
+   }
+
+   @Test
+   public void testViewsHeldAcrossRenders() throws IOException, JSONException
+   {
+      JSONObject doc = createDocument();
+      JSONArray list = (JSONArray) ((JSONObject) doc.get("static")).get("list");
+
+      // views taken before anything was rendered through the cache
+      List<JSONValue> elements = list.getListValue();
+      Iterator<JSONValue> iter = list.iterator();
+      Iterator<Map.Entry<String, JSONValue>> members = doc.entrySet().iterator();
+      Set<String> keys = ((JSONObject) doc.get("dynamic")).keySet();
+
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+
+      elements.set(0, new JSONString("replaced"));
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+      Assert.assertTrue(doc.toFlatString().contains("replaced"));
+
+      iter.next();
+      iter.remove();
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+
+      elements.subList(0, 10).clear();
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+
+      keys.remove("label");
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+      Assert.assertFalse(doc.toFlatString().contains("label"));
+
+      members.next().setValue(new JSONString("static"));
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+   }
+
+   @Test
+   public void testNestedAtNewIndent() throws IOException, JSONException
+   {
+      JSONArray array = new JSONArray();
+      for (int i = 0; i < 20; i++)
+         array.getListValue().add(new JSONString("s" + i));
+
+      JSONObject outer = new JSONObject();
+      outer.put("array", array);
+      JSONArray list = new JSONArray();
+      list.getListValue().add(outer);
+
+      // render uncached first since that empties the cache
+      String flat = uncached(list, false);
+      String pretty = uncached(list, true);
+
+      // cached at the top level, then written further down
+      array.toFlatString();
+      array.toPrettyString();
+      Assert.assertEquals(flat, list.toFlatString());
+      Assert.assertEquals(pretty, list.toPrettyString());
+      Assert.assertEquals(flat, list.toFlatString());
+   }
+
+   @Test
+   public void testNumberArray() throws IOException, JSONException
+   {
+      StringBuilder json = new StringBuilder("{ \"numbers\" : [");
+      for (int i = 0; i < 100; i++)
+         json.append(i > 0 ? "," : "").append(i);
+      json.append("], \"label\" : \"x\" }");
+
+      JSONObject doc = (JSONObject) JSONValueFactory.DEFAULT.read(new StringReader(json.toString()));
+      JSONNumberArray numbers = (JSONNumberArray) doc.get("numbers");
+
+      // a packed array doesn't keep its parent out of the cache
+      String flat = uncached(doc, false);
+      Assert.assertEquals(flat, doc.toFlatString());
+      long hits = JSONWriteCache.getHits();
+      Assert.assertEquals(flat, doc.toFlatString());
+      Assert.assertEquals(hits + 1, JSONWriteCache.getHits());
+
+      // elements handed out after rendering are stamped
+      JSONNumber first = (JSONNumber) numbers.get(0);
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+      first.setValue(new BigDecimal(1000));
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+      Assert.assertTrue(doc.toFlatString().contains("1000"));
+
+      numbers.remove(0);
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+      Assert.assertFalse(doc.toFlatString().contains("1000"));
+   }
+
+   @Test
+   public void testDisabledCollections() throws IOException, JSONException
+   {
+      JSONWriteCache.setBudget(0);
+
+      // without the cache the plain collections are handed out
+      List<JSONValue> list = new ArrayList<JSONValue>();
+      JSONArray array = new JSONArray(list);
+      Assert.assertSame(list, array.getListValue());
+      Assert.assertSame(list, array.getValue());
+
+      JSONObject doc = createDocument();
+      Map<String, JSONValue> plain = new LinkedHashMap<String, JSONValue>(doc);
+      Assert.assertSame(plain.entrySet().getClass(), doc.entrySet().getClass());
+      Assert.assertSame(plain.keySet().getClass(), doc.keySet().getClass());
+      Assert.assertSame(plain.values().getClass(), doc.values().getClass());
+
+      // a clone doesn't share cached renderings
+      JSONWriteCache.setBudget(1000000);
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+      JSONObject copy = (JSONObject) doc.clone();
+      copy.put("extra", new JSONString("extra"));
+      Assert.assertTrue(copy.toFlatString().contains("extra"));
+      Assert.assertFalse(doc.toFlatString().contains("extra"));
+   }
+
+   @Test
+   public void testPrettyIndent() throws IOException, JSONException
+   {
+      JSONObject doc = createDocument();
+      JSONValue inner = doc.get("static");
+
+      Assert.assertEquals(uncached(doc, true), doc.toPrettyString());
+      Assert.assertEquals(uncached(inner, true), inner.toPrettyString());
+      Assert.assertEquals(uncached(doc, true), doc.toPrettyString());
+      Assert.assertEquals(uncached(doc, false), doc.toFlatString());
+   }
+
+   @Test
+   public void testRandomEdits() throws IOException, JSONException
+   {
+      Random random = new Random(37);
+      JSONObject doc = createDocument();
+      JSONArray list = (JSONArray) ((JSONObject) doc.get("static")).get("list");
+
+      for (int n = 0; n < 500; n++)
+      {
+         JSONObject item = (JSONObject) list.get(random.nextInt(list.size()));
+
+         switch (random.nextInt(5))
+         {
+            case 0:
+               ((JSONNumber) item.get("value")).setValue(new BigDecimal(n));
+               break;
+            case 1:
+               ((JSONBoolean) item.get("on")).setValue(random.nextBoolean());
+               break;
+            case 2:
+               item.put("extra" + random.nextInt(3), new JSONString("e" + n));
+               break;
+            case 3:
+               item.remove("extra" + random.nextInt(3));
+               break;
+            default:
+               list.set(random.nextInt(list.size()), item.deepCopy());
+               break;
+         }
+
+         boolean pretty = random.nextBoolean();
+         Assert.assertEquals(uncached(doc, pretty), AbstractJSONValue.toString(doc, pretty));
+      }
+   }
+
+   @Test
+   public void testFrozenAndBudget() throws IOException, JSONException
+   {
+      JSONValue frozen = AbstractJSONValue.freeze(createDocument());
+      String flat = uncached(frozen, false);
+
+      Assert.assertEquals(flat, frozen.toFlatString());
+      long hits = JSONWriteCache.getHits();
+      Assert.assertEquals(flat, frozen.toFlatString());
+      Assert.assertEquals(hits + 1, JSONWriteCache.getHits());
+
+      // usage never exceeds the budget
+      JSONWriteCache.setBudget(flat.length() * 2L);
+      Assert.assertTrue(JSONWriteCache.getUsage() <= JSONWriteCache.getBudget());
+
+      for (int i = 0; i < 20; i++)
+      {
+         Assert.assertEquals(uncached(createDocument(), false), createDocument().toFlatString());
+         Assert.assertTrue(JSONWriteCache.getUsage() <= JSONWriteCache.getBudget());
+      }
+
+      JSONWriteCache.clear();
+      Assert.assertEquals(0, JSONWriteCache.getUsage());
+      Assert.assertEquals(0, JSONWriteCache.getEntryCount());
+   }
+}
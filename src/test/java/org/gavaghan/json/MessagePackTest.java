@@ -0,0 +1,225 @@
+package org.gavaghan.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class MessagePackTest
+{
+   static private void assertEncoding(String hex, String json) throws IOException, JSONException
+   {
+      // wrapped because the parser needs a character after a top-level number
+      JSONValue value = ((JSONArray) JSONValueFactory.DEFAULT.read(new StringReader("[" + json + "]"))).getListValue().get(0);
+
+      Assert.assertEquals(hex, TestSupport.hex(MessagePack.encode(value)));
+      Assert.assertEquals(value.toFlatString(), MessagePack.decode(TestSupport.unhex(hex)).toFlatString());
+   }
+
+   @Test
+   public void testFormats() throws IOException, JSONException
+   {
+      StringBuilder chars = new StringBuilder();
+      for (int i = 0; i < 31; i++)
+         chars.append('x');
+
+      assertEncoding("00", "0");
+      assertEncoding("7f", "127");
+      assertEncoding("cc80", "128");
+      assertEncoding("cd0100", "256");
+      assertEncoding("ce00010000", "65536");
+      assertEncoding("cf0000000100000000", "4294967296");
+      assertEncoding("cfffffffffffffffff", "18446744073709551615");
+      assertEncoding("ff", "-1");
+      assertEncoding("e0", "-32");
+      assertEncoding("d0df", "-33");
+      assertEncoding("d1ff7f", "-129");
+      assertEncoding("d2ffff7fff", "-32769");
+      assertEncoding("d3ffffffff7fffffff", "-2147483649");
+      assertEncoding("c70501000000010f", "1.5");
+      assertEncoding("c70601000000026ab3", "273.15");
+      assertEncoding("d7010000000101000000", "1677721.6");
+      assertEncoding("c70d0100000000010000000000000000", "18446744073709551616");
+      assertEncoding("a161", "\"a\"");
+      assertEncoding("bf" + TestSupport.hex(chars.toString().getBytes("UTF-8")), "\"" + chars + "\"");
+      assertEncoding("d920" + TestSupport.hex((chars + "x").getBytes("UTF-8")), "\"" + chars + "x\"");
+      assertEncoding("c2", "false");
+      assertEncoding("c3", "true");
+      assertEncoding("c0", "null");
+      assertEncoding("90", "[]");
+      assertEncoding("9201920203", "[1,[2,3]]");
+      assertEncoding("82a16101a162920203", "{\"a\":1,\"b\":[2,3]}");
+
+      // floats are only read
+      Assert.assertEquals(new BigDecimal("1.5"), MessagePack.decode(TestSupport.unhex("ca3fc00000")).getValue());
+      Assert.assertEquals(new BigDecimal("1.1"), MessagePack.decode(TestSupport.unhex("cb3ff199999999999a")).getValue());
+
+      // 16 and 32 bit headers
+      JSONArray array = new JSONArray();
+      for (int i = 0; i < 70000; i++)
+         array.getListValue().add(JSONNull.INSTANCE);
+
+      byte[] bytes = MessagePack.encode(array);
+      Assert.assertEquals("dd00011170", TestSupport.hex(Arrays.copyOf(bytes, 5)));
+      Assert.assertEquals(70000, ((JSONArray) MessagePack.decode(bytes)).size());
+   }
+
+   @Test
+   public void testRoundTrips() throws IOException, JSONException
+   {
+      JSONValue plain = TestSupport.readResource(JSONValueFactory.DEFAULT, "JSONObjectTest.json");
+      JSONValue commented = TestSupport.readResource(CommentedJSONValueFactory.COMMENTED_DEFAULT, "CommentedJSONObjectTest.json");
+
+      Assert.assertEquals(plain.toPrettyString(), MessagePack.decode(MessagePack.encode(plain)).toPrettyString());
+      Assert.assertEquals(commented.toPrettyString(), MessagePack.decode(MessagePack.encode(commented)).toPrettyString());
+
+      // scale survives
+      JSONValue scaled = MessagePack.decode(MessagePack.encode(new JSONNumber(new BigDecimal("1.500"))));
+      Assert.assertEquals(3, ((BigDecimal) scaled.getValue()).scale());
+
+      JSONValue huge = new JSONNumber(new BigDecimal(BigInteger.TEN.pow(40).negate(), -7));
+      Assert.assertEquals(huge.getValue(), MessagePack.decode(MessagePack.encode(huge)).getValue());
+
+      // surrogate pairs and other multi-byte text
+      JSONString text = new JSONString("café € 😀");
+      Assert.assertEquals(text.getValue(), MessagePack.decode(MessagePack.encode(text)).getValue());
+   }
+
+   @Test
+   public void testTypedRoundTrip() throws IOException, JSONException
+   {
+      TestTypedJSONObject json = new TestTypedJSONObject();
+      json.setString("Hello, World!");
+      json.setBigDecimal(new BigDecimal("123.45"));
+
+      byte[] bytes = MessagePack.encode(json);
+      JSONValue copy = MessagePack.decode(TypedJSONValueFactory.TYPED_DEFAULT, bytes, 0, bytes.length);
+
+      Assert.assertTrue(copy instanceof TestTypedJSONObject);
+      Assert.assertEquals("Hello, World!", ((TestTypedJSONObject) copy).getString());
+      Assert.assertEquals(new BigDecimal("123.45"), ((TestTypedJSONObject) copy).getBigDecimal());
+   }
+
+   @Test
+   public void testBuffersAndStreams() throws IOException, JSONException
+   {
+      JSONValue plain = TestSupport.readResource(JSONValueFactory.DEFAULT, "JSONObjectTest.json");
+      byte[] bytes = MessagePack.encode(plain);
+
+      // two items back to back in a direct buffer
+      ByteBuffer direct = ByteBuffer.allocateDirect(2 * bytes.length);
+      MessagePack.encode(plain, direct);
+      MessagePack.encode(plain, direct);
+      direct.flip();
+
+      Assert.assertEquals(plain.toFlatString(), MessagePack.decode(direct).toFlatString());
+      Assert.assertEquals(bytes.length, direct.position());
+      Assert.assertEquals(plain.toFlatString(), MessagePack.decode(direct).toFlatString());
+      Assert.assertNull(MessagePack.decode(direct));
+
+      try
+      {
+         MessagePack.encode(plain, ByteBuffer.allocate(bytes.length - 1));
+         Assert.fail("Exception expected");
+      }
+      catch (IOException exc)
+      {
+         // expected
+      }
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      MessagePack.encode(plain, out);
+      Assert.assertArrayEquals(bytes, out.toByteArray());
+      Assert.assertEquals(plain.toFlatString(), MessagePack.decode(new ByteArrayInputStream(bytes)).toFlatString());
+      Assert.assertNull(MessagePack.decode(new ByteArrayInputStream(new byte[0])));
+   }
+
+   @Test
+   public void testBadInput() throws IOException, JSONException
+   {
+      byte[] bytes = MessagePack.encode(TestSupport.readResource(JSONValueFactory.DEFAULT, "JSONObjectTest.json"));
+      String[] bad = { "c40100", "810101", "d40501", "c1", "ca7f800000", "c7000100" };
+
+      for (int i = 1; i < bytes.length; i++)
+      {
+         try
+         {
+            MessagePack.decode(bytes, 0, i);
+            Assert.fail("Exception expected");
+         }
+         catch (JSONException exc)
+         {
+            // expected
+         }
+      }
+
+      for (String hex : bad)
+      {
+         try
+         {
+            MessagePack.decode(TestSupport.unhex(hex));
+            Assert.fail("Exception expected for " + hex);
+         }
+         catch (JSONException exc)
+         {
+            // expected
+         }
+      }
+   }
+
+   @Test
+   public void testDeepNesting() throws IOException, JSONException
+   {
+      // arrays nested far past the depth limit
+      byte[] deep = new byte[200001];
+      Arrays.fill(deep, (byte) 0x91);
+      deep[deep.length - 1] = (byte) 0xC0;
+
+      try
+      {
+         MessagePack.decode(deep);
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertTrue(exc.getMessage(), exc.getMessage().contains("nested more than " + JSONValueFactory.DEFAULT_MAX_DEPTH + " deep"));
+      }
+
+      // maps too
+      deep = new byte[3 * 70000 + 1];
+      deep[deep.length - 1] = (byte) 0xC0;
+
+      for (int i = 0; i < deep.length - 1; i += 3)
+      {
+         deep[i] = (byte) 0x81;
+         deep[i + 1] = (byte) 0xA1;
+         deep[i + 2] = 'k';
+      }
+
+      try
+      {
+         MessagePack.decode(deep);
+         Assert.fail("Exception expected");
+      }
+      catch (JSONException exc)
+      {
+         Assert.assertTrue(exc.getMessage(), exc.getMessage().contains("nested more than " + JSONValueFactory.DEFAULT_MAX_DEPTH + " deep"));
+      }
+
+      // as deep as allowed
+      byte[] allowed = Arrays.copyOfRange(deep, deep.length - 3 * JSONValueFactory.DEFAULT_MAX_DEPTH - 1, deep.length);
+      JSONValue value = MessagePack.decode(allowed);
+      Assert.assertArrayEquals(allowed, MessagePack.encode(value));
+   }
+}
@@ -0,0 +1,129 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class PersistentJSONObjectTest
+{
+   @Test
+   public void testSameOutput() throws IOException, JSONException
+   {
+      JSONObject source = TestSupport.getTestObject();
+      PersistentJSONObject persistent = PersistentJSONObject.valueOf(source);
+
+      Assert.assertEquals(source.toPrettyString(), persistent.toPrettyString());
+      Assert.assertEquals(source.toFlatString(), persistent.toFlatString());
+      Assert.assertEquals(source, persistent);
+      Assert.assertEquals(source.hashCode(), persistent.hashCode());
+   }
+
+   @Test
+   public void testVersions() throws IOException, JSONException
+   {
+      PersistentJSONObject v1 = PersistentJSONObject.valueOf(TestSupport.getTestObject());
+      String original = v1.toFlatString();
+
+      PersistentJSONObject v2 = v1.with("string", new JSONString("changed")).with("extra", JSONNull.INSTANCE);
+      PersistentJSONObject v3 = v2.without("number");
+
+      Assert.assertEquals(original, v1.toFlatString());
+      Assert.assertEquals("changed", v2.get("string").getValue());
+      Assert.assertEquals("string", v2.keySet().toArray()[1]);
+      Assert.assertEquals("extra", v2.keySet().toArray()[v2.size() - 1]);
+      Assert.assertTrue(v2.containsKey("number"));
+      Assert.assertFalse(v3.containsKey("number"));
+      Assert.assertEquals(v1.size() + 1, v2.size());
+      Assert.assertEquals(v1.size(), v3.size());
+      Assert.assertSame(v3, v3.without("number"));
+
+      try
+      {
+         v1.put("string", new JSONString("changed"));
+         Assert.fail();
+      }
+      catch (UnsupportedOperationException expected)
+      {
+      }
+   }
+
+   @Test
+   public void testAgainstLinkedHashMap()
+   {
+      Random random = new Random(1234);
+      Map<String, JSONValue> expected = new LinkedHashMap<String, JSONValue>();
+      PersistentJSONObject actual = PersistentJSONObject.EMPTY;
+
+      // "Aa" and "BB" have the same hash code, so keys built from them collide
+      String[] parts = { "Aa", "BB", "x", "y" };
+
+      for (int i = 0; i < 20000; i++)
+      {
+         String key = parts[random.nextInt(4)] + parts[random.nextInt(4)] + random.nextInt(2000);
+
+         if (random.nextInt(3) == 0)
+         {
+            expected.remove(key);
+            actual = actual.without(key);
+         }
+         else
+         {
+            JSONValue value = new JSONNumber(i);
+            expected.put(key, value);
+            actual = actual.with(key, value);
+         }
+      }
+
+      Assert.assertEquals(expected.size(), actual.size());
+      Assert.assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(actual.keySet()));
+      Assert.assertEquals(expected, actual);
+   }
+
+   @Test
+   public void testArray()
+   {
+      List<JSONValue> expected = new ArrayList<JSONValue>();
+      PersistentJSONArray actual = PersistentJSONArray.EMPTY;
+      List<PersistentJSONArray> versions = new ArrayList<PersistentJSONArray>();
+
+      for (int i = 0; i < 5000; i++)
+      {
+         JSONValue value = new JSONNumber(i);
+         expected.add(value);
+         actual = actual.append(value);
+         if (i % 1000 == 0) versions.add(actual);
+      }
+
+      JSONValue marker = new JSONString("marker");
+      PersistentJSONArray changed = actual.with(1234, marker);
+
+      Assert.assertEquals(expected, actual.getListValue());
+      Assert.assertSame(marker, changed.get(1234));
+      Assert.assertNotSame(marker, actual.get(1234));
+      Assert.assertEquals(new JSONArray(expected).toFlatString(), actual.toFlatString());
+
+      for (int i = 0; i < versions.size(); i++)
+      {
+         Assert.assertEquals(expected.subList(0, i * 1000 + 1), versions.get(i).getListValue());
+      }
+
+      try
+      {
+         actual.getListValue().add(marker);
+         Assert.fail();
+      }
+      catch (UnsupportedOperationException expectedException)
+      {
+      }
+   }
+}
@@ -0,0 +1,237 @@
+package org.gavaghan.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class StructuralIndexerTest
+{
+   static private final String[] STRINGS = { "", "a", "Hello, World!", "quote\\\"d", "back\\\\slash\\\\", "\\\\\\\"", "\\u00e9t\\u00E9", "caf\u00e9", "\u65e5\u672c", "tab\\tnew\\nline", "{[:,]}",
+         "a long string that will certainly run across the boundary of a sixty-four byte block" };
+
+   static private final String[] SCALARS = { "0", "-0", "123", "-45.5", "1e10", "2.5E-3", "true", "false", "null" };
+
+   static private final String[] SPACE = { "", " ", "\n", "\r\n   ", "\t" };
+
+   static private void appendValue(Random random, StringBuilder json, int depth)
+   {
+      json.append(SPACE[random.nextInt(SPACE.length)]);
+
+      int kind = (depth > 4) ? 2 + random.nextInt(2) : random.nextInt(4);
+
+      switch (kind)
+      {
+         case 0:
+         {
+            int count = random.nextInt(5);
+            json.append('{');
+            for (int i = 0; i < count; i++)
+            {
+               if (i > 0) json.append(',');
+               json.append(SPACE[random.nextInt(SPACE.length)]);
+               json.append('\"').append(STRINGS[random.nextInt(STRINGS.length)]).append(i).append("\":");
+               appendValue(random, json, depth + 1);
+            }
+            json.append(SPACE[random.nextInt(SPACE.length)]).append('}');
+            break;
+         }
+         case 1:
+         {
+            int count = random.nextInt(5);
+            json.append('[');
+            for (int i = 0; i < count; i++)
+            {
+               if (i > 0) json.append(',');
+               appendValue(random, json, depth + 1);
+            }
+            json.append(SPACE[random.nextInt(SPACE.length)]).append(']');
+            break;
+         }
+         case 2:
+            json.append('\"').append(STRINGS[random.nextInt(STRINGS.length)]).append('\"');
+            break;
+         default:
+            json.append(SCALARS[random.nextInt(SCALARS.length)]);
+            break;
+      }
+
+      json.append(SPACE[random.nextInt(SPACE.length)]);
+   }
+
+   static private String parse(byte[] utf8, boolean indexed)
+   {
+      try
+      {
+         JSONTape tape = JSONTape.parse(utf8, 0, utf8.length, indexed);
+         return (tape == null) ? "null tape" : tape.getTapeLength() + ":" + tape.toJSONValue().toFlatString();
+      }
+      catch (JSONException exc)
+      {
+         return exc.getMessage();
+      }
+   }
+
+   @Test
+   public void testIdenticalResults()
+   {
+      Random random = new Random(42);
+
+      for (int i = 0; i < 2000; i++)
+      {
+         StringBuilder json = new StringBuilder();
+         appendValue(random, json, 0);
+
+         byte[] utf8 = json.toString().getBytes(StandardCharsets.UTF_8);
+         Assert.assertEquals(json.toString(), parse(utf8, false), parse(utf8, true));
+
+         // damage the document and make sure failures match too
+         if (utf8.length > 0)
+         {
+            utf8[random.nextInt(utf8.length)] = (byte) "{}[]:,\"\\ x1".charAt(random.nextInt(11));
+            Assert.assertEquals(parse(utf8, false), parse(utf8, true));
+         }
+      }
+   }
+
+   static private String describe(JSONValue value)
+   {
+      StringBuilder builder = new StringBuilder(value.getClass().getSimpleName());
+
+      if (value instanceof JSONObject)
+      {
+         for (Map.Entry<String, JSONValue> entry : ((JSONObject) value).entrySet())
+            builder.append(' ').append(entry.getKey()).append('=').append(describe(entry.getValue()));
+      }
+      else if (value instanceof JSONArray)
+      {
+         for (JSONValue element : (JSONArray) value)
+            builder.append(' ').append(describe(element));
+      }
+      else
+      {
+         builder.append(':').append(value.toFlatString());
+      }
+
+      return builder.toString();
+   }
+
+   static private String read(JSONValueFactory factory, byte[] utf8, boolean indexed)
+   {
+      try
+      {
+         JSONValue value = indexed ? factory.read(utf8, 0, utf8.length) : factory.read(new ByteArrayInputStream(utf8));
+         return (value == null) ? "null value" : describe(value);
+      }
+      catch (JSONException exc)
+      {
+         return exc.getPath() + " " + exc.getMessage();
+      }
+      catch (IOException exc)
+      {
+         throw new RuntimeException(exc);
+      }
+   }
+
+   @Test
+   public void testFactoryIdenticalResults() throws JSONException
+   {
+      JSONValueFactory doubles = new JSONValueFactory()
+      {
+         @Override
+         public boolean isDoublePrecision()
+         {
+            return true;
+         }
+      };
+
+      JSONValueFactory limited = new JSONValueFactory()
+      {
+         @Override
+         public int getMaxDepth()
+         {
+            return 3;
+         }
+
+         @Override
+         public int getMaxMembers()
+         {
+            return 3;
+         }
+
+         @Override
+         public int getMaxStringLength()
+         {
+            return 6;
+         }
+
+         @Override
+         public int getMaxNumberLength()
+         {
+            return 3;
+         }
+
+         @Override
+         public int getMinNumberArraySize()
+         {
+            return 2;
+         }
+      };
+
+      JSONValueFactory[] factories = { JSONValueFactory.DEFAULT, JSONValueFactory.STRICT, doubles, limited, TypedJSONValueFactory.TYPED_DEFAULT };
+      Random random = new Random(7);
+
+      for (int i = 0; i < 2000; i++)
+      {
+         StringBuilder json = new StringBuilder();
+         appendValue(random, json, 0);
+
+         byte[] utf8 = json.toString().getBytes(StandardCharsets.UTF_8);
+         byte[] damaged = utf8.clone();
+         if (damaged.length > 0) damaged[random.nextInt(damaged.length)] = (byte) "{}[]:,\"\\ x1".charAt(random.nextInt(11));
+
+         for (JSONValueFactory factory : factories)
+         {
+            Assert.assertEquals(json.toString(), read(factory, utf8, false), read(factory, utf8, true));
+            Assert.assertEquals(read(factory, damaged, false), read(factory, damaged, true));
+         }
+      }
+
+      // the index is used only where it can be
+      byte[] numbers = "[1, 2.5, -3e2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17] ".getBytes(StandardCharsets.UTF_8);
+      Assert.assertTrue(JSONValueFactory.DEFAULT.readIndexed(numbers, 0, numbers.length, new StructuralIndexer()) instanceof JSONNumberArray);
+      Assert.assertNull(TypedJSONValueFactory.TYPED_DEFAULT.readIndexed(numbers, 0, numbers.length, new StructuralIndexer()));
+      Assert.assertNull(limited.readIndexed(numbers, 0, numbers.length, new StructuralIndexer()));
+
+      for (JSONValueFactory factory : factories)
+      {
+         Assert.assertEquals(read(factory, numbers, false), read(factory, numbers, true));
+      }
+   }
+
+   @Test
+   public void testIndex()
+   {
+      byte[] utf8 = "{ \"a\\\"\" : [1, true, \"x\"] }".getBytes(StandardCharsets.UTF_8);
+      StructuralIndexer indexer = new StructuralIndexer();
+
+      Assert.assertTrue(indexer.index(utf8, 0, utf8.length));
+
+      StringBuilder found = new StringBuilder();
+      for (int i = 0; i < indexer.getCount(); i++)
+         found.append((char) utf8[indexer.getPositions()[i]]);
+
+      Assert.assertEquals("{\"\":[1,t,\"\"]}", found.toString());
+
+      byte[] vertical = "[1,\u000B2]".getBytes(StandardCharsets.UTF_8);
+      Assert.assertFalse(indexer.index(vertical, 0, vertical.length));
+   }
+}
@@ -0,0 +1,20 @@
+package org.gavaghan.json;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+@JSONBinding(typed = true)
+public class TestBoundChild
+{
+   String name;
+
+   public TestBoundChild()
+   {
+   }
+
+   public TestBoundChild(String name)
+   {
+      this.name = name;
+   }
+}
@@ -0,0 +1,21 @@
+package org.gavaghan.json;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+@JSONBinding(typed = true)
+public class TestBoundGrandchild extends TestBoundChild
+{
+   int age;
+
+   public TestBoundGrandchild()
+   {
+   }
+
+   public TestBoundGrandchild(String name, int age)
+   {
+      super(name);
+      this.age = age;
+   }
+}
@@ -0,0 +1,51 @@
+package org.gavaghan.json;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+@JSONBinding
+public class TestBoundObject
+{
+   public enum Color
+   {
+      RED, GREEN
+   }
+
+   String string;
+   int count;
+   Long boxed;
+   double ratio;
+   boolean flag;
+   BigDecimal amount;
+   Color color;
+   List<String> tags;
+   Map<String, Integer> scores;
+   JSONObject extra;
+   TestBoundChild child;
+   List<TestBoundChild> children;
+
+   @JSONField(name = "renamed")
+   String original;
+
+   @JSONField(ignore = true)
+   String ignored;
+
+   transient String scratch;
+
+   private String hidden;
+
+   public String getHidden()
+   {
+      return hidden;
+   }
+
+   public void setHidden(String hidden)
+   {
+      this.hidden = hidden;
+   }
+}
@@ -0,0 +1,61 @@
+package org.gavaghan.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Helpers shared by the tests.
+ *
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+final class TestSupport
+{
+   private TestSupport()
+   {
+   }
+
+   /**
+    * Read a UTF-8 test resource.
+    */
+   static JSONValue readResource(JSONValueFactory factory, String name) throws IOException, JSONException
+   {
+      try (InputStream instr = TestSupport.class.getResourceAsStream(name); InputStreamReader rdr = new InputStreamReader(instr, "UTF-8"))
+      {
+         return factory.read(rdr);
+      }
+   }
+
+   /**
+    * Read the object shared by the <code>JSONObject</code> tests.
+    */
+   static JSONObject getTestObject() throws IOException, JSONException
+   {
+      try (InputStream instr = JSONObjectTest.class.getResourceAsStream("JSONObjectTest.json"); InputStreamReader rdr = new InputStreamReader(instr))
+      {
+         return (JSONObject) JSONValueFactory.DEFAULT.read(rdr);
+      }
+   }
+
+   /**
+    * Render bytes as lower case hex.
+    */
+   static String hex(byte[] bytes)
+   {
+      StringBuilder builder = new StringBuilder();
+      for (byte b : bytes)
+         builder.append(String.format("%02x", b & 0xFF));
+      return builder.toString();
+   }
+
+   /**
+    * Parse bytes from hex.
+    */
+   static byte[] unhex(String hex)
+   {
+      byte[] bytes = new byte[hex.length() / 2];
+      for (int i = 0; i < bytes.length; i++)
+         bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+      return bytes;
+   }
+}
@@ -0,0 +1,123 @@
+package org.gavaghan.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class UTF8ReaderTest
+{
+   /** Byte sequences of every length, plus broken and overlong ones. */
+   static private final byte[][] SEQUENCES = { { 'a' }, { '"' }, { (byte) 0xC3, (byte) 0xA9 }, { (byte) 0xE2, (byte) 0x82, (byte) 0xAC }, { (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80 }, { (byte) 0x80 }, { (byte) 0xC3 }, { (byte) 0xE2, (byte) 0x82 }, { (byte) 0xC0, (byte) 0xAF }, { (byte) 0xED, (byte) 0xA0, (byte) 0x80 }, { (byte) 0xFF } };
+
+   /**
+    * A stream that hands out at most a few bytes per read.
+    */
+   static private class TrickleInputStream extends ByteArrayInputStream
+   {
+      private final int mMax;
+
+      TrickleInputStream(byte[] bytes, int max)
+      {
+         super(bytes);
+         mMax = max;
+      }
+
+      @Override
+      public synchronized int read(byte[] b, int off, int len)
+      {
+         return super.read(b, off, Math.min(len, mMax));
+      }
+   }
+
+   static private byte[] randomBytes(Random random, int length)
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+      while (bytes.size() < length)
+      {
+         // mostly ASCII runs with the occasional odd sequence
+         if (random.nextInt(4) == 0)
+         {
+            byte[] sequence = SEQUENCES[random.nextInt(SEQUENCES.length)];
+            bytes.write(sequence, 0, sequence.length);
+         }
+         else
+         {
+            bytes.write(32 + random.nextInt(95));
+         }
+      }
+
+      return bytes.toByteArray();
+   }
+
+   static private String readAll(Reader reader, int chunk) throws IOException
+   {
+      StringBuilder builder = new StringBuilder();
+      char[] buf = new char[chunk];
+
+      for (;;)
+      {
+         int count = (chunk == 1) ? reader.read() : reader.read(buf, 0, chunk);
+         if (count < 0) break;
+
+         if (chunk == 1) builder.append((char) count);
+         else builder.append(buf, 0, count);
+      }
+
+      return builder.toString();
+   }
+
+   @Test
+   public void testMatchesInputStreamReader() throws IOException
+   {
+      Random random = new Random(45);
+      UTF8Reader reader = new UTF8Reader();
+
+      for (int round = 0; round < 200; round++)
+      {
+         byte[] bytes = randomBytes(random, random.nextInt(20000));
+         String expected = readAll(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8), 4096);
+
+         for (int trickle : new int[] { 1, 3, 8192 })
+         {
+            for (int chunk : new int[] { 1, 2, 7, 8192 })
+            {
+               reader.attach(new TrickleInputStream(bytes, trickle));
+               Assert.assertEquals(expected, readAll(reader, chunk));
+               reader.detach();
+            }
+         }
+      }
+   }
+
+   @Test
+   public void testReadStream() throws IOException, JSONException
+   {
+      String json = "{\"name\":\"café 😀\",\"list\":[1,2.5,true,null],\"euro\":\"€\"}";
+      byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+      JSONValue expected = JSONValueFactory.DEFAULT.read(new StringReader(json));
+
+      try (InputStream in = new TrickleInputStream(bytes, 5))
+      {
+         JSONValue actual = JSONValueFactory.DEFAULT.read(in);
+         Assert.assertTrue(AbstractJSONValue.deepEquals(expected, actual));
+      }
+
+      // whitespace only
+      Assert.assertNull(JSONValueFactory.DEFAULT.read(new ByteArrayInputStream(" \n ".getBytes(StandardCharsets.UTF_8))));
+   }
+}
@@ -0,0 +1,242 @@
+package org.gavaghan.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class UTF8WriterTest
+{
+   /** Characters from every encoded length, including broken surrogate pairs. */
+   static private final char[] CHARS = { 'a', 'Z', '0', ' ', '"', '\\', '\n', '\u0001', '\u007f', '\u0080', '\u00e9', '\u07ff', '\u0800', '\u20ac', '\uffff', '\ud83d', '\ude00', '\ud800', '\udfff' };
+
+   /**
+    * Encode the way <code>OutputStreamWriter</code> does.
+    */
+   static private byte[] reference(String str) throws IOException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+      try (Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8))
+      {
+         writer.write(str);
+      }
+
+      return bytes.toByteArray();
+   }
+
+   static private String randomString(Random random, int length)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      for (int i = 0; i < length; i++)
+      {
+         // mostly ASCII runs with the occasional odd character
+         if (random.nextInt(4) == 0) builder.append(CHARS[random.nextInt(CHARS.length)]);
+         else builder.append((char) (32 + random.nextInt(95)));
+      }
+
+      return builder.toString();
+   }
+
+   @Test
+   public void testMatchesOutputStreamWriter() throws IOException
+   {
+      Random random = new Random(35);
+
+      for (int n = 0; n < 200; n++)
+      {
+         String str = randomString(random, random.nextInt(n < 100 ? 50 : 30000));
+
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         try (UTF8Writer writer = new UTF8Writer(bytes))
+         {
+            // mix single chars, arrays and strings so pairs split across calls
+            int i = 0;
+            while (i < str.length())
+            {
+               int len = Math.min(str.length() - i, random.nextInt(20));
+
+               switch (random.nextInt(3))
+               {
+                  case 0:
+                     writer.write(str.charAt(i));
+                     len = 1;
+                     break;
+                  case 1:
+                     writer.write(str.toCharArray(), i, len);
+                     break;
+                  default:
+                     writer.write(str, i, len);
+                     break;
+               }
+
+               i += len;
+            }
+         }
+
+         Assert.assertArrayEquals(str, reference(str), bytes.toByteArray());
+      }
+   }
+
+   @Test
+   public void testDocumentTargets() throws IOException, JSONException
+   {
+      Random random = new Random(36);
+      JSONObject obj = new JSONObject();
+      JSONArray array = new JSONArray();
+
+      for (int i = 0; i < 2000; i++)
+      {
+         obj.put("key" + i, new JSONString(randomString(random, 20)));
+         array.getListValue().add(new JSONNumber(new java.math.BigDecimal(random.nextGaussian())));
+      }
+
+      obj.put("array", array);
+
+      for (boolean pretty : new boolean[] { false, true })
+      {
+         byte[] expected = reference(AbstractJSONValue.toString(obj, pretty));
+
+         // stream
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         AbstractJSONValue.write(obj, bytes, pretty);
+         Assert.assertArrayEquals(expected, bytes.toByteArray());
+
+         // plain channel
+         bytes = new ByteArrayOutputStream();
+         AbstractJSONValue.write(obj, Channels.newChannel(bytes), pretty);
+         Assert.assertArrayEquals(expected, bytes.toByteArray());
+
+         // gathering channel that only takes part of each write
+         SlowGatheringChannel channel = new SlowGatheringChannel();
+         AbstractJSONValue.write(obj, channel, pretty);
+         Assert.assertArrayEquals(expected, channel.mBytes.toByteArray());
+         Assert.assertTrue(channel.mGathered);
+
+         // buffer
+         ByteBuffer buffer = ByteBuffer.allocate(expected.length + 10);
+         buffer.position(5);
+         try (JSONContext context = JSONContext.acquire())
+         {
+            context.write(obj, buffer, pretty);
+         }
+         Assert.assertEquals(expected.length + 5, buffer.position());
+         Assert.assertArrayEquals(expected, Arrays.copyOfRange(buffer.array(), 5, expected.length + 5));
+
+         // round trip
+         JSONValue copy = JSONValueFactory.DEFAULT.read(new StringReader(new String(expected, StandardCharsets.UTF_8)));
+         Assert.assertEquals(obj.toFlatString(), copy.toFlatString());
+      }
+   }
+
+   @Test
+   public void testCachedKeys() throws IOException
+   {
+      String[] keys = { "id", "name", "caf\u00e9", "\ud83d\ude00", "\ud800x", "" };
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      StringBuilder expected = new StringBuilder();
+
+      try (UTF8Writer writer = new UTF8Writer(bytes))
+      {
+         StringBuilderWriter chars = new StringBuilderWriter(16);
+
+         for (int i = 0; i < 3000; i++)
+         {
+            String key = (i % 2 == 0) ? keys[i % keys.length] : ("k" + i % 1500);
+
+            // a dangling surrogate must still resolve against the key's quote
+            if (i % 7 == 0)
+            {
+               writer.write('\ud83d');
+               chars.write('\ud83d');
+            }
+
+            JSONWriter.writeKey(key, writer, i % 3 == 0);
+            JSONWriter.writeKey(key, chars, i % 3 == 0);
+            JSONWriter.writeLiteral((i % 5 == 0) ? JSONWriter.NULL : JSONWriter.TRUE, writer);
+            JSONWriter.writeLiteral((i % 5 == 0) ? JSONWriter.NULL : JSONWriter.TRUE, chars);
+         }
+
+         expected.append(chars.toString());
+      }
+
+      Assert.assertArrayEquals(reference(expected.toString()), bytes.toByteArray());
+   }
+
+   @Test
+   public void testBufferOverflow() throws IOException
+   {
+      try (JSONContext context = JSONContext.acquire())
+      {
+         context.write(new JSONString("too long for the buffer"), ByteBuffer.allocate(8), false);
+         Assert.fail("Exception expected");
+      }
+      catch (IOException exc)
+      {
+         // expected
+      }
+   }
+
+   /**
+    * A gathering channel that accepts at most 1000 bytes per call.
+    */
+   static private class SlowGatheringChannel implements GatheringByteChannel
+   {
+      ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+      boolean mGathered;
+
+      @Override
+      public int write(ByteBuffer src)
+      {
+         int count = Math.min(1000, src.remaining());
+         for (int i = 0; i < count; i++)
+            mBytes.write(src.get());
+         return count;
+      }
+
+      @Override
+      public long write(ByteBuffer[] srcs, int offset, int length)
+      {
+         if (length > 1) mGathered = true;
+
+         for (int i = offset; i < offset + length; i++)
+         {
+            if (srcs[i].hasRemaining()) return write(srcs[i]);
+         }
+
+         return 0;
+      }
+
+      @Override
+      public long write(ByteBuffer[] srcs)
+      {
+         return write(srcs, 0, srcs.length);
+      }
+
+      @Override
+      public boolean isOpen()
+      {
+         return true;
+      }
+
+      @Override
+      public void close()
+      {
+      }
+   }
+}
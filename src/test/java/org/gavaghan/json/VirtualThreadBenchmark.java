@@ -0,0 +1,157 @@
+package org.gavaghan.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures parse and render throughput with many concurrent tasks. On Java 21
+ * and later each task runs on its own virtual thread; on earlier versions the
+ * tasks share a pool of platform threads. Not run as part of the tests.
+ * 
+ * <pre>
+ * java -cp target/classes:target/test-classes org.gavaghan.json.VirtualThreadBenchmark [tasks] [iterations]
+ * </pre>
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class VirtualThreadBenchmark
+{
+   /** Number of platform threads used without virtual threads. */
+   static private final int POOL_SIZE = 4 * Runtime.getRuntime().availableProcessors();
+
+   /**
+    * Find the factory for a virtual thread per task executor.
+    * 
+    * @return the method, or null before Java 21
+    */
+   static private Method findVirtualExecutor()
+   {
+      try
+      {
+         return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      }
+      catch (NoSuchMethodException exc)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * Create an executor with a virtual thread per task if the runtime
+    * supports it.
+    */
+   static private ExecutorService createExecutor(Method virtual) throws ReflectiveOperationException
+   {
+      if (virtual != null) return (ExecutorService) virtual.invoke(null);
+      return Executors.newFixedThreadPool(POOL_SIZE);
+   }
+
+   static private byte[] createDocument()
+   {
+      JSONObject object = new JSONObject();
+      JSONArray items = new JSONArray();
+
+      for (int i = 0; i < 50; i++)
+      {
+         JSONObject item = new JSONObject();
+         item.put("id", new JSONNumber(i));
+         item.put("name", new JSONString("item number " + i + " é€"));
+         item.put("price", new JSONNumber("12.75"));
+         item.put("active", new JSONBoolean((i & 1) == 0));
+         items.getListValue().add(item);
+      }
+
+      object.put("items", items);
+      object.put("total", new JSONNumber(50));
+
+      return object.toFlatString().getBytes(StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Run every task to completion and report the throughput.
+    */
+   static private void run(String name, Method virtual, int tasks, final int iterations, final Callable<Object> body) throws Exception
+   {
+      ExecutorService executor = createExecutor(virtual);
+      List<Future<?>> futures = new ArrayList<Future<?>>(tasks);
+      long start = System.nanoTime();
+
+      for (int t = 0; t < tasks; t++)
+      {
+         futures.add(executor.submit(new Callable<Object>()
+         {
+            @Override
+            public Object call() throws Exception
+            {
+               for (int i = 0; i < iterations; i++)
+               {
+                  body.call();
+               }
+
+               return null;
+            }
+         }));
+      }
+
+      for (Future<?> future : futures)
+      {
+         future.get();
+      }
+
+      long elapsed = System.nanoTime() - start;
+      executor.shutdown();
+
+      System.out.printf("%-32s %,12.0f docs/s%n", name, (double) tasks * iterations * 1e9 / elapsed);
+   }
+
+   static public void main(String[] args) throws Exception
+   {
+      int tasks = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+      int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+      final byte[] document = createDocument();
+      final JSONValue value = JSONValueFactory.DEFAULT.read(new ByteArrayInputStream(document));
+
+      Method virtual = findVirtualExecutor();
+
+      System.out.println(tasks + " tasks x " + iterations + " iterations, " + document.length + " byte document");
+      System.out.println((virtual != null) ? "One virtual thread per task" : ("Virtual threads unavailable; sharing " + POOL_SIZE + " platform threads"));
+
+      for (int pass = 0; pass < 3; pass++)
+      {
+         run("read(InputStreamReader)", virtual, tasks, iterations, new Callable<Object>()
+         {
+            @Override
+            public Object call() throws Exception
+            {
+               return JSONValueFactory.DEFAULT.read(new InputStreamReader(new ByteArrayInputStream(document), StandardCharsets.UTF_8));
+            }
+         });
+
+         run("read(InputStream)", virtual, tasks, iterations, new Callable<Object>()
+         {
+            @Override
+            public Object call() throws Exception
+            {
+               return JSONValueFactory.DEFAULT.read(new ByteArrayInputStream(document));
+            }
+         });
+
+         run("toFlatString()", virtual, tasks, iterations, new Callable<Object>()
+         {
+            @Override
+            public Object call() throws Exception
+            {
+               return value.toFlatString();
+            }
+         });
+      }
+   }
+}
@@ -0,0 +1,185 @@
+package org.gavaghan.json;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 
+ * @author <a href="mailto:mike@gavaghan.org">Mike Gavaghan</a>
+ */
+public class JSONFlowTest
+{
+   /**
+    * Publishes chunks only as they're requested, counting the requests.
+    */
+   static private class ChunkPublisher implements Flow.Publisher<ByteBuffer>
+   {
+      final List<ByteBuffer> mChunks = new ArrayList<ByteBuffer>();
+      final AtomicInteger mRequested = new AtomicInteger();
+
+      ChunkPublisher(String text, int size)
+      {
+         byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+         for (int i = 0; i < bytes.length; i += size)
+            mChunks.add(ByteBuffer.wrap(bytes, i, Math.min(size, bytes.length - i)));
+      }
+
+      @Override
+      public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber)
+      {
+         subscriber.onSubscribe(new Flow.Subscription()
+         {
+            int mNext;
+            boolean mDone;
+
+            @Override
+            public void request(long n)
+            {
+               for (long i = 0; (i < n) && !mDone; i++)
+               {
+                  mRequested.incrementAndGet();
+
+                  if (mNext < mChunks.size())
+                  {
+                     subscriber.onNext(mChunks.get(mNext++));
+                  }
+                  else
+                  {
+                     mDone = true;
+                     subscriber.onComplete();
+                  }
+               }
+            }
+
+            @Override
+            public void cancel()
+            {
+               mDone = true;
+            }
+         });
+      }
+   }
+
+   /**
+    * Collects items, requesting them one at a time on demand.
+    */
+   static private class Collector<T> implements Flow.Subscriber<T>
+   {
+      final List<T> mItems = new ArrayList<T>();
+      final CountDownLatch mDone = new CountDownLatch(1);
+      Flow.Subscription mSubscription;
+      Throwable mError;
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription)
+      {
+         mSubscription = subscription;
+      }
+
+      @Override
+      public void onNext(T item)
+      {
+         mItems.add(item);
+      }
+
+      @Override
+      public void onError(Throwable throwable)
+      {
+         mError = throwable;
+         mDone.countDown();
+      }
+
+      @Override
+      public void onComplete()
+      {
+         mDone.countDown();
+      }
+   }
+
+   @Test
+   public void testDecodeWithBackpressure() throws Exception
+   {
+      ChunkPublisher publisher = new ChunkPublisher("[{\"a\": 1}, \"two\", [3], 4.5, {\"e\": \"€\"}]", 3);
+      Collector<JSONValue> collector = new Collector<JSONValue>();
+
+      new JSONDecodingProcessor(JSONValueFactory.DEFAULT, true).from(publisher).subscribe(collector);
+
+      // nothing is read until there is demand
+      Assert.assertEquals(0, publisher.mRequested.get());
+
+      collector.mSubscription.request(1);
+      Assert.assertEquals(1, collector.mItems.size());
+      Assert.assertEquals("{\"a\":1}", collector.mItems.get(0).toFlatString().replaceAll("\\s", ""));
+
+      // only enough chunks to complete the first element were read
+      Assert.assertEquals(3, publisher.mRequested.get());
+
+      collector.mSubscription.request(Long.MAX_VALUE);
+      Assert.assertTrue(collector.mDone.await(5, TimeUnit.SECONDS));
+      Assert.assertNull(collector.mError);
+      Assert.assertEquals(5, collector.mItems.size());
+      Assert.assertEquals("€", ((JSONObject) collector.mItems.get(4)).get("e").getValue());
+   }
+
+   @Test
+   public void testDecodeError() throws Exception
+   {
+      Collector<JSONValue> collector = new Collector<JSONValue>();
+
+      new JSONDecodingProcessor().from(new ChunkPublisher("{\"a\":1}\n{\"a\" 2}\n{\"a\":3}", 4)).subscribe(collector);
+      collector.mSubscription.request(10);
+
+      Assert.assertTrue(collector.mDone.await(5, TimeUnit.SECONDS));
+      Assert.assertEquals(1, collector.mItems.size());
+      Assert.assertTrue(collector.mError instanceof JSONException);
+   }
+
+   @Test
+   public void testRoundTrip() throws Exception
+   {
+      String ndjson = "{\"a\":[1,2]}\n\"x\"\n[]\n{\"b\":{\"c\":null}}\n";
+
+      for (boolean array : new boolean[] { false, true })
+      {
+         JSONEncodingProcessor encoder = new JSONEncodingProcessor(array);
+         Collector<ByteBuffer> chunks = new Collector<ByteBuffer>();
+
+         encoder.from(new JSONDecodingProcessor().from(new ChunkPublisher(ndjson, 5))).subscribe(chunks);
+         chunks.mSubscription.request(Long.MAX_VALUE);
+         Assert.assertTrue(chunks.mDone.await(5, TimeUnit.SECONDS));
+         Assert.assertNull(chunks.mError);
+
+         StringBuilder text = new StringBuilder();
+         for (ByteBuffer chunk : chunks.mItems)
+            text.append(StandardCharsets.UTF_8.decode(chunk));
+
+         if (array)
+         {
+            Assert.assertEquals(5, chunks.mItems.size());
+            Assert.assertEquals("[{\"a\":[1,2]},\"x\",[],{\"b\":{\"c\":null}}]", text.toString().replaceAll("\\s", ""));
+         }
+         else
+         {
+            Assert.assertEquals(4, chunks.mItems.size());
+            Assert.assertEquals(ndjson, text.toString().replace(" ", ""));
+         }
+      }
+
+      // an empty stream is still an array
+      Collector<ByteBuffer> chunks = new Collector<ByteBuffer>();
+      new JSONEncodingProcessor(true).from(new JSONDecodingProcessor().from(new ChunkPublisher(" ", 1))).subscribe(chunks);
+      chunks.mSubscription.request(1);
+
+      Assert.assertTrue(chunks.mDone.await(5, TimeUnit.SECONDS));
+      Assert.assertEquals("[]", StandardCharsets.UTF_8.decode(chunks.mItems.get(0)).toString());
+   }
+}